@@ -3,48 +3,71 @@ package net.lightbody.bmp;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.ssl.SslProvider;
 import net.lightbody.bmp.client.ClientUtil;
+import net.lightbody.bmp.core.har.CompactHarLog;
 import net.lightbody.bmp.core.har.Har;
 import net.lightbody.bmp.core.har.HarLog;
 import net.lightbody.bmp.core.har.HarNameVersion;
 import net.lightbody.bmp.core.har.HarPage;
+import net.lightbody.bmp.core.har.store.HarContentStore;
 import net.lightbody.bmp.filters.AddHeadersFilter;
 import net.lightbody.bmp.filters.AutoBasicAuthFilter;
 import net.lightbody.bmp.filters.BlacklistFilter;
 import net.lightbody.bmp.filters.BrowserMobHttpFilterChain;
+import net.lightbody.bmp.filters.CompactHarCaptureFilter;
 import net.lightbody.bmp.filters.HarCaptureFilter;
 import net.lightbody.bmp.filters.HttpConnectHarCaptureFilter;
+import net.lightbody.bmp.filters.HttpMessageMatcher;
 import net.lightbody.bmp.filters.HttpsHostCaptureFilter;
 import net.lightbody.bmp.filters.HttpsOriginalHostCaptureFilter;
 import net.lightbody.bmp.filters.LatencyFilter;
+import net.lightbody.bmp.filters.MetricsFilter;
 import net.lightbody.bmp.filters.RegisterRequestFilter;
 import net.lightbody.bmp.filters.RequestFilter;
 import net.lightbody.bmp.filters.RequestFilterAdapter;
 import net.lightbody.bmp.filters.ResolvedHostnameCacheFilter;
+import net.lightbody.bmp.filters.ResponseAggregationFilter;
 import net.lightbody.bmp.filters.ResponseFilter;
 import net.lightbody.bmp.filters.ResponseFilterAdapter;
 import net.lightbody.bmp.filters.RewriteUrlFilter;
+import net.lightbody.bmp.filters.StreamingRequestFilter;
+import net.lightbody.bmp.filters.StreamingRequestFilterAdapter;
+import net.lightbody.bmp.filters.StreamingResponseFilter;
+import net.lightbody.bmp.filters.StreamingResponseFilterAdapter;
 import net.lightbody.bmp.filters.UnregisterRequestFilter;
 import net.lightbody.bmp.filters.WhitelistFilter;
+import net.lightbody.bmp.mitm.ImpersonatedCertificateStore;
 import net.lightbody.bmp.mitm.KeyStoreFileCertificateSource;
 import net.lightbody.bmp.mitm.TrustSource;
 import net.lightbody.bmp.mitm.keys.ECKeyGenerator;
 import net.lightbody.bmp.mitm.keys.RSAKeyGenerator;
 import net.lightbody.bmp.mitm.manager.ImpersonatingMitmManager;
+import net.lightbody.bmp.mitm.stats.CertificateGenerationStatistics;
+import net.lightbody.bmp.mitm.stats.TlsHandshakeStatistics;
 import net.lightbody.bmp.proxy.ActivityMonitor;
 import net.lightbody.bmp.proxy.BlacklistEntry;
 import net.lightbody.bmp.proxy.CaptureType;
+import net.lightbody.bmp.proxy.HarContentProcessor;
 import net.lightbody.bmp.proxy.RewriteRule;
+import net.lightbody.bmp.proxy.UrlPatternMatcher;
 import net.lightbody.bmp.proxy.Whitelist;
 import net.lightbody.bmp.proxy.auth.AuthType;
 import net.lightbody.bmp.proxy.dns.AdvancedHostResolver;
+import net.lightbody.bmp.proxy.dns.AsyncDnsResolver;
+import net.lightbody.bmp.proxy.dns.CachingHostResolver;
 import net.lightbody.bmp.proxy.dns.DelegatingHostResolver;
+import net.lightbody.bmp.proxy.dns.HappyEyeballsAddressSelector;
+import net.lightbody.bmp.proxy.metrics.ProxyMetrics;
+import net.lightbody.bmp.proxy.metrics.ProxyMetricsSnapshot;
 import net.lightbody.bmp.util.BrowserMobHttpUtil;
 import net.lightbody.bmp.util.BrowserMobProxyUtil;
+import net.lightbody.bmp.util.HttpUtil;
 import org.littleshoot.proxy.ChainedProxy;
 import org.littleshoot.proxy.ChainedProxyAdapter;
 import org.littleshoot.proxy.ChainedProxyManager;
@@ -60,6 +83,7 @@ import org.littleshoot.proxy.impl.ThreadPoolConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
@@ -100,6 +124,11 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
      */
     public static final String VIA_HEADER_ALIAS = "browsermobproxy";
 
+    /**
+     * The default maximum time to wait for pending HAR content to be processed when retrieving the HAR.
+     */
+    public static final long DEFAULT_HAR_CONTENT_PROCESSING_TIMEOUT_MS = 30000;
+
     /**
      * True only after the proxy has been successfully started.
      */
@@ -140,6 +169,17 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
      */
     private volatile CopyOnWriteArrayList<RewriteRule> rewriteRules = new CopyOnWriteArrayList<>();
 
+    /**
+     * Compiled matchers for the current blacklist entries and rewrite rules. The matchers are rebuilt whenever the blacklist or
+     * rewrite rules change, so filters never need to compile the patterns themselves. The locks serialize rebuilds, so the last
+     * rebuild always reflects the most recent change.
+     */
+    private volatile UrlPatternMatcher<BlacklistEntry> blacklistMatcher = UrlPatternMatcher.empty();
+    private volatile UrlPatternMatcher<RewriteRule> rewriteRuleMatcher = UrlPatternMatcher.empty();
+
+    private final Object blacklistMatcherLock = new Object();
+    private final Object rewriteRuleMatcherLock = new Object();
+
     /**
      * The LittleProxy instance that performs all proxy operations.
      */
@@ -150,6 +190,26 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
      */
     private volatile EnumSet<CaptureType> harCaptureTypes = EnumSet.noneOf(CaptureType.class);
 
+    /**
+     * Store for captured response bodies. If null, response bodies are captured in the HAR as Strings.
+     */
+    private volatile HarContentStore harContentStore;
+
+    /**
+     * Processor for captured HAR response content. If null, response content is processed on the thread that receives the response.
+     */
+    private volatile HarContentProcessor harContentProcessor;
+
+    /**
+     * When true, new HARs record only the request line, status, sizes, and timings of each request in a {@link CompactHarLog}.
+     */
+    private volatile boolean compactHarCaptureEnabled;
+
+    /**
+     * Maximum time to wait for pending HAR content to be processed when retrieving the HAR.
+     */
+    private volatile long harContentProcessingTimeoutMs = DEFAULT_HAR_CONTENT_PROCESSING_TIMEOUT_MS;
+
     /**
      * The current HAR being captured.
      */
@@ -229,23 +289,50 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
      */
     private volatile boolean useEcc = false;
 
+    /**
+     * Persistent store of impersonated certificates used by the default MITM manager. If null, impersonated certificates are
+     * only cached in memory.
+     */
+    private volatile ImpersonatedCertificateStore impersonatedCertificateStore;
+
+    /**
+     * SSL implementation used by the default MITM manager. If null, netty's default implementation is used.
+     */
+    private volatile SslProvider sslProvider;
+
     /**
      * Resolver to use when resolving hostnames to IP addresses. This is a bridge between {@link org.littleshoot.proxy.HostResolver} and
      * {@link net.lightbody.bmp.proxy.dns.AdvancedHostResolver}. It allows the resolvers to be changed on-the-fly without re-bootstrapping the
-     * littleproxy server. The default resolver (native JDK resolver) can be changed using {@link #setHostNameResolver(net.lightbody.bmp.proxy.dns.AdvancedHostResolver)} and
+     * littleproxy server. The default resolver (native JDK resolver with a per-proxy cache, so that clearing the cache does not affect other
+     * proxies) can be changed using {@link #setHostNameResolver(net.lightbody.bmp.proxy.dns.AdvancedHostResolver)} and
      * supplying one of the pre-defined resolvers in {@link ClientUtil}, such as {@link ClientUtil#createDnsJavaWithNativeFallbackResolver()}
      * or {@link ClientUtil#createDnsJavaResolver()}. You can also build your own resolver, or use {@link net.lightbody.bmp.proxy.dns.ChainedHostResolver}
      * to chain together multiple DNS resolvers.
      */
-    private final DelegatingHostResolver delegatingResolver = new DelegatingHostResolver(ClientUtil.createNativeCacheManipulatingResolver());
+    private final DelegatingHostResolver delegatingResolver = new DelegatingHostResolver(ClientUtil.createCachingNativeResolver());
 
     private final ActivityMonitor activityMonitor = new ActivityMonitor();
 
+    /**
+     * Live traffic metrics for this proxy, recorded by the {@link MetricsFilter}.
+     */
+    private final ProxyMetrics metrics = new ProxyMetrics();
+
+    /**
+     * Time this proxy was created, used to calculate the uptime reported in metrics snapshots.
+     */
+    private final long createdTimeMs = System.currentTimeMillis();
+
     /**
      * The acceptor and worker thread configuration for the Netty thread pools.
      */
     private volatile ThreadPoolConfiguration threadPoolConfiguration;
 
+    /**
+     * The group of proxies whose thread pools this proxy will share. If null, this proxy will create its own thread pools.
+     */
+    private volatile ProxyServerGroup serverGroup;
+
     /**
      * A mapping of hostnames to base64-encoded Basic auth credentials that will be added to the Authorization header for
      * matching requests.
@@ -282,23 +369,31 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         // initialize all the default BrowserMob filter factories that provide core BMP functionality
         addBrowserMobFilters();
 
-        HttpProxyServerBootstrap bootstrap = DefaultHttpProxyServer.bootstrap()
-                .withFiltersSource(new HttpFiltersSource() {
-                    @Override
-                    public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext channelHandlerContext) {
-                        return new BrowserMobHttpFilterChain(BrowserMobProxyServer.this, originalRequest, channelHandlerContext);
-                    }
+        HttpProxyServerBootstrap bootstrap;
+        if (serverGroup != null) {
+            bootstrap = serverGroup.bootstrap();
+        } else {
+            bootstrap = DefaultHttpProxyServer.bootstrap();
+        }
 
-                    @Override
-                    public int getMaximumRequestBufferSizeInBytes() {
-                        return getMaximumRequestBufferSize();
-                    }
+        bootstrap.withFiltersSource(new HttpFiltersSource() {
+            @Override
+            public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext channelHandlerContext) {
+                return new BrowserMobHttpFilterChain(BrowserMobProxyServer.this, originalRequest, channelHandlerContext);
+            }
 
-                    @Override
-                    public int getMaximumResponseBufferSizeInBytes() {
-                        return getMaximumResponseBufferSize();
-                    }
-                })
+            @Override
+            public int getMaximumRequestBufferSizeInBytes() {
+                return getMaximumRequestBufferSize();
+            }
+
+            @Override
+            public int getMaximumResponseBufferSizeInBytes() {
+                // responses are aggregated per exchange by the ResponseAggregationFilter, only when a filter that matches the
+                // exchange needs the response's contents
+                return 0;
+            }
+        })
                 .withServerResolver(delegatingResolver)
                 .withAddress(clientBindSocket)
                 .withConnectTimeout(connectTimeoutMs)
@@ -312,15 +407,7 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
 
         if (!mitmDisabled) {
             if (mitmManager == null) {
-                mitmManager = ImpersonatingMitmManager.builder()
-                        .rootCertificateSource(new KeyStoreFileCertificateSource(
-                                KEYSTORE_TYPE,
-                                useEcc ? EC_KEYSTORE_RESOURCE : RSA_KEYSTORE_RESOURCE,
-                                KEYSTORE_PRIVATE_KEY_ALIAS,
-                                KEYSTORE_PASSWORD))
-                        .serverKeyGenerator(useEcc ? new ECKeyGenerator() : new RSAKeyGenerator())
-                        .trustSource(trustSource)
-                        .build();
+                mitmManager = createDefaultMitmManager(useEcc, trustSource, impersonatedCertificateStore, sslProvider);
             }
 
             bootstrap.withManInTheMiddle(mitmManager);
@@ -364,7 +451,11 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         }
 
         if (threadPoolConfiguration != null) {
-            bootstrap.withThreadPoolConfiguration(threadPoolConfiguration);
+            if (serverGroup != null) {
+                log.warn("Ignoring thread pool configuration, since this proxy shares the thread pools of its server group");
+            } else {
+                bootstrap.withThreadPoolConfiguration(threadPoolConfiguration);
+            }
         }
 
         proxyServer = bootstrap.start();
@@ -413,6 +504,10 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
                 } else {
                     log.warn("Attempted to stop proxy server, but proxy was never successfully started.");
                 }
+
+                closeHarContentStore();
+
+                shutdownResolver();
             } else {
                 throw new IllegalStateException("Proxy server is already stopped. Cannot re-stop.");
             }
@@ -444,9 +539,19 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         return serverBindAddress;
     }
 
+    /**
+     * Returns the current HAR. If a {@link HarContentProcessor} is set, first waits (up to the HAR content processing timeout) for
+     * any of the HAR's response content that is still being processed. The wait blocks the calling thread, so filters that run on
+     * a Netty event loop should not call this method (or {@link #newHar()} or {@link #endHar()}) while a processor is set, unless
+     * the timeout has been set to 0 using {@link #setHarContentProcessingTimeout(long, TimeUnit)}.
+     */
     @Override
     public Har getHar() {
-        return har;
+        Har currentHar = har;
+
+        awaitPendingHarContent(currentHar);
+
+        return currentHar;
     }
 
     @Override
@@ -461,16 +566,24 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
 
     @Override
     public Har newHar(String initialPageRef, String initialPageTitle) {
-        Har oldHar = getHar();
+        Har oldHar = this.har;
 
         addHarCaptureFilter();
 
         harPageCount.set(0);
 
-        this.har = new Har(new HarLog(HAR_CREATOR_VERSION));
+        if (compactHarCaptureEnabled) {
+            this.har = new Har(new CompactHarLog(HAR_CREATOR_VERSION));
+        } else {
+            this.har = new Har(new HarLog(HAR_CREATOR_VERSION));
+        }
 
         newPage(initialPageRef, initialPageTitle);
 
+        awaitPendingHarContent(oldHar);
+
+        notifyHarContentStoreHarEnded();
+
         return oldHar;
     }
 
@@ -572,13 +685,17 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
 
     @Override
     public Har endHar() {
-        Har oldHar = getHar();
+        Har oldHar = this.har;
 
         // end the page and populate timings
         endPage();
 
         this.har = null;
 
+        awaitPendingHarContent(oldHar);
+
+        notifyHarContentStoreHarEnded();
+
         return oldHar;
     }
 
@@ -673,6 +790,7 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
     @Override
     public void setConnectTimeout(int connectTimeout, TimeUnit timeUnit) {
         this.connectTimeoutMs = (int) TimeUnit.MILLISECONDS.convert(connectTimeout, timeUnit);
+        delegatingResolver.setConnectTimeoutMs(connectTimeoutMs);
 
         if (isStarted()) {
             proxyServer.setConnectTimeout((int) TimeUnit.MILLISECONDS.convert(connectTimeout, timeUnit));
@@ -709,6 +827,8 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
     @Override
     public void rewriteUrl(String pattern, String replace) {
         rewriteRules.add(new RewriteRule(pattern, replace));
+
+        updateRewriteRuleMatcher();
     }
 
     @Override
@@ -720,26 +840,36 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         }
 
         this.rewriteRules = new CopyOnWriteArrayList<>(newRules);
+
+        updateRewriteRuleMatcher();
     }
 
     @Override
     public void clearRewriteRules() {
         rewriteRules.clear();
+
+        updateRewriteRuleMatcher();
     }
 
     @Override
     public void blacklistRequests(String pattern, int responseCode) {
         blacklistEntries.add(new BlacklistEntry(pattern, responseCode));
+
+        updateBlacklistMatcher();
     }
 
     @Override
     public void blacklistRequests(String pattern, int responseCode, String method) {
         blacklistEntries.add(new BlacklistEntry(pattern, responseCode, method));
+
+        updateBlacklistMatcher();
     }
 
     @Override
     public void setBlacklist(Collection<BlacklistEntry> blacklist) {
         this.blacklistEntries = new CopyOnWriteArrayList<>(blacklist);
+
+        updateBlacklistMatcher();
     }
 
     @Override
@@ -770,6 +900,8 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
     @Override
     public void clearBlacklist() {
         blacklistEntries.clear();
+
+        updateBlacklistMatcher();
     }
 
     @Override
@@ -861,11 +993,81 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         return delegatingResolver.getResolver();
     }
 
+    /**
+     * Enables or disables racing connections to all of a host's resolved addresses. When enabled, races run in the background and the
+     * proxy connects to an address that recently accepted a connection, rather than always connecting to the first resolved address,
+     * so an unreachable address only causes the first connection to the host to time out. See {@link HappyEyeballsAddressSelector}
+     * for details. Disabled by default.
+     *
+     * @param parallelConnectEnabled true to race connections to resolved addresses
+     */
+    public void setParallelConnectEnabled(boolean parallelConnectEnabled) {
+        if (parallelConnectEnabled) {
+            if (delegatingResolver.getAddressSelector() == null) {
+                delegatingResolver.setAddressSelector(new HappyEyeballsAddressSelector());
+            }
+        } else {
+            delegatingResolver.setAddressSelector(null);
+        }
+    }
+
+    public boolean isParallelConnectEnabled() {
+        return delegatingResolver.getAddressSelector() != null;
+    }
+
     @Override
     public boolean waitForQuiescence(long quietPeriod, long timeout, TimeUnit timeUnit) {
         return activityMonitor.waitForQuiescence(quietPeriod, timeout, timeUnit);
     }
 
+    /**
+     * Waits for quiescence without blocking the calling thread, so that any number of callers can wait without occupying a thread
+     * each. See {@link #waitForQuiescence(long, long, TimeUnit)} for the definition of quiescence.
+     *
+     * @param quietPeriod amount of time after which network traffic will be considered "stopped"
+     * @param timeout maximum amount of time to wait for network traffic to stop
+     * @param timeUnit TimeUnit for the quietPeriod and timeout
+     * @return future that will be set to true if network traffic stopped, or false if the timeout elapsed first
+     */
+    public ListenableFuture<Boolean> waitForQuiescenceAsync(long quietPeriod, long timeout, TimeUnit timeUnit) {
+        return activityMonitor.waitForQuiescenceAsync(quietPeriod, timeout, timeUnit);
+    }
+
+    /**
+     * Returns the live traffic metrics for this proxy. Metrics are recorded for the lifetime of the proxy.
+     */
+    public ProxyMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns a point-in-time snapshot of this proxy's traffic metrics, active requests, and certificate and DNS cache statistics.
+     */
+    public ProxyMetricsSnapshot getMetricsSnapshot() {
+        ProxyMetricsSnapshot snapshot = new ProxyMetricsSnapshot(getPort(), metrics, createdTimeMs);
+
+        snapshot.setActiveRequests(activityMonitor.getActiveRequests());
+
+        MitmManager currentMitmManager = mitmManager;
+        if (currentMitmManager instanceof ImpersonatingMitmManager) {
+            CertificateGenerationStatistics certificateStatistics = ((ImpersonatingMitmManager) currentMitmManager).getStatistics();
+            snapshot.setSslContextCacheHits(certificateStatistics.getSslContextCacheHits());
+            snapshot.setSslContextCacheMisses(certificateStatistics.getSslContextCacheMisses());
+
+            TlsHandshakeStatistics handshakeStatistics = ((ImpersonatingMitmManager) currentMitmManager).getHandshakeStatistics();
+            snapshot.setClientFullTlsHandshakes(handshakeStatistics.getClientFullHandshakes());
+            snapshot.setClientResumedTlsHandshakes(handshakeStatistics.getClientResumedHandshakes());
+        }
+
+        AdvancedHostResolver resolver = delegatingResolver.getResolver();
+        if (resolver instanceof CachingHostResolver) {
+            snapshot.setDnsCacheHits(((CachingHostResolver) resolver).getHitCount());
+            snapshot.setDnsCacheMisses(((CachingHostResolver) resolver).getMissCount());
+        }
+
+        return snapshot;
+    }
+
     /**
      * Instructs this proxy to route traffic through an upstream proxy.
      *
@@ -917,6 +1119,133 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         this.threadPoolConfiguration = threadPoolConfiguration;
     }
 
+    /**
+     * Configures this proxy to share the Netty thread pools of the specified server group, rather than creating its own.
+     * See {@link ProxyServerGroup} for details.
+     *
+     * @param serverGroup server group whose thread pools this proxy will use
+     */
+    public void setServerGroup(ProxyServerGroup serverGroup) {
+        if (isStarted()) {
+            throw new IllegalStateException("Cannot configure server group after proxy has started.");
+        }
+
+        this.serverGroup = serverGroup;
+    }
+
+    /**
+     * Sets the store that will hold response bodies captured in the HAR, instead of holding them in the HAR as Strings. Response
+     * bodies are read from the store when the HAR is serialized. The proxy takes ownership of the store: it notifies the store
+     * whenever a HAR is ended or replaced, so the store can release content captured for HARs that are no longer in use, and
+     * closes the store when the proxy is stopped. Content captured for the HAR returned by {@link #newHar()} or {@link #endHar()}
+     * remains readable until the next call to either method. If the store is null (the default), response bodies are captured
+     * in the HAR as Strings.
+     *
+     * @param harContentStore store for captured response bodies, or null
+     */
+    public void setHarContentStore(HarContentStore harContentStore) {
+        if (isStarted()) {
+            throw new IllegalStateException("Cannot set HAR content store after proxy has started.");
+        }
+
+        this.harContentStore = harContentStore;
+    }
+
+    public HarContentStore getHarContentStore() {
+        return harContentStore;
+    }
+
+    /**
+     * Enables or disables compact HAR capture. When enabled, HARs created by subsequent calls to {@link #newHar()} use a
+     * {@link CompactHarLog}, which records only the URL, HTTP status, sizes, timings, and server IP address of each request and
+     * holds them in primitive arrays until the HAR is read. The HAR capture types are ignored for compact HARs. Disabled by default.
+     *
+     * @param compactHarCaptureEnabled true to capture compact HARs
+     */
+    public void setCompactHarCaptureEnabled(boolean compactHarCaptureEnabled) {
+        this.compactHarCaptureEnabled = compactHarCaptureEnabled;
+    }
+
+    public boolean isCompactHarCaptureEnabled() {
+        return compactHarCaptureEnabled;
+    }
+
+    /**
+     * Sets the processor that will decompress and decode captured response content after the response has been forwarded to
+     * the client, instead of on the thread that receives the response. While content is being processed, the corresponding
+     * {@link net.lightbody.bmp.core.har.HarEntry} is marked as pending, and {@link #getHar()}, {@link #newHar()}, and {@link #endHar()}
+     * block for up to the HAR content processing timeout waiting for the HAR's pending content before returning the HAR. The processor may be shared by several proxies. The proxy does not shut down the processor. If the processor is null (the default), content is processed
+     * when the response is received.
+     *
+     * @param harContentProcessor processor for captured response content, or null
+     */
+    public void setHarContentProcessor(HarContentProcessor harContentProcessor) {
+        this.harContentProcessor = harContentProcessor;
+    }
+
+    public HarContentProcessor getHarContentProcessor() {
+        return harContentProcessor;
+    }
+
+    /**
+     * Sets the maximum time {@link #getHar()}, {@link #newHar()}, and {@link #endHar()} will block the calling thread waiting for
+     * pending HAR content to be processed (default {@link #DEFAULT_HAR_CONTENT_PROCESSING_TIMEOUT_MS}). If the timeout elapses,
+     * the HAR is returned without the content of the pending entries. Set the timeout to 0 to never wait, for example when those
+     * methods are called from a filter running on a Netty event loop.
+     *
+     * @param timeout maximum time to wait
+     * @param timeUnit unit of the timeout
+     */
+    public void setHarContentProcessingTimeout(long timeout, TimeUnit timeUnit) {
+        this.harContentProcessingTimeoutMs = TimeUnit.MILLISECONDS.convert(timeout, timeUnit);
+    }
+
+    /**
+     * Notifies the HAR content store, if one is set, that the current HAR has ended, allowing it to release content captured for
+     * the HAR before it.
+     */
+    private void notifyHarContentStoreHarEnded() {
+        HarContentStore store = harContentStore;
+        if (store != null) {
+            store.harEnded();
+        }
+    }
+
+    private void closeHarContentStore() {
+        HarContentStore store = harContentStore;
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException | RuntimeException e) {
+                log.warn("Unable to close HAR content store", e);
+            }
+        }
+    }
+
+    /**
+     * Shuts down the host resolver if it is an {@link AsyncDnsResolver}, failing its lookups in progress.
+     */
+    private void shutdownResolver() {
+        AdvancedHostResolver resolver = delegatingResolver.getResolver();
+        if (resolver instanceof AsyncDnsResolver) {
+            ((AsyncDnsResolver) resolver).shutdown();
+        }
+    }
+
+    /**
+     * Waits for the pending content of the specified HAR to be processed, if a HAR content processor is set. Content captured
+     * for other HARs, including HARs of other proxies sharing the processor, is not waited for.
+     */
+    private void awaitPendingHarContent(Har harToAwait) {
+        HarContentProcessor processor = harContentProcessor;
+        if (processor != null && harToAwait != null) {
+            boolean contentProcessed = processor.awaitPendingContent(harToAwait, harContentProcessingTimeoutMs, TimeUnit.MILLISECONDS);
+            if (!contentProcessed) {
+                log.warn("Timed out waiting for pending HAR content to be processed. HAR entries with pending content will not contain response content.");
+            }
+        }
+    }
+
     @Override
     public void addFirstHttpFilterFactory(HttpFiltersSource filterFactory) {
         filterFactories.add(0, filterFactory);
@@ -937,6 +1266,18 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         addLastHttpFilterFactory(new ResponseFilterAdapter.FilterSource(filter));
     }
 
+    /**
+     * Adds a response filter that is only invoked for responses that match the specified matcher. Matching responses are
+     * aggregated (up to 2 MiB) so that their contents are available to the filter; responses that do not match are not buffered
+     * on behalf of this filter.
+     *
+     * @param filter the response filter to add
+     * @param matcher the responses to invoke the filter for
+     */
+    public void addResponseFilter(ResponseFilter filter, HttpMessageMatcher matcher) {
+        addLastHttpFilterFactory(new ResponseFilterAdapter.FilterSource(filter, matcher));
+    }
+
     /**
      * <b>Note:</b> The current implementation of this method forces a maximum request size of 2 MiB. To adjust the maximum request size, or
      * to disable aggregation (which disallows access to the {@link net.lightbody.bmp.util.HttpMessageContents}), you may add the filter source
@@ -947,6 +1288,60 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         addFirstHttpFilterFactory(new RequestFilterAdapter.FilterSource(filter));
     }
 
+    /**
+     * Adds a request filter that is only invoked for requests that match the specified matcher. <b>Note:</b> Requests are aggregated
+     * (up to 2 MiB) regardless of the matcher, since the proxy must decide whether to aggregate requests before they are received.
+     *
+     * @param filter the request filter to add
+     * @param matcher the requests to invoke the filter for
+     */
+    public void addRequestFilter(RequestFilter filter, HttpMessageMatcher matcher) {
+        addFirstHttpFilterFactory(new RequestFilterAdapter.FilterSource(filter, matcher));
+    }
+
+    /**
+     * Adds a filter that is invoked for every response header and body chunk as it is received from the server. Unlike
+     * {@link #addResponseFilter(ResponseFilter)}, this method does not cause responses to be aggregated, so responses are forwarded
+     * to the client as soon as they are received.
+     *
+     * @param filter the streaming response filter to add
+     */
+    public void addStreamingResponseFilter(StreamingResponseFilter filter) {
+        addLastHttpFilterFactory(new StreamingResponseFilterAdapter.FilterSource(filter));
+    }
+
+    /**
+     * Adds a filter that is invoked for the header and body chunks of responses that match the specified matcher, as they are
+     * received from the server. This method does not cause responses to be aggregated.
+     *
+     * @param filter the streaming response filter to add
+     * @param matcher the responses to invoke the filter for
+     */
+    public void addStreamingResponseFilter(StreamingResponseFilter filter, HttpMessageMatcher matcher) {
+        addLastHttpFilterFactory(new StreamingResponseFilterAdapter.FilterSource(filter, matcher));
+    }
+
+    /**
+     * Adds a filter that is invoked for every request header and body chunk as it is received from the client. Unlike
+     * {@link #addRequestFilter(RequestFilter)}, this method does not cause requests to be aggregated.
+     *
+     * @param filter the streaming request filter to add
+     */
+    public void addStreamingRequestFilter(StreamingRequestFilter filter) {
+        addFirstHttpFilterFactory(new StreamingRequestFilterAdapter.FilterSource(filter));
+    }
+
+    /**
+     * Adds a filter that is invoked for the header and body chunks of requests that match the specified matcher, as they are
+     * received from the client. This method does not cause requests to be aggregated.
+     *
+     * @param filter the streaming request filter to add
+     * @param matcher the requests to invoke the filter for
+     */
+    public void addStreamingRequestFilter(StreamingRequestFilter filter, HttpMessageMatcher matcher) {
+        addFirstHttpFilterFactory(new StreamingRequestFilterAdapter.FilterSource(filter, matcher));
+    }
+
     @Override
     public Map<String, String> getRewriteRules() {
         ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
@@ -966,6 +1361,26 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
                 rewriteRules.remove(rewriteRule);
             }
         }
+
+        updateRewriteRuleMatcher();
+    }
+
+    /**
+     * Rebuilds the blacklist matcher from the current blacklist entries.
+     */
+    private void updateBlacklistMatcher() {
+        synchronized (blacklistMatcherLock) {
+            blacklistMatcher = UrlPatternMatcher.forBlacklistEntries(blacklistEntries);
+        }
+    }
+
+    /**
+     * Rebuilds the rewrite rule matcher from the current rewrite rules.
+     */
+    private void updateRewriteRuleMatcher() {
+        synchronized (rewriteRuleMatcherLock) {
+            rewriteRuleMatcher = UrlPatternMatcher.forRewriteRules(rewriteRules);
+        }
     }
 
     public boolean isStopped() {
@@ -1031,9 +1446,79 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
     }
 
     /**
-     * Adds the basic browsermob-proxy filters, except for the relatively-expensive HAR capture filter.
+     * Sets the persistent store of impersonated certificates used by the default MITM manager, so certificates generated by
+     * earlier proxies can be reused. Has no effect if a MITM manager has been set using {@link #setMitmManager(MitmManager)}.
+     * Must be set before the proxy is started.
+     *
+     * @param impersonatedCertificateStore persistent certificate store, or null to cache impersonated certificates in memory only
+     */
+    public void setImpersonatedCertificateStore(ImpersonatedCertificateStore impersonatedCertificateStore) {
+        this.impersonatedCertificateStore = impersonatedCertificateStore;
+    }
+
+    public ImpersonatedCertificateStore getImpersonatedCertificateStore() {
+        return impersonatedCertificateStore;
+    }
+
+    /**
+     * Sets the SSL implementation the default MITM manager uses for client and upstream server connections. The OpenSSL
+     * providers require netty-tcnative on the classpath; if OpenSSL is not available, the JDK provider is used instead.
+     * Has no effect if a MITM manager has been set using {@link #setMitmManager(MitmManager)}. Must be set before the proxy
+     * is started.
+     *
+     * @param sslProvider SSL implementation to use, or null to use netty's default implementation
+     */
+    public void setSslProvider(SslProvider sslProvider) {
+        this.sslProvider = sslProvider;
+    }
+
+    public SslProvider getSslProvider() {
+        return sslProvider;
+    }
+
+    /**
+     * Creates the MITM manager used by default when MITM is enabled and no MITM manager has been set, which impersonates
+     * servers using the built-in BrowserMob Proxy CA.
+     *
+     * @param useEcc true to use EC keys, false to use RSA keys
+     * @param trustSource trust source used to validate upstream servers, or null to trust all servers
+     * @param impersonatedCertificateStore persistent store of impersonated certificates, or null
+     * @param sslProvider SSL implementation to use, or null to use netty's default implementation
+     */
+    static MitmManager createDefaultMitmManager(boolean useEcc, TrustSource trustSource, ImpersonatedCertificateStore impersonatedCertificateStore,
+                                                SslProvider sslProvider) {
+        return ImpersonatingMitmManager.builder()
+                .rootCertificateSource(new KeyStoreFileCertificateSource(
+                        KEYSTORE_TYPE,
+                        useEcc ? EC_KEYSTORE_RESOURCE : RSA_KEYSTORE_RESOURCE,
+                        KEYSTORE_PRIVATE_KEY_ALIAS,
+                        KEYSTORE_PASSWORD))
+                .serverKeyGenerator(useEcc ? new ECKeyGenerator() : new RSAKeyGenerator())
+                .trustSource(trustSource)
+                .impersonatedCertificateStore(impersonatedCertificateStore)
+                .sslProvider(sslProvider)
+                .build();
+    }
+
+    /**
+     * Adds the basic browsermob-proxy filters, except for the relatively-expensive HAR capture filter. Filter factories for
+     * optional features return a null filter when the feature is not in use at the time the request is received, so requests
+     * only pay for the filters that are actually enabled.
      */
     protected void addBrowserMobFilters() {
+        addHttpFilterFactory(new HttpFiltersSourceAdapter() {
+            @Override
+            public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+                // like LittleProxy's aggregator, the aggregation handler is only added to server connections made while some
+                // filter needs response contents
+                if (getMaximumResponseBufferSize() > 0) {
+                    return new ResponseAggregationFilter(originalRequest, ctx, filterFactories);
+                } else {
+                    return null;
+                }
+            }
+        });
+
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
@@ -1048,6 +1533,13 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
             }
         });
 
+        addHttpFilterFactory(new HttpFiltersSourceAdapter() {
+            @Override
+            public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+                return new MetricsFilter(originalRequest, ctx, metrics);
+            }
+        });
+
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
@@ -1058,7 +1550,26 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
-                return new BlacklistFilter(originalRequest, ctx, getBlacklist());
+                // start impersonating the host as soon as the CONNECT arrives, so the impersonated certificate is generated
+                // while the proxy connects to the upstream server. only takes effect when certificates are generated from the
+                // hostname alone (see ImpersonatingMitmManager.preImpersonate)
+                if (!mitmDisabled && ProxyUtils.isCONNECT(originalRequest) && mitmManager instanceof ImpersonatingMitmManager) {
+                    ((ImpersonatingMitmManager) mitmManager).preImpersonate(HttpUtil.getHostFromRequest(originalRequest));
+                }
+
+                return null;
+            }
+        });
+
+        addHttpFilterFactory(new HttpFiltersSourceAdapter() {
+            @Override
+            public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+                UrlPatternMatcher<BlacklistEntry> currentBlacklistMatcher = blacklistMatcher;
+                if (currentBlacklistMatcher.isEmpty()) {
+                    return null;
+                }
+
+                return new BlacklistFilter(originalRequest, ctx, currentBlacklistMatcher);
             }
         });
 
@@ -1066,13 +1577,21 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
                 Whitelist currentWhitelist = whitelist.get();
-                return new WhitelistFilter(originalRequest, ctx, isWhitelistEnabled(), currentWhitelist.getStatusCode(), currentWhitelist.getPatterns());
+                if (!currentWhitelist.isEnabled()) {
+                    return null;
+                }
+
+                return new WhitelistFilter(originalRequest, ctx, currentWhitelist);
             }
         });
 
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+                if (basicAuthCredentials.isEmpty()) {
+                    return null;
+                }
+
                 return new AutoBasicAuthFilter(originalRequest, ctx, basicAuthCredentials);
             }
         });
@@ -1080,7 +1599,12 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
-                return new RewriteUrlFilter(originalRequest, ctx, rewriteRules);
+                UrlPatternMatcher<RewriteRule> currentRewriteRuleMatcher = rewriteRuleMatcher;
+                if (currentRewriteRuleMatcher.isEmpty()) {
+                    return null;
+                }
+
+                return new RewriteUrlFilter(originalRequest, ctx, currentRewriteRuleMatcher);
             }
         });
 
@@ -1094,14 +1618,22 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest) {
+                if (additionalHeaders.isEmpty()) {
+                    return null;
+                }
+
                 return new AddHeadersFilter(originalRequest, additionalHeaders);
             }
         });
 
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
-            public HttpFilters filterRequest(HttpRequest originalRequest) {
-                return new LatencyFilter(originalRequest, latencyMs);
+            public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+                if (latencyMs <= 0) {
+                    return null;
+                }
+
+                return new LatencyFilter(originalRequest, ctx, latencyMs);
             }
         });
 
@@ -1149,9 +1681,13 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
             addHttpFilterFactory(new HttpFiltersSourceAdapter() {
                 @Override
                 public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
-                    Har har = getHar();
+                    Har har = BrowserMobProxyServer.this.har;
                     if (har != null && !ProxyUtils.isCONNECT(originalRequest)) {
-                        return new HarCaptureFilter(originalRequest, ctx, har, getCurrentHarPage() == null ? null : getCurrentHarPage().getId(), getHarCaptureTypes());
+                        if (har.getLog() instanceof CompactHarLog) {
+                            return new CompactHarCaptureFilter(originalRequest, ctx, (CompactHarLog) har.getLog(), getCurrentHarPage() == null ? null : getCurrentHarPage().getId());
+                        }
+
+                        return new HarCaptureFilter(originalRequest, ctx, har, getCurrentHarPage() == null ? null : getCurrentHarPage().getId(), getHarCaptureTypes(), harContentStore, harContentProcessor);
                     } else {
                         return null;
                     }
@@ -1162,7 +1698,7 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
             addHttpFilterFactory(new HttpFiltersSourceAdapter() {
                 @Override
                 public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
-                    Har har = getHar();
+                    Har har = BrowserMobProxyServer.this.har;
                     if (har != null && ProxyUtils.isCONNECT(originalRequest)) {
                         return new HttpConnectHarCaptureFilter(originalRequest, ctx, har, getCurrentHarPage() == null ? null : getCurrentHarPage().getId());
                     } else {
@@ -0,0 +1,195 @@
+package net.lightbody.bmp;
+
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.ssl.SslProvider;
+import net.lightbody.bmp.mitm.ImpersonatedCertificateStore;
+import net.lightbody.bmp.mitm.TrustSource;
+import org.littleshoot.proxy.HttpFilters;
+import org.littleshoot.proxy.HttpFiltersAdapter;
+import org.littleshoot.proxy.HttpFiltersSourceAdapter;
+import org.littleshoot.proxy.HttpProxyServer;
+import org.littleshoot.proxy.HttpProxyServerBootstrap;
+import org.littleshoot.proxy.MitmManager;
+import org.littleshoot.proxy.impl.DefaultHttpProxyServer;
+import org.littleshoot.proxy.impl.ThreadPoolConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A group of {@link BrowserMobProxyServer}s that share a single set of Netty event loop groups, and optionally a single
+ * {@link net.lightbody.bmp.mitm.manager.ImpersonatingMitmManager} (and its impersonated certificate cache), instead of each
+ * proxy creating its own. Filters, HAR capture, and all other proxy settings remain specific to each proxy. To add a proxy to
+ * a group, call {@link BrowserMobProxyServer#setServerGroup(ProxyServerGroup)} before starting the proxy.
+ * <p/>
+ * LittleProxy only allows servers to share thread pools when they are cloned from an existing server, so the group starts an
+ * internal server on an ephemeral loopback port that owns the thread pools. The internal server rejects all requests. The
+ * thread pools are released when {@link #shutdown()} has been called and every proxy in the group has been stopped.
+ */
+public class ProxyServerGroup {
+    private static final Logger log = LoggerFactory.getLogger(ProxyServerGroup.class);
+
+    private final ThreadPoolConfiguration threadPoolConfiguration;
+
+    /**
+     * Shared MITM managers, keyed by the key type and upstream trust settings used to create them.
+     */
+    private final ConcurrentMap<String, MitmManager> mitmManagers = new ConcurrentHashMap<>();
+
+    /**
+     * Persistent store of impersonated certificates used by the shared MITM managers. May be null.
+     */
+    private volatile ImpersonatedCertificateStore impersonatedCertificateStore;
+
+    /**
+     * SSL implementation used by the shared MITM managers. If null, netty's default implementation is used.
+     */
+    private volatile SslProvider sslProvider;
+
+    private final Object groupOwnerLock = new Object();
+
+    /**
+     * The internal server that owns the group's thread pools. Lazily started by {@link #bootstrap()}.
+     */
+    private HttpProxyServer groupOwner;
+
+    private boolean shutdown;
+
+    /**
+     * Creates a group whose worker thread pools are sized to the number of available processors.
+     */
+    public ProxyServerGroup() {
+        this(new ThreadPoolConfiguration()
+                .withAcceptorThreads(2)
+                .withClientToProxyWorkerThreads(Runtime.getRuntime().availableProcessors())
+                .withProxyToServerWorkerThreads(Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Creates a group whose thread pools will be sized according to the specified configuration.
+     *
+     * @param threadPoolConfiguration thread pool configuration shared by all proxies in the group
+     */
+    public ProxyServerGroup(ThreadPoolConfiguration threadPoolConfiguration) {
+        if (threadPoolConfiguration == null) {
+            throw new IllegalArgumentException("Thread pool configuration cannot be null");
+        }
+
+        this.threadPoolConfiguration = threadPoolConfiguration;
+    }
+
+    /**
+     * Returns a MITM manager that can be shared by all proxies in the group that use the same key type and upstream server
+     * trust settings.
+     *
+     * @param useEcc true to impersonate servers using EC keys, false to use RSA keys
+     * @param trustAllServers true to disable upstream server certificate validation
+     * @return shared MITM manager
+     */
+    public MitmManager getMitmManager(boolean useEcc, boolean trustAllServers) {
+        String key = (useEcc ? "ec" : "rsa") + (trustAllServers ? "-trustAll" : "-trustDefault");
+
+        MitmManager mitmManager = mitmManagers.get(key);
+        if (mitmManager == null) {
+            TrustSource trustSource = trustAllServers ? null : TrustSource.defaultTrustSource();
+
+            MitmManager newMitmManager = BrowserMobProxyServer.createDefaultMitmManager(useEcc, trustSource, impersonatedCertificateStore, sslProvider);
+
+            mitmManager = mitmManagers.putIfAbsent(key, newMitmManager);
+            if (mitmManager == null) {
+                mitmManager = newMitmManager;
+            }
+        }
+
+        return mitmManager;
+    }
+
+    /**
+     * Sets the persistent store of impersonated certificates used by the group's shared MITM managers. Only affects MITM
+     * managers created after the store is set.
+     *
+     * @param impersonatedCertificateStore persistent certificate store, or null to cache impersonated certificates in memory only
+     */
+    public void setImpersonatedCertificateStore(ImpersonatedCertificateStore impersonatedCertificateStore) {
+        this.impersonatedCertificateStore = impersonatedCertificateStore;
+    }
+
+    /**
+     * Sets the SSL implementation used by the group's shared MITM managers. OpenSSL providers fall back to the JDK provider
+     * if OpenSSL is not available. Only affects MITM managers created after the provider is set.
+     *
+     * @param sslProvider SSL implementation to use, or null to use netty's default implementation
+     */
+    public void setSslProvider(SslProvider sslProvider) {
+        this.sslProvider = sslProvider;
+    }
+
+    /**
+     * Shuts down the internal server that owns the group's thread pools. The thread pools will be released once every proxy
+     * in the group has been stopped. Proxies cannot be added to the group after it has been shut down.
+     */
+    public void shutdown() {
+        synchronized (groupOwnerLock) {
+            shutdown = true;
+
+            if (groupOwner != null) {
+                groupOwner.stop();
+                groupOwner = null;
+            }
+        }
+    }
+
+    /**
+     * Returns a LittleProxy bootstrap that will start a server using this group's thread pools. The bootstrap is cloned from
+     * the group's internal server, so callers must explicitly configure every setting that should differ from LittleProxy's
+     * defaults.
+     */
+    HttpProxyServerBootstrap bootstrap() {
+        synchronized (groupOwnerLock) {
+            if (shutdown) {
+                throw new IllegalStateException("Cannot add a proxy to a server group that has been shut down");
+            }
+
+            if (groupOwner == null) {
+                log.debug("Starting internal server for proxy server group");
+
+                groupOwner = DefaultHttpProxyServer.bootstrap()
+                        .withName("BrowserMobProxyGroup")
+                        .withAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                        .withThreadPoolConfiguration(threadPoolConfiguration)
+                        .withFiltersSource(new RejectAllFiltersSource())
+                        .start();
+            }
+
+            return groupOwner.clone();
+        }
+    }
+
+    /**
+     * Filters source for the internal server, which should never be used as a proxy.
+     */
+    private static class RejectAllFiltersSource extends HttpFiltersSourceAdapter {
+        @Override
+        public HttpFilters filterRequest(HttpRequest originalRequest) {
+            return new HttpFiltersAdapter(originalRequest) {
+                @Override
+                public HttpResponse clientToProxyRequest(HttpObject httpObject) {
+                    HttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.FORBIDDEN);
+                    HttpHeaders.setContentLength(response, 0L);
+
+                    return response;
+                }
+            };
+        }
+    }
+}
@@ -3,6 +3,8 @@ package net.lightbody.bmp.client;
 import com.google.common.collect.ImmutableList;
 import net.lightbody.bmp.BrowserMobProxy;
 import net.lightbody.bmp.proxy.dns.AdvancedHostResolver;
+import net.lightbody.bmp.proxy.dns.AsyncDnsResolver;
+import net.lightbody.bmp.proxy.dns.CachingHostResolver;
 import net.lightbody.bmp.proxy.dns.ChainedHostResolver;
 import net.lightbody.bmp.proxy.dns.DnsJavaResolver;
 import net.lightbody.bmp.proxy.dns.NativeCacheManipulatingResolver;
@@ -60,6 +62,40 @@ public class ClientUtil {
         return new ChainedHostResolver(ImmutableList.of(new DnsJavaResolver(), new NativeCacheManipulatingResolver()));
     }
 
+    /**
+     * Creates a {@link net.lightbody.bmp.proxy.dns.AsyncDnsResolver} instance that queries the system's name servers asynchronously,
+     * and can be used when calling {@link net.lightbody.bmp.BrowserMobProxy#setHostNameResolver(net.lightbody.bmp.proxy.dns.AdvancedHostResolver)}.
+     *
+     * @return a new AsyncDnsResolver
+     */
+    public static AdvancedHostResolver createAsyncDnsResolver() {
+        return new AsyncDnsResolver();
+    }
+
+    /**
+     * Creates a {@link net.lightbody.bmp.proxy.dns.CachingHostResolver} that caches lookups made by a {@link net.lightbody.bmp.proxy.dns.NativeResolver}
+     * in its own cache, rather than manipulating the JVM-wide DNS cache. Can be used when calling
+     * {@link net.lightbody.bmp.BrowserMobProxy#setHostNameResolver(net.lightbody.bmp.proxy.dns.AdvancedHostResolver)}.
+     * The JVM still caches native lookups according to the <code>networkaddress.cache.ttl</code> and
+     * <code>networkaddress.cache.negative.ttl</code> security properties; set them to 0 to bypass the JVM cache.
+     *
+     * @return a new CachingHostResolver that resolves addresses using a NativeResolver
+     */
+    public static AdvancedHostResolver createCachingNativeResolver() {
+        return createCachingResolver(new NativeResolver());
+    }
+
+    /**
+     * Creates a {@link net.lightbody.bmp.proxy.dns.CachingHostResolver} that caches lookups made by the specified resolver. Can be used when
+     * calling {@link net.lightbody.bmp.BrowserMobProxy#setHostNameResolver(net.lightbody.bmp.proxy.dns.AdvancedHostResolver)}.
+     *
+     * @param resolver resolver to cache lookups from
+     * @return a new CachingHostResolver
+     */
+    public static AdvancedHostResolver createCachingResolver(AdvancedHostResolver resolver) {
+        return new CachingHostResolver(resolver);
+    }
+
     /**
      * Creates a Selenium Proxy object from the BrowserMobProxy instance. The BrowserMobProxy must be started. Retrieves the address
      * of the Proxy using {@link #getConnectableAddress()}.
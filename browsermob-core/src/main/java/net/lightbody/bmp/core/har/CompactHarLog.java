@@ -0,0 +1,453 @@
+package net.lightbody.bmp.core.har;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.AbstractList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link HarLog} that records only the request line, response status line, sizes, timings, server IP address, and error of
+ * each entry. Rather than holding a graph of {@link HarEntry} objects, entries are stored in columns of primitive arrays:
+ * sizes, timings, and start times are stored as longs, and low-cardinality strings (page refs, methods, HTTP versions, status
+ * text, and MIME types) are interned, so that repeated values are only held once per log. URLs, server IP addresses, and errors
+ * are stored as-is, since interning mostly-unique values would only grow the interner. Each entry occupies roughly 140 bytes
+ * plus its URL, compared to several kilobytes for a fully-populated HarEntry.
+ * <p/>
+ * HarEntry objects are only created when entries are read: {@link #getEntries()} returns a read-only view that creates a new
+ * HarEntry from the stored columns each time an entry is retrieved. Modifying a retrieved HarEntry has no effect on the log.
+ * Entries are recorded by {@link net.lightbody.bmp.filters.CompactHarCaptureFilter}, which updates them in place using the index
+ * returned by {@link #startEntry(String, Date, String, String, String)}. Entries added using {@link #addEntry(HarEntry)} are
+ * copied into the log when they are added, so subsequent changes to the HarEntry are not recorded.
+ * <p/>
+ * Like the entries of a HarLog, entries are appended without locking, and each entry is visible to readers as soon as it has
+ * been started.
+ */
+public class CompactHarLog extends HarLog {
+    /**
+     * The timings recorded for each entry. See {@link HarTimings}.
+     */
+    public enum Timing {
+        BLOCKED,
+        DNS,
+        CONNECT,
+        SSL,
+        SEND,
+        WAIT,
+        RECEIVE
+    }
+
+    /**
+     * Stored in the started date/time column when an entry has no start time.
+     */
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    // long columns
+    private static final int STARTED_DATE_TIME = 0;
+    private static final int REQUEST_HEADERS_SIZE = 1;
+    private static final int REQUEST_BODY_SIZE = 2;
+    private static final int RESPONSE_HEADERS_SIZE = 3;
+    private static final int RESPONSE_BODY_SIZE = 4;
+    private static final int FIRST_TIMING = 5;
+    private static final int LONG_COLUMNS = FIRST_TIMING + Timing.values().length;
+
+    // int columns
+    private static final int STATUS = 0;
+    private static final int STARTED = 1;
+    private static final int INT_COLUMNS = 2;
+
+    // String columns
+    private static final int PAGE_REF = 0;
+    private static final int METHOD = 1;
+    private static final int URL = 2;
+    private static final int REQUEST_HTTP_VERSION = 3;
+    private static final int STATUS_TEXT = 4;
+    private static final int RESPONSE_HTTP_VERSION = 5;
+    private static final int MIME_TYPE = 6;
+    private static final int SERVER_IP_ADDRESS = 7;
+    private static final int ERROR = 8;
+    private static final int STRING_COLUMNS = 9;
+
+    /**
+     * Entries are stored in chunks whose sizes double as the log grows, addressed the same way as the chunks of a
+     * {@link ConcurrentAppendOnlyList}, so that small logs do not allocate large arrays and chunks are never copied.
+     */
+    private final AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(ConcurrentAppendOnlyList.MAX_CHUNKS);
+
+    /**
+     * The number of entries that have been claimed by recording threads. Entries below this index may not have been started yet.
+     */
+    private final AtomicInteger reserved = new AtomicInteger();
+
+    /**
+     * The number of entries that are visible to readers. All entries below this index have been started.
+     */
+    private final AtomicInteger published = new AtomicInteger();
+
+    /**
+     * Interner for low-cardinality columns only.
+     */
+    private final Interner<String> strings = Interners.newStrongInterner();
+
+    private final List<HarEntry> entries = new EntryList();
+
+    public CompactHarLog() {
+    }
+
+    public CompactHarLog(HarNameVersion creator) {
+        super(creator);
+    }
+
+    /**
+     * Starts a new entry and returns its index in the log, which is used to record the rest of the entry as the request
+     * progresses. The entry's response is empty and its timings are unset until they are recorded.
+     *
+     * @param pageRef ID of the page the entry belongs to
+     * @param startedDateTime time the request was received, or null if not known
+     * @param method request method
+     * @param url absolute URL of the request
+     * @param httpVersion HTTP version of the request
+     * @return index of the new entry
+     */
+    public int startEntry(String pageRef, Date startedDateTime, String method, String url, String httpVersion) {
+        int index = reserved.getAndIncrement();
+        if (index < 0 || index >= ConcurrentAppendOnlyList.MAX_SIZE) {
+            reserved.decrementAndGet();
+            throw new IllegalStateException("HAR log has reached its maximum number of entries");
+        }
+
+        Chunk chunk = chunkFor(index, true);
+        int offset = ConcurrentAppendOnlyList.offsetInChunk(index);
+
+        chunk.setLong(STARTED_DATE_TIME, offset, startedDateTime == null ? NO_DATE : startedDateTime.getTime());
+        chunk.setLong(RESPONSE_HEADERS_SIZE, offset, -1);
+        chunk.setLong(RESPONSE_BODY_SIZE, offset, -1);
+
+        // the optional timings are -1 until recorded; send, wait, and receive are required and default to 0
+        chunk.setLong(FIRST_TIMING + Timing.BLOCKED.ordinal(), offset, -1);
+        chunk.setLong(FIRST_TIMING + Timing.DNS.ordinal(), offset, -1);
+        chunk.setLong(FIRST_TIMING + Timing.CONNECT.ordinal(), offset, -1);
+        chunk.setLong(FIRST_TIMING + Timing.SSL.ordinal(), offset, -1);
+
+        chunk.setString(PAGE_REF, offset, intern(pageRef));
+        chunk.setString(METHOD, offset, intern(method));
+        chunk.setString(URL, offset, url);
+        chunk.setString(REQUEST_HTTP_VERSION, offset, intern(httpVersion));
+
+        chunk.setInt(STARTED, offset, 1);
+
+        publish();
+
+        return index;
+    }
+
+    public void setRequestHeadersSize(int index, long headersSize) {
+        setLong(index, REQUEST_HEADERS_SIZE, headersSize);
+    }
+
+    public void setRequestBodySize(int index, long bodySize) {
+        setLong(index, REQUEST_BODY_SIZE, bodySize);
+    }
+
+    /**
+     * Replaces the response of the specified entry. The response body size is reset to -1 and the response error is cleared.
+     *
+     * @param index index of the entry
+     * @param status HTTP status code
+     * @param statusText HTTP reason phrase
+     * @param httpVersion HTTP version of the response
+     * @param headersSize size of the response status line and headers, or -1 if not known
+     * @param mimeType value of the response's Content-Type header, or null if not present
+     */
+    public void setResponse(int index, int status, String statusText, String httpVersion, long headersSize, String mimeType) {
+        Chunk chunk = chunkForEntry(index);
+        int offset = ConcurrentAppendOnlyList.offsetInChunk(index);
+
+        chunk.setInt(STATUS, offset, status);
+        chunk.setString(STATUS_TEXT, offset, intern(statusText));
+        chunk.setString(RESPONSE_HTTP_VERSION, offset, intern(httpVersion));
+        chunk.setLong(RESPONSE_HEADERS_SIZE, offset, headersSize);
+        chunk.setString(MIME_TYPE, offset, intern(mimeType));
+        chunk.setLong(RESPONSE_BODY_SIZE, offset, -1);
+        chunk.setString(ERROR, offset, null);
+    }
+
+    public void setResponseBodySize(int index, long bodySize) {
+        setLong(index, RESPONSE_BODY_SIZE, bodySize);
+    }
+
+    /**
+     * Sets the custom error field of the specified entry's response. See {@link HarResponse#getError()}.
+     */
+    public void setResponseError(int index, String error) {
+        setString(index, ERROR, error);
+    }
+
+    /**
+     * Records a timing for the specified entry. A value of -1 indicates the timing does not apply to the entry.
+     */
+    public void setTiming(int index, Timing timing, long value, TimeUnit timeUnit) {
+        setLong(index, FIRST_TIMING + timing.ordinal(), value == -1 ? -1 : TimeUnit.NANOSECONDS.convert(value, timeUnit));
+    }
+
+    public void setServerIPAddress(int index, String serverIPAddress) {
+        setString(index, SERVER_IP_ADDRESS, serverIPAddress);
+    }
+
+    /**
+     * Copies the request line, response status line, sizes, timings, server IP address, and error of the specified entry into
+     * this log. All other information in the entry is discarded.
+     */
+    @Override
+    public void addEntry(HarEntry entry) {
+        HarRequest request = entry.getRequest();
+
+        int index;
+        if (request != null) {
+            index = startEntry(entry.getPageref(), entry.getStartedDateTime(), request.getMethod(), request.getUrl(), request.getHttpVersion());
+
+            setRequestHeadersSize(index, request.getHeadersSize());
+            setRequestBodySize(index, request.getBodySize());
+        } else {
+            index = startEntry(entry.getPageref(), entry.getStartedDateTime(), null, null, null);
+        }
+
+        HarResponse response = entry.getResponse();
+        if (response != null) {
+            setResponse(index, response.getStatus(), response.getStatusText(), response.getHttpVersion(), response.getHeadersSize(),
+                    response.getContent() == null ? null : response.getContent().getMimeType());
+            setResponseBodySize(index, response.getBodySize());
+            setResponseError(index, response.getError());
+        }
+
+        HarTimings timings = entry.getTimings();
+        if (timings != null) {
+            setTiming(index, Timing.BLOCKED, timings.getBlocked(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            setTiming(index, Timing.DNS, timings.getDns(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            setTiming(index, Timing.CONNECT, timings.getConnect(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            setTiming(index, Timing.SSL, timings.getSsl(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            setTiming(index, Timing.SEND, timings.getSend(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            setTiming(index, Timing.WAIT, timings.getWait(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            setTiming(index, Timing.RECEIVE, timings.getReceive(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        }
+
+        setServerIPAddress(index, entry.getServerIPAddress());
+    }
+
+    /**
+     * Returns a read-only view of the entries in this log. A new {@link HarEntry} is created from the stored entry each time an
+     * entry is retrieved from the list, so the HarEntry reflects the entry at the time it was retrieved. Like the entries of a
+     * HarLog, iterators are snapshots that only return entries that were started when the iterator was created.
+     */
+    @Override
+    public List<HarEntry> getEntries() {
+        return entries;
+    }
+
+    private String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        return strings.intern(value);
+    }
+
+    private void setLong(int index, int column, long value) {
+        chunkForEntry(index).setLong(column, ConcurrentAppendOnlyList.offsetInChunk(index), value);
+    }
+
+    private void setString(int index, int column, String value) {
+        chunkForEntry(index).setString(column, ConcurrentAppendOnlyList.offsetInChunk(index), value);
+    }
+
+    /**
+     * Creates a new HarEntry from the stored entry at the specified index.
+     */
+    private HarEntry createHarEntry(int index) {
+        Chunk chunk = chunkFor(index, false);
+        int offset = ConcurrentAppendOnlyList.offsetInChunk(index);
+
+        HarEntry entry = new HarEntry(chunk.getString(PAGE_REF, offset));
+
+        long startedDateTime = chunk.getLong(STARTED_DATE_TIME, offset);
+        if (startedDateTime != NO_DATE) {
+            entry.setStartedDateTime(new Date(startedDateTime));
+        }
+
+        HarRequest request = new HarRequest(chunk.getString(METHOD, offset), chunk.getString(URL, offset), chunk.getString(REQUEST_HTTP_VERSION, offset));
+        request.setHeadersSize(chunk.getLong(REQUEST_HEADERS_SIZE, offset));
+        request.setBodySize(chunk.getLong(REQUEST_BODY_SIZE, offset));
+        entry.setRequest(request);
+
+        HarResponse response = new HarResponse(chunk.getInt(STATUS, offset), chunk.getString(STATUS_TEXT, offset), chunk.getString(RESPONSE_HTTP_VERSION, offset));
+        response.setHeadersSize(chunk.getLong(RESPONSE_HEADERS_SIZE, offset));
+        response.setBodySize(chunk.getLong(RESPONSE_BODY_SIZE, offset));
+        response.setError(chunk.getString(ERROR, offset));
+
+        // don't set the mimeType to null, since mimeType is a required field
+        String mimeType = chunk.getString(MIME_TYPE, offset);
+        if (mimeType != null) {
+            response.getContent().setMimeType(mimeType);
+        }
+
+        entry.setResponse(response);
+
+        HarTimings timings = entry.getTimings();
+        timings.setBlocked(chunk.getLong(FIRST_TIMING + Timing.BLOCKED.ordinal(), offset), TimeUnit.NANOSECONDS);
+        timings.setDns(chunk.getLong(FIRST_TIMING + Timing.DNS.ordinal(), offset), TimeUnit.NANOSECONDS);
+        timings.setConnect(chunk.getLong(FIRST_TIMING + Timing.CONNECT.ordinal(), offset), TimeUnit.NANOSECONDS);
+        timings.setSsl(chunk.getLong(FIRST_TIMING + Timing.SSL.ordinal(), offset), TimeUnit.NANOSECONDS);
+        timings.setSend(chunk.getLong(FIRST_TIMING + Timing.SEND.ordinal(), offset), TimeUnit.NANOSECONDS);
+        timings.setWait(chunk.getLong(FIRST_TIMING + Timing.WAIT.ordinal(), offset), TimeUnit.NANOSECONDS);
+        timings.setReceive(chunk.getLong(FIRST_TIMING + Timing.RECEIVE.ordinal(), offset), TimeUnit.NANOSECONDS);
+
+        entry.setServerIPAddress(chunk.getString(SERVER_IP_ADDRESS, offset));
+
+        return entry;
+    }
+
+    /**
+     * Advances the published size past every contiguous started entry. See {@link ConcurrentAppendOnlyList}.
+     */
+    private void publish() {
+        while (true) {
+            int current = published.get();
+            if (current >= reserved.get()) {
+                return;
+            }
+
+            Chunk chunk = chunkFor(current, false);
+            if (chunk == null || chunk.getInt(STARTED, ConcurrentAppendOnlyList.offsetInChunk(current)) == 0) {
+                return;
+            }
+
+            published.compareAndSet(current, current + 1);
+        }
+    }
+
+    /**
+     * Returns the chunk containing an entry that has been started, or throws an exception if the index is not a valid entry index.
+     */
+    private Chunk chunkForEntry(int index) {
+        if (index < 0 || index >= reserved.get()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + reserved.get());
+        }
+
+        return chunkFor(index, false);
+    }
+
+    /**
+     * Returns the chunk containing the specified index, optionally allocating it if it does not exist yet.
+     */
+    private Chunk chunkFor(int index, boolean allocate) {
+        int chunkIndex = ConcurrentAppendOnlyList.chunkIndex(index);
+
+        Chunk chunk = chunks.get(chunkIndex);
+        if (chunk == null && allocate) {
+            chunks.compareAndSet(chunkIndex, null, new Chunk(ConcurrentAppendOnlyList.FIRST_CHUNK_SIZE << chunkIndex));
+
+            chunk = chunks.get(chunkIndex);
+        }
+
+        return chunk;
+    }
+
+    /**
+     * A block of entries. Each column is stored contiguously within the chunk's array for its type.
+     */
+    private static class Chunk {
+        private final int size;
+
+        private final AtomicLongArray longs;
+        private final AtomicIntegerArray ints;
+        private final AtomicReferenceArray<String> strings;
+
+        Chunk(int size) {
+            this.size = size;
+
+            this.longs = new AtomicLongArray(LONG_COLUMNS * size);
+            this.ints = new AtomicIntegerArray(INT_COLUMNS * size);
+            this.strings = new AtomicReferenceArray<>(STRING_COLUMNS * size);
+        }
+
+        long getLong(int column, int offset) {
+            return longs.get(column * size + offset);
+        }
+
+        void setLong(int column, int offset, long value) {
+            longs.set(column * size + offset, value);
+        }
+
+        int getInt(int column, int offset) {
+            return ints.get(column * size + offset);
+        }
+
+        void setInt(int column, int offset, int value) {
+            ints.set(column * size + offset, value);
+        }
+
+        String getString(int column, int offset) {
+            return strings.get(column * size + offset);
+        }
+
+        void setString(int column, int offset, String value) {
+            strings.set(column * size + offset, value);
+        }
+    }
+
+    /**
+     * Read-only view of the entries in this log, creating a HarEntry for each entry as it is retrieved.
+     */
+    private class EntryList extends AbstractList<HarEntry> implements RandomAccess {
+        @Override
+        public HarEntry get(int index) {
+            if (index < 0 || index >= published.get()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + published.get());
+            }
+
+            return createHarEntry(index);
+        }
+
+        @Override
+        public int size() {
+            return published.get();
+        }
+
+        @Override
+        public Iterator<HarEntry> iterator() {
+            final int snapshotSize = published.get();
+
+            return new Iterator<HarEntry>() {
+                private int nextIndex;
+
+                @Override
+                public boolean hasNext() {
+                    return nextIndex < snapshotSize;
+                }
+
+                @Override
+                public HarEntry next() {
+                    if (nextIndex >= snapshotSize) {
+                        throw new NoSuchElementException();
+                    }
+
+                    return createHarEntry(nextIndex++);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("Entries cannot be removed from a HAR log");
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package net.lightbody.bmp.core.har;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A thread-safe list used by the HAR model for pages, entries, headers, cookies, and query parameters, optimized for
+ * appending. Unlike {@link java.util.concurrent.CopyOnWriteArrayList}, appending an element is lock-free and never copies
+ * existing elements: elements are stored in chunks whose sizes double as the list grows, and chunks are never moved once
+ * allocated. Chunks are allocated as they are needed, and the table that tracks chunks beyond the first is only allocated when
+ * the list outgrows the first chunk, so the short header, cookie, and query parameter lists in a HAR stay small.
+ * <p/>
+ * All other mutating operations (set, remove, clear, insertion, and {@link Iterator#remove()}) are supported by falling back
+ * to copy-on-write: the mutation seals the current storage, waits for in-progress appends to complete, and replaces the
+ * storage with a modified copy. Mutations are serialized with each other, and appends that begin while a mutation is in
+ * progress block until it finishes. These operations are O(n), so they are intended for occasional use, e.g. removing entries
+ * from a captured HAR.
+ * <p/>
+ * Null elements are not permitted. Iterators are snapshots: an iterator returns exactly the elements that were in the
+ * list when it was created, regardless of any elements appended or removed afterward, and never throws
+ * {@link java.util.ConcurrentModificationException}. Removing an element using an iterator removes that element (compared
+ * by identity) from the list's current contents.
+ */
+class ConcurrentAppendOnlyList<E> extends AbstractList<E> implements RandomAccess {
+    /**
+     * Number of bits in the size of the first chunk. The first chunk holds 2^FIRST_CHUNK_BITS elements, and each subsequent
+     * chunk is twice the size of the previous one.
+     */
+    static final int FIRST_CHUNK_BITS = 3;
+
+    static final int FIRST_CHUNK_SIZE = 1 << FIRST_CHUNK_BITS;
+
+    /**
+     * Number of chunks required to address Integer.MAX_VALUE - FIRST_CHUNK_SIZE elements.
+     */
+    static final int MAX_CHUNKS = Integer.SIZE - 1 - FIRST_CHUNK_BITS;
+
+    static final int MAX_SIZE = Integer.MAX_VALUE - FIRST_CHUNK_SIZE;
+
+    /**
+     * The current storage. Replaced (never modified) by mutations other than appends, while holding the list's monitor.
+     */
+    private volatile Storage<E> storage = new Storage<>();
+
+    @Override
+    public boolean add(E element) {
+        if (element == null) {
+            throw new NullPointerException("Null elements are not permitted");
+        }
+
+        while (!storage.append(element)) {
+            // the storage was sealed by a concurrent mutation, which holds the list's monitor until it has installed the
+            // replacement storage, so wait for the monitor rather than spinning
+            synchronized (this) {
+                // nothing to do
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public E get(int index) {
+        return storage.get(index);
+    }
+
+    @Override
+    public int size() {
+        return storage.size();
+    }
+
+    @Override
+    public E set(int index, E element) {
+        if (element == null) {
+            throw new NullPointerException("Null elements are not permitted");
+        }
+
+        synchronized (this) {
+            List<E> elements = sealStorage();
+            try {
+                return elements.set(index, element);
+            } finally {
+                replaceStorage(elements);
+            }
+        }
+    }
+
+    @Override
+    public void add(int index, E element) {
+        if (element == null) {
+            throw new NullPointerException("Null elements are not permitted");
+        }
+
+        synchronized (this) {
+            List<E> elements = sealStorage();
+            try {
+                elements.add(index, element);
+            } finally {
+                replaceStorage(elements);
+            }
+        }
+    }
+
+    @Override
+    public E remove(int index) {
+        synchronized (this) {
+            List<E> elements = sealStorage();
+            try {
+                return elements.remove(index);
+            } finally {
+                replaceStorage(elements);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (this) {
+            sealStorage();
+            replaceStorage(Collections.<E>emptyList());
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        final Storage<E> snapshot = storage;
+        final int snapshotSize = snapshot.size();
+
+        return new Iterator<E>() {
+            private int nextIndex;
+            private E lastReturned;
+
+            @Override
+            public boolean hasNext() {
+                return nextIndex < snapshotSize;
+            }
+
+            @Override
+            public E next() {
+                if (nextIndex >= snapshotSize) {
+                    throw new NoSuchElementException();
+                }
+
+                lastReturned = snapshot.elementAt(nextIndex++);
+
+                return lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+
+                removeIdentical(lastReturned);
+
+                lastReturned = null;
+            }
+        };
+    }
+
+    /**
+     * Removes the first occurrence of the specified element, compared by identity, from the current contents of the list.
+     */
+    private void removeIdentical(E element) {
+        synchronized (this) {
+            List<E> elements = sealStorage();
+            try {
+                for (Iterator<E> iterator = elements.iterator(); iterator.hasNext(); ) {
+                    if (iterator.next() == element) {
+                        iterator.remove();
+                        break;
+                    }
+                }
+            } finally {
+                replaceStorage(elements);
+            }
+        }
+    }
+
+    /**
+     * Seals the current storage so that no further elements can be appended to it, and returns a mutable copy of its elements.
+     * Must be called while holding the list's monitor, and must be followed by a call to {@link #replaceStorage(List)}.
+     */
+    private List<E> sealStorage() {
+        Storage<E> current = storage;
+
+        int size = current.seal();
+
+        List<E> elements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            elements.add(current.elementAt(i));
+        }
+
+        return elements;
+    }
+
+    /**
+     * Installs new storage containing the specified elements, allowing appends to resume.
+     */
+    private void replaceStorage(List<E> elements) {
+        Storage<E> replacement = new Storage<>();
+        for (E element : elements) {
+            replacement.append(element);
+        }
+
+        storage = replacement;
+    }
+
+    /**
+     * Chunked storage for the list's elements. Elements can only be appended to the storage until it is sealed.
+     */
+    private static class Storage<E> {
+        /**
+         * Set in {@link #reserved} when the storage has been sealed.
+         */
+        private static final int SEALED = Integer.MIN_VALUE;
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Storage, AtomicReferenceArray> FIRST_CHUNK =
+                AtomicReferenceFieldUpdater.newUpdater(Storage.class, AtomicReferenceArray.class, "firstChunk");
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Storage, AtomicReferenceArray> LATER_CHUNKS =
+                AtomicReferenceFieldUpdater.newUpdater(Storage.class, AtomicReferenceArray.class, "laterChunks");
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Storage> RESERVED = AtomicIntegerFieldUpdater.newUpdater(Storage.class, "reserved");
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Storage> PUBLISHED = AtomicIntegerFieldUpdater.newUpdater(Storage.class, "published");
+
+        /**
+         * The first chunk, or null if no element has been appended yet.
+         */
+        private volatile AtomicReferenceArray<E> firstChunk;
+
+        /**
+         * Table of the chunks after the first, indexed by chunk index, or null if the list has not outgrown the first chunk.
+         */
+        private volatile AtomicReferenceArray<AtomicReferenceArray<E>> laterChunks;
+
+        /**
+         * The number of slots that have been claimed by appending threads, combined with the {@link #SEALED} bit. Slots below
+         * this index may not have been written yet.
+         */
+        private volatile int reserved;
+
+        /**
+         * The number of slots that are visible to readers. All slots below this index have been written.
+         */
+        private volatile int published;
+
+        /**
+         * Appends the element, unless the storage has been sealed.
+         *
+         * @return true if the element was appended, false if the storage has been sealed
+         */
+        boolean append(E element) {
+            int index;
+            do {
+                index = reserved;
+                if ((index & SEALED) != 0) {
+                    return false;
+                }
+
+                if (index >= MAX_SIZE) {
+                    throw new IllegalStateException("List has reached its maximum size");
+                }
+            } while (!RESERVED.compareAndSet(this, index, index + 1));
+
+            chunkFor(index, true).set(offsetInChunk(index), element);
+
+            publish();
+
+            return true;
+        }
+
+        E get(int index) {
+            int size = published;
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+
+            return elementAt(index);
+        }
+
+        int size() {
+            return published;
+        }
+
+        /**
+         * Prevents further appends and waits for appends that have already reserved a slot to publish their elements.
+         *
+         * @return the final size of the storage
+         */
+        int seal() {
+            int current;
+            do {
+                current = reserved;
+            } while (!RESERVED.compareAndSet(this, current, current | SEALED));
+
+            int size = current & ~SEALED;
+            while (published < size) {
+                // an appending thread has reserved a slot but has not written its element yet, which takes only a few instructions
+                Thread.yield();
+            }
+
+            return size;
+        }
+
+        /**
+         * Advances the published size past every contiguous written slot. An appending thread whose slot follows a slot that
+         * has been reserved but not yet written leaves its element unpublished; the thread writing the earlier slot will
+         * publish both when it calls this method.
+         */
+        private void publish() {
+            while (true) {
+                int current = published;
+                if (current >= (reserved & ~SEALED)) {
+                    return;
+                }
+
+                AtomicReferenceArray<E> chunk = chunkFor(current, false);
+                if (chunk == null || chunk.get(offsetInChunk(current)) == null) {
+                    return;
+                }
+
+                PUBLISHED.compareAndSet(this, current, current + 1);
+            }
+        }
+
+        E elementAt(int index) {
+            return chunkFor(index, false).get(offsetInChunk(index));
+        }
+
+        /**
+         * Returns the chunk containing the specified index, optionally allocating it (and the table of later chunks) if it does
+         * not exist yet.
+         */
+        @SuppressWarnings("unchecked")
+        private AtomicReferenceArray<E> chunkFor(int index, boolean allocate) {
+            int chunkIndex = chunkIndex(index);
+
+            if (chunkIndex == 0) {
+                AtomicReferenceArray<E> chunk = firstChunk;
+                if (chunk == null && allocate) {
+                    FIRST_CHUNK.compareAndSet(this, null, new AtomicReferenceArray<E>(FIRST_CHUNK_SIZE));
+
+                    chunk = firstChunk;
+                }
+
+                return chunk;
+            }
+
+            AtomicReferenceArray<AtomicReferenceArray<E>> chunks = laterChunks;
+            if (chunks == null) {
+                if (!allocate) {
+                    return null;
+                }
+
+                LATER_CHUNKS.compareAndSet(this, null, new AtomicReferenceArray<AtomicReferenceArray<E>>(MAX_CHUNKS));
+
+                chunks = laterChunks;
+            }
+
+            AtomicReferenceArray<E> chunk = chunks.get(chunkIndex);
+            if (chunk == null && allocate) {
+                chunks.compareAndSet(chunkIndex, null, new AtomicReferenceArray<E>(FIRST_CHUNK_SIZE << chunkIndex));
+
+                chunk = chunks.get(chunkIndex);
+            }
+
+            return chunk;
+        }
+    }
+
+    /**
+     * Returns the index of the chunk containing the element at the specified index. Also used by {@link CompactHarLog}, which
+     * lays out its rows in the same chunks.
+     */
+    static int chunkIndex(int index) {
+        int position = index + FIRST_CHUNK_SIZE;
+
+        return (Integer.SIZE - 1 - Integer.numberOfLeadingZeros(position)) - FIRST_CHUNK_BITS;
+    }
+
+    static int offsetInChunk(int index) {
+        int position = index + FIRST_CHUNK_SIZE;
+
+        return position ^ Integer.highestOneBit(position);
+    }
+}
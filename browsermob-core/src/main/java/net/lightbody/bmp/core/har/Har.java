@@ -1,16 +1,28 @@
 package net.lightbody.bmp.core.har;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
 
 public class Har {
 
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
+    /**
+     * Serializes the properties of a {@link HarLog} other than its pages and entries, which are written one at a time.
+     */
+    private static final ObjectMapper LOG_PROPERTIES_MAPPER = new ObjectMapper().addMixIn(HarLog.class, HarLogPropertiesMixIn.class);
+
     private volatile HarLog log;
 
     public Har() {
@@ -29,14 +41,94 @@ public class Har {
     }
 
     public void writeTo(Writer writer) throws IOException {
-        OBJECT_MAPPER.writeValue(writer, this);
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(writer)) {
+            writeTo(generator);
+        }
     }
 
     public void writeTo(OutputStream os) throws IOException {
-        OBJECT_MAPPER.writeValue(os, this);
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(os)) {
+            writeTo(generator);
+        }
     }
 
     public void writeTo(File file) throws IOException {
-        OBJECT_MAPPER.writeValue(file, this);
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(file, JsonEncoding.UTF8)) {
+            writeTo(generator);
+        }
+    }
+
+    /**
+     * Writes this HAR to the specified generator. The log's pages and entries are written to the generator one element at a
+     * time, so the generator's buffer is written to the underlying stream as it fills, and a slow reader blocks the writer
+     * rather than causing the serialized HAR to accumulate in memory. The log's other properties are serialized according to
+     * the HAR model's Jackson annotations, so properties added to the log (including by subclasses) are written as well. Entries
+     * and pages are serialized by the generator's {@link com.fasterxml.jackson.core.ObjectCodec}, so the generator must have a
+     * codec (e.g. a generator created by an ObjectMapper's factory). The generator will be flushed but not closed.
+     *
+     * @param generator generator to write the HAR to
+     * @throws IOException if the HAR cannot be written to the generator
+     */
+    public void writeTo(JsonGenerator generator) throws IOException {
+        // capture the log once, since it may be replaced while this HAR is being written
+        HarLog harLog = log;
+
+        generator.writeStartObject();
+
+        if (harLog == null) {
+            generator.writeNullField("log");
+        } else {
+            generator.writeFieldName("log");
+            writeLog(harLog, generator);
+        }
+
+        generator.writeEndObject();
+
+        generator.flush();
+    }
+
+    /**
+     * Writes the log's properties other than pages and entries, followed by its pages and entries, one at a time. The comment is
+     * written last, matching the order of the HAR model.
+     */
+    private static void writeLog(HarLog harLog, JsonGenerator generator) throws IOException {
+        // the log's properties, excluding the pages and entries, are small enough to serialize to a tree first
+        ObjectNode logProperties = LOG_PROPERTIES_MAPPER.valueToTree(harLog);
+        JsonNode comment = logProperties.remove("comment");
+
+        generator.writeStartObject();
+
+        Iterator<Map.Entry<String, JsonNode>> properties = logProperties.fields();
+        while (properties.hasNext()) {
+            Map.Entry<String, JsonNode> property = properties.next();
+            generator.writeFieldName(property.getKey());
+            generator.writeTree(property.getValue());
+        }
+
+        generator.writeArrayFieldStart("pages");
+        for (HarPage page : harLog.getPages()) {
+            generator.writeObject(page);
+        }
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("entries");
+        for (HarEntry entry : harLog.getEntries()) {
+            generator.writeObject(entry);
+        }
+        generator.writeEndArray();
+
+        if (comment != null) {
+            generator.writeFieldName("comment");
+            generator.writeTree(comment);
+        }
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * Excludes the pages and entries when serializing the log's other properties.
+     */
+    @JsonIgnoreProperties({"pages", "entries"})
+    private abstract static class HarLogPropertiesMixIn {
     }
 }
@@ -1,6 +1,10 @@
 package net.lightbody.bmp.core.har;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.google.common.io.BaseEncoding;
+import net.lightbody.bmp.core.har.store.StoredContent;
+
+import java.nio.charset.Charset;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class HarContent {
@@ -12,6 +16,15 @@ public class HarContent {
     private volatile String mimeType = "";
 
     private volatile String text;
+
+    /**
+     * Content held in a {@link net.lightbody.bmp.core.har.store.HarContentStore} instead of in the text field. The text is
+     * materialized from the stored content each time it is requested, using the stored charset, or base64 encoding if the
+     * charset is null.
+     */
+    private volatile StoredContent storedContent;
+    private volatile Charset storedContentCharset;
+
     private volatile String encoding;
     private volatile String comment = "";
 
@@ -39,14 +52,49 @@ public class HarContent {
         this.mimeType = mimeType;
     }
 
+    /**
+     * Returns the text of the content. If the content is held in a content store, the text is decoded from the stored content
+     * each time this method is called, and is not retained.
+     */
     public String getText() {
-        return text;
+        String currentText = text;
+        if (currentText != null) {
+            return currentText;
+        }
+
+        StoredContent currentStoredContent = storedContent;
+        if (currentStoredContent == null) {
+            return null;
+        }
+
+        byte[] bytes = currentStoredContent.getBytes();
+
+        Charset charset = storedContentCharset;
+        if (charset == null) {
+            return BaseEncoding.base64().encode(bytes);
+        } else {
+            return new String(bytes, charset);
+        }
     }
 
     public void setText(String text) {
+        this.storedContent = null;
         this.text = text;
     }
 
+    /**
+     * Sets the text of this content to the content held in a content store. The text will be decoded using the specified charset,
+     * or base64 encoded if the charset is null, when it is requested.
+     *
+     * @param storedContent content held in a content store
+     * @param charset charset of the content, or null to base64 encode the content
+     */
+    public void setText(StoredContent storedContent, Charset charset) {
+        this.text = null;
+        this.storedContentCharset = charset;
+        this.storedContent = storedContent;
+    }
+
     public String getEncoding() {
         return encoding;
     }
@@ -2,6 +2,7 @@ package net.lightbody.bmp.core.har;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.util.Date;
@@ -20,6 +21,11 @@ public class HarEntry {
     private volatile String connection;
     private volatile String comment = "";
 
+    /**
+     * True while the content of this entry is being processed asynchronously. Not part of the HAR.
+     */
+    private volatile boolean contentPending;
+
     public HarEntry() {
     }
 
@@ -157,4 +163,17 @@ public class HarEntry {
     public void setConnection(String connection) {
         this.connection = connection;
     }
+
+    /**
+     * @return true if the request or response content of this entry has been captured but is still being processed, in which case
+     * the content has not yet been populated in the entry
+     */
+    @JsonIgnore
+    public boolean isContentPending() {
+        return contentPending;
+    }
+
+    public void setContentPending(boolean contentPending) {
+        this.contentPending = contentPending;
+    }
 }
@@ -3,15 +3,14 @@ package net.lightbody.bmp.core.har;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class HarLog {
     private final String version = "1.2";
     private volatile HarNameVersion creator;
     private volatile HarNameVersion browser;
-    private final List<HarPage> pages = new CopyOnWriteArrayList<HarPage>();
-    private final List<HarEntry> entries = new CopyOnWriteArrayList<HarEntry>();
+    private final List<HarPage> pages = new ConcurrentAppendOnlyList<HarPage>();
+    private final List<HarEntry> entries = new ConcurrentAppendOnlyList<HarEntry>();
     private volatile String comment = "";
 
     public HarLog() {
@@ -3,16 +3,15 @@ package net.lightbody.bmp.core.har;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class HarRequest {
     private volatile String method;
     private volatile String url;
     private volatile String httpVersion;
-    private final List<HarCookie> cookies = new CopyOnWriteArrayList<HarCookie>();
-    private final List<HarNameValuePair> headers = new CopyOnWriteArrayList<HarNameValuePair>();
-    private final List<HarNameValuePair> queryString = new CopyOnWriteArrayList<HarNameValuePair>();
+    private final List<HarCookie> cookies = new ConcurrentAppendOnlyList<HarCookie>();
+    private final List<HarNameValuePair> headers = new ConcurrentAppendOnlyList<HarNameValuePair>();
+    private final List<HarNameValuePair> queryString = new ConcurrentAppendOnlyList<HarNameValuePair>();
     private volatile HarPostData postData;
     private volatile long headersSize; // Odd grammar in spec
     private volatile long bodySize;
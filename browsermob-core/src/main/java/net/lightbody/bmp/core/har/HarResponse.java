@@ -4,15 +4,14 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class HarResponse {
     private volatile int status;
     private volatile String statusText;
     private volatile String httpVersion;
-    private final List<HarCookie> cookies = new CopyOnWriteArrayList<HarCookie>();
-    private final List<HarNameValuePair> headers = new CopyOnWriteArrayList<HarNameValuePair>();
+    private final List<HarCookie> cookies = new ConcurrentAppendOnlyList<HarCookie>();
+    private final List<HarNameValuePair> headers = new ConcurrentAppendOnlyList<HarNameValuePair>();
     private final HarContent content = new HarContent();
     private volatile String redirectURL = "";
 
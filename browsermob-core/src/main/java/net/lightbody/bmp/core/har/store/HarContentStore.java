@@ -0,0 +1,31 @@
+package net.lightbody.bmp.core.har.store;
+
+import java.io.Closeable;
+
+/**
+ * Storage for response bodies captured in a HAR. When a store is set on the proxy, captured response bodies are kept in the
+ * store as raw bytes instead of as Strings in {@link net.lightbody.bmp.core.har.HarContent}, and are decoded (or base64 encoded)
+ * only when the content's text is requested.
+ * <p/>
+ * The proxy calls {@link #harEnded()} whenever it ends a HAR or begins a new one, and closes the store when the proxy is stopped.
+ * Content stored for a HAR remains readable until the second call to harEnded() after it was stored, so the HAR returned by
+ * {@link net.lightbody.bmp.BrowserMobProxy#newHar()} or {@link net.lightbody.bmp.BrowserMobProxy#endHar()} can be serialized
+ * until the next call to either method.
+ */
+public interface HarContentStore extends Closeable {
+    /**
+     * Stores the specified content. The store takes ownership of the array, so the caller must not modify it afterward.
+     *
+     * @param content content to store
+     * @return a reference to the stored content
+     * @throws net.lightbody.bmp.exception.HarContentStoreException if the content could not be stored
+     */
+    StoredContent store(byte[] content);
+
+    /**
+     * Called by the proxy when a HAR is ended or replaced by a new HAR. Content stored before the previous call to this method
+     * belongs to a HAR that is no longer in use, so the store should release the resources used to hold it. Content stored since
+     * the previous call must remain readable.
+     */
+    void harEnded();
+}
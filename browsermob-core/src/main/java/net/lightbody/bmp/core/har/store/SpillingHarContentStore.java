@@ -0,0 +1,357 @@
+package net.lightbody.bmp.core.har.store;
+
+import net.lightbody.bmp.exception.HarContentStoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link HarContentStore} that keeps small bodies on the heap and writes large bodies to a spill file. A body is kept on the
+ * heap if it is no larger than the inline threshold and the total size of all bodies kept on the heap would not exceed the
+ * heap budget; every other body is appended to the spill file and read back only when its content is requested. Once the heap
+ * budget has been used, all subsequent bodies are spilled, so the heap used by the store is bounded by the budget.
+ * <p/>
+ * Content is grouped into generations, one per HAR. When {@link #harEnded()} is called, the generation before the current one
+ * is released: its bodies no longer count against the heap budget, and its spill file is deleted. Each generation's spill file
+ * is created in the spill directory when its first body is spilled. All spill files are deleted when the store is closed.
+ * Bodies are spilled as raw bytes, so binary bodies occupy their actual size rather than the size of their base64 encoding.
+ */
+public class SpillingHarContentStore implements HarContentStore {
+    private static final Logger log = LoggerFactory.getLogger(SpillingHarContentStore.class);
+
+    /**
+     * Default maximum size of a body that will be kept on the heap.
+     */
+    public static final int DEFAULT_INLINE_THRESHOLD_BYTES = 64 * 1024;
+
+    /**
+     * Default maximum total size of all bodies kept on the heap.
+     */
+    public static final long DEFAULT_HEAP_BUDGET_BYTES = 64 * 1024 * 1024;
+
+    private final File spillDirectory;
+    private final int inlineThresholdBytes;
+    private final long heapBudgetBytes;
+
+    /**
+     * Held for reading while content is being stored, and for writing while generations are being released, so that content is
+     * never stored in a generation that has been released.
+     */
+    private final ReadWriteLock generationLock = new ReentrantReadWriteLock();
+
+    /**
+     * The generation new content is stored in, and the generation it replaced. Guarded by generationLock.
+     */
+    private Generation currentGeneration = new Generation();
+    private Generation previousGeneration;
+
+    private volatile boolean closed;
+
+    private final AtomicLong heapBytes = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final AtomicLong spilledContentCount = new AtomicLong();
+
+    /**
+     * Creates a store with the default inline threshold and heap budget.
+     *
+     * @param spillDirectory directory in which to create the spill file, or null to use the system temporary directory
+     */
+    public SpillingHarContentStore(File spillDirectory) {
+        this(spillDirectory, DEFAULT_INLINE_THRESHOLD_BYTES, DEFAULT_HEAP_BUDGET_BYTES);
+    }
+
+    /**
+     * Creates a store with the specified inline threshold and heap budget.
+     *
+     * @param spillDirectory directory in which to create the spill file, or null to use the system temporary directory
+     * @param inlineThresholdBytes maximum size of a body that will be kept on the heap; 0 to spill all bodies
+     * @param heapBudgetBytes maximum total size of all bodies kept on the heap
+     */
+    public SpillingHarContentStore(File spillDirectory, int inlineThresholdBytes, long heapBudgetBytes) {
+        if (inlineThresholdBytes < 0) {
+            throw new IllegalArgumentException("Inline threshold cannot be negative");
+        }
+
+        if (heapBudgetBytes < 0) {
+            throw new IllegalArgumentException("Heap budget cannot be negative");
+        }
+
+        this.spillDirectory = spillDirectory;
+        this.inlineThresholdBytes = inlineThresholdBytes;
+        this.heapBudgetBytes = heapBudgetBytes;
+    }
+
+    @Override
+    public StoredContent store(byte[] content) {
+        generationLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new HarContentStoreException("Cannot store content in a closed store");
+            }
+
+            Generation generation = currentGeneration;
+
+            if (content.length <= inlineThresholdBytes && reserveHeap(content.length)) {
+                generation.heapBytes.addAndGet(content.length);
+
+                return new HeapContent(content);
+            }
+
+            return generation.spill(content);
+        } finally {
+            generationLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Releases the generation that preceded the current generation, and begins a new generation. Spilled content in the released
+     * generation can no longer be read.
+     */
+    @Override
+    public void harEnded() {
+        generationLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            if (previousGeneration != null) {
+                release(previousGeneration);
+            }
+
+            previousGeneration = currentGeneration;
+            currentGeneration = new Generation();
+        } finally {
+            generationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes and deletes all spill files. Content that was spilled can no longer be read once the store is closed.
+     */
+    @Override
+    public void close() {
+        generationLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+
+            if (previousGeneration != null) {
+                release(previousGeneration);
+                previousGeneration = null;
+            }
+
+            release(currentGeneration);
+        } finally {
+            generationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return total size of the bodies kept on the heap for generations that have not been released
+     */
+    public long getHeapBytes() {
+        return heapBytes.get();
+    }
+
+    /**
+     * @return total size of the bodies written to spill files that have not been deleted
+     */
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    /**
+     * @return number of bodies written to spill files that have not been deleted
+     */
+    public long getSpilledContentCount() {
+        return spilledContentCount.get();
+    }
+
+    public int getInlineThresholdBytes() {
+        return inlineThresholdBytes;
+    }
+
+    public long getHeapBudgetBytes() {
+        return heapBudgetBytes;
+    }
+
+    /**
+     * Reserves space in the heap budget for a body of the specified size.
+     *
+     * @return true if the space was reserved, false if the body would exceed the budget
+     */
+    private boolean reserveHeap(int length) {
+        while (true) {
+            long current = heapBytes.get();
+            if (current + length > heapBudgetBytes) {
+                return false;
+            }
+
+            if (heapBytes.compareAndSet(current, current + length)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the generation's heap budget and deletes its spill file. Must be called while holding the write lock.
+     */
+    private void release(Generation generation) {
+        generation.released = true;
+
+        heapBytes.addAndGet(-generation.heapBytes.get());
+        spilledBytes.addAndGet(-generation.spilledBytes.get());
+        spilledContentCount.addAndGet(-generation.spilledContentCount.get());
+
+        if (generation.spillChannel != null) {
+            try {
+                generation.spillChannel.close();
+            } catch (IOException e) {
+                log.warn("Unable to close HAR content spill file {}", generation.spillFile, e);
+            }
+
+            if (!generation.spillFile.delete()) {
+                log.warn("Unable to delete HAR content spill file {}", generation.spillFile);
+            }
+        }
+    }
+
+    /**
+     * The content stored for a single HAR.
+     */
+    private class Generation {
+        private final Object spillFileLock = new Object();
+
+        /**
+         * The spill file and its channel. Lazily created when the first body is spilled. Guarded by spillFileLock.
+         */
+        private File spillFile;
+        private volatile FileChannel spillChannel;
+
+        private volatile boolean released;
+
+        /**
+         * The position in the spill file at which the next spilled body will be written. Space is reserved by atomically advancing
+         * the position, so bodies may be written concurrently.
+         */
+        private final AtomicLong spillPosition = new AtomicLong();
+
+        private final AtomicLong heapBytes = new AtomicLong();
+        private final AtomicLong spilledBytes = new AtomicLong();
+        private final AtomicLong spilledContentCount = new AtomicLong();
+
+        private StoredContent spill(byte[] content) {
+            FileChannel channel = getSpillChannel();
+
+            long position = spillPosition.getAndAdd(content.length);
+
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, position + buffer.position());
+                }
+            } catch (IOException e) {
+                throw new HarContentStoreException("Unable to write content to spill file " + spillFile, e);
+            }
+
+            spilledBytes.addAndGet(content.length);
+            spilledContentCount.incrementAndGet();
+            SpillingHarContentStore.this.spilledBytes.addAndGet(content.length);
+            SpillingHarContentStore.this.spilledContentCount.incrementAndGet();
+
+            return new SpilledContent(this, position, content.length);
+        }
+
+        private FileChannel getSpillChannel() {
+            FileChannel channel = spillChannel;
+            if (channel != null) {
+                return channel;
+            }
+
+            synchronized (spillFileLock) {
+                if (spillChannel == null) {
+                    try {
+                        spillFile = File.createTempFile("har-content", ".spill", spillDirectory);
+                        spillFile.deleteOnExit();
+
+                        spillChannel = new RandomAccessFile(spillFile, "rw").getChannel();
+                    } catch (IOException e) {
+                        throw new HarContentStoreException("Unable to create HAR content spill file in directory " + spillDirectory, e);
+                    }
+
+                    log.debug("Created HAR content spill file {}", spillFile);
+                }
+
+                return spillChannel;
+            }
+        }
+    }
+
+    private static class HeapContent implements StoredContent {
+        private final byte[] content;
+
+        HeapContent(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public long getLength() {
+            return content.length;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return content;
+        }
+    }
+
+    private static class SpilledContent implements StoredContent {
+        private final Generation generation;
+        private final long position;
+        private final int length;
+
+        SpilledContent(Generation generation, long position, int length) {
+            this.generation = generation;
+            this.position = position;
+            this.length = length;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            if (generation.released) {
+                throw new HarContentStoreException("Cannot read spilled content after the HAR it was captured for has been released or the store has been closed");
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            try {
+                while (buffer.hasRemaining()) {
+                    int bytesRead = generation.spillChannel.read(buffer, position + buffer.position());
+                    if (bytesRead < 0) {
+                        throw new HarContentStoreException("Unexpected end of spill file " + generation.spillFile);
+                    }
+                }
+            } catch (IOException e) {
+                throw new HarContentStoreException("Unable to read content from spill file " + generation.spillFile, e);
+            }
+
+            return buffer.array();
+        }
+    }
+}
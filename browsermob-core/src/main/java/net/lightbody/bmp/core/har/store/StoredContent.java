@@ -0,0 +1,21 @@
+package net.lightbody.bmp.core.har.store;
+
+/**
+ * Captured content held by a {@link HarContentStore}. The content is materialized only when {@link #getBytes()} is called,
+ * typically while the HAR is being serialized.
+ */
+public interface StoredContent {
+    /**
+     * @return the number of bytes of content
+     */
+    long getLength();
+
+    /**
+     * Returns the stored content. The returned array may be shared with the store, so callers must not modify it, and should
+     * not retain it any longer than necessary, since avoiding long-lived copies of the content is the purpose of the store.
+     *
+     * @return the stored content
+     * @throws net.lightbody.bmp.exception.HarContentStoreException if the content could not be read from the store
+     */
+    byte[] getBytes();
+}
@@ -0,0 +1,24 @@
+package net.lightbody.bmp.exception;
+
+/**
+ * Indicates that an error occurred while storing or retrieving captured content in a
+ * {@link net.lightbody.bmp.core.har.store.HarContentStore}.
+ */
+public class HarContentStoreException extends RuntimeException {
+    private static final long serialVersionUID = -2905340786734411925L;
+
+    public HarContentStoreException() {
+    }
+
+    public HarContentStoreException(String message) {
+        super(message);
+    }
+
+    public HarContentStoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public HarContentStoreException(Throwable cause) {
+        super(cause);
+    }
+}
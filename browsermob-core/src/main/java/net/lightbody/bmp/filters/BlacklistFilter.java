@@ -9,24 +9,31 @@ import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import net.lightbody.bmp.proxy.BlacklistEntry;
+import net.lightbody.bmp.proxy.UrlPatternMatcher;
 
 import java.util.Collection;
-import java.util.Collections;
+import java.util.List;
 
 /**
- * Applies blacklist entries to this request. The filter does not make a defensive copy of the blacklist entries, so there is no guarantee
- * that the blacklist at the time of construction will contain the same values when the filter is actually invoked, if the entries are modified concurrently.
+ * Applies blacklist entries to this request. The blacklist entries are matched using a {@link UrlPatternMatcher}, which only evaluates
+ * the entries that could possibly match the request URL. When the filter is constructed from a collection of blacklist entries, the
+ * matcher is built from a snapshot of the collection at the time of construction; to avoid building a matcher for each request,
+ * construct the filter using a matcher that is rebuilt only when the blacklist changes.
  */
 public class BlacklistFilter extends HttpsAwareFiltersAdapter {
-    private final Collection<BlacklistEntry> blacklistedUrls;
+    private final UrlPatternMatcher<BlacklistEntry> blacklistMatcher;
 
     public BlacklistFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, Collection<BlacklistEntry> blacklistedUrls) {
+        this(originalRequest, ctx, UrlPatternMatcher.forBlacklistEntries(blacklistedUrls));
+    }
+
+    public BlacklistFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, UrlPatternMatcher<BlacklistEntry> blacklistMatcher) {
         super(originalRequest, ctx);
 
-        if (blacklistedUrls != null) {
-            this.blacklistedUrls = blacklistedUrls;
+        if (blacklistMatcher != null) {
+            this.blacklistMatcher = blacklistMatcher;
         } else {
-            this.blacklistedUrls = Collections.emptyList();
+            this.blacklistMatcher = UrlPatternMatcher.empty();
         }
     }
 
@@ -36,14 +43,19 @@ public class BlacklistFilter extends HttpsAwareFiltersAdapter {
             HttpRequest httpRequest = (HttpRequest) httpObject;
 
             String url = getFullUrl(httpRequest);
+            boolean isConnect = HttpMethod.CONNECT.equals(httpRequest.getMethod());
+
+            List<BlacklistEntry> entries = blacklistMatcher.getEntries();
+            for (int i = blacklistMatcher.getFirstMatchingIndex(url, 0); i >= 0; i = blacklistMatcher.getFirstMatchingIndex(url, i + 1)) {
+                BlacklistEntry entry = entries.get(i);
 
-            for (BlacklistEntry entry : blacklistedUrls) {
-                if (HttpMethod.CONNECT.equals(httpRequest.getMethod()) && entry.getHttpMethodPattern() == null) {
+                if (isConnect && entry.getHttpMethodPattern() == null) {
                     // do not allow CONNECTs to be blacklisted unless a method pattern is explicitly specified
                     continue;
                 }
 
-                if (entry.matches(url, httpRequest.getMethod().name())) {
+                // the URL pattern has already been matched, so only the method pattern remains to be checked
+                if (entry.getHttpMethodPattern() == null || entry.getHttpMethodPattern().matcher(httpRequest.getMethod().name()).matches()) {
                     HttpResponseStatus status = HttpResponseStatus.valueOf(entry.getStatusCode());
                     HttpResponse resp = new DefaultFullHttpResponse(httpRequest.getProtocolVersion(), status);
                     HttpHeaders.setContentLength(resp, 0L);
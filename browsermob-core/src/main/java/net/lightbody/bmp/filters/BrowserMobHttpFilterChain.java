@@ -15,8 +15,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -25,29 +24,48 @@ import java.util.List;
 public class BrowserMobHttpFilterChain extends HttpFiltersAdapter {
     private static final Logger log = LoggerFactory.getLogger(BrowserMobHttpFilterChain.class);
 
+    private static final HttpFilters[] NO_FILTERS = new HttpFilters[0];
+
     private final BrowserMobProxyServer proxyServer;
 
-    private final List<HttpFilters> filters;
+    /**
+     * The filters for this request. Stored as an array rather than a List, since the filters are iterated over for every
+     * HttpObject in the request and response.
+     */
+    private final HttpFilters[] filters;
 
     public BrowserMobHttpFilterChain(BrowserMobProxyServer proxyServer, HttpRequest originalRequest, ChannelHandlerContext ctx) {
         super(originalRequest, ctx);
 
         this.proxyServer = proxyServer;
 
-        if (proxyServer.getFilterFactories() != null) {
-            filters = new ArrayList<>(proxyServer.getFilterFactories().size());
+        List<HttpFiltersSource> filterFactories = proxyServer.getFilterFactories();
+        if (filterFactories != null) {
+            HttpFilters[] createdFilters = new HttpFilters[filterFactories.size()];
+            int filterCount = 0;
 
             // instantiate all HttpFilters using the proxy's filter factories
-            for (HttpFiltersSource filterFactory : proxyServer.getFilterFactories()) {
+            for (HttpFiltersSource filterFactory : filterFactories) {
                 HttpFilters filter = filterFactory.filterRequest(originalRequest, ctx);
                 // allow filter factories to avoid adding a filter on a per-request basis by returning a null
                 // HttpFilters instance
                 if (filter != null) {
-                    filters.add(filter);
+                    // the list of filter factories may have grown since the array was allocated
+                    if (filterCount == createdFilters.length) {
+                        createdFilters = Arrays.copyOf(createdFilters, filterCount + 1);
+                    }
+
+                    createdFilters[filterCount++] = filter;
                 }
             }
+
+            if (filterCount < createdFilters.length) {
+                createdFilters = Arrays.copyOf(createdFilters, filterCount);
+            }
+
+            filters = createdFilters;
         } else {
-            filters = Collections.emptyList();
+            filters = NO_FILTERS;
         }
     }
 
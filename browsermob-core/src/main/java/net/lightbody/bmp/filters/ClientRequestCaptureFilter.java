@@ -1,6 +1,5 @@
 package net.lightbody.bmp.filters;
 
-import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaders;
@@ -8,12 +7,8 @@ import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.LastHttpContent;
-import net.lightbody.bmp.util.BrowserMobHttpUtil;
 import org.littleshoot.proxy.HttpFiltersAdapter;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-
 /**
  * This filter captures requests from the client (headers and content).
  * <p/>
@@ -30,9 +25,10 @@ public class ClientRequestCaptureFilter extends HttpFiltersAdapter {
 
     /**
      * Populated by clientToProxyRequest() when processing the HttpContent objects. If the request is chunked,
-     * it will be populated across multiple calls to clientToProxyRequest().
+     * it will be populated across multiple calls to clientToProxyRequest(). The content is retained, not copied, until
+     * the LastHttpContent is processed.
      */
-    private final ByteArrayOutputStream requestContents = new ByteArrayOutputStream();
+    private final ContentCaptureBuffer requestContents;
 
     /**
      * Populated by clientToProxyRequest() when processing the LastHttpContent.
@@ -41,10 +37,14 @@ public class ClientRequestCaptureFilter extends HttpFiltersAdapter {
 
     public ClientRequestCaptureFilter(HttpRequest originalRequest) {
         super(originalRequest);
+
+        this.requestContents = new ContentCaptureBuffer(null);
     }
 
     public ClientRequestCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx) {
         super(originalRequest, ctx);
+
+        this.requestContents = new ContentCaptureBuffer(ctx);
     }
 
     @Override
@@ -61,6 +61,9 @@ public class ClientRequestCaptureFilter extends HttpFiltersAdapter {
             if (httpContent instanceof LastHttpContent) {
                 LastHttpContent lastHttpContent = (LastHttpContent) httpContent;
                 trailingHeaders = lastHttpContent .trailingHeaders();
+
+                // the request is complete, so copy the contents once and release the retained content
+                requestContents.finish();
             }
         }
 
@@ -68,20 +71,19 @@ public class ClientRequestCaptureFilter extends HttpFiltersAdapter {
     }
 
     protected void storeRequestContent(HttpContent httpContent) {
-        ByteBuf bufferedContent = httpContent.content();
-        byte[] content = BrowserMobHttpUtil.extractReadableBytes(bufferedContent);
-
-        try {
-            requestContents.write(content);
-        } catch (IOException e) {
-            // can't happen
-        }
+        requestContents.add(httpContent.content());
     }
 
     public HttpRequest getHttpRequest() {
         return httpRequest;
     }
 
+    /**
+     * Returns the contents of the entire request. Once the entire request has been received, this method returns the same
+     * array each time it is called, so callers should not modify it.
+     *
+     * @return entire request contents
+     */
     public byte[] getFullRequestContents() {
         return requestContents.toByteArray();
     }
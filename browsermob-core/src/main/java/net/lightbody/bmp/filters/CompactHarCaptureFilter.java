@@ -0,0 +1,385 @@
+package net.lightbody.bmp.filters;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+import net.lightbody.bmp.core.har.CompactHarLog;
+import net.lightbody.bmp.filters.support.HttpConnectTiming;
+import net.lightbody.bmp.filters.util.HarCaptureUtil;
+import net.lightbody.bmp.util.BrowserMobHttpUtil;
+import org.littleshoot.proxy.impl.ProxyUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the URL, HTTP status, sizes, timings, and server IP address of each request in a {@link CompactHarLog}, without
+ * creating any HAR model objects. Timings and errors are captured at the same points in the request as the
+ * {@link HarCaptureFilter}, so the entries in a compact log are identical to the corresponding fields of the entries captured
+ * by the HarCaptureFilter. Headers, cookies, query parameters, and content are never captured.
+ */
+public class CompactHarCaptureFilter extends HttpsAwareFiltersAdapter {
+    private static final Logger log = LoggerFactory.getLogger(CompactHarCaptureFilter.class);
+
+    private final CompactHarLog harLog;
+
+    private final String currentPageRef;
+
+    /**
+     * Index of this request's entry in the harLog, or -1 if the request has not been received yet.
+     */
+    private volatile int entryIndex = -1;
+
+    private volatile long dnsResolutionStartedNanos;
+
+    private volatile long connectionQueuedNanos;
+    private volatile long connectionStartedNanos;
+
+    private volatile long sendStartedNanos;
+    private volatile long sendFinishedNanos;
+
+    private volatile long responseReceiveStartedNanos;
+
+    /**
+     * The address of the client making the request, used to find the connect timing recorded for HTTPS requests by the
+     * {@link HttpConnectHarCaptureFilter}.
+     */
+    private final InetSocketAddress clientAddress;
+
+    private final AtomicLong requestBodySize = new AtomicLong(0);
+
+    private final AtomicLong responseBodySize = new AtomicLong(0);
+
+    private volatile HttpRequest capturedOriginalRequest;
+
+    private volatile boolean addressResolved = false;
+
+    /**
+     * Create a new instance of the CompactHarCaptureFilter that will record this request in the specified compact HAR log.
+     *
+     * @param originalRequest the original HttpRequest from the HttpFiltersSource factory
+     * @param harLog the log of the ProxyServer's current HAR at the time this request is received
+     * @param currentPageRef the ProxyServer's currentPageRef at the time this request is received from the client
+     */
+    public CompactHarCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, CompactHarLog harLog, String currentPageRef) {
+        super(originalRequest, ctx);
+
+        if (harLog == null) {
+            throw new IllegalStateException("Attempted har capture when har log is null");
+        }
+
+        if (ProxyUtils.isCONNECT(originalRequest)) {
+            throw new IllegalStateException("Attempted har capture for HTTP CONNECT request");
+        }
+
+        this.clientAddress = (InetSocketAddress) ctx.channel().remoteAddress();
+
+        this.harLog = harLog;
+        this.currentPageRef = currentPageRef;
+    }
+
+    @Override
+    public HttpResponse clientToProxyRequest(HttpObject httpObject) {
+        if (httpObject instanceof HttpRequest) {
+            HttpRequest httpRequest = (HttpRequest) httpObject;
+            this.capturedOriginalRequest = httpRequest;
+
+            // start the entry now, before we make the request, so that if we get cut off we still have the attempt recorded
+            entryIndex = harLog.startEntry(currentPageRef, new Date(), httpRequest.getMethod().toString(), getFullUrl(httpRequest),
+                    httpRequest.getProtocolVersion().text());
+
+            // record a "no response received" response, in case the response is not received for any reason
+            captureFailure(HarCaptureUtil.getNoResponseReceivedErrorMessage());
+
+            captureRequestHeaderSize(httpRequest);
+
+            captureConnectTiming();
+        }
+
+        if (entryIndex < 0) {
+            return null;
+        }
+
+        if (httpObject instanceof HttpContent) {
+            requestBodySize.addAndGet(((HttpContent) httpObject).content().readableBytes());
+        }
+
+        if (httpObject instanceof LastHttpContent) {
+            harLog.setRequestBodySize(entryIndex, requestBodySize.get());
+        }
+
+        return null;
+    }
+
+    @Override
+    public HttpObject serverToProxyResponse(HttpObject httpObject) {
+        if (entryIndex < 0) {
+            return super.serverToProxyResponse(httpObject);
+        }
+
+        if (httpObject instanceof HttpResponse) {
+            captureResponse((HttpResponse) httpObject);
+        }
+
+        if (httpObject instanceof HttpContent) {
+            responseBodySize.addAndGet(((HttpContent) httpObject).content().readableBytes());
+        }
+
+        if (httpObject instanceof LastHttpContent) {
+            harLog.setResponseBodySize(entryIndex, responseBodySize.get());
+        }
+
+        return super.serverToProxyResponse(httpObject);
+    }
+
+    @Override
+    public void serverToProxyResponseTimedOut() {
+        if (entryIndex < 0) {
+            return;
+        }
+
+        // replace any partial response the server sent
+        captureFailure(HarCaptureUtil.getResponseTimedOutErrorMessage());
+
+        long timeoutTimestampNanos = System.nanoTime();
+
+        // see HarCaptureFilter.serverToProxyResponseTimedOut()
+        if (sendStartedNanos > 0L && sendFinishedNanos == 0L) {
+            captureTiming(CompactHarLog.Timing.SEND, timeoutTimestampNanos - sendStartedNanos);
+        } else if (sendFinishedNanos > 0L && responseReceiveStartedNanos == 0L) {
+            captureTiming(CompactHarLog.Timing.WAIT, timeoutTimestampNanos - sendFinishedNanos);
+        } else if (responseReceiveStartedNanos > 0L) {
+            captureTiming(CompactHarLog.Timing.RECEIVE, timeoutTimestampNanos - responseReceiveStartedNanos);
+        }
+    }
+
+    protected void captureRequestHeaderSize(HttpRequest httpRequest) {
+        String requestLine = httpRequest.getMethod().toString() + ' ' + httpRequest.getUri() + ' ' + httpRequest.getProtocolVersion().toString();
+        // +2 => CRLF after status line, +4 => header/data separation
+        long requestHeadersSize = requestLine.length() + 6;
+
+        requestHeadersSize += BrowserMobHttpUtil.getHeaderSize(httpRequest.headers());
+
+        harLog.setRequestHeadersSize(entryIndex, requestHeadersSize);
+    }
+
+    protected void captureResponse(HttpResponse httpResponse) {
+        String statusLine = httpResponse.getProtocolVersion().toString() + ' ' + httpResponse.getStatus().toString();
+        // +2 => CRLF after status line, +4 => header/data separation
+        long responseHeadersSize = statusLine.length() + 6;
+        responseHeadersSize += BrowserMobHttpUtil.getHeaderSize(httpResponse.headers());
+
+        harLog.setResponse(entryIndex,
+                httpResponse.getStatus().code(),
+                httpResponse.getStatus().reasonPhrase(),
+                httpResponse.getProtocolVersion().text(),
+                responseHeadersSize,
+                HttpHeaders.getHeader(httpResponse, HttpHeaders.Names.CONTENT_TYPE));
+    }
+
+    /**
+     * Replaces the response with a failure response containing the specified error message.
+     */
+    protected void captureFailure(String errorMessage) {
+        harLog.setResponse(entryIndex,
+                HarCaptureUtil.HTTP_STATUS_CODE_FOR_FAILURE,
+                HarCaptureUtil.HTTP_REASON_PHRASE_FOR_FAILURE,
+                HarCaptureUtil.HTTP_VERSION_STRING_FOR_FAILURE,
+                -1,
+                null);
+
+        harLog.setResponseError(entryIndex, errorMessage);
+    }
+
+    /**
+     * Populates ssl and connect timing info if an entry for this client and server exist in the cache.
+     */
+    protected void captureConnectTiming() {
+        HttpConnectTiming httpConnectTiming = HttpConnectHarCaptureFilter.consumeConnectTimingForConnection(clientAddress);
+        if (httpConnectTiming != null) {
+            captureTiming(CompactHarLog.Timing.SSL, httpConnectTiming.getSslHandshakeTimeNanos());
+            captureTiming(CompactHarLog.Timing.CONNECT, httpConnectTiming.getConnectTimeNanos());
+            captureTiming(CompactHarLog.Timing.BLOCKED, httpConnectTiming.getBlockedTimeNanos());
+            captureTiming(CompactHarLog.Timing.DNS, httpConnectTiming.getDnsTimeNanos());
+        }
+    }
+
+    /**
+     * Populates the server IP address using the internal hostname->IP address cache.
+     */
+    protected void populateAddressFromCache(HttpRequest httpRequest) {
+        String serverHost = getHost(httpRequest);
+
+        if (serverHost != null && !serverHost.isEmpty()) {
+            String resolvedAddress = ResolvedHostnameCacheFilter.getPreviouslyResolvedAddressForHost(serverHost);
+            if (resolvedAddress != null) {
+                harLog.setServerIPAddress(entryIndex, resolvedAddress);
+            } else {
+                // see HarCaptureFilter.populateAddressFromCache()
+                log.trace("Unable to find cached IP address for host: {}. IP address in HAR entry will be blank.", serverHost);
+            }
+        } else {
+            log.warn("Unable to identify host from request uri: {}", httpRequest.getUri());
+        }
+    }
+
+    private void captureTiming(CompactHarLog.Timing timing, long nanos) {
+        harLog.setTiming(entryIndex, timing, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public InetSocketAddress proxyToServerResolutionStarted(String resolvingServerHostAndPort) {
+        dnsResolutionStartedNanos = System.nanoTime();
+
+        if (entryIndex < 0) {
+            return null;
+        }
+
+        // resolution started means the connection is no longer queued, so populate 'blocked' time
+        if (connectionQueuedNanos > 0L) {
+            captureTiming(CompactHarLog.Timing.BLOCKED, dnsResolutionStartedNanos - connectionQueuedNanos);
+        } else {
+            captureTiming(CompactHarLog.Timing.BLOCKED, 0L);
+        }
+
+        return null;
+    }
+
+    @Override
+    public void proxyToServerResolutionFailed(String hostAndPort) {
+        if (entryIndex < 0) {
+            return;
+        }
+
+        captureFailure(HarCaptureUtil.getResolutionFailedErrorMessage(hostAndPort));
+
+        if (dnsResolutionStartedNanos > 0L) {
+            captureTiming(CompactHarLog.Timing.DNS, System.nanoTime() - dnsResolutionStartedNanos);
+        }
+    }
+
+    @Override
+    public void proxyToServerResolutionSucceeded(String serverHostAndPort, InetSocketAddress resolvedRemoteAddress) {
+        long dnsResolutionFinishedNanos = System.nanoTime();
+
+        if (entryIndex < 0) {
+            return;
+        }
+
+        if (dnsResolutionStartedNanos > 0L) {
+            captureTiming(CompactHarLog.Timing.DNS, dnsResolutionFinishedNanos - dnsResolutionStartedNanos);
+        } else {
+            captureTiming(CompactHarLog.Timing.DNS, 0L);
+        }
+
+        InetAddress resolvedAddress = resolvedRemoteAddress.getAddress();
+        if (resolvedAddress != null) {
+            addressResolved = true;
+
+            harLog.setServerIPAddress(entryIndex, resolvedAddress.getHostAddress());
+        }
+    }
+
+    @Override
+    public void proxyToServerConnectionQueued() {
+        this.connectionQueuedNanos = System.nanoTime();
+    }
+
+    @Override
+    public void proxyToServerConnectionStarted() {
+        this.connectionStartedNanos = System.nanoTime();
+    }
+
+    @Override
+    public void proxyToServerConnectionFailed() {
+        if (entryIndex < 0) {
+            return;
+        }
+
+        captureFailure(HarCaptureUtil.getConnectionFailedErrorMessage());
+
+        if (connectionStartedNanos > 0L) {
+            captureTiming(CompactHarLog.Timing.CONNECT, System.nanoTime() - connectionStartedNanos);
+        }
+    }
+
+    @Override
+    public void proxyToServerConnectionSucceeded(ChannelHandlerContext serverCtx) {
+        long connectionSucceededTimeNanos = System.nanoTime();
+
+        if (entryIndex < 0) {
+            return;
+        }
+
+        if (connectionStartedNanos > 0L) {
+            captureTiming(CompactHarLog.Timing.CONNECT, connectionSucceededTimeNanos - connectionStartedNanos);
+        } else {
+            captureTiming(CompactHarLog.Timing.CONNECT, 0L);
+        }
+    }
+
+    @Override
+    public void proxyToServerRequestSending() {
+        this.sendStartedNanos = System.nanoTime();
+
+        // if the hostname was not resolved during this request, populate the IP address from the cache
+        if (entryIndex >= 0 && !addressResolved) {
+            populateAddressFromCache(capturedOriginalRequest);
+        }
+    }
+
+    @Override
+    public void proxyToServerRequestSent() {
+        this.sendFinishedNanos = System.nanoTime();
+
+        if (entryIndex < 0) {
+            return;
+        }
+
+        if (sendStartedNanos > 0L) {
+            captureTiming(CompactHarLog.Timing.SEND, sendFinishedNanos - sendStartedNanos);
+        } else {
+            captureTiming(CompactHarLog.Timing.SEND, 0L);
+        }
+    }
+
+    @Override
+    public void serverToProxyResponseReceiving() {
+        this.responseReceiveStartedNanos = System.nanoTime();
+
+        if (entryIndex < 0) {
+            return;
+        }
+
+        // if the response started before the request finished sending, there was no wait time
+        if (sendFinishedNanos > 0L && sendFinishedNanos < responseReceiveStartedNanos) {
+            captureTiming(CompactHarLog.Timing.WAIT, responseReceiveStartedNanos - sendFinishedNanos);
+        } else {
+            captureTiming(CompactHarLog.Timing.WAIT, 0L);
+        }
+    }
+
+    @Override
+    public void serverToProxyResponseReceived() {
+        long responseReceivedNanos = System.nanoTime();
+
+        if (entryIndex < 0) {
+            return;
+        }
+
+        if (responseReceiveStartedNanos > 0L) {
+            captureTiming(CompactHarLog.Timing.RECEIVE, responseReceivedNanos - responseReceiveStartedNanos);
+        } else {
+            captureTiming(CompactHarLog.Timing.RECEIVE, 0L);
+        }
+    }
+}
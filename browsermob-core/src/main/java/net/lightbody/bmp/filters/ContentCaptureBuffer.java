@@ -0,0 +1,132 @@
+package net.lightbody.bmp.filters;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * Accumulates the content of an HTTP message for the capture filters without copying it. Each chunk of content is retained
+ * and added to a {@link CompositeByteBuf}, so the bytes are copied exactly once, into a byte array, when the message is complete
+ * and {@link #finish()} is called. Finishing the capture releases the retained buffers.
+ * <p/>
+ * Since retained buffers must always be released, the capture is also released if it is abandoned: when {@link #release()} is
+ * called (for example, when the server times out), and when the client channel closes before the message is complete. Content
+ * is added on the thread processing the message, but the capture may be released from the client channel's event loop, so
+ * all methods are synchronized.
+ */
+class ContentCaptureBuffer {
+    private final ChannelHandlerContext ctx;
+
+    /**
+     * The retained content received so far. Null until the first chunk of content is added, and after the capture has been
+     * finished or released.
+     */
+    private CompositeByteBuf contents;
+
+    /**
+     * The entire content of the message, populated when the capture is finished.
+     */
+    private byte[] capturedContents;
+
+    private boolean released;
+
+    /**
+     * Releases the retained content if the client channel closes before the capture is finished.
+     */
+    private final ChannelFutureListener releaseOnClose = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+            release();
+        }
+    };
+
+    /**
+     * Creates a capture buffer. If a context is specified, the buffer will be allocated from the channel's allocator and will be
+     * released if the channel closes before the capture is finished.
+     *
+     * @param ctx client channel context, or null
+     */
+    ContentCaptureBuffer(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    /**
+     * Adds the readable bytes of the specified buffer to the capture, without modifying the buffer's reader index. Has no effect
+     * if the capture has already been finished or released.
+     */
+    synchronized void add(ByteBuf content) {
+        if (released || capturedContents != null || !content.isReadable()) {
+            return;
+        }
+
+        boolean firstContent = contents == null;
+        if (firstContent) {
+            ByteBufAllocator allocator = ctx != null ? ctx.alloc() : ByteBufAllocator.DEFAULT;
+            // never consolidate components, since consolidating would copy the entire message each time the limit was reached
+            contents = allocator.compositeBuffer(Integer.MAX_VALUE);
+        }
+
+        contents.addComponent(true, content.slice().retain());
+
+        // the listener is invoked immediately if the channel is already closed, so add it only after the content has been added
+        if (firstContent && ctx != null) {
+            ctx.channel().closeFuture().addListener(releaseOnClose);
+        }
+    }
+
+    /**
+     * Returns the entire content captured so far. Once the capture is finished, returns the same array each time it is called.
+     */
+    synchronized byte[] toByteArray() {
+        if (capturedContents != null) {
+            return capturedContents;
+        }
+
+        return copyContents();
+    }
+
+    /**
+     * Completes the capture, copying the captured content into a byte array and releasing the retained buffers.
+     *
+     * @return the entire captured content
+     */
+    synchronized byte[] finish() {
+        if (capturedContents == null) {
+            capturedContents = copyContents();
+
+            release();
+        }
+
+        return capturedContents;
+    }
+
+    /**
+     * Releases the retained buffers. Content added after the buffers are released will not be captured.
+     */
+    synchronized void release() {
+        released = true;
+
+        if (contents != null) {
+            contents.release();
+            contents = null;
+
+            if (ctx != null) {
+                ctx.channel().closeFuture().removeListener(releaseOnClose);
+            }
+        }
+    }
+
+    private byte[] copyContents() {
+        if (contents == null) {
+            return new byte[0];
+        }
+
+        byte[] bytes = new byte[contents.readableBytes()];
+        contents.getBytes(contents.readerIndex(), bytes);
+
+        return bytes;
+    }
+}
@@ -22,10 +22,13 @@ import net.lightbody.bmp.core.har.HarPostData;
 import net.lightbody.bmp.core.har.HarPostDataParam;
 import net.lightbody.bmp.core.har.HarRequest;
 import net.lightbody.bmp.core.har.HarResponse;
+import net.lightbody.bmp.core.har.store.HarContentStore;
+import net.lightbody.bmp.exception.HarContentStoreException;
 import net.lightbody.bmp.exception.UnsupportedCharsetException;
 import net.lightbody.bmp.filters.support.HttpConnectTiming;
 import net.lightbody.bmp.filters.util.HarCaptureUtil;
 import net.lightbody.bmp.proxy.CaptureType;
+import net.lightbody.bmp.proxy.HarContentProcessor;
 import net.lightbody.bmp.util.BrowserMobHttpUtil;
 import org.littleshoot.proxy.impl.ProxyUtils;
 import org.slf4j.Logger;
@@ -76,6 +79,16 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
      */
     private final EnumSet<CaptureType> dataToCapture;
 
+    /**
+     * Store for captured response bodies, or null to keep response bodies in the HAR as Strings.
+     */
+    private final HarContentStore contentStore;
+
+    /**
+     * Processor for captured response content, or null to process response content on the thread that receives the response.
+     */
+    private final HarContentProcessor contentProcessor;
+
     /**
      * Populated by proxyToServerResolutionStarted when DNS resolution starts. If any previous filters already resolved the address, their resolution time
      * will not be included in this time.
@@ -135,6 +148,29 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
      *                      captured (see {@link net.lightbody.bmp.proxy.CaptureType} for information on data collected for each CaptureType)
      */
     public HarCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, Har har, String currentPageRef, Set<CaptureType> dataToCapture) {
+        this(originalRequest, ctx, har, currentPageRef, dataToCapture, null);
+    }
+
+    /**
+     * Create a new instance of the HarCaptureFilter that will keep captured response bodies in the specified content store, rather
+     * than as Strings in the HAR. See {@link #HarCaptureFilter(HttpRequest, ChannelHandlerContext, Har, String, Set)}.
+     *
+     * @param contentStore store for captured response bodies, or null to keep response bodies in the HAR as Strings
+     */
+    public HarCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, Har har, String currentPageRef, Set<CaptureType> dataToCapture,
+                            HarContentStore contentStore) {
+        this(originalRequest, ctx, har, currentPageRef, dataToCapture, contentStore, null);
+    }
+
+    /**
+     * Create a new instance of the HarCaptureFilter that will decompress and decode captured response content using the specified
+     * content processor, rather than on the thread that receives the response. See
+     * {@link #HarCaptureFilter(HttpRequest, ChannelHandlerContext, Har, String, Set, HarContentStore)}.
+     *
+     * @param contentProcessor processor for captured response content, or null to process content when the response is received
+     */
+    public HarCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, Har har, String currentPageRef, Set<CaptureType> dataToCapture,
+                            HarContentStore contentStore, HarContentProcessor contentProcessor) {
         super(originalRequest, ctx);
 
         if (har == null) {
@@ -157,19 +193,22 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         // the corresponding filter methods are invoked. to save time and memory, only set up the capturing filters when
         // we actually need to capture the data.
         if (this.dataToCapture.contains(CaptureType.REQUEST_CONTENT) || this.dataToCapture.contains(CaptureType.REQUEST_BINARY_CONTENT)) {
-            requestCaptureFilter = new ClientRequestCaptureFilter(originalRequest);
+            requestCaptureFilter = new ClientRequestCaptureFilter(originalRequest, ctx);
         } else {
             requestCaptureFilter = null;
         }
 
         if (this.dataToCapture.contains(CaptureType.RESPONSE_CONTENT) || this.dataToCapture.contains(CaptureType.RESPONSE_BINARY_CONTENT)) {
-            responseCaptureFilter = new ServerResponseCaptureFilter(originalRequest, true);
+            responseCaptureFilter = new ServerResponseCaptureFilter(originalRequest, ctx, true, contentProcessor != null);
         } else {
             responseCaptureFilter = null;
         }
 
         this.har = har;
 
+        this.contentStore = contentStore;
+        this.contentProcessor = contentProcessor;
+
         this.harEntry = new HarEntry(currentPageRef);
     }
 
@@ -264,7 +303,18 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
 
         if (httpObject instanceof LastHttpContent) {
             if (dataToCapture.contains(CaptureType.RESPONSE_CONTENT)) {
-                captureResponseContent(responseCaptureFilter.getHttpResponse(), responseCaptureFilter.getFullResponseContents());
+                if (contentProcessor != null) {
+                    // decompress and decode the content after the response has been forwarded to the client
+                    contentProcessor.process(har, harEntry, new Runnable() {
+                        @Override
+                        public void run() {
+                            responseCaptureFilter.captureFullResponseContents();
+                            captureResponseContent(responseCaptureFilter.getHttpResponse(), responseCaptureFilter.getFullResponseContents());
+                        }
+                    });
+                } else {
+                    captureResponseContent(responseCaptureFilter.getHttpResponse(), responseCaptureFilter.getFullResponseContents());
+                }
             }
 
             harEntry.getResponse().setBodySize(responseBodySize.get());
@@ -275,6 +325,10 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
 
     @Override
     public void serverToProxyResponseTimedOut() {
+        if (responseCaptureFilter != null) {
+            responseCaptureFilter.serverToProxyResponseTimedOut();
+        }
+
         // replace any existing HarResponse that was created if the server sent a partial response
         HarResponse response = HarCaptureUtil.createHarResponseForFailure();
         harEntry.setResponse(response);
@@ -474,16 +528,42 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         }
 
         if (!forceBinary && BrowserMobHttpUtil.hasTextualContent(contentType)) {
-            String text = BrowserMobHttpUtil.getContentAsString(fullMessage, charset);
-            harEntry.getResponse().getContent().setText(text);
+            if (!storeResponseContent(fullMessage, charset)) {
+                String text = BrowserMobHttpUtil.getContentAsString(fullMessage, charset);
+                harEntry.getResponse().getContent().setText(text);
+            }
         } else if (dataToCapture.contains(CaptureType.RESPONSE_BINARY_CONTENT)) {
-            harEntry.getResponse().getContent().setText(BaseEncoding.base64().encode(fullMessage));
+            if (!storeResponseContent(fullMessage, null)) {
+                harEntry.getResponse().getContent().setText(BaseEncoding.base64().encode(fullMessage));
+            }
             harEntry.getResponse().getContent().setEncoding("base64");
         }
 
         harEntry.getResponse().getContent().setSize(fullMessage.length);
     }
 
+    /**
+     * Stores the response body in the content store, if one is configured. The body will be decoded using the specified charset, or
+     * base64 encoded if the charset is null, when the HAR is serialized.
+     *
+     * @return true if the body was stored, false if there is no content store or the body could not be stored
+     */
+    private boolean storeResponseContent(byte[] fullMessage, Charset charset) {
+        if (contentStore == null) {
+            return false;
+        }
+
+        try {
+            harEntry.getResponse().getContent().setText(contentStore.store(fullMessage), charset);
+
+            return true;
+        } catch (HarContentStoreException e) {
+            log.warn("Unable to store response content from {} in content store. Content will be captured in the HAR directly.", originalRequest.getUri(), e);
+
+            return false;
+        }
+    }
+
     protected void captureResponse(HttpResponse httpResponse) {
         HarResponse response = new HarResponse(httpResponse.getStatus().code(), httpResponse.getStatus().reasonPhrase(), httpResponse.getProtocolVersion().text());
         harEntry.setResponse(response);
@@ -0,0 +1,150 @@
+package net.lightbody.bmp.filters;
+
+import com.google.common.collect.ImmutableSet;
+import io.netty.handler.codec.http.HttpRequest;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which HTTP exchanges a filter applies to, based on the request method, the request URL, and the Content-Type of the
+ * message. A matcher with no restrictions matches every exchange. Restrictions can be added by starting with {@link #matchAll()}
+ * and calling the various with() methods. For example, to match HTML pages on a single host:
+ * <p/>
+ * <code>
+ *      HttpMessageMatcher matcher = HttpMessageMatcher.matchAll()
+ *              .withMethods("GET")
+ *              .withUrlPattern("https?://www\\.example\\.com/.*")
+ *              .withContentTypes("text/html");
+ * </code>
+ * <p/>
+ * Content types match the media type of the Content-Type header by prefix, ignoring case and parameters, so "text/" will match
+ * "text/html; charset=utf-8". When content types are specified, messages without a Content-Type header do not match.
+ * <p/>
+ * <b>Note:</b> This class is immutable, so calls to the with() methods will return a new instance, rather than modifying the existing instance.
+ */
+public class HttpMessageMatcher {
+    private static final HttpMessageMatcher MATCH_ALL = new HttpMessageMatcher(ImmutableSet.<String>of(), null, ImmutableSet.<String>of());
+
+    /**
+     * Upper-case HTTP methods to match. An empty set matches all methods.
+     */
+    private final Set<String> methods;
+
+    /**
+     * Pattern the full request URL must match. A null pattern matches all URLs.
+     */
+    private final Pattern urlPattern;
+
+    /**
+     * Lower-case media type prefixes to match. An empty set matches all messages, including messages without a Content-Type.
+     */
+    private final Set<String> contentTypes;
+
+    protected HttpMessageMatcher(Set<String> methods, Pattern urlPattern, Set<String> contentTypes) {
+        this.methods = methods;
+        this.urlPattern = urlPattern;
+        this.contentTypes = contentTypes;
+    }
+
+    /**
+     * Returns a matcher that matches every HTTP exchange.
+     */
+    public static HttpMessageMatcher matchAll() {
+        return MATCH_ALL;
+    }
+
+    /**
+     * Returns a new matcher that only matches requests using one of the specified HTTP methods, in addition to the restrictions
+     * of this matcher. Replaces any methods previously specified.
+     *
+     * @param methods HTTP methods to match, e.g. "GET"
+     * @return a new HttpMessageMatcher
+     */
+    public HttpMessageMatcher withMethods(String... methods) {
+        ImmutableSet.Builder<String> upperCaseMethods = ImmutableSet.builder();
+        for (String method : methods) {
+            upperCaseMethods.add(method.toUpperCase(Locale.US));
+        }
+
+        return new HttpMessageMatcher(upperCaseMethods.build(), urlPattern, contentTypes);
+    }
+
+    /**
+     * Returns a new matcher that only matches requests whose full URL matches the specified regular expression, in addition to
+     * the restrictions of this matcher. Replaces any URL pattern previously specified.
+     *
+     * @param urlPattern regular expression the entire URL must match
+     * @return a new HttpMessageMatcher
+     * @throws java.util.regex.PatternSyntaxException if the pattern is not a valid regular expression
+     */
+    public HttpMessageMatcher withUrlPattern(String urlPattern) {
+        return new HttpMessageMatcher(methods, Pattern.compile(urlPattern), contentTypes);
+    }
+
+    /**
+     * Returns a new matcher that only matches messages whose Content-Type starts with one of the specified media types, in addition
+     * to the restrictions of this matcher. Replaces any content types previously specified.
+     *
+     * @param contentTypes media types or media type prefixes to match, e.g. "text/html" or "image/"
+     * @return a new HttpMessageMatcher
+     */
+    public HttpMessageMatcher withContentTypes(String... contentTypes) {
+        ImmutableSet.Builder<String> lowerCaseContentTypes = ImmutableSet.builder();
+        for (String contentType : contentTypes) {
+            lowerCaseContentTypes.add(contentType.toLowerCase(Locale.US));
+        }
+
+        return new HttpMessageMatcher(methods, urlPattern, lowerCaseContentTypes.build());
+    }
+
+    /**
+     * Returns true if the method and URL of the request match this matcher. The Content-Type is not considered.
+     *
+     * @param request the request to match
+     * @param url the full URL of the request
+     * @return true if the request's method and URL match
+     */
+    public boolean matchesRequest(HttpRequest request, String url) {
+        if (!methods.isEmpty() && !methods.contains(request.getMethod().name().toUpperCase(Locale.US))) {
+            return false;
+        }
+
+        return urlPattern == null || (url != null && urlPattern.matcher(url).matches());
+    }
+
+    /**
+     * Returns true if the Content-Type header value matches this matcher.
+     *
+     * @param contentTypeHeader value of the Content-Type header, or null if the message does not have a Content-Type
+     * @return true if the content type matches
+     */
+    public boolean matchesContentType(String contentTypeHeader) {
+        if (contentTypes.isEmpty()) {
+            return true;
+        }
+
+        if (contentTypeHeader == null) {
+            return false;
+        }
+
+        String mediaType = contentTypeHeader.trim().toLowerCase(Locale.US);
+        for (String contentType : contentTypes) {
+            if (mediaType.startsWith(contentType)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpMessageMatcher{" +
+                "methods=" + methods +
+                ", urlPattern=" + urlPattern +
+                ", contentTypes=" + contentTypes +
+                '}';
+    }
+}
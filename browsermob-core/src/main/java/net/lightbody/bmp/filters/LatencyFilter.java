@@ -1,25 +1,39 @@
 package net.lightbody.bmp.filters;
 
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
+import io.netty.util.ReferenceCountUtil;
 import org.littleshoot.proxy.HttpFiltersAdapter;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Queue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Adds latency to a response before sending it to the client. This filter always adds the specified latency, even if the latency
  * between the proxy and the remote server already exceeds this value.
+ * <p/>
+ * The latency is added without blocking the event loop: instead of sleeping, the response and any subsequent writes to the
+ * client are held by a handler in the client channel's pipeline, and are released by a task scheduled on the channel's
+ * event loop once the latency has elapsed. Other connections served by the same event loop are not affected.
  */
 public class LatencyFilter extends HttpFiltersAdapter {
-    private static final Logger log = LoggerFactory.getLogger(HttpFiltersAdapter.class);
+    /**
+     * Name of the {@link ResponseDelayHandler} in the client channel's pipeline.
+     */
+    private static final String RESPONSE_DELAY_HANDLER_NAME = "bmpResponseDelay";
 
     private final int latencyMs;
 
-    public LatencyFilter(HttpRequest originalRequest, int latencyMs) {
-        super(originalRequest);
+    public LatencyFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, int latencyMs) {
+        super(originalRequest, ctx);
 
         this.latencyMs = latencyMs;
     }
@@ -27,17 +41,174 @@ public class LatencyFilter extends HttpFiltersAdapter {
     @Override
     public HttpObject proxyToClientResponse(HttpObject httpObject) {
         if (httpObject instanceof HttpResponse) {
-            if (latencyMs > 0) {
-                try {
-                    TimeUnit.MILLISECONDS.sleep(latencyMs);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+            if (latencyMs > 0 && ctx != null) {
+                getResponseDelayHandler(ctx.pipeline()).delayNextResponse(latencyMs);
+            }
+        }
+
+        return super.proxyToClientResponse(httpObject);
+    }
+
+    /**
+     * Returns the {@link ResponseDelayHandler} for the specified client pipeline, adding it to the end of the pipeline if it
+     * does not already exist. Since LittleProxy writes to the client using the channel (rather than a handler context), writes
+     * begin at the end of the pipeline, so the handler will see HttpObjects before they are encoded.
+     */
+    private static ResponseDelayHandler getResponseDelayHandler(ChannelPipeline pipeline) {
+        // proxyToClientResponse may be invoked on a proxy-to-server thread, so guard against adding the handler twice
+        synchronized (pipeline) {
+            ResponseDelayHandler handler = (ResponseDelayHandler) pipeline.get(RESPONSE_DELAY_HANDLER_NAME);
+            if (handler == null) {
+                handler = new ResponseDelayHandler();
+                pipeline.addLast(RESPONSE_DELAY_HANDLER_NAME, handler);
+            }
+
+            return handler;
+        }
+    }
+
+    /**
+     * Holds the next HttpResponse written to the channel, and every write and close that follows it, until the response's
+     * delay has elapsed. Writes are released in the order they were made. Except for {@link #delayNextResponse(long)}, all
+     * methods are invoked on the channel's event loop, so the queue of pending writes does not need to be thread-safe.
+     */
+    private static class ResponseDelayHandler extends ChannelDuplexHandler {
+        /**
+         * Delay to apply to the next HttpResponse written to the channel. Set by the filter, which may be running on a different
+         * thread than the channel's event loop.
+         */
+        private final AtomicLong nextResponseDelayMs = new AtomicLong();
+
+        private final Queue<PendingWrite> pendingWrites = new ArrayDeque<>();
+
+        /**
+         * True while a delay is in effect and writes are being held.
+         */
+        private boolean delaying;
+
+        void delayNextResponse(long delayMs) {
+            nextResponseDelayMs.set(delayMs);
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            long delayMs = 0;
+            if (msg instanceof HttpResponse) {
+                delayMs = nextResponseDelayMs.getAndSet(0);
+            }
+
+            if (delaying) {
+                // a previous response is still being delayed; this write (and its own delay, if any) must wait behind it
+                pendingWrites.add(new PendingWrite(msg, promise, delayMs));
+            } else if (delayMs > 0) {
+                pendingWrites.add(new PendingWrite(msg, promise, 0));
+                startDelay(ctx, delayMs);
+            } else {
+                ctx.write(msg, promise);
+            }
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            // held writes are flushed when they are released, so it is always safe to flush writes that have already been passed on
+            ctx.flush();
+        }
+
+        @Override
+        public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+            if (delaying) {
+                // don't close the connection until the delayed response has been written
+                pendingWrites.add(PendingWrite.close(promise));
+            } else {
+                ctx.close(promise);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            discardPendingWrites();
+
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+            discardPendingWrites();
+        }
+
+        private void startDelay(final ChannelHandlerContext ctx, long delayMs) {
+            delaying = true;
+
+            ctx.executor().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    releasePendingWrites(ctx);
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
 
-                    log.warn("Interrupted while adding latency to response", e);
+        /**
+         * Writes held messages until the queue is empty or until reaching a message that has its own delay, in which case a new
+         * delay is started for that message.
+         */
+        private void releasePendingWrites(ChannelHandlerContext ctx) {
+            delaying = false;
+
+            PendingWrite pendingWrite;
+            while ((pendingWrite = pendingWrites.peek()) != null) {
+                if (pendingWrite.delayMs > 0) {
+                    long delayMs = pendingWrite.delayMs;
+                    pendingWrite.delayMs = 0;
+
+                    startDelay(ctx, delayMs);
+
+                    break;
+                }
+
+                pendingWrites.remove();
+
+                if (pendingWrite.close) {
+                    ctx.flush();
+                    ctx.close(pendingWrite.promise);
+                } else {
+                    ctx.write(pendingWrite.msg, pendingWrite.promise);
                 }
             }
+
+            ctx.flush();
         }
 
-        return super.proxyToClientResponse(httpObject);
+        private void discardPendingWrites() {
+            PendingWrite pendingWrite;
+            while ((pendingWrite = pendingWrites.poll()) != null) {
+                if (pendingWrite.msg != null) {
+                    ReferenceCountUtil.release(pendingWrite.msg);
+                }
+
+                pendingWrite.promise.tryFailure(new ClosedChannelException());
+            }
+        }
+    }
+
+    private static class PendingWrite {
+        private final Object msg;
+        private final ChannelPromise promise;
+        private final boolean close;
+        private long delayMs;
+
+        PendingWrite(Object msg, ChannelPromise promise, long delayMs) {
+            this(msg, promise, delayMs, false);
+        }
+
+        private PendingWrite(Object msg, ChannelPromise promise, long delayMs, boolean close) {
+            this.msg = msg;
+            this.promise = promise;
+            this.delayMs = delayMs;
+            this.close = close;
+        }
+
+        static PendingWrite close(ChannelPromise promise) {
+            return new PendingWrite(null, promise, 0, true);
+        }
     }
 }
@@ -0,0 +1,19 @@
+package net.lightbody.bmp.filters;
+
+import org.littleshoot.proxy.HttpFiltersSource;
+
+/**
+ * An {@link HttpFiltersSource} whose filters only apply to HTTP exchanges that match an {@link HttpMessageMatcher}. The proxy
+ * uses the matcher to decide whether a response needs to be aggregated for this source: the source's
+ * {@link #getMaximumResponseBufferSizeInBytes()} only applies to responses that match. Filter sources that do not implement
+ * this interface cause every response to be aggregated when their maximum response buffer size is greater than 0.
+ * <p/>
+ * <b>Note:</b> Request aggregation cannot be decided per exchange, since the proxy must decide whether to aggregate requests before
+ * they are received. The source's {@link #getMaximumRequestBufferSizeInBytes()} applies to all requests.
+ */
+public interface MatchingHttpFiltersSource extends HttpFiltersSource {
+    /**
+     * Returns the matcher that determines which HTTP exchanges this source's filters apply to. Must not return null.
+     */
+    HttpMessageMatcher getMatcher();
+}
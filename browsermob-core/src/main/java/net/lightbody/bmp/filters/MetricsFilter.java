@@ -0,0 +1,130 @@
+package net.lightbody.bmp.filters;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import net.lightbody.bmp.proxy.metrics.ProxyMetrics;
+import org.littleshoot.proxy.HttpFiltersAdapter;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Records request counts, bytes transferred, upstream latencies, and errors in the proxy's {@link ProxyMetrics}. Connection
+ * and TLS handshake latencies for HTTPS requests are recorded by the filter for the HTTP CONNECT, since the connection to the
+ * server is established before any requests are sent over it.
+ * <p/>
+ * Content of HTTPS requests that are not man-in-the-middled is not visible to the proxy, so it is not included in byte counts.
+ */
+public class MetricsFilter extends HttpFiltersAdapter {
+    private final ProxyMetrics metrics;
+
+    private volatile long dnsResolutionStartedNanos;
+    private volatile long connectionStartedNanos;
+    private volatile long sslHandshakeStartedNanos;
+    private volatile long requestSentNanos;
+
+    public MetricsFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, ProxyMetrics metrics) {
+        super(originalRequest, ctx);
+
+        this.metrics = metrics;
+    }
+
+    @Override
+    public HttpResponse clientToProxyRequest(HttpObject httpObject) {
+        if (httpObject instanceof HttpRequest) {
+            metrics.requestReceived();
+        }
+
+        if (httpObject instanceof HttpContent) {
+            metrics.requestBytesReceived(((HttpContent) httpObject).content().readableBytes());
+        }
+
+        return null;
+    }
+
+    @Override
+    public HttpObject serverToProxyResponse(HttpObject httpObject) {
+        if (httpObject instanceof HttpResponse && ((HttpResponse) httpObject).getStatus().code() >= 500) {
+            metrics.error(ProxyMetrics.ErrorType.SERVER_ERROR);
+        }
+
+        if (httpObject instanceof HttpContent) {
+            metrics.responseBytesReceived(((HttpContent) httpObject).content().readableBytes());
+        }
+
+        return httpObject;
+    }
+
+    @Override
+    public InetSocketAddress proxyToServerResolutionStarted(String resolvingServerHostAndPort) {
+        dnsResolutionStartedNanos = System.nanoTime();
+
+        return null;
+    }
+
+    @Override
+    public void proxyToServerResolutionSucceeded(String serverHostAndPort, InetSocketAddress resolvedRemoteAddress) {
+        if (dnsResolutionStartedNanos > 0L) {
+            metrics.dnsResolved(System.nanoTime() - dnsResolutionStartedNanos);
+        }
+    }
+
+    @Override
+    public void proxyToServerResolutionFailed(String hostAndPort) {
+        metrics.error(ProxyMetrics.ErrorType.DNS_RESOLUTION_FAILED);
+    }
+
+    @Override
+    public void proxyToServerConnectionStarted() {
+        connectionStartedNanos = System.nanoTime();
+    }
+
+    @Override
+    public void proxyToServerConnectionSSLHandshakeStarted() {
+        sslHandshakeStartedNanos = System.nanoTime();
+
+        // the TCP connection is established when the handshake starts. LittleProxy only reports success after the handshake.
+        if (connectionStartedNanos > 0L) {
+            metrics.connected(sslHandshakeStartedNanos - connectionStartedNanos);
+        }
+    }
+
+    @Override
+    public void proxyToServerConnectionSucceeded(ChannelHandlerContext serverCtx) {
+        long connectionSucceededNanos = System.nanoTime();
+
+        if (sslHandshakeStartedNanos > 0L) {
+            metrics.tlsHandshakeCompleted(connectionSucceededNanos - sslHandshakeStartedNanos);
+        } else if (connectionStartedNanos > 0L) {
+            // plain HTTP connection, so the connection succeeded as soon as the TCP connection was established
+            metrics.connected(connectionSucceededNanos - connectionStartedNanos);
+        }
+    }
+
+    @Override
+    public void proxyToServerConnectionFailed() {
+        metrics.error(ProxyMetrics.ErrorType.CONNECTION_FAILED);
+    }
+
+    @Override
+    public void proxyToServerRequestSent() {
+        requestSentNanos = System.nanoTime();
+    }
+
+    @Override
+    public void serverToProxyResponseReceiving() {
+        // the server may begin responding before the request has been fully sent, in which case there is no time to first byte
+        if (requestSentNanos > 0L) {
+            metrics.firstByteReceived(System.nanoTime() - requestSentNanos);
+
+            requestSentNanos = 0L;
+        }
+    }
+
+    @Override
+    public void serverToProxyResponseTimedOut() {
+        metrics.error(ProxyMetrics.ErrorType.RESPONSE_TIMED_OUT);
+    }
+}
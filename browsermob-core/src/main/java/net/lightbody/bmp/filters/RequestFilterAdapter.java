@@ -2,6 +2,7 @@ package net.lightbody.bmp.filters;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.FullHttpMessage;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
@@ -12,15 +13,21 @@ import org.littleshoot.proxy.HttpFiltersSourceAdapter;
 
 /**
  * A filter adapter for {@link RequestFilter} implementations. Executes the filter when the {@link HttpFilters#clientToProxyRequest(HttpObject)}
- * method is invoked.
+ * method is invoked, if the request matches the filter's {@link HttpMessageMatcher}.
  */
 public class RequestFilterAdapter extends HttpsAwareFiltersAdapter {
     private final RequestFilter requestFilter;
+    private final HttpMessageMatcher matcher;
 
     public RequestFilterAdapter(HttpRequest originalRequest, ChannelHandlerContext ctx, RequestFilter requestFilter) {
+        this(originalRequest, ctx, requestFilter, HttpMessageMatcher.matchAll());
+    }
+
+    public RequestFilterAdapter(HttpRequest originalRequest, ChannelHandlerContext ctx, RequestFilter requestFilter, HttpMessageMatcher matcher) {
         super(originalRequest, ctx);
 
         this.requestFilter = requestFilter;
+        this.matcher = matcher;
     }
 
     @Override
@@ -30,6 +37,11 @@ public class RequestFilterAdapter extends HttpsAwareFiltersAdapter {
         if (httpObject instanceof HttpRequest) {
             HttpRequest httpRequest = (HttpRequest) httpObject;
 
+            String url = getFullUrl(httpRequest);
+            if (!matcher.matchesRequest(httpRequest, url) || !matcher.matchesContentType(HttpHeaders.getHeader(httpRequest, HttpHeaders.Names.CONTENT_TYPE))) {
+                return null;
+            }
+
             HttpMessageContents contents;
             if (httpObject instanceof FullHttpMessage) {
                 FullHttpMessage httpContent = (FullHttpMessage) httpObject;
@@ -39,7 +51,7 @@ public class RequestFilterAdapter extends HttpsAwareFiltersAdapter {
                 contents = null;
             }
 
-            HttpMessageInfo messageInfo = new HttpMessageInfo(originalRequest, ctx, isHttps(), getFullUrl(httpRequest), getOriginalUrl());
+            HttpMessageInfo messageInfo = new HttpMessageInfo(originalRequest, ctx, isHttps(), url, getOriginalUrl());
 
             HttpResponse response = requestFilter.filterRequest(httpRequest, contents, messageInfo);
             if (response != null) {
@@ -52,13 +64,16 @@ public class RequestFilterAdapter extends HttpsAwareFiltersAdapter {
 
     /**
      * A {@link HttpFiltersSourceAdapter} for {@link RequestFilterAdapter}s. By default, this FilterSource enables HTTP message aggregation
-     * and sets a maximum request buffer size of 2 MiB.
+     * and sets a maximum request buffer size of 2 MiB. When the FilterSource is created with an {@link HttpMessageMatcher}, the filter is
+     * only invoked for requests that match. (<b>Note:</b> Unlike responses, requests are aggregated regardless of the matcher. See
+     * {@link MatchingHttpFiltersSource} for details.)
      */
-    public static class FilterSource extends HttpFiltersSourceAdapter {
+    public static class FilterSource extends HttpFiltersSourceAdapter implements MatchingHttpFiltersSource {
         private static final int DEFAULT_MAXIMUM_REQUEST_BUFFER_SIZE = 2097152;
 
         private final RequestFilter filter;
         private final int maximumRequestBufferSizeInBytes;
+        private final HttpMessageMatcher matcher;
 
         /**
          * Creates a new filter source that will invoke the specified filter and uses the {@link #DEFAULT_MAXIMUM_REQUEST_BUFFER_SIZE} as
@@ -67,8 +82,18 @@ public class RequestFilterAdapter extends HttpsAwareFiltersAdapter {
          * @param filter RequestFilter to invoke
          */
         public FilterSource(RequestFilter filter) {
-            this.filter = filter;
-            this.maximumRequestBufferSizeInBytes = DEFAULT_MAXIMUM_REQUEST_BUFFER_SIZE;
+            this(filter, DEFAULT_MAXIMUM_REQUEST_BUFFER_SIZE);
+        }
+
+        /**
+         * Creates a new filter source that will invoke the specified filter for requests that match the matcher, and uses the
+         * {@link #DEFAULT_MAXIMUM_REQUEST_BUFFER_SIZE} as the maximum buffer size.
+         *
+         * @param filter RequestFilter to invoke
+         * @param matcher requests to invoke the filter for
+         */
+        public FilterSource(RequestFilter filter, HttpMessageMatcher matcher) {
+            this(filter, DEFAULT_MAXIMUM_REQUEST_BUFFER_SIZE, matcher);
         }
 
         /**
@@ -82,13 +107,32 @@ public class RequestFilterAdapter extends HttpsAwareFiltersAdapter {
          * @param maximumRequestBufferSizeInBytes maximum buffer size when aggregating Requests for filtering
          */
         public FilterSource(RequestFilter filter, int maximumRequestBufferSizeInBytes) {
+            this(filter, maximumRequestBufferSizeInBytes, HttpMessageMatcher.matchAll());
+        }
+
+        /**
+         * Creates a new filter source that will invoke the specified filter for requests that match the matcher, and uses the
+         * maximumRequestBufferSizeInBytes as the maximum buffer size. The matcher's content types are compared to the Content-Type
+         * of the request.
+         *
+         * @param filter RequestFilter to invoke
+         * @param maximumRequestBufferSizeInBytes maximum buffer size when aggregating Requests for filtering
+         * @param matcher requests to invoke the filter for
+         */
+        public FilterSource(RequestFilter filter, int maximumRequestBufferSizeInBytes, HttpMessageMatcher matcher) {
             this.filter = filter;
             this.maximumRequestBufferSizeInBytes = maximumRequestBufferSizeInBytes;
+            this.matcher = matcher;
         }
 
         @Override
         public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
-            return new RequestFilterAdapter(originalRequest, ctx, filter);
+            return new RequestFilterAdapter(originalRequest, ctx, filter, matcher);
+        }
+
+        @Override
+        public HttpMessageMatcher getMatcher() {
+            return matcher;
         }
 
         @Override
@@ -0,0 +1,183 @@
+package net.lightbody.bmp.filters;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.AttributeKey;
+import org.littleshoot.proxy.HttpFiltersSource;
+
+/**
+ * Aggregates responses only for the HTTP exchanges that need it. LittleProxy decides whether to aggregate responses once per
+ * server connection, based on a single maximum buffer size, so a filter that needs the contents of one kind of response would
+ * otherwise force every response to be buffered. Instead, the proxy tells LittleProxy not to aggregate responses, and this filter
+ * adds a handler to each server connection's pipeline that examines each response as it arrives. If any filter source that
+ * matches the exchange (see {@link MatchingHttpFiltersSource}) has a maximum response buffer size greater than 0, the handler
+ * decompresses and aggregates that response; all other responses are streamed to the client.
+ */
+public class ResponseAggregationFilter extends HttpsAwareFiltersAdapter implements ModifiedRequestAwareFilter {
+    /**
+     * Name of the {@link ResponseAggregationHandler} in the server channel's pipeline.
+     */
+    private static final String RESPONSE_AGGREGATION_HANDLER_NAME = "bmpResponseAggregation";
+
+    private static final String INFLATER_HANDLER_NAME = "bmpInflater";
+    private static final String AGGREGATOR_HANDLER_NAME = "bmpAggregator";
+
+    /**
+     * Name of LittleProxy's HttpResponseDecoder in the server channel's pipeline. The aggregation handler is added immediately after it.
+     */
+    private static final String DECODER_HANDLER_NAME = "decoder";
+
+    /**
+     * The request most recently sent to a server on behalf of a client connection. Set on the client channel's context, since
+     * LittleProxy creates a new filter instance for each request, but reuses server connections.
+     */
+    private static final AttributeKey<CurrentRequest> CURRENT_REQUEST_ATTRIBUTE = AttributeKey.valueOf("bmpResponseAggregationRequest");
+
+    private final Iterable<HttpFiltersSource> filterFactories;
+
+    /**
+     * The final HttpRequest sent to the server, reflecting all modifications from request filters.
+     */
+    private volatile HttpRequest modifiedHttpRequest;
+
+    public ResponseAggregationFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, Iterable<HttpFiltersSource> filterFactories) {
+        super(originalRequest, ctx);
+
+        this.filterFactories = filterFactories;
+    }
+
+    @Override
+    public HttpResponse proxyToServerRequest(HttpObject httpObject) {
+        if (httpObject instanceof HttpRequest && modifiedHttpRequest != null) {
+            ctx.attr(CURRENT_REQUEST_ATTRIBUTE).set(new CurrentRequest(modifiedHttpRequest, getFullUrl(modifiedHttpRequest)));
+        }
+
+        return null;
+    }
+
+    @Override
+    public void proxyToServerConnectionSucceeded(ChannelHandlerContext serverCtx) {
+        ChannelPipeline pipeline = serverCtx.pipeline();
+
+        // guard against adding the handler twice, since the server connection may be reused for subsequent requests
+        synchronized (pipeline) {
+            if (pipeline.get(RESPONSE_AGGREGATION_HANDLER_NAME) == null && pipeline.get(DECODER_HANDLER_NAME) != null) {
+                pipeline.addAfter(DECODER_HANDLER_NAME, RESPONSE_AGGREGATION_HANDLER_NAME, new ResponseAggregationHandler(ctx, filterFactories));
+            }
+        }
+    }
+
+    @Override
+    public void setModifiedHttpRequest(HttpRequest modifiedHttpRequest) {
+        this.modifiedHttpRequest = modifiedHttpRequest;
+    }
+
+    /**
+     * Returns the maximum response buffer size of the filter sources that apply to the specified exchange. Filter sources that
+     * do not implement {@link MatchingHttpFiltersSource} apply to every exchange.
+     *
+     * @param filterFactories filter sources to examine
+     * @param request the request sent to the server
+     * @param url the full URL of the request
+     * @param contentType value of the response's Content-Type header, or null if it does not have one
+     * @return maximum response buffer size, or 0 if the response does not need to be aggregated
+     */
+    static int getMaximumResponseBufferSize(Iterable<HttpFiltersSource> filterFactories, HttpRequest request, String url, String contentType) {
+        int maxBufferSize = 0;
+        for (HttpFiltersSource source : filterFactories) {
+            int responseBufferSize = source.getMaximumResponseBufferSizeInBytes();
+            if (responseBufferSize <= maxBufferSize) {
+                continue;
+            }
+
+            if (source instanceof MatchingHttpFiltersSource) {
+                HttpMessageMatcher matcher = ((MatchingHttpFiltersSource) source).getMatcher();
+                if (!matcher.matchesRequest(request, url) || !matcher.matchesContentType(contentType)) {
+                    continue;
+                }
+            }
+
+            maxBufferSize = responseBufferSize;
+        }
+
+        return maxBufferSize;
+    }
+
+    /**
+     * Adds a decompressor and aggregator after itself when a response that needs to be aggregated arrives, and removes them once
+     * the response is complete. All methods are invoked on the server channel's event loop.
+     */
+    private static class ResponseAggregationHandler extends ChannelInboundHandlerAdapter {
+        private final ChannelHandlerContext clientCtx;
+        private final Iterable<HttpFiltersSource> filterFactories;
+
+        /**
+         * True while the current response is being aggregated.
+         */
+        private boolean aggregating;
+
+        ResponseAggregationHandler(ChannelHandlerContext clientCtx, Iterable<HttpFiltersSource> filterFactories) {
+            this.clientCtx = clientCtx;
+            this.filterFactories = filterFactories;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof HttpResponse && !aggregating) {
+                CurrentRequest currentRequest = clientCtx.attr(CURRENT_REQUEST_ATTRIBUTE).get();
+                if (currentRequest != null) {
+                    String contentType = HttpHeaders.getHeader((HttpResponse) msg, HttpHeaders.Names.CONTENT_TYPE);
+
+                    int bufferSize = getMaximumResponseBufferSize(filterFactories, currentRequest.request, currentRequest.url, contentType);
+                    if (bufferSize > 0) {
+                        ctx.pipeline().addAfter(ctx.name(), INFLATER_HANDLER_NAME, new HttpContentDecompressor());
+                        ctx.pipeline().addAfter(INFLATER_HANDLER_NAME, AGGREGATOR_HANDLER_NAME, new HttpObjectAggregator(bufferSize));
+
+                        aggregating = true;
+                    }
+                }
+            }
+
+            if (aggregating && msg instanceof LastHttpContent) {
+                // the aggregator emits the complete response while handling the last chunk, so it can be removed afterward
+                try {
+                    ctx.fireChannelRead(msg);
+                } finally {
+                    stopAggregating(ctx.pipeline());
+                }
+            } else {
+                ctx.fireChannelRead(msg);
+            }
+        }
+
+        private void stopAggregating(ChannelPipeline pipeline) {
+            aggregating = false;
+
+            if (pipeline.get(AGGREGATOR_HANDLER_NAME) != null) {
+                pipeline.remove(AGGREGATOR_HANDLER_NAME);
+            }
+
+            if (pipeline.get(INFLATER_HANDLER_NAME) != null) {
+                pipeline.remove(INFLATER_HANDLER_NAME);
+            }
+        }
+    }
+
+    private static class CurrentRequest {
+        private final HttpRequest request;
+        private final String url;
+
+        CurrentRequest(HttpRequest request, String url) {
+            this.request = request;
+            this.url = url;
+        }
+    }
+}
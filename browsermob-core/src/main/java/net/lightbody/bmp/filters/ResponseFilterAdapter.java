@@ -2,6 +2,7 @@ package net.lightbody.bmp.filters;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.FullHttpMessage;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
@@ -12,10 +13,11 @@ import org.littleshoot.proxy.HttpFiltersSourceAdapter;
 
 /**
  * A filter adapter for {@link ResponseFilter} implementations. Executes the filter when the {@link HttpFilters#serverToProxyResponse(HttpObject)}
- * method is invoked.
+ * method is invoked, if the exchange matches the filter's {@link HttpMessageMatcher}.
  */
 public class ResponseFilterAdapter extends HttpsAwareFiltersAdapter implements ModifiedRequestAwareFilter {
     private final ResponseFilter responseFilter;
+    private final HttpMessageMatcher matcher;
 
     /**
      * The final HttpRequest sent to the server, reflecting all modifications from request filters.
@@ -23,9 +25,14 @@ public class ResponseFilterAdapter extends HttpsAwareFiltersAdapter implements M
     private HttpRequest modifiedHttpRequest;
 
     public ResponseFilterAdapter(HttpRequest originalRequest, ChannelHandlerContext ctx, ResponseFilter responseFilter) {
+        this(originalRequest, ctx, responseFilter, HttpMessageMatcher.matchAll());
+    }
+
+    public ResponseFilterAdapter(HttpRequest originalRequest, ChannelHandlerContext ctx, ResponseFilter responseFilter, HttpMessageMatcher matcher) {
         super(originalRequest, ctx);
 
         this.responseFilter = responseFilter;
+        this.matcher = matcher;
     }
 
     @Override
@@ -35,6 +42,11 @@ public class ResponseFilterAdapter extends HttpsAwareFiltersAdapter implements M
         if (httpObject instanceof HttpResponse) {
             HttpResponse httpResponse = (HttpResponse) httpObject;
 
+            String url = getFullUrl(modifiedHttpRequest);
+            if (!matcher.matchesRequest(modifiedHttpRequest, url) || !matcher.matchesContentType(HttpHeaders.getHeader(httpResponse, HttpHeaders.Names.CONTENT_TYPE))) {
+                return super.serverToProxyResponse(httpObject);
+            }
+
             HttpMessageContents contents;
             if (httpObject instanceof FullHttpMessage) {
                 FullHttpMessage httpContent = (FullHttpMessage) httpObject;
@@ -44,7 +56,7 @@ public class ResponseFilterAdapter extends HttpsAwareFiltersAdapter implements M
                 contents = null;
             }
 
-            HttpMessageInfo messageInfo = new HttpMessageInfo(originalRequest, ctx, isHttps(), getFullUrl(modifiedHttpRequest), getOriginalUrl());
+            HttpMessageInfo messageInfo = new HttpMessageInfo(originalRequest, ctx, isHttps(), url, getOriginalUrl());
 
             responseFilter.filterResponse(httpResponse, contents, messageInfo);
         }
@@ -59,13 +71,15 @@ public class ResponseFilterAdapter extends HttpsAwareFiltersAdapter implements M
 
     /**
      * A {@link HttpFiltersSourceAdapter} for {@link ResponseFilterAdapter}s. By default, this FilterSource enables HTTP message aggregation
-     * and sets a maximum response buffer size of 2 MiB.
+     * and sets a maximum response buffer size of 2 MiB. When the FilterSource is created with an {@link HttpMessageMatcher}, the filter is
+     * only invoked, and responses are only aggregated, for exchanges that match.
      */
-    public static class FilterSource extends HttpFiltersSourceAdapter {
+    public static class FilterSource extends HttpFiltersSourceAdapter implements MatchingHttpFiltersSource {
         private static final int DEFAULT_MAXIMUM_RESPONSE_BUFFER_SIZE = 2097152;
 
         private final ResponseFilter filter;
         private final int maximumResponseBufferSizeInBytes;
+        private final HttpMessageMatcher matcher;
 
         /**
          * Creates a new filter source that will invoke the specified filter and uses the {@link #DEFAULT_MAXIMUM_RESPONSE_BUFFER_SIZE} as
@@ -74,28 +88,58 @@ public class ResponseFilterAdapter extends HttpsAwareFiltersAdapter implements M
          * @param filter ResponseFilter to invoke
          */
         public FilterSource(ResponseFilter filter) {
-            this.filter = filter;
-            this.maximumResponseBufferSizeInBytes = DEFAULT_MAXIMUM_RESPONSE_BUFFER_SIZE;
+            this(filter, DEFAULT_MAXIMUM_RESPONSE_BUFFER_SIZE);
+        }
+
+        /**
+         * Creates a new filter source that will invoke the specified filter for responses that match the matcher, and uses the
+         * {@link #DEFAULT_MAXIMUM_RESPONSE_BUFFER_SIZE} as the maximum buffer size.
+         *
+         * @param filter ResponseFilter to invoke
+         * @param matcher responses to invoke the filter for
+         */
+        public FilterSource(ResponseFilter filter, HttpMessageMatcher matcher) {
+            this(filter, DEFAULT_MAXIMUM_RESPONSE_BUFFER_SIZE, matcher);
         }
 
         /**
          * Creates a new filter source that will invoke the specified filter and uses the maximumResponseBufferSizeInBytes as the maximum
          * buffer size. Set maximumResponseBufferSizeInBytes to 0 to disable aggregation. <b>If message aggregation is disabled,
          * the {@link HttpMessageContents} will not be available for modification.</b> (<b>Note:</b> HTTP message aggregation will
-         * be enabled if <i>any</i> filter has a maximum request or response buffer size greater than 0. See
-         * {@link org.littleshoot.proxy.HttpFiltersSource#getMaximumResponseBufferSizeInBytes()} for details.)
+         * be enabled if <i>any</i> filter that matches the exchange has a maximum response buffer size greater than 0. See
+         * {@link MatchingHttpFiltersSource} for details.)
          *
          * @param filter ResponseFilter to invoke
          * @param maximumResponseBufferSizeInBytes maximum buffer size when aggregating responses for filtering
          */
         public FilterSource(ResponseFilter filter, int maximumResponseBufferSizeInBytes) {
+            this(filter, maximumResponseBufferSizeInBytes, HttpMessageMatcher.matchAll());
+        }
+
+        /**
+         * Creates a new filter source that will invoke the specified filter for responses that match the matcher, and uses the
+         * maximumResponseBufferSizeInBytes as the maximum buffer size for those responses. Responses that do not match are not
+         * aggregated on behalf of this filter. The matcher's method and URL pattern are compared to the request sent to the
+         * server, and its content types are compared to the Content-Type of the response.
+         *
+         * @param filter ResponseFilter to invoke
+         * @param maximumResponseBufferSizeInBytes maximum buffer size when aggregating responses for filtering
+         * @param matcher responses to invoke the filter for
+         */
+        public FilterSource(ResponseFilter filter, int maximumResponseBufferSizeInBytes, HttpMessageMatcher matcher) {
             this.filter = filter;
             this.maximumResponseBufferSizeInBytes = maximumResponseBufferSizeInBytes;
+            this.matcher = matcher;
         }
 
         @Override
         public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
-            return new ResponseFilterAdapter(originalRequest, ctx, filter);
+            return new ResponseFilterAdapter(originalRequest, ctx, filter, matcher);
+        }
+
+        @Override
+        public HttpMessageMatcher getMatcher() {
+            return matcher;
         }
 
         @Override
@@ -7,6 +7,7 @@ import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import net.lightbody.bmp.util.HttpUtil;
 import net.lightbody.bmp.proxy.RewriteRule;
+import net.lightbody.bmp.proxy.UrlPatternMatcher;
 import net.lightbody.bmp.util.BrowserMobHttpUtil;
 import org.littleshoot.proxy.impl.ProxyUtils;
 import org.slf4j.Logger;
@@ -14,27 +15,30 @@ import org.slf4j.LoggerFactory;
 
 import java.net.URISyntaxException;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.regex.Matcher;
+import java.util.List;
 
 /**
  * Applies rewrite rules to the specified request. If a rewrite rule matches, the request's URI will be overwritten with the rewritten URI.
- * The filter does not make a defensive copy of the rewrite rule collection, so there is no guarantee
- * that the collection at the time of construction will contain the same values when the filter is actually invoked, if the collection is
- * modified concurrently.
+ * Each matching rule is applied in order to the URL produced by the previous matching rule. The rules are matched using a
+ * {@link UrlPatternMatcher}; when the filter is constructed from a collection of rules, the matcher is built from a snapshot of the
+ * collection at the time of construction.
  */
 public class RewriteUrlFilter extends HttpsAwareFiltersAdapter {
     private static final Logger log = LoggerFactory.getLogger(RewriteUrlFilter.class);
 
-    private final Collection<RewriteRule> rewriteRules;
+    private final UrlPatternMatcher<RewriteRule> rewriteRuleMatcher;
 
     public RewriteUrlFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, Collection<RewriteRule> rewriterules) {
+        this(originalRequest, ctx, UrlPatternMatcher.forRewriteRules(rewriterules));
+    }
+
+    public RewriteUrlFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, UrlPatternMatcher<RewriteRule> rewriteRuleMatcher) {
         super(originalRequest, ctx);
 
-        if (rewriterules != null) {
-            this.rewriteRules = rewriterules;
+        if (rewriteRuleMatcher != null) {
+            this.rewriteRuleMatcher = rewriteRuleMatcher;
         } else {
-            this.rewriteRules = Collections.emptyList();
+            this.rewriteRuleMatcher = UrlPatternMatcher.empty();
         }
     }
 
@@ -52,12 +56,11 @@ public class RewriteUrlFilter extends HttpsAwareFiltersAdapter {
             String rewrittenUrl = originalUrl;
 
             boolean rewroteUri = false;
-            for (RewriteRule rule : rewriteRules) {
-                Matcher matcher = rule.getPattern().matcher(rewrittenUrl);
-                if (matcher.matches()) {
-                    rewrittenUrl = matcher.replaceAll(rule.getReplace());
-                    rewroteUri = true;
-                }
+            List<RewriteRule> rules = rewriteRuleMatcher.getEntries();
+            for (int i = rewriteRuleMatcher.getFirstMatchingIndex(rewrittenUrl, 0); i >= 0; i = rewriteRuleMatcher.getFirstMatchingIndex(rewrittenUrl, i + 1)) {
+                RewriteRule rule = rules.get(i);
+                rewrittenUrl = rule.getPattern().matcher(rewrittenUrl).replaceAll(rule.getReplace());
+                rewroteUri = true;
             }
 
             if (rewroteUri) {
@@ -1,6 +1,8 @@
 package net.lightbody.bmp.filters;
 
-import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaders;
@@ -8,16 +10,17 @@ import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.LastHttpContent;
-import net.lightbody.bmp.util.BrowserMobHttpUtil;
+import net.lightbody.bmp.exception.DecompressionException;
+import net.lightbody.bmp.util.decoder.ContentDecoderRegistry;
+import net.lightbody.bmp.util.decoder.ContentDecompressor;
 import org.littleshoot.proxy.HttpFiltersAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-
 /**
- * This filter captures responses from the server (headers and content). The filter can also decompress contents if desired.
+ * This filter captures responses from the server (headers and content). The filter can also decompress contents if desired,
+ * using the decoders in the default {@link ContentDecoderRegistry}. Unless content processing is deferred, compressed content is
+ * decompressed chunk-by-chunk as it is received. Decompressed content is limited to the registry's maximum decoded size.
  * <p/>
  * The filter can be used in one of three ways: (1) directly, by adding the filter to the filter chain; (2) by subclassing
  * the filter and overriding its filter methods; or (3) by invoking the filter directly from within another filter (see
@@ -33,9 +36,10 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
 
     /**
      * Populated by serverToProxyResponse() as it receives HttpContent responses. If the response is chunked, it will
-     * be populated across multiple calls to proxyToServerResponse().
+     * be populated across multiple calls to proxyToServerResponse(). The content is retained, not copied, until the
+     * LastHttpContent is processed.
      */
-    private final ByteArrayOutputStream rawResponseContents = new ByteArrayOutputStream();
+    private final ContentCaptureBuffer rawResponseContents;
 
     /**
      * Populated when processing the LastHttpContent. If the response is compressed and decompression is requested,
@@ -68,16 +72,62 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
      */
     private final boolean decompressEncodedContent;
 
+    /**
+     * If true, the full response contents are not processed (decompressed) when the LastHttpContent is received, and
+     * {@link #captureFullResponseContents()} must be invoked explicitly.
+     */
+    private final boolean deferContentProcessing;
+
+    /**
+     * Decompresses the response content as it is received, if decompression is requested and content processing is not
+     * deferred. Null if the content is not being decompressed as it is received, or if streaming decompression failed.
+     * Guarded by {@link #decompressorLock}, since it may be closed from the client channel's event loop.
+     */
+    private ContentDecompressor streamingDecompressor;
+
+    private final Object decompressorLock = new Object();
+
+    /**
+     * Closes the streaming decompressor, which holds decoded buffers, if the client channel closes before the response is
+     * complete. Registered when the streaming decompressor is created, and removed when it is finished or closed.
+     */
+    private final ChannelFutureListener closeDecompressorOnClose = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+            closeStreamingDecompressor();
+        }
+    };
+
+    /**
+     * Set to true if streaming decompression fails, so the content is not decompressed a second time.
+     */
+    private volatile boolean streamingDecompressionFailed;
+
     public ServerResponseCaptureFilter(HttpRequest originalRequest, boolean decompressEncodedContent) {
         super(originalRequest);
 
         this.decompressEncodedContent = decompressEncodedContent;
+        this.deferContentProcessing = false;
+        this.rawResponseContents = new ContentCaptureBuffer(null);
     }
 
     public ServerResponseCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, boolean decompressEncodedContent) {
+        this(originalRequest, ctx, decompressEncodedContent, false);
+    }
+
+    /**
+     * Creates a filter that optionally defers processing of the full response contents. When processing is deferred, the raw
+     * contents are still captured when the LastHttpContent is received, but the caller is responsible for invoking
+     * {@link #captureFullResponseContents()} (for example, on another thread) before retrieving the full response contents.
+     *
+     * @param deferContentProcessing true to defer decompression of the full response contents
+     */
+    public ServerResponseCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, boolean decompressEncodedContent, boolean deferContentProcessing) {
         super(originalRequest, ctx);
 
         this.decompressEncodedContent = decompressEncodedContent;
+        this.deferContentProcessing = deferContentProcessing;
+        this.rawResponseContents = new ContentCaptureBuffer(ctx);
     }
 
     @Override
@@ -85,6 +135,10 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
         if (httpObject instanceof HttpResponse) {
             httpResponse = (HttpResponse) httpObject;
             captureContentEncoding(httpResponse);
+
+            if (decompressEncodedContent && !deferContentProcessing && contentEncoding != null) {
+                startStreamingDecompression();
+            }
         }
 
         if (httpObject instanceof HttpContent) {
@@ -96,17 +150,32 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
                 LastHttpContent lastContent = (LastHttpContent) httpContent;
                 captureTrailingHeaders(lastContent);
 
-                captureFullResponseContents();
+                if (deferContentProcessing) {
+                    // copy the raw contents now, so the retained content can be released
+                    rawResponseContents.finish();
+                } else {
+                    captureFullResponseContents();
+                }
             }
         }
 
         return super.serverToProxyResponse(httpObject);
     }
 
+    @Override
+    public void serverToProxyResponseTimedOut() {
+        // the response will never be completed, so release any content retained so far
+        rawResponseContents.release();
+
+        closeStreamingDecompressor();
+
+        super.serverToProxyResponseTimedOut();
+    }
+
     protected void captureFullResponseContents() {
         // start by setting fullResponseContent to the raw, (possibly) compressed byte stream. replace it
-        // with the decompressed bytes if decompression is successful.
-        fullResponseContents = getRawResponseContents();
+        // with the decompressed bytes if decompression is successful. this is the only time the raw contents are copied.
+        fullResponseContents = rawResponseContents.finish();
 
         // if the content is compressed, we need to decompress it. but don't use
         // the netty HttpContentCompressor/Decompressor in the pipeline because we don't actually want it to
@@ -126,15 +195,38 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
     }
 
     protected void decompressContents() {
-        if (contentEncoding.equals(HttpHeaders.Values.GZIP)) {
-            try {
-                fullResponseContents = BrowserMobHttpUtil.decompressContents(getRawResponseContents());
-                decompressionSuccessful = true;
-            } catch (RuntimeException e) {
-                log.warn("Failed to decompress response with encoding type " + contentEncoding + " when decoding request from " + originalRequest.getUri(), e);
+        if (streamingDecompressionFailed) {
+            return;
+        }
+
+        ContentDecompressor decompressor = takeStreamingDecompressor();
+
+        try {
+            if (decompressor == null) {
+                // the content was not decompressed as it was received, so decompress the entire raw content now
+                ContentDecoderRegistry decoderRegistry = ContentDecoderRegistry.getDefault();
+
+                decompressor = decoderRegistry.newDecompressor(contentEncoding);
+                if (decompressor == null) {
+                    if (decoderRegistry.isSupported(contentEncoding)) {
+                        // only the identity encoding was specified, so the raw content is not compressed
+                        decompressionSuccessful = true;
+                    } else {
+                        log.warn("Cannot decode unsupported content encoding type {}", contentEncoding);
+                    }
+
+                    return;
+                }
+
+                decompressor.decompress(Unpooled.wrappedBuffer(rawResponseContents.finish()));
             }
-        } else {
-            log.warn("Cannot decode unsupported content encoding type {}", contentEncoding);
+
+            fullResponseContents = decompressor.finish();
+            decompressionSuccessful = true;
+        } catch (DecompressionException e) {
+            decompressor.close();
+
+            log.warn("Failed to decompress response with encoding type " + contentEncoding + " when decoding request from " + originalRequest.getUri(), e);
         }
     }
 
@@ -148,21 +240,86 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
         // technically, the Content-Encoding header can be in a trailing header, although this is excruciatingly uncommon
         if (trailingHeaders != null) {
             String trailingContentEncoding = trailingHeaders.get(HttpHeaders.Names.CONTENT_ENCODING);
-            if (trailingContentEncoding != null) {
+            if (trailingContentEncoding != null && !trailingContentEncoding.equals(contentEncoding)) {
                 contentEncoding = trailingContentEncoding;
+
+                // the content was being decompressed according to the Content-Encoding in the response headers, so abandon
+                // streaming decompression and decompress the entire content using the trailing Content-Encoding instead
+                closeStreamingDecompressor();
+
+                streamingDecompressionFailed = false;
             }
         }
 
     }
 
     protected void storeResponseContent(HttpContent httpContent) {
-        ByteBuf bufferedContent = httpContent.content();
-        byte[] content = BrowserMobHttpUtil.extractReadableBytes(bufferedContent);
+        rawResponseContents.add(httpContent.content());
+
+        synchronized (decompressorLock) {
+            ContentDecompressor decompressor = streamingDecompressor;
+            if (decompressor != null) {
+                try {
+                    decompressor.decompress(httpContent.content());
+                } catch (DecompressionException e) {
+                    streamingDecompressionFailed = true;
+                    closeStreamingDecompressor();
+
+                    log.warn("Failed to decompress response with encoding type " + contentEncoding + " when decoding request from " + originalRequest.getUri(), e);
+                }
+            }
+        }
+    }
 
-        try {
-            rawResponseContents.write(content);
-        } catch (IOException e) {
-            // can't happen
+    /**
+     * Creates the streaming decompressor for the response's content encoding, and closes it if the client channel closes
+     * before the response is complete.
+     */
+    private void startStreamingDecompression() {
+        // an interim response, such as a 100 Continue, may already have started decompression
+        closeStreamingDecompressor();
+
+        ContentDecompressor decompressor = ContentDecoderRegistry.getDefault().newDecompressor(contentEncoding);
+        if (decompressor == null) {
+            return;
+        }
+
+        synchronized (decompressorLock) {
+            streamingDecompressor = decompressor;
+        }
+
+        // the listener is invoked immediately if the channel is already closed, so add it only after the decompressor has been set
+        if (ctx != null) {
+            ctx.channel().closeFuture().addListener(closeDecompressorOnClose);
+        }
+    }
+
+    /**
+     * Takes ownership of the streaming decompressor, so that it will not be closed when the client channel closes.
+     *
+     * @return the streaming decompressor, or null if the content is not being decompressed as it is received
+     */
+    private ContentDecompressor takeStreamingDecompressor() {
+        ContentDecompressor decompressor;
+        synchronized (decompressorLock) {
+            decompressor = streamingDecompressor;
+            streamingDecompressor = null;
+        }
+
+        if (decompressor != null && ctx != null) {
+            ctx.channel().closeFuture().removeListener(closeDecompressorOnClose);
+        }
+
+        return decompressor;
+    }
+
+    /**
+     * Closes the streaming decompressor, if any, releasing its buffers.
+     */
+    private void closeStreamingDecompressor() {
+        ContentDecompressor decompressor = takeStreamingDecompressor();
+        if (decompressor != null) {
+            decompressor.close();
         }
     }
 
@@ -181,7 +338,8 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
     }
 
     /**
-     * Returns the raw contents of the entire response, without decompression.
+     * Returns the raw contents of the entire response, without decompression. Once the entire response has been received,
+     * this method returns the same array each time it is called, so callers should not modify it.
      *
      * @return entire response contents, without decompression
      */
@@ -0,0 +1,36 @@
+package net.lightbody.bmp.filters;
+
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import net.lightbody.bmp.util.HttpMessageInfo;
+
+/**
+ * A request filter that sees the request line and headers as soon as they are received, and each chunk of the request body
+ * as it arrives, without requiring the request to be aggregated. Unlike {@link RequestFilter}, adding a StreamingRequestFilter
+ * does not force the proxy to buffer requests.
+ * <p/>
+ * <b>Note:</b> If another filter enables request aggregation, the request will arrive as a single {@link io.netty.handler.codec.http.FullHttpRequest},
+ * which will be passed to both {@link #filterRequest(HttpRequest, HttpMessageInfo)} and {@link #filterContent(HttpContent, HttpMessageInfo)}.
+ */
+public interface StreamingRequestFilter {
+    /**
+     * Implement this method to filter the HTTP method, URI, headers, etc. of a request. The request can be modified directly. The
+     * request can be "short-circuited" by returning a non-null value.
+     *
+     * @param request The request object. Modifications to the request object will be reflected in the request sent to the server.
+     * @param messageInfo Additional information relating to the HTTP message.
+     * @return if the return value is non-null, the proxy will suppress the request and send the specified response to the client immediately
+     */
+    HttpResponse filterRequest(HttpRequest request, HttpMessageInfo messageInfo);
+
+    /**
+     * Implement this method to inspect a chunk of the request body. The last chunk of the body is a {@link io.netty.handler.codec.http.LastHttpContent}.
+     * The readable bytes of the chunk's content may be modified in place, but the chunk cannot be replaced, since the proxy forwards
+     * the chunk it received to the server.
+     *
+     * @param content The chunk of the request body.
+     * @param messageInfo Additional information relating to the HTTP message.
+     */
+    void filterContent(HttpContent content, HttpMessageInfo messageInfo);
+}
@@ -0,0 +1,99 @@
+package net.lightbody.bmp.filters;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import net.lightbody.bmp.util.HttpMessageInfo;
+import org.littleshoot.proxy.HttpFilters;
+import org.littleshoot.proxy.HttpFiltersSourceAdapter;
+
+/**
+ * A filter adapter for {@link StreamingRequestFilter} implementations. Executes the filter when the {@link HttpFilters#clientToProxyRequest(HttpObject)}
+ * method is invoked, for the HttpRequest and for each subsequent HttpContent, if the request matches the filter's {@link HttpMessageMatcher}.
+ */
+public class StreamingRequestFilterAdapter extends HttpsAwareFiltersAdapter {
+    private final StreamingRequestFilter requestFilter;
+    private final HttpMessageMatcher matcher;
+
+    /**
+     * Information about the request being filtered. Null if the request did not match, in which case its contents will not be filtered.
+     */
+    private volatile HttpMessageInfo messageInfo;
+
+    public StreamingRequestFilterAdapter(HttpRequest originalRequest, ChannelHandlerContext ctx, StreamingRequestFilter requestFilter, HttpMessageMatcher matcher) {
+        super(originalRequest, ctx);
+
+        this.requestFilter = requestFilter;
+        this.matcher = matcher;
+    }
+
+    @Override
+    public HttpResponse clientToProxyRequest(HttpObject httpObject) {
+        if (httpObject instanceof HttpRequest) {
+            HttpRequest httpRequest = (HttpRequest) httpObject;
+
+            String url = getFullUrl(httpRequest);
+            if (matcher.matchesRequest(httpRequest, url) && matcher.matchesContentType(HttpHeaders.getHeader(httpRequest, HttpHeaders.Names.CONTENT_TYPE))) {
+                messageInfo = new HttpMessageInfo(originalRequest, ctx, isHttps(), url, getOriginalUrl());
+
+                HttpResponse response = requestFilter.filterRequest(httpRequest, messageInfo);
+                if (response != null) {
+                    return response;
+                }
+            } else {
+                messageInfo = null;
+            }
+        }
+
+        // the HttpRequest may also be the request's content, if the request was aggregated
+        HttpMessageInfo currentMessageInfo = messageInfo;
+        if (currentMessageInfo != null && httpObject instanceof HttpContent) {
+            requestFilter.filterContent((HttpContent) httpObject, currentMessageInfo);
+        }
+
+        return null;
+    }
+
+    /**
+     * A {@link HttpFiltersSourceAdapter} for {@link StreamingRequestFilterAdapter}s. This FilterSource does not enable HTTP message
+     * aggregation, so adding it will not cause requests to be buffered.
+     */
+    public static class FilterSource extends HttpFiltersSourceAdapter implements MatchingHttpFiltersSource {
+        private final StreamingRequestFilter filter;
+        private final HttpMessageMatcher matcher;
+
+        /**
+         * Creates a new filter source that will invoke the specified filter for all requests.
+         *
+         * @param filter StreamingRequestFilter to invoke
+         */
+        public FilterSource(StreamingRequestFilter filter) {
+            this(filter, HttpMessageMatcher.matchAll());
+        }
+
+        /**
+         * Creates a new filter source that will invoke the specified filter for requests that match the matcher. The matcher's
+         * content types are compared to the Content-Type of the request.
+         *
+         * @param filter StreamingRequestFilter to invoke
+         * @param matcher requests to invoke the filter for
+         */
+        public FilterSource(StreamingRequestFilter filter, HttpMessageMatcher matcher) {
+            this.filter = filter;
+            this.matcher = matcher;
+        }
+
+        @Override
+        public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+            return new StreamingRequestFilterAdapter(originalRequest, ctx, filter, matcher);
+        }
+
+        @Override
+        public HttpMessageMatcher getMatcher() {
+            return matcher;
+        }
+    }
+}
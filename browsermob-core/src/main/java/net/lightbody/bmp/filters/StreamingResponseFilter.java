@@ -0,0 +1,41 @@
+package net.lightbody.bmp.filters;
+
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpResponse;
+import net.lightbody.bmp.util.HttpMessageInfo;
+
+/**
+ * A response filter that sees the status line and headers as soon as they are received, and each chunk of the response body
+ * as it arrives, without requiring the response to be aggregated. Unlike {@link ResponseFilter}, adding a StreamingResponseFilter
+ * does not force the proxy to buffer responses, so the client begins receiving the response as soon as the server sends it.
+ * <p/>
+ * Chunks are passed to the filter as they were received from the server, so they may be compressed according to the response's
+ * Content-Encoding. If another filter enables response aggregation, the response will arrive as a single, decompressed
+ * {@link io.netty.handler.codec.http.FullHttpResponse}, which will be passed to both {@link #filterResponse(HttpResponse, HttpMessageInfo)}
+ * and {@link #filterContent(HttpContent, HttpMessageInfo)}.
+ */
+public interface StreamingResponseFilter {
+    /**
+     * Implement this method to filter the status line, headers, etc. of a response. The response can be modified directly.
+     * Filters that change the length of the response body should remove the Content-Length header and set the Transfer-Encoding
+     * header to "chunked".
+     *
+     * @param response The response object. Modifications to the response object will be reflected in the client response.
+     * @param messageInfo Additional information relating to the HTTP message.
+     */
+    void filterResponse(HttpResponse response, HttpMessageInfo messageInfo);
+
+    /**
+     * Implement this method to filter a chunk of the response body. The chunk may be modified directly or replaced by returning
+     * a different HttpContent. The proxy releases the original chunk after the filters have run, whether or not it was replaced,
+     * so filters must not release it themselves, and a replacement that shares the original's buffer must retain it. The proxy takes
+     * ownership of the filter's reference to a replacement, and releases it once the replacement has been written. The last chunk of the body is a
+     * {@link io.netty.handler.codec.http.LastHttpContent}, and must be replaced by a LastHttpContent. Returning null leaves
+     * the chunk unchanged.
+     *
+     * @param content The chunk of the response body.
+     * @param messageInfo Additional information relating to the HTTP message.
+     * @return the chunk to send to the client
+     */
+    HttpContent filterContent(HttpContent content, HttpMessageInfo messageInfo);
+}
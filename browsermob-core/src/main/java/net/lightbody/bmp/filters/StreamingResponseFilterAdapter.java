@@ -0,0 +1,206 @@
+package net.lightbody.bmp.filters;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpMessage;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import net.lightbody.bmp.util.BrowserMobHttpUtil;
+import net.lightbody.bmp.util.HttpMessageInfo;
+import net.lightbody.bmp.util.HttpObjectUtil;
+import org.littleshoot.proxy.HttpFilters;
+import org.littleshoot.proxy.HttpFiltersSourceAdapter;
+
+/**
+ * A filter adapter for {@link StreamingResponseFilter} implementations. Executes the filter when the {@link HttpFilters#serverToProxyResponse(HttpObject)}
+ * method is invoked, for the HttpResponse and for each subsequent HttpContent, if the exchange matches the filter's {@link HttpMessageMatcher}.
+ * <p/>
+ * LittleProxy retains every message before writing it to the client, so the reference to a replacement chunk returned by the filter
+ * would never be released. Replacement chunks are therefore wrapped in a {@link ReplacementContent}, and a handler in the client
+ * channel's pipeline releases the filter's reference once the replacement has been written.
+ */
+public class StreamingResponseFilterAdapter extends HttpsAwareFiltersAdapter implements ModifiedRequestAwareFilter {
+    /**
+     * Name of the {@link ReplacementContentReleaser} in the client channel's pipeline.
+     */
+    private static final String REPLACEMENT_CONTENT_RELEASER_HANDLER_NAME = "bmpReplacementContentReleaser";
+
+    private final StreamingResponseFilter responseFilter;
+    private final HttpMessageMatcher matcher;
+
+    /**
+     * The final HttpRequest sent to the server, reflecting all modifications from request filters.
+     */
+    private volatile HttpRequest modifiedHttpRequest;
+
+    /**
+     * Information about the response being filtered. Null if the exchange did not match, in which case its contents will not be filtered.
+     */
+    private volatile HttpMessageInfo messageInfo;
+
+    public StreamingResponseFilterAdapter(HttpRequest originalRequest, ChannelHandlerContext ctx, StreamingResponseFilter responseFilter, HttpMessageMatcher matcher) {
+        super(originalRequest, ctx);
+
+        this.responseFilter = responseFilter;
+        this.matcher = matcher;
+    }
+
+    @Override
+    public HttpObject serverToProxyResponse(HttpObject httpObject) {
+        if (httpObject instanceof HttpResponse) {
+            HttpResponse httpResponse = (HttpResponse) httpObject;
+
+            String url = getFullUrl(modifiedHttpRequest);
+            if (matcher.matchesRequest(modifiedHttpRequest, url) && matcher.matchesContentType(HttpHeaders.getHeader(httpResponse, HttpHeaders.Names.CONTENT_TYPE))) {
+                messageInfo = new HttpMessageInfo(originalRequest, ctx, isHttps(), url, getOriginalUrl());
+
+                responseFilter.filterResponse(httpResponse, messageInfo);
+            } else {
+                messageInfo = null;
+            }
+        }
+
+        // the HttpResponse may also be the response's content, if the response was aggregated
+        HttpMessageInfo currentMessageInfo = messageInfo;
+        if (currentMessageInfo != null && httpObject instanceof HttpContent) {
+            HttpContent httpContent = (HttpContent) httpObject;
+
+            HttpContent filteredContent = responseFilter.filterContent(httpContent, currentMessageInfo);
+            if (filteredContent != null && filteredContent != httpContent) {
+                if (httpContent instanceof FullHttpMessage) {
+                    // the status line and headers are part of the aggregated message, so keep the message and replace its body
+                    try {
+                        HttpObjectUtil.replaceBinaryHttpEntityBody((FullHttpMessage) httpContent, BrowserMobHttpUtil.extractReadableBytes(filteredContent.content()));
+                    } finally {
+                        ReferenceCountUtil.release(filteredContent);
+                    }
+                } else {
+                    // the original chunk is released by LittleProxy once the filters have run, so it must not be released here.
+                    // the filter's reference to the replacement is released by the ReplacementContentReleaser once it is written.
+                    addReplacementContentReleaser(ctx.pipeline());
+
+                    return wrapReplacement(filteredContent);
+                }
+            }
+        }
+
+        return super.serverToProxyResponse(httpObject);
+    }
+
+    @Override
+    public void setModifiedHttpRequest(HttpRequest modifiedHttpRequest) {
+        this.modifiedHttpRequest = modifiedHttpRequest;
+    }
+
+    private static void addReplacementContentReleaser(ChannelPipeline pipeline) {
+        // guard against adding the handler twice, since the client connection is used for subsequent requests
+        synchronized (pipeline) {
+            if (pipeline.get(REPLACEMENT_CONTENT_RELEASER_HANDLER_NAME) == null) {
+                pipeline.addLast(REPLACEMENT_CONTENT_RELEASER_HANDLER_NAME, new ReplacementContentReleaser());
+            }
+        }
+    }
+
+    /**
+     * Wraps the replacement chunk so that the {@link ReplacementContentReleaser} can recognize it. The wrapper shares the replacement's
+     * buffer, and so takes over the filter's reference to it.
+     */
+    private static HttpContent wrapReplacement(HttpContent replacement) {
+        if (replacement instanceof LastHttpContent) {
+            ReplacementLastHttpContent wrapper = new ReplacementLastHttpContent(replacement.content());
+            wrapper.trailingHeaders().set(((LastHttpContent) replacement).trailingHeaders());
+
+            return wrapper;
+        } else {
+            return new ReplacementHttpContent(replacement.content());
+        }
+    }
+
+    /**
+     * Marker for replacement chunks whose reference is owned by the adapter, rather than by LittleProxy.
+     */
+    private interface ReplacementContent {
+    }
+
+    private static class ReplacementHttpContent extends DefaultHttpContent implements ReplacementContent {
+        ReplacementHttpContent(ByteBuf content) {
+            super(content);
+        }
+    }
+
+    private static class ReplacementLastHttpContent extends DefaultLastHttpContent implements ReplacementContent {
+        ReplacementLastHttpContent(ByteBuf content) {
+            super(content);
+        }
+    }
+
+    /**
+     * Releases the adapter's reference to each replacement chunk after passing it on to be written. LittleProxy holds its own
+     * reference while the chunk is written, so the chunk is freed once the write completes.
+     */
+    private static class ReplacementContentReleaser extends ChannelOutboundHandlerAdapter {
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            if (msg instanceof ReplacementContent) {
+                try {
+                    ctx.write(msg, promise);
+                } finally {
+                    ReferenceCountUtil.release(msg);
+                }
+            } else {
+                ctx.write(msg, promise);
+            }
+        }
+    }
+
+    /**
+     * A {@link HttpFiltersSourceAdapter} for {@link StreamingResponseFilterAdapter}s. This FilterSource does not enable HTTP message
+     * aggregation, so adding it will not cause responses to be buffered.
+     */
+    public static class FilterSource extends HttpFiltersSourceAdapter implements MatchingHttpFiltersSource {
+        private final StreamingResponseFilter filter;
+        private final HttpMessageMatcher matcher;
+
+        /**
+         * Creates a new filter source that will invoke the specified filter for all responses.
+         *
+         * @param filter StreamingResponseFilter to invoke
+         */
+        public FilterSource(StreamingResponseFilter filter) {
+            this(filter, HttpMessageMatcher.matchAll());
+        }
+
+        /**
+         * Creates a new filter source that will invoke the specified filter for responses that match the matcher. The matcher's
+         * method and URL pattern are compared to the request sent to the server, and its content types are compared to the
+         * Content-Type of the response.
+         *
+         * @param filter StreamingResponseFilter to invoke
+         * @param matcher responses to invoke the filter for
+         */
+        public FilterSource(StreamingResponseFilter filter, HttpMessageMatcher matcher) {
+            this.filter = filter;
+            this.matcher = matcher;
+        }
+
+        @Override
+        public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+            return new StreamingResponseFilterAdapter(originalRequest, ctx, filter, matcher);
+        }
+
+        @Override
+        public HttpMessageMatcher getMatcher() {
+            return matcher;
+        }
+    }
+}
@@ -7,33 +7,39 @@ import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import net.lightbody.bmp.proxy.UrlPatternMatcher;
+import net.lightbody.bmp.proxy.Whitelist;
 import org.littleshoot.proxy.impl.ProxyUtils;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.regex.Pattern;
 
 /**
- * Checks this request against the whitelist, and returns the modified response if the request is not in the whitelist. The filter does not
- * make a defensive copy of the whitelist URLs, so there is no guarantee that the whitelist URLs at the time of construction will contain the
- * same values when the filter is actually invoked, if the URL collection is modified concurrently.
+ * Checks this request against the whitelist, and returns the modified response if the request is not in the whitelist. When the filter is
+ * constructed from a collection of whitelist URL patterns, the patterns are compiled into a {@link UrlPatternMatcher} for each filter; to
+ * avoid compiling the whitelist for each request, construct the filter from a {@link Whitelist}, which compiles its patterns once.
  */
 public class WhitelistFilter extends HttpsAwareFiltersAdapter {
     private final boolean whitelistEnabled;
     private final int whitelistResponseCode;
-    private final Collection<Pattern> whitelistUrls;
+    private final UrlPatternMatcher<Pattern> whitelistMatcher;
 
     public WhitelistFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, boolean whitelistEnabled,int whitelistResponseCode,
                            Collection<Pattern> whitelistUrls) {
+        this(originalRequest, ctx, whitelistEnabled, whitelistResponseCode, UrlPatternMatcher.forPatterns(whitelistUrls));
+    }
+
+    public WhitelistFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, Whitelist whitelist) {
+        this(originalRequest, ctx, whitelist.isEnabled(), whitelist.getStatusCode(), whitelist.getMatcher());
+    }
+
+    private WhitelistFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, boolean whitelistEnabled, int whitelistResponseCode,
+                            UrlPatternMatcher<Pattern> whitelistMatcher) {
         super(originalRequest, ctx);
 
         this.whitelistEnabled = whitelistEnabled;
         this.whitelistResponseCode = whitelistResponseCode;
-        if (whitelistUrls != null) {
-            this.whitelistUrls = whitelistUrls;
-        } else {
-            this.whitelistUrls = Collections.emptyList();
-        }
+        this.whitelistMatcher = whitelistMatcher;
     }
 
     @Override
@@ -50,16 +56,9 @@ public class WhitelistFilter extends HttpsAwareFiltersAdapter {
                 return null;
             }
 
-            boolean urlWhitelisted = false;
-
             String url = getFullUrl(httpRequest);
 
-            for (Pattern pattern : whitelistUrls) {
-                if (pattern.matcher(url).matches()) {
-                    urlWhitelisted = true;
-                    break;
-                }
-            }
+            boolean urlWhitelisted = whitelistMatcher.getFirstMatchingIndex(url, 0) >= 0;
 
             if (!urlWhitelisted) {
                 HttpResponseStatus status = HttpResponseStatus.valueOf(whitelistResponseCode);
@@ -1,16 +1,43 @@
 package net.lightbody.bmp.proxy;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.Monitor;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Tracks active and total requests on a proxy, and provides a mechanism to wait for active requests to finish.
- * See {@link net.lightbody.bmp.proxy.ActivityMonitor#waitForQuiescence(long, long, java.util.concurrent.TimeUnit)}.
+ * See {@link net.lightbody.bmp.proxy.ActivityMonitor#waitForQuiescence(long, long, java.util.concurrent.TimeUnit)} and
+ * {@link #waitForQuiescenceAsync(long, long, java.util.concurrent.TimeUnit)}.
  */
 public class ActivityMonitor {
+    /**
+     * Scheduler shared by all ActivityMonitors to re-evaluate asynchronous quiescence waits. Waiters do not occupy the scheduler's
+     * thread while they wait, so a single thread serves any number of waiters.
+     */
+    private static final ScheduledThreadPoolExecutor quiescenceScheduler = createQuiescenceScheduler();
+
+    private static ScheduledThreadPoolExecutor createQuiescenceScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                .setNameFormat("quiescence-monitor-%d")
+                .setDaemon(true)
+                .build());
+
+        // waiters reschedule their evaluation when requests finish, so remove the superseded evaluations from the queue
+        scheduler.setRemoveOnCancelPolicy(true);
+
+        return scheduler;
+    }
+
     private final AtomicInteger activeRequests = new AtomicInteger(0);
     private final AtomicInteger totalRequests = new AtomicInteger(0);
 
@@ -18,6 +45,20 @@ public class ActivityMonitor {
 
     private final Monitor monitor = new Monitor();
 
+    /**
+     * Asynchronous quiescence waits that have not yet completed.
+     */
+    private final Set<QuiescenceWaiter> quiescenceWaiters = Collections.newSetFromMap(new ConcurrentHashMap<QuiescenceWaiter, Boolean>());
+
+    private final Runnable evaluateQuiescenceWaiters = new Runnable() {
+        @Override
+        public void run() {
+            for (QuiescenceWaiter waiter : quiescenceWaiters) {
+                waiter.evaluate();
+            }
+        }
+    };
+
     private final Monitor.Guard requestNotActive = new Monitor.Guard(monitor) {
         @Override
         public boolean isSatisfied() {
@@ -51,6 +92,11 @@ public class ActivityMonitor {
             // there are no active requests, so signal to any waitForQuiescence threads that they can begin waiting for their quietPeriod
             monitor.enter();
             monitor.leave();
+
+            // let asynchronous waiters begin waiting for their quietPeriod, without doing so on the thread that finished the request
+            if (!quiescenceWaiters.isEmpty()) {
+                quiescenceScheduler.execute(evaluateQuiescenceWaiters);
+            }
         }
     }
 
@@ -121,4 +167,103 @@ public class ActivityMonitor {
 
         return false;
     }
+
+    /**
+     * Waits for quiescence without blocking the calling thread. Quiescence is defined exactly as in
+     * {@link #waitForQuiescence(long, long, java.util.concurrent.TimeUnit)}: no requests are active, and none have been active
+     * for the quietPeriod.
+     *
+     * @param quietPeriod length of time no requests must be active
+     * @param timeout maximum length of time to wait for quiescence
+     * @param timeUnit time unit of the quietPeriod and timeout
+     * @return future that will be set to true if quiescence was reached, or false if the timeout elapsed first. The future is
+     *         completed on the thread that calls this method if the result is already known, and otherwise on a shared
+     *         scheduler thread, so listeners should not block.
+     */
+    public ListenableFuture<Boolean> waitForQuiescenceAsync(long quietPeriod, long timeout, TimeUnit timeUnit) {
+        QuiescenceWaiter waiter = new QuiescenceWaiter(TimeUnit.NANOSECONDS.convert(quietPeriod, timeUnit),
+                System.nanoTime() + TimeUnit.NANOSECONDS.convert(timeout, timeUnit));
+
+        // register the waiter before evaluating it, so that a request that finishes during the evaluation is not missed
+        quiescenceWaiters.add(waiter);
+
+        waiter.evaluate();
+
+        return waiter.result;
+    }
+
+    /**
+     * An asynchronous wait for quiescence. Each evaluation either completes the wait or schedules the next evaluation for the
+     * time the wait could next complete. Waiters are also evaluated when the last active request finishes.
+     */
+    private class QuiescenceWaiter {
+        private final long quietPeriodNanos;
+
+        private final long deadlineNanos;
+
+        private final SettableFuture<Boolean> result = SettableFuture.create();
+
+        private ScheduledFuture<?> scheduledEvaluation;
+
+        private QuiescenceWaiter(long quietPeriodNanos, long deadlineNanos) {
+            this.quietPeriodNanos = quietPeriodNanos;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        private synchronized void evaluate() {
+            if (result.isDone()) {
+                return;
+            }
+
+            long now = System.nanoTime();
+
+            if (activeRequests.get() == 0) {
+                long quietUntil = lastRequestFinishedNanos.get() + quietPeriodNanos;
+
+                if (now - quietUntil >= 0) {
+                    complete(true);
+                } else if (quietUntil - deadlineNanos > 0) {
+                    // the quiet period cannot elapse before the deadline
+                    complete(false);
+                } else {
+                    // re-evaluate when the quiet period will have elapsed, in case a request started in the meantime
+                    schedule(quietUntil - now);
+                }
+            } else {
+                // active requests may finish at the earliest now, so quiescence cannot be reached before now + the quiet period
+                long latestFinishTime = deadlineNanos - quietPeriodNanos;
+
+                if (now - latestFinishTime >= 0) {
+                    complete(false);
+                } else {
+                    // give up if the requests are still active at the latest time they could finish. if they finish earlier, the
+                    // waiter will be evaluated immediately.
+                    schedule(latestFinishTime - now);
+                }
+            }
+        }
+
+        private void schedule(long delayNanos) {
+            if (scheduledEvaluation != null) {
+                scheduledEvaluation.cancel(false);
+            }
+
+            scheduledEvaluation = quiescenceScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    evaluate();
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void complete(boolean quiescent) {
+            quiescenceWaiters.remove(this);
+
+            if (scheduledEvaluation != null) {
+                scheduledEvaluation.cancel(false);
+            }
+
+            result.set(quiescent);
+        }
+    }
 }
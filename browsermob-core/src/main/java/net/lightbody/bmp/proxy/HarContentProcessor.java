@@ -0,0 +1,264 @@
+package net.lightbody.bmp.proxy;
+
+import com.google.common.util.concurrent.Monitor;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.lightbody.bmp.core.har.Har;
+import net.lightbody.bmp.core.har.HarEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes captured HAR content (decompression, charset decoding, and base64 encoding) on a bounded pool of worker threads,
+ * so that the response can be forwarded to the client without waiting for the content to be processed. While its content is
+ * being processed, a {@link HarEntry} is marked as pending (see {@link HarEntry#isContentPending()}).
+ * {@link #awaitPendingContent(Har, long, TimeUnit)} waits for the pending content of a single HAR to be processed, so a proxy
+ * reading its HAR does not wait for content captured by other proxies sharing the processor, or for content captured after
+ * the HAR was replaced.
+ * <p/>
+ * Content is never processed on the thread that submitted it, since that is usually a Netty event loop. If the work queue is
+ * full, or the processor has been shut down, the content is dropped: the entry's response content is left empty and commented,
+ * and the entry is no longer marked as pending. A single processor can be shared by multiple proxies. The processor does not shut down automatically; call
+ * {@link #shutdown()} when it is no longer needed.
+ */
+public class HarContentProcessor {
+    private static final Logger log = LoggerFactory.getLogger(HarContentProcessor.class);
+
+    /**
+     * Default maximum number of content processing tasks that may be queued.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    /**
+     * Comment added to the response content of entries whose content was dropped because it could not be queued for processing.
+     */
+    public static final String CONTENT_DROPPED_COMMENT = "Content not captured: HAR content processor was busy";
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicInteger pendingContent = new AtomicInteger(0);
+
+    /**
+     * Number of entries with pending content in each HAR. A HAR is removed from the map when its count reaches 0, after the
+     * count is set to -1 to indicate it has been retired and must not be incremented again.
+     */
+    private final ConcurrentMap<Har, AtomicInteger> pendingContentByHar = new ConcurrentHashMap<>();
+
+    private final Monitor monitor = new Monitor();
+
+    private final Monitor.Guard noPendingContent = new Monitor.Guard(monitor) {
+        @Override
+        public boolean isSatisfied() {
+            return pendingContent.get() == 0;
+        }
+    };
+
+    /**
+     * Creates a processor with one worker thread per available processor.
+     */
+    public HarContentProcessor() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a processor with the specified number of worker threads and work queue capacity.
+     *
+     * @param threads number of worker threads
+     * @param queueCapacity maximum number of tasks that may be queued before content is dropped
+     */
+    public HarContentProcessor(int threads, int queueCapacity) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1");
+        }
+
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1");
+        }
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactoryBuilder().setNameFormat("har-content-processor-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Processes the content of the specified HAR entry asynchronously. The entry is marked as pending until the task completes.
+     * If the work queue is full or the processor has been shut down, the content is dropped.
+     *
+     * @param harEntry HAR entry whose content will be processed
+     * @param task task that processes the content
+     */
+    public void process(HarEntry harEntry, Runnable task) {
+        process(null, harEntry, task);
+    }
+
+    /**
+     * Processes the content of the specified entry of the HAR asynchronously. The entry is marked as pending until the task
+     * completes, and {@link #awaitPendingContent(Har, long, TimeUnit)} waits for the task when called for the same HAR.
+     * If the work queue is full or the processor has been shut down, the task is not run, and the entry's content is dropped.
+     *
+     * @param har HAR containing the entry, or null if the entry is not part of a HAR
+     * @param harEntry HAR entry whose content will be processed
+     * @param task task that processes the content
+     */
+    public void process(final Har har, final HarEntry harEntry, final Runnable task) {
+        harEntry.setContentPending(true);
+        contentSubmitted(har);
+
+        Runnable processContent = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.warn("Error processing captured content for HAR entry", e);
+                } finally {
+                    harEntry.setContentPending(false);
+                    contentProcessed(har);
+                }
+            }
+        };
+
+        try {
+            executor.execute(processContent);
+        } catch (RejectedExecutionException e) {
+            log.warn("Unable to process captured content for HAR entry {}: HAR content processor queue is full or shut down. Content will not be captured.",
+                    harEntry.getRequest() != null ? harEntry.getRequest().getUrl() : null);
+
+            if (harEntry.getResponse() != null) {
+                harEntry.getResponse().getContent().setComment(CONTENT_DROPPED_COMMENT);
+            }
+
+            harEntry.setContentPending(false);
+            contentProcessed(har);
+        }
+    }
+
+    /**
+     * @return number of HAR entries whose content is waiting to be processed or is being processed
+     */
+    public int getPendingContentCount() {
+        return pendingContent.get();
+    }
+
+    /**
+     * Waits for the pending content of the specified HAR to be processed. Content of other HARs does not need to be processed
+     * for this method to return.
+     *
+     * @param har HAR whose pending content to wait for
+     * @param timeout maximum time to wait
+     * @param timeUnit unit of the timeout
+     * @return true if all pending content of the HAR was processed, false if the timeout elapsed first
+     */
+    public boolean awaitPendingContent(final Har har, long timeout, TimeUnit timeUnit) {
+        if (!hasPendingContent(har)) {
+            return true;
+        }
+
+        Monitor.Guard noPendingHarContent = new Monitor.Guard(monitor) {
+            @Override
+            public boolean isSatisfied() {
+                return !hasPendingContent(har);
+            }
+        };
+
+        boolean success = monitor.enterWhenUninterruptibly(noPendingHarContent, timeout, timeUnit);
+        if (success) {
+            monitor.leave();
+        }
+
+        return success;
+    }
+
+    /**
+     * Waits for all pending content to be processed, including content of HARs captured by other proxies sharing this processor.
+     *
+     * @param timeout maximum time to wait
+     * @param timeUnit unit of the timeout
+     * @return true if all pending content was processed, false if the timeout elapsed first
+     */
+    public boolean awaitPendingContent(long timeout, TimeUnit timeUnit) {
+        if (pendingContent.get() == 0) {
+            return true;
+        }
+
+        boolean success = monitor.enterWhenUninterruptibly(noPendingContent, timeout, timeUnit);
+        if (success) {
+            monitor.leave();
+        }
+
+        return success;
+    }
+
+    /**
+     * Stops the worker threads once all submitted content has been processed. Content submitted after the processor has been
+     * shut down is dropped.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private boolean hasPendingContent(Har har) {
+        AtomicInteger harPendingContent = pendingContentByHar.get(har);
+
+        return harPendingContent != null && harPendingContent.get() > 0;
+    }
+
+    private void contentSubmitted(Har har) {
+        pendingContent.incrementAndGet();
+
+        if (har == null) {
+            return;
+        }
+
+        while (true) {
+            AtomicInteger harPendingContent = pendingContentByHar.get(har);
+            if (harPendingContent == null) {
+                harPendingContent = new AtomicInteger(0);
+                AtomicInteger existing = pendingContentByHar.putIfAbsent(har, harPendingContent);
+                if (existing != null) {
+                    harPendingContent = existing;
+                }
+            }
+
+            int count = harPendingContent.get();
+            if (count < 0) {
+                // the count was retired by a thread that is removing it from the map. wait for its replacement.
+                Thread.yield();
+                continue;
+            }
+
+            if (harPendingContent.compareAndSet(count, count + 1)) {
+                return;
+            }
+        }
+    }
+
+    private void contentProcessed(Har har) {
+        int newCount = pendingContent.decrementAndGet();
+
+        boolean harContentProcessed = false;
+        if (har != null) {
+            AtomicInteger harPendingContent = pendingContentByHar.get(har);
+            if (harPendingContent != null && harPendingContent.decrementAndGet() == 0 && harPendingContent.compareAndSet(0, -1)) {
+                pendingContentByHar.remove(har, harPendingContent);
+                harContentProcessed = true;
+            }
+        }
+
+        if (newCount == 0 || harContentProcessed) {
+            // signal any threads waiting for pending content to be processed
+            monitor.enter();
+            monitor.leave();
+        }
+    }
+}
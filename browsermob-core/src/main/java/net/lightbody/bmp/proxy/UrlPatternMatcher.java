@@ -0,0 +1,548 @@
+package net.lightbody.bmp.proxy;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable, ordered set of entries (blacklist entries, rewrite rules, etc.), each with a regular expression that must match
+ * an entire URL. Finds the first entry whose pattern matches a URL without evaluating every pattern against the URL.
+ * <p/>
+ * When the matcher is built, each pattern is analyzed to find the longest literal string that any URL matching the pattern
+ * must contain. All of the literals are compiled into a single Aho-Corasick automaton, so a single pass over a URL identifies
+ * the patterns that could possibly match it. Only those candidate patterns (plus any patterns with no required literal) are
+ * evaluated, in their original order. For typical blacklists, where nearly every pattern contains a literal host or path
+ * fragment, the cost of matching a URL is therefore almost independent of the number of patterns.
+ * <p/>
+ * The literal analysis is conservative: patterns with flags, embedded flags, top-level alternation, or other constructs
+ * that complicate the analysis are simply always evaluated.
+ *
+ * @param <T> type of entry associated with each pattern
+ */
+public class UrlPatternMatcher<T> {
+    private static final UrlPatternMatcher<Object> EMPTY_MATCHER = new UrlPatternMatcher<>(Collections.emptyList(), Collections.<Pattern>emptyList());
+
+    private final List<T> entries;
+
+    private final Pattern[] patterns;
+
+    /**
+     * Indices of the patterns that have no required literal, and so must be evaluated against every URL.
+     */
+    private final BitSet unfilteredPatterns;
+
+    /**
+     * Automaton that recognizes the required literals of all other patterns, or null if no pattern has a required literal.
+     */
+    private final LiteralAutomaton literalAutomaton;
+
+    /**
+     * Creates a matcher for the specified entries. The pattern at each index in the list of patterns is the pattern for the
+     * entry at the same index in the list of entries.
+     *
+     * @param entries entries to match, in the order they should be evaluated
+     * @param patterns URL patterns for the entries
+     */
+    public UrlPatternMatcher(List<T> entries, List<Pattern> patterns) {
+        if (entries.size() != patterns.size()) {
+            throw new IllegalArgumentException("Number of entries and number of patterns must be equal");
+        }
+
+        this.entries = ImmutableList.copyOf(entries);
+        this.patterns = patterns.toArray(new Pattern[patterns.size()]);
+
+        this.unfilteredPatterns = new BitSet(this.patterns.length);
+
+        Map<String, List<Integer>> patternsByLiteral = new HashMap<>();
+        for (int i = 0; i < this.patterns.length; i++) {
+            String literal = getLongestRequiredLiteral(this.patterns[i]);
+            if (literal == null || literal.isEmpty()) {
+                unfilteredPatterns.set(i);
+            } else {
+                List<Integer> patternIndices = patternsByLiteral.get(literal);
+                if (patternIndices == null) {
+                    patternIndices = new ArrayList<>(1);
+                    patternsByLiteral.put(literal, patternIndices);
+                }
+
+                patternIndices.add(i);
+            }
+        }
+
+        if (patternsByLiteral.isEmpty()) {
+            this.literalAutomaton = null;
+        } else {
+            this.literalAutomaton = new LiteralAutomaton(patternsByLiteral);
+        }
+    }
+
+    /**
+     * Returns a matcher for the specified blacklist entries, which will be evaluated in iteration order.
+     *
+     * @param blacklistEntries blacklist entries to match, possibly null
+     */
+    public static UrlPatternMatcher<BlacklistEntry> forBlacklistEntries(Collection<BlacklistEntry> blacklistEntries) {
+        if (blacklistEntries == null || blacklistEntries.isEmpty()) {
+            return empty();
+        }
+
+        List<BlacklistEntry> entries = ImmutableList.copyOf(blacklistEntries);
+        List<Pattern> patterns = new ArrayList<>(entries.size());
+        for (BlacklistEntry entry : entries) {
+            patterns.add(entry.getUrlPattern());
+        }
+
+        return new UrlPatternMatcher<>(entries, patterns);
+    }
+
+    /**
+     * Returns a matcher for the specified rewrite rules, which will be evaluated in iteration order.
+     *
+     * @param rewriteRules rewrite rules to match, possibly null
+     */
+    public static UrlPatternMatcher<RewriteRule> forRewriteRules(Collection<RewriteRule> rewriteRules) {
+        if (rewriteRules == null || rewriteRules.isEmpty()) {
+            return empty();
+        }
+
+        List<RewriteRule> entries = ImmutableList.copyOf(rewriteRules);
+        List<Pattern> patterns = new ArrayList<>(entries.size());
+        for (RewriteRule rule : entries) {
+            patterns.add(rule.getPattern());
+        }
+
+        return new UrlPatternMatcher<>(entries, patterns);
+    }
+
+    /**
+     * Returns a matcher whose entries are the specified patterns themselves, which will be evaluated in iteration order.
+     *
+     * @param patterns URL patterns to match, possibly null
+     */
+    public static UrlPatternMatcher<Pattern> forPatterns(Collection<Pattern> patterns) {
+        if (patterns == null || patterns.isEmpty()) {
+            return empty();
+        }
+
+        List<Pattern> entries = ImmutableList.copyOf(patterns);
+
+        return new UrlPatternMatcher<>(entries, entries);
+    }
+
+    /**
+     * Returns a matcher that contains no entries.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> UrlPatternMatcher<T> empty() {
+        return (UrlPatternMatcher<T>) EMPTY_MATCHER;
+    }
+
+    /**
+     * @return the entries in this matcher, in the order they are evaluated
+     */
+    public List<T> getEntries() {
+        return entries;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Returns the first entry whose pattern matches the entire URL, or null if no pattern matches.
+     *
+     * @param url URL to match
+     * @return first matching entry, or null
+     */
+    public T getFirstMatch(String url) {
+        int index = getFirstMatchingIndex(url, 0);
+        if (index < 0) {
+            return null;
+        }
+
+        return entries.get(index);
+    }
+
+    /**
+     * Returns the index of the first entry at or after the specified index whose pattern matches the entire URL.
+     *
+     * @param url URL to match
+     * @param fromIndex index of the first entry to consider
+     * @return index of the first matching entry, or -1 if no pattern matches
+     */
+    public int getFirstMatchingIndex(String url, int fromIndex) {
+        if (fromIndex >= patterns.length) {
+            return -1;
+        }
+
+        if (literalAutomaton == null) {
+            // no pattern can be filtered, so evaluate every pattern in order
+            for (int i = fromIndex; i < patterns.length; i++) {
+                if (patterns[i].matcher(url).matches()) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        BitSet candidates = (BitSet) unfilteredPatterns.clone();
+        literalAutomaton.addPatternsWithLiteralsIn(url, candidates);
+
+        for (int i = candidates.nextSetBit(fromIndex); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (patterns[i].matcher(url).matches()) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the longest literal string that must appear in every string the pattern matches, or null if the pattern cannot
+     * be analyzed. The analysis only considers literal characters outside of groups and character classes, and gives up on any
+     * construct that might change how subsequent characters are interpreted (flags, quoting, unusual escapes).
+     *
+     * @param pattern pattern to analyze
+     * @return required literal, possibly empty, or null if the pattern could not be analyzed
+     */
+    static String getLongestRequiredLiteral(Pattern pattern) {
+        if (pattern.flags() != 0) {
+            return null;
+        }
+
+        String regex = pattern.pattern();
+
+        String longest = "";
+        StringBuilder current = new StringBuilder();
+
+        // true when the most recent atom was a literal character that was appended to the current run
+        boolean lastAtomInRun = false;
+
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= regex.length()) {
+                        return null;
+                    }
+
+                    char escaped = regex.charAt(i + 1);
+                    if (Character.isLetterOrDigit(escaped)) {
+                        // escapes that take arguments or quote text would make the following characters look like literals
+                        if ("QEcxu0pPNk".indexOf(escaped) >= 0 || Character.isDigit(escaped)) {
+                            return null;
+                        }
+
+                        // predefined character classes, boundaries, and control character escapes are not literals
+                        longest = longer(longest, current);
+                        current.setLength(0);
+                        lastAtomInRun = false;
+                    } else {
+                        current.append(escaped);
+                        lastAtomInRun = true;
+                    }
+
+                    i += 2;
+                    break;
+
+                case '[':
+                    i = skipCharacterClass(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+
+                    longest = longer(longest, current);
+                    current.setLength(0);
+                    lastAtomInRun = false;
+                    break;
+
+                case '(':
+                    if (i + 2 < regex.length() && regex.charAt(i + 1) == '?') {
+                        char groupType = regex.charAt(i + 2);
+                        // allow non-capturing groups, lookaround, and named groups; anything else may be an embedded flag
+                        if (groupType != ':' && groupType != '=' && groupType != '!' && groupType != '<' && groupType != '>') {
+                            return null;
+                        }
+                    }
+
+                    i = skipGroup(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+
+                    longest = longer(longest, current);
+                    current.setLength(0);
+                    lastAtomInRun = false;
+                    break;
+
+                case '*':
+                case '?':
+                case '{':
+                    // the previous atom may occur zero times, so it is not required
+                    if (lastAtomInRun) {
+                        current.setLength(current.length() - 1);
+                    }
+
+                    longest = longer(longest, current);
+                    current.setLength(0);
+                    lastAtomInRun = false;
+
+                    if (c == '{') {
+                        int end = regex.indexOf('}', i);
+                        if (end < 0) {
+                            return null;
+                        }
+
+                        i = end + 1;
+                    } else {
+                        i++;
+                    }
+
+                    i = skipQuantifierModifier(regex, i);
+                    break;
+
+                case '+':
+                    // the previous atom is required, but may be repeated, so the run cannot continue past it
+                    longest = longer(longest, current);
+                    current.setLength(0);
+                    lastAtomInRun = false;
+
+                    i = skipQuantifierModifier(regex, i + 1);
+                    break;
+
+                case '.':
+                case '^':
+                case '$':
+                    longest = longer(longest, current);
+                    current.setLength(0);
+                    lastAtomInRun = false;
+
+                    i++;
+                    break;
+
+                case '|':
+                case ')':
+                    // top-level alternation means no literal is required; an unbalanced parenthesis means the analysis is confused
+                    return null;
+
+                default:
+                    current.append(c);
+                    lastAtomInRun = true;
+
+                    i++;
+                    break;
+            }
+        }
+
+        return longer(longest, current);
+    }
+
+    private static String longer(String longest, StringBuilder current) {
+        if (current.length() > longest.length()) {
+            return current.toString();
+        } else {
+            return longest;
+        }
+    }
+
+    /**
+     * Skips a lazy or possessive modifier following a quantifier.
+     */
+    private static int skipQuantifierModifier(String regex, int i) {
+        if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            return i + 1;
+        }
+
+        return i;
+    }
+
+    /**
+     * Returns the index following the character class that begins at the specified index, or -1 if the class is not terminated.
+     */
+    private static int skipCharacterClass(String regex, int start) {
+        int i = start + 1;
+
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+
+        // a ']' immediately following the opening bracket is a literal
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+
+        int depth = 1;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+
+            if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+
+            i++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the index following the group that begins at the specified index, or -1 if the group is not terminated.
+     */
+    private static int skipGroup(String regex, int start) {
+        int i = start + 1;
+        int depth = 1;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+                    return -1;
+                }
+
+                i += 2;
+                continue;
+            }
+
+            if (c == '[') {
+                i = skipCharacterClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+
+                continue;
+            }
+
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+
+            i++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * An Aho-Corasick automaton that finds every literal contained in a string in a single pass over the string.
+     */
+    private static class LiteralAutomaton {
+        private final Node root = new Node();
+
+        LiteralAutomaton(Map<String, List<Integer>> patternsByLiteral) {
+            for (Map.Entry<String, List<Integer>> literalAndPatterns : patternsByLiteral.entrySet()) {
+                Node node = root;
+                for (char c : literalAndPatterns.getKey().toCharArray()) {
+                    Node child = node.children.get(c);
+                    if (child == null) {
+                        child = new Node();
+                        node.children.put(c, child);
+                    }
+
+                    node = child;
+                }
+
+                node.patternIndices.addAll(literalAndPatterns.getValue());
+            }
+
+            // compute failure links breadth-first, merging each node's output with the output of its failure node
+            Queue<Node> queue = new ArrayDeque<>();
+            root.failure = root;
+            root.output = toArray(root.patternIndices);
+
+            for (Node child : root.children.values()) {
+                child.failure = root;
+                queue.add(child);
+            }
+
+            while (!queue.isEmpty()) {
+                Node node = queue.remove();
+
+                List<Integer> output = new ArrayList<>(node.patternIndices);
+                for (int patternIndex : node.failure.output) {
+                    output.add(patternIndex);
+                }
+                node.output = toArray(output);
+
+                for (Map.Entry<Character, Node> transition : node.children.entrySet()) {
+                    char c = transition.getKey();
+                    Node child = transition.getValue();
+
+                    Node failure = node.failure;
+                    while (failure != root && !failure.children.containsKey(c)) {
+                        failure = failure.failure;
+                    }
+
+                    Node failureTarget = failure.children.get(c);
+                    child.failure = (failureTarget != null && failureTarget != child) ? failureTarget : root;
+
+                    queue.add(child);
+                }
+            }
+        }
+
+        /**
+         * Sets the index of every pattern whose required literal appears in the string.
+         */
+        void addPatternsWithLiteralsIn(String string, BitSet patternIndices) {
+            Node node = root;
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+
+                Node next = node.children.get(c);
+                while (next == null && node != root) {
+                    node = node.failure;
+                    next = node.children.get(c);
+                }
+
+                if (next != null) {
+                    node = next;
+                }
+
+                for (int patternIndex : node.output) {
+                    patternIndices.set(patternIndex);
+                }
+            }
+        }
+
+        private static int[] toArray(List<Integer> list) {
+            int[] array = new int[list.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = list.get(i);
+            }
+
+            return array;
+        }
+
+        private static class Node {
+            private final Map<Character, Node> children = new HashMap<>();
+            private final List<Integer> patternIndices = new ArrayList<>(0);
+            private Node failure;
+            private int[] output;
+        }
+    }
+}
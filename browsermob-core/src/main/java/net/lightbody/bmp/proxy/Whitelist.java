@@ -6,7 +6,6 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -16,6 +15,7 @@ import java.util.regex.Pattern;
  */
 public class Whitelist {
     private final List<Pattern> patterns;
+    private final UrlPatternMatcher<Pattern> matcher;
     private final int statusCode;
     private final boolean enabled;
 
@@ -29,6 +29,7 @@ public class Whitelist {
      */
     public Whitelist() {
         this.patterns = Collections.emptyList();
+        this.matcher = UrlPatternMatcher.empty();
         this.statusCode = -1;
         this.enabled = false;
     }
@@ -40,6 +41,7 @@ public class Whitelist {
      */
     public Whitelist(int statusCode) {
         this.patterns = Collections.emptyList();
+        this.matcher = UrlPatternMatcher.empty();
         this.statusCode = statusCode;
         this.enabled = true;
     }
@@ -71,6 +73,8 @@ public class Whitelist {
             this.patterns = builder.build();
         }
 
+        this.matcher = UrlPatternMatcher.forPatterns(this.patterns);
+
         this.statusCode = statusCode;
 
         this.enabled = true;
@@ -90,6 +94,13 @@ public class Whitelist {
         return this.patterns;
     }
 
+    /**
+     * @return matcher for the whitelist patterns, compiled when this whitelist was created
+     */
+    public UrlPatternMatcher<Pattern> getMatcher() {
+        return matcher;
+    }
+
     /**
      * @return HTTP status code returned by the whitelist, or -1 if the whitelist is disabled
      */
@@ -117,13 +128,6 @@ public class Whitelist {
             return false;
         }
 
-        for (Pattern pattern : getPatterns()) {
-            Matcher matcher = pattern.matcher(url);
-            if (matcher.matches()) {
-                return true;
-            }
-        }
-
-        return false;
+        return matcher.getFirstMatchingIndex(url, 0) >= 0;
     }
 }
@@ -1,97 +1,62 @@
 package net.lightbody.bmp.proxy.dns;
 
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
-
 import java.net.InetAddress;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Base class that provides host name remapping capabilities for AdvancedHostResolvers. Subclasses must implement {@link #resolveRemapped(String)}
  * instead of {@link net.lightbody.bmp.proxy.dns.HostResolver#resolve(String)}, which takes the remapped host as the input parameter.
+ * <p/>
+ * In addition to exact host names, original hosts may be wildcards of the form <code>*.example.com</code>, which remap all subdomains of
+ * example.com. See {@link HostRemappingTable} for details.
  */
 public abstract class AbstractHostNameRemapper implements AdvancedHostResolver {
     /**
-     * Host name remappings, maintained as a reference to an ImmutableMap. The ImmutableMap type is specified explicitly because ImmutableMap
-     * guarantees the iteration order of the map's entries. Specifying ImmutableMap also makes clear that the underlying map will never change,
-     * and that any modifications to the host name remappings will result in an entirely new map.
-     *
-     * The current implementation does not actually use any of the special features of AtomicReference, but it does rely on synchronizing on
-     * the AtomicReference when performing write operations. It could be replaced by a volatile reference to a Map and separate lock object.
+     * Host name remappings, maintained as a reference to an immutable {@link HostRemappingTable}. Any modification to the host name remappings
+     * results in an entirely new table, which is swapped in using compare-and-set, so remappings can be applied without locking.
      */
-    private final AtomicReference<ImmutableMap<String, String>> remappedHostNames = new AtomicReference<>(ImmutableMap.<String, String>of());
+    private final AtomicReference<HostRemappingTable> remappingTable = new AtomicReference<>(HostRemappingTable.EMPTY);
 
     @Override
     public void remapHosts(Map<String, String> hostRemappings) {
-        synchronized (remappedHostNames) {
-            ImmutableMap<String, String> newRemappings = ImmutableMap.copyOf(hostRemappings);
-
-            remappedHostNames.set(newRemappings);
-        }
+        remappingTable.set(new HostRemappingTable(hostRemappings));
     }
 
     @Override
     public void remapHost(String originalHost, String remappedHost) {
-        synchronized (remappedHostNames) {
-            Map<String, String> currentHostRemappings = remappedHostNames.get();
-
-            // use a LinkedHashMap to build the new remapping, to avoid duplicate key issues if the originalHost is already in the map
-            Map<String, String> builderMap = Maps.newLinkedHashMap(currentHostRemappings);
-            builderMap.remove(originalHost);
-            builderMap.put(originalHost, remappedHost);
-
-            ImmutableMap<String, String> newRemappings = ImmutableMap.copyOf(builderMap);
-
-            remappedHostNames.set(newRemappings);
-        }
+        HostRemappingTable currentTable;
+        HostRemappingTable newTable;
+        do {
+            currentTable = remappingTable.get();
+            newTable = currentTable.withRemapping(originalHost, remappedHost);
+        } while (!remappingTable.compareAndSet(currentTable, newTable));
     }
 
     @Override
     public void removeHostRemapping(String originalHost) {
-        synchronized (remappedHostNames) {
-            Map<String, String> currentHostRemappings = remappedHostNames.get();
-            if (currentHostRemappings.containsKey(originalHost)) {
-                // use a LinkedHashMap to build the new remapping, to take advantage of the remove() method
-                Map<String, String> builderMap = Maps.newLinkedHashMap(currentHostRemappings);
-                builderMap.remove(originalHost);
-
-                ImmutableMap<String, String> newRemappings = ImmutableMap.copyOf(builderMap);
-
-                remappedHostNames.set(newRemappings);
-            }
-        }
+        HostRemappingTable currentTable;
+        HostRemappingTable newTable;
+        do {
+            currentTable = remappingTable.get();
+            newTable = currentTable.withoutRemapping(originalHost);
+        } while (newTable != currentTable && !remappingTable.compareAndSet(currentTable, newTable));
     }
 
     @Override
     public void clearHostRemappings() {
-        synchronized (remappedHostNames) {
-            remappedHostNames.set(ImmutableMap.<String, String>of());
-        }
+        remappingTable.set(HostRemappingTable.EMPTY);
     }
 
     @Override
     public Map<String, String> getHostRemappings() {
-        return remappedHostNames.get();
+        return remappingTable.get().getRemappings();
     }
 
     @Override
     public Collection<String> getOriginalHostnames(String remappedHost) {
-        //TODO: implement this using a reverse mapping multimap that is guarded by the same lock as remappedHostNames, since this method will likely be called
-        // very often when forging certificates
-        List<String> originalHostnames = new ArrayList<>();
-
-        Map<String, String> currentRemappings = remappedHostNames.get();
-        for (Map.Entry<String, String> entry : currentRemappings.entrySet()) {
-            if (entry.getValue().equals(remappedHost)) {
-                originalHostnames.add(entry.getKey());
-            }
-        }
-
-        return originalHostnames;
+        return remappingTable.get().getOriginalHostnames(remappedHost);
     }
 
     /**
@@ -102,7 +67,7 @@ public abstract class AbstractHostNameRemapper implements AdvancedHostResolver {
      * @return a remapped host, or the original host if no mapping exists
      */
     public String applyRemapping(String originalHost) {
-        String remappedHost = remappedHostNames.get().get(originalHost);
+        String remappedHost = remappingTable.get().remap(originalHost);
 
         if (remappedHost != null) {
             return remappedHost;
@@ -15,6 +15,8 @@ public interface AdvancedHostResolver extends HostResolver {
      * applied in the order specified by the Map's iterator.
      * <p/>
      * <b>Note:</b> The original hostnames must exactly match the requested hostname. It is not a domain or regular expression match.
+     * Implementations that extend {@link AbstractHostNameRemapper} also accept wildcard hostnames of the form <code>*.example.com</code>,
+     * which match all subdomains of example.com.
      *
      * @param hostRemappings Map of {@code <original hostname, remapped hostname>}
      */
@@ -25,7 +27,8 @@ public interface AdvancedHostResolver extends HostResolver {
      * remappings are applied. If there is already a remapping for the specified originalHost, it will be removed before
      * the new remapping is added to the end of the host remapping list (and will therefore be the last remapping applied).
      *
-     * @param originalHost Original host to remap. Must exactly match the requested hostname (not a domain or regular expression match).
+     * @param originalHost Original host to remap. Must exactly match the requested hostname (not a domain or regular expression match),
+     *                     unless it is a wildcard hostname supported by the implementation.
      * @param remappedHost hostname that will replace originalHost
      */
     void remapHost(String originalHost, String remappedHost);
@@ -0,0 +1,720 @@
+package net.lightbody.bmp.proxy.dns;
+
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.AAAARecord;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.ResolverConfig;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An {@link AdvancedHostResolver} that sends DNS queries asynchronously from a netty event loop, so that no thread is blocked
+ * while waiting for a DNS server to respond. A and AAAA queries are sent in parallel over UDP, and are retried over TCP when
+ * the UDP response is truncated. Each query is sent from its own UDP socket, so every query uses a different, randomly
+ * assigned source port. Queries that are not answered within the query timeout, or that a name server fails to answer (e.g.
+ * SERVFAIL or REFUSED), are retried, rotating through the configured name servers. DNS messages are encoded and decoded using
+ * dnsjava.
+ * <p/>
+ * Resolved addresses are cached for the lowest TTL of the returned records. The TTL can be capped by setting a
+ * positive DNS cache timeout. Failed lookups are cached for the negative DNS cache timeout. The cache holds at most
+ * {@link #DEFAULT_MAX_CACHE_SIZE} hostnames, and no lookup is cached for longer than {@link #MAX_CACHE_TIMEOUT_MS}.
+ * IPv4 addresses are returned before IPv6 addresses.
+ * <p/>
+ * {@link #resolve(String)} is called by LittleProxy on its worker threads and must return the addresses, so it waits for
+ * lookups that are not cached, for at most the query timeout multiplied by the maximum number of query attempts. To keep
+ * a slow DNS server from stalling unrelated connections once a host has been resolved, a successful lookup whose TTL has
+ * expired is returned immediately while it is refreshed in the background, as described in RFC 8767 ("serve-stale"). The
+ * stale addresses are replaced when the refresh completes, and are never served for longer than {@link #MAX_CACHE_TIMEOUT_MS}
+ * after they were resolved. Use {@link #resolveAsync(String)} to resolve hosts without blocking at all.
+ * <p/>
+ * By default, all resolvers share a single event loop running on a daemon thread; a different event loop group can be
+ * specified when the resolver is created. {@link #shutdown()} fails lookups in progress and stops the resolver from sending
+ * further queries, without shutting down the event loop.
+ */
+public class AsyncDnsResolver extends AbstractHostNameRemapper implements AdvancedHostResolver {
+    private static final Logger log = LoggerFactory.getLogger(AsyncDnsResolver.class);
+
+    /**
+     * Default length of time to wait for a response to a DNS query before retrying it.
+     */
+    public static final long DEFAULT_QUERY_TIMEOUT_MS = 2000;
+
+    /**
+     * Default maximum number of times a DNS query will be sent before the lookup fails.
+     */
+    public static final int DEFAULT_MAX_QUERY_ATTEMPTS = 3;
+
+    /**
+     * Default length of time failed lookups are cached, matching the JVM's default negative DNS cache timeout.
+     */
+    public static final long DEFAULT_NEGATIVE_CACHE_TIMEOUT_MS = TimeUnit.MILLISECONDS.convert(10, TimeUnit.SECONDS);
+
+    /**
+     * Default maximum number of hostnames in the cache.
+     */
+    public static final long DEFAULT_MAX_CACHE_SIZE = 10000;
+
+    /**
+     * Maximum length of time any lookup is cached, regardless of the records' TTL or the cache timeouts.
+     */
+    public static final long MAX_CACHE_TIMEOUT_MS = TimeUnit.MILLISECONDS.convert(1, TimeUnit.DAYS);
+
+    private static final int DNS_PORT = 53;
+
+    /**
+     * Maximum length of a DNS message received over TCP.
+     */
+    private static final int MAX_TCP_MESSAGE_LENGTH = 65535;
+
+    private final List<InetSocketAddress> nameServers;
+
+    private final long queryTimeoutMs;
+
+    private final int maxQueryAttempts;
+
+    private final Bootstrap udpBootstrap;
+
+    private final Bootstrap tcpBootstrap;
+
+    /**
+     * Cached lookups, keyed by lower-case hostname. Each lookup also expires according to its own TTL.
+     */
+    private final Cache<String, CachedLookup> cache = CacheBuilder.newBuilder()
+            .maximumSize(DEFAULT_MAX_CACHE_SIZE)
+            .expireAfterWrite(MAX_CACHE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .build();
+
+    /**
+     * Queries that have been sent but not answered, so that they can be failed when the resolver is shut down.
+     */
+    private final Set<PendingQuery> pendingQueries = Collections.newSetFromMap(new ConcurrentHashMap<PendingQuery, Boolean>());
+
+    private volatile boolean shutdown;
+
+    /**
+     * Maximum length of time a successful lookup is cached, regardless of the records' TTL. If negative, lookups are cached
+     * for the records' TTL.
+     */
+    private volatile long maxPositiveCacheTimeoutMs = -1;
+
+    /**
+     * Length of time a failed lookup is cached. If negative, failed lookups are cached until the cache is cleared.
+     */
+    private volatile long negativeCacheTimeoutMs = DEFAULT_NEGATIVE_CACHE_TIMEOUT_MS;
+
+    /**
+     * Creates a resolver that queries the system's configured name servers.
+     */
+    public AsyncDnsResolver() {
+        this(getSystemNameServers());
+    }
+
+    /**
+     * Creates a resolver that queries the specified name servers, using the default query timeout and number of attempts.
+     *
+     * @param nameServers name servers to query, in order of preference
+     */
+    public AsyncDnsResolver(List<InetSocketAddress> nameServers) {
+        this(nameServers, DEFAULT_QUERY_TIMEOUT_MS, DEFAULT_MAX_QUERY_ATTEMPTS);
+    }
+
+    /**
+     * Creates a resolver that queries the specified name servers.
+     *
+     * @param nameServers name servers to query, in order of preference. Retried queries are sent to the next name server.
+     * @param queryTimeoutMs length of time to wait for a response to each query before retrying it
+     * @param maxQueryAttempts maximum number of times each query will be sent
+     */
+    public AsyncDnsResolver(List<InetSocketAddress> nameServers, long queryTimeoutMs, int maxQueryAttempts) {
+        this(nameServers, queryTimeoutMs, maxQueryAttempts, SharedEventLoopGroupHolder.EVENT_LOOP_GROUP);
+    }
+
+    /**
+     * Creates a resolver that queries the specified name servers from the specified event loop group. The caller is responsible
+     * for shutting down the event loop group.
+     *
+     * @param nameServers name servers to query, in order of preference. Retried queries are sent to the next name server.
+     * @param queryTimeoutMs length of time to wait for a response to each query before retrying it
+     * @param maxQueryAttempts maximum number of times each query will be sent
+     * @param eventLoopGroup event loop group on which queries are sent and responses are received
+     */
+    public AsyncDnsResolver(List<InetSocketAddress> nameServers, long queryTimeoutMs, int maxQueryAttempts, EventLoopGroup eventLoopGroup) {
+        if (nameServers == null || nameServers.isEmpty()) {
+            throw new IllegalArgumentException("At least one name server is required");
+        }
+
+        if (queryTimeoutMs <= 0) {
+            throw new IllegalArgumentException("Query timeout must be greater than 0");
+        }
+
+        if (maxQueryAttempts < 1) {
+            throw new IllegalArgumentException("Maximum query attempts must be at least 1");
+        }
+
+        this.nameServers = ImmutableList.copyOf(nameServers);
+        this.queryTimeoutMs = queryTimeoutMs;
+        this.maxQueryAttempts = maxQueryAttempts;
+
+        this.udpBootstrap = new Bootstrap()
+                .group(eventLoopGroup)
+                .channel(NioDatagramChannel.class);
+
+        this.tcpBootstrap = new Bootstrap()
+                .group(eventLoopGroup)
+                .channel(NioSocketChannel.class);
+    }
+
+    /**
+     * Resolves the specified host, after applying any host remappings, without blocking.
+     *
+     * @param originalHost hostname to resolve
+     * @return future that will contain the resolved addresses, or an empty collection if the host could not be resolved.
+     *         The future never fails.
+     */
+    public ListenableFuture<Collection<InetAddress>> resolveAsync(String originalHost) {
+        return resolveRemappedAsync(applyRemapping(originalHost));
+    }
+
+    @Override
+    public Collection<InetAddress> resolveRemapped(String remappedHost) {
+        try {
+            return Uninterruptibles.getUninterruptibly(resolveRemappedAsync(remappedHost));
+        } catch (ExecutionException e) {
+            log.warn("Unable to resolve host {}", remappedHost, e);
+
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Resolves the specified remapped host without blocking.
+     */
+    private ListenableFuture<Collection<InetAddress>> resolveRemappedAsync(final String remappedHost) {
+        // IP literals do not need to be resolved. note this does not work properly for ipv6 literals with a scope identifier,
+        // which is a known issue for InetAddresses.isInetAddress().
+        if (InetAddresses.isInetAddress(remappedHost)) {
+            return Futures.<Collection<InetAddress>>immediateFuture(Collections.singletonList(InetAddresses.forString(remappedHost)));
+        }
+
+        if (shutdown) {
+            return Futures.<Collection<InetAddress>>immediateFuture(Collections.<InetAddress>emptyList());
+        }
+
+        final String cacheKey = remappedHost.toLowerCase(Locale.US);
+
+        final CachedLookup cachedLookup = cache.getIfPresent(cacheKey);
+        if (cachedLookup != null) {
+            if (!cachedLookup.isExpired()) {
+                return Futures.immediateFuture(cachedLookup.addresses);
+            }
+
+            if (cachedLookup.addresses.isEmpty()) {
+                cache.asMap().remove(cacheKey, cachedLookup);
+            } else {
+                // serve the stale addresses, and refresh them in the background unless another lookup is already refreshing them
+                if (cachedLookup.refreshing.compareAndSet(false, true)) {
+                    lookup(remappedHost, cacheKey).addListener(new Runnable() {
+                        @Override
+                        public void run() {
+                            // if the refresh did not replace the stale lookup, allow the next lookup to refresh it again
+                            cachedLookup.refreshing.set(false);
+                        }
+                    }, MoreExecutors.directExecutor());
+                }
+
+                return Futures.immediateFuture(cachedLookup.addresses);
+            }
+        }
+
+        return lookup(remappedHost, cacheKey);
+    }
+
+    /**
+     * Queries the name servers for the specified host and caches the result.
+     */
+    private ListenableFuture<Collection<InetAddress>> lookup(final String remappedHost, final String cacheKey) {
+        Name name;
+        try {
+            name = Name.fromString(remappedHost, Name.root);
+        } catch (TextParseException e) {
+            return Futures.<Collection<InetAddress>>immediateFuture(Collections.<InetAddress>emptyList());
+        }
+
+        // query for IPv4 and IPv6 addresses in parallel. failed queries are returned as null responses.
+        ListenableFuture<List<Message>> responses = Futures.successfulAsList(query(name, Type.A), query(name, Type.AAAA));
+
+        return Futures.transform(responses, new Function<List<Message>, Collection<InetAddress>>() {
+            @Override
+            public Collection<InetAddress> apply(List<Message> responses) {
+                return cacheResponses(remappedHost, cacheKey, responses);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Extracts the resolved addresses from the responses and caches them.
+     *
+     * @param host hostname that was resolved, used as the hostname of the resolved addresses
+     * @param cacheKey key under which the addresses will be cached
+     * @param responses responses to the A and AAAA queries, in that order; null if the query failed
+     * @return resolved addresses, with IPv4 addresses first
+     */
+    private Collection<InetAddress> cacheResponses(String host, String cacheKey, List<Message> responses) {
+        List<InetAddress> addresses = new ArrayList<>();
+        long minTtlSeconds = Long.MAX_VALUE;
+        boolean responseReceived = false;
+
+        for (Message response : responses) {
+            if (response == null) {
+                continue;
+            }
+
+            responseReceived = true;
+
+            for (Record record : response.getSectionArray(Section.ANSWER)) {
+                byte[] address;
+                if (record instanceof ARecord) {
+                    address = ((ARecord) record).getAddress().getAddress();
+                } else if (record instanceof AAAARecord) {
+                    address = ((AAAARecord) record).getAddress().getAddress();
+                } else {
+                    // CNAME records that lead to the A or AAAA records
+                    continue;
+                }
+
+                try {
+                    addresses.add(InetAddress.getByAddress(host, address));
+                } catch (UnknownHostException e) {
+                    // this should never happen, unless there is a bug in dnsjava
+                    log.warn("DNS response contained an invalid address for host: " + host, e);
+                    continue;
+                }
+
+                minTtlSeconds = Math.min(minTtlSeconds, record.getTTL());
+            }
+        }
+
+        // don't cache lookups that failed because no name server responded
+        if (!responseReceived) {
+            return Collections.emptyList();
+        }
+
+        long cacheTimeoutMs;
+        if (addresses.isEmpty()) {
+            cacheTimeoutMs = negativeCacheTimeoutMs;
+        } else {
+            cacheTimeoutMs = TimeUnit.MILLISECONDS.convert(minTtlSeconds, TimeUnit.SECONDS);
+
+            long maxCacheTimeoutMs = maxPositiveCacheTimeoutMs;
+            if (maxCacheTimeoutMs >= 0) {
+                cacheTimeoutMs = Math.min(cacheTimeoutMs, maxCacheTimeoutMs);
+            }
+        }
+
+        List<InetAddress> resolvedAddresses = Collections.unmodifiableList(addresses);
+
+        if (cacheTimeoutMs != 0) {
+            // the cache itself evicts lookups after MAX_CACHE_TIMEOUT_MS
+            long expiresAt = cacheTimeoutMs < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + cacheTimeoutMs;
+
+            cache.put(cacheKey, new CachedLookup(resolvedAddresses, expiresAt));
+        }
+
+        return resolvedAddresses;
+    }
+
+    /**
+     * Sends a query for records of the specified type.
+     *
+     * @return future that will contain the name server's response, or fail if no name server responds successfully
+     */
+    private ListenableFuture<Message> query(Name name, int type) {
+        Message query = Message.newQuery(Record.newRecord(name, type, DClass.IN));
+        query.getHeader().setID(ThreadLocalRandom.current().nextInt(0x10000));
+
+        final PendingQuery pendingQuery = new PendingQuery(query);
+
+        pendingQueries.add(pendingQuery);
+
+        // the resolver may have been shut down after this query was created, but before it was registered
+        if (shutdown) {
+            pendingQueries.remove(pendingQuery);
+            pendingQuery.response.setException(new UnknownHostException("DNS resolver has been shut down"));
+
+            return pendingQuery.response;
+        }
+
+        // send each query from a new socket bound to an ephemeral port, so that responses cannot be spoofed by guessing the
+        // source port of a long-lived socket
+        ChannelFuture bindFuture = udpBootstrap.clone()
+                .handler(new UdpResponseHandler(pendingQuery))
+                .bind(0);
+
+        pendingQuery.udpChannel = bindFuture.channel();
+
+        pendingQuery.response.addListener(new Runnable() {
+            @Override
+            public void run() {
+                pendingQueries.remove(pendingQuery);
+                pendingQuery.udpChannel.close();
+            }
+        }, MoreExecutors.directExecutor());
+
+        // all sends, retries, and responses for a query are handled on the event loop
+        bindFuture.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (future.isSuccess()) {
+                    sendUdpQuery(pendingQuery);
+                } else {
+                    pendingQuery.response.setException(future.cause());
+                }
+            }
+        });
+
+        return pendingQuery.response;
+    }
+
+    /**
+     * Sends the query over UDP to the next name server, and schedules a retry if no response is received within the query
+     * timeout. Must be called on the event loop.
+     */
+    private void sendUdpQuery(final PendingQuery pendingQuery) {
+        final int attempt = ++pendingQuery.attempts;
+        pendingQuery.nameServer = nameServers.get((attempt - 1) % nameServers.size());
+
+        Channel udpChannel = pendingQuery.udpChannel;
+
+        udpChannel.writeAndFlush(new DatagramPacket(Unpooled.wrappedBuffer(pendingQuery.query.toWire()), pendingQuery.nameServer));
+
+        udpChannel.eventLoop().schedule(new Runnable() {
+            @Override
+            public void run() {
+                // ignore the timeout if the query has already been answered, retried, or retried over TCP
+                if (pendingQuery.response.isDone() || pendingQuery.attempts != attempt) {
+                    return;
+                }
+
+                if (attempt < maxQueryAttempts) {
+                    sendUdpQuery(pendingQuery);
+                } else {
+                    pendingQuery.response.setException(new UnknownHostException("No response from DNS servers for " + pendingQuery.query.getQuestion()));
+                }
+            }
+        }, queryTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends the query over TCP to the name server that returned a truncated UDP response. Must be called on the event loop.
+     */
+    private void sendTcpQuery(final PendingQuery pendingQuery) {
+        // invalidate the scheduled UDP retry
+        final int attempt = ++pendingQuery.attempts;
+
+        ChannelFuture connectFuture = tcpBootstrap.clone()
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) throws Exception {
+                        ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(MAX_TCP_MESSAGE_LENGTH, 0, 2, 0, 2));
+                        ch.pipeline().addLast(new LengthFieldPrepender(2));
+                        ch.pipeline().addLast(new TcpResponseHandler(pendingQuery));
+                    }
+                })
+                .connect(pendingQuery.nameServer);
+
+        connectFuture.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (future.isSuccess()) {
+                    future.channel().writeAndFlush(Unpooled.wrappedBuffer(pendingQuery.query.toWire()));
+                } else {
+                    pendingQuery.response.setException(future.cause());
+                }
+            }
+        });
+
+        final Channel tcpChannel = connectFuture.channel();
+
+        pendingQuery.udpChannel.eventLoop().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!pendingQuery.response.isDone() && pendingQuery.attempts == attempt) {
+                    pendingQuery.response.setException(new UnknownHostException("No TCP response from DNS server for " + pendingQuery.query.getQuestion()));
+                }
+
+                tcpChannel.close();
+            }
+        }, queryTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Completes the pending query with the response, retries it over TCP if the response was truncated, or retries it with
+     * the next name server if the name server failed to answer it. Must be called on the event loop.
+     */
+    private void handleResponse(PendingQuery pendingQuery, Message response, InetSocketAddress sender, boolean tcp) {
+        // ignore responses to other queries, or from servers the query was not sent to
+        if (pendingQuery.response.isDone()
+                || response.getHeader().getID() != pendingQuery.query.getHeader().getID()
+                || !pendingQuery.nameServer.equals(sender)) {
+            return;
+        }
+
+        Record question = response.getQuestion();
+        if (question == null || !question.equals(pendingQuery.query.getQuestion())) {
+            return;
+        }
+
+        if (!tcp && response.getHeader().getFlag(Flags.TC)) {
+            log.debug("Truncated DNS response for {}; retrying over TCP", question);
+
+            sendTcpQuery(pendingQuery);
+
+            return;
+        }
+
+        int rcode = response.getRcode();
+        if (rcode == Rcode.NOERROR || rcode == Rcode.NXDOMAIN) {
+            pendingQuery.response.set(response);
+        } else if (pendingQuery.attempts < maxQueryAttempts) {
+            // SERVFAIL, REFUSED, etc. indicate a problem with this name server rather than with the name, so ask the next one
+            log.debug("DNS server {} returned {} for {}; retrying with the next name server", sender, Rcode.string(rcode), question);
+
+            sendUdpQuery(pendingQuery);
+        } else {
+            pendingQuery.response.setException(new UnknownHostException("DNS server returned " + Rcode.string(rcode) + " for " + question));
+        }
+    }
+
+    /**
+     * Parses a DNS message from the buffer.
+     *
+     * @return the parsed message, or null if the buffer does not contain a valid DNS message
+     */
+    private static Message parseMessage(ByteBuf buffer) {
+        byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.getBytes(buffer.readerIndex(), bytes);
+
+        try {
+            return new Message(bytes);
+        } catch (IOException e) {
+            log.debug("Ignoring invalid DNS message", e);
+
+            return null;
+        }
+    }
+
+    @Override
+    public void clearDNSCache() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Sets the maximum length of time a successful lookup is cached. Lookups are cached for the lowest TTL of the returned
+     * records, up to this timeout. A negative timeout caches lookups for the records' TTL.
+     */
+    @Override
+    public void setPositiveDNSCacheTimeout(int timeout, TimeUnit timeUnit) {
+        maxPositiveCacheTimeoutMs = timeout < 0 ? -1 : TimeUnit.MILLISECONDS.convert(timeout, timeUnit);
+    }
+
+    /**
+     * Sets the length of time a failed lookup is cached. A negative timeout caches failed lookups until the cache is cleared,
+     * or for {@link #MAX_CACHE_TIMEOUT_MS}, whichever comes first.
+     */
+    @Override
+    public void setNegativeDNSCacheTimeout(int timeout, TimeUnit timeUnit) {
+        negativeCacheTimeoutMs = timeout < 0 ? -1 : TimeUnit.MILLISECONDS.convert(timeout, timeUnit);
+    }
+
+    /**
+     * Shuts down the resolver. Lookups in progress fail, and subsequent lookups return no addresses without sending queries.
+     * The event loop is not shut down, since it may be shared with other resolvers.
+     */
+    public void shutdown() {
+        shutdown = true;
+
+        for (PendingQuery pendingQuery : pendingQueries) {
+            pendingQuery.response.setException(new UnknownHostException("DNS resolver has been shut down"));
+        }
+    }
+
+    public List<InetSocketAddress> getNameServers() {
+        return nameServers;
+    }
+
+    /**
+     * Returns the system's configured name servers, or localhost if no name servers are configured.
+     */
+    private static List<InetSocketAddress> getSystemNameServers() {
+        String[] servers = ResolverConfig.getCurrentConfig().servers();
+        if (servers == null || servers.length == 0) {
+            return Collections.singletonList(new InetSocketAddress(InetAddress.getLoopbackAddress(), DNS_PORT));
+        }
+
+        List<InetSocketAddress> nameServers = new ArrayList<>(servers.length);
+        for (String server : servers) {
+            nameServers.add(new InetSocketAddress(server, DNS_PORT));
+        }
+
+        return nameServers;
+    }
+
+    /**
+     * A query that has been sent, but not yet answered. Fields other than the query, response, and UDP channel are only accessed
+     * on the event loop.
+     */
+    private static class PendingQuery {
+        private final Message query;
+
+        private final SettableFuture<Message> response = SettableFuture.create();
+
+        /**
+         * The UDP channel from which the query is sent and on which its responses are received. Closed when the query completes.
+         */
+        private volatile Channel udpChannel;
+
+        /**
+         * Number of times the query has been sent.
+         */
+        private int attempts;
+
+        /**
+         * Name server the query was most recently sent to.
+         */
+        private InetSocketAddress nameServer;
+
+        private PendingQuery(Message query) {
+            this.query = query;
+        }
+    }
+
+    private static class CachedLookup {
+        private final Collection<InetAddress> addresses;
+
+        private final long expiresAt;
+
+        /**
+         * True while the lookup is being refreshed in the background, after it has expired.
+         */
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private CachedLookup(Collection<InetAddress> addresses, long expiresAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+
+    /**
+     * Lazily creates the single-threaded event loop group shared by resolvers that were not given an event loop group. Its
+     * thread is a daemon thread, so it does not need to be shut down.
+     */
+    private static class SharedEventLoopGroupHolder {
+        private static final EventLoopGroup EVENT_LOOP_GROUP = new NioEventLoopGroup(1, new ThreadFactoryBuilder()
+                .setNameFormat("async-dns-resolver-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    private class UdpResponseHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+        private final PendingQuery pendingQuery;
+
+        private UdpResponseHandler(PendingQuery pendingQuery) {
+            this.pendingQuery = pendingQuery;
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) throws Exception {
+            Message response = parseMessage(packet.content());
+            if (response != null) {
+                handleResponse(pendingQuery, response, packet.sender(), false);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            // UDP errors, such as ICMP port unreachable, are handled by retrying queries when they time out
+            log.debug("Error on DNS resolver UDP channel", cause);
+        }
+    }
+
+    private class TcpResponseHandler extends SimpleChannelInboundHandler<ByteBuf> {
+        private final PendingQuery pendingQuery;
+
+        private TcpResponseHandler(PendingQuery pendingQuery) {
+            this.pendingQuery = pendingQuery;
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) throws Exception {
+            Message response = parseMessage(frame);
+            if (response != null) {
+                handleResponse(pendingQuery, response, pendingQuery.nameServer, true);
+            }
+
+            ctx.close();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            pendingQuery.response.setException(cause);
+
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package net.lightbody.bmp.proxy.dns;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link net.lightbody.bmp.proxy.dns.AdvancedHostResolver} that caches the results of another AdvancedHostResolver. The cache belongs
+ * to this instance, so clearing it or changing its timeouts does not affect other resolvers or proxies in the same JVM.
+ * <p/>
+ * Successful lookups are cached for the positive DNS cache timeout and failed lookups are cached for the negative DNS cache timeout. A
+ * negative timeout caches lookups until the cache is cleared, and a timeout of 0 disables caching. When the cache exceeds its maximum size,
+ * the least recently used lookups are evicted. Concurrent lookups of the same uncached host are coalesced into a single lookup.
+ * <p/>
+ * Host remapping methods are applied to the delegate resolver, and clear the cache so that remapped hosts are resolved again. The cache
+ * manipulation methods are <b>not</b> applied to the delegate, so that delegates such as {@link net.lightbody.bmp.proxy.dns.NativeCacheManipulatingResolver}
+ * do not modify JVM-wide state. For best results, use a delegate that does not cache lookups itself.
+ * <p/>
+ * A {@link net.lightbody.bmp.proxy.dns.NativeResolver} delegate resolves hosts using {@link java.net.InetAddress}, which has its own
+ * JVM-wide cache that this resolver cannot clear. Clearing this cache or setting its timeouts to 0 therefore does not force a native
+ * lookup to go to the name server. To bypass the JVM cache, set the <code>networkaddress.cache.ttl</code> and
+ * <code>networkaddress.cache.negative.ttl</code> security properties to 0 (e.g. in the java.security file, or using
+ * {@link java.security.Security#setProperty(String, String)} before the first lookup is made).
+ */
+public class CachingHostResolver implements AdvancedHostResolver {
+    /**
+     * Default maximum number of hostnames that will be cached.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    /**
+     * Default length of time to cache successful lookups, matching the JVM's default positive DNS cache timeout.
+     */
+    public static final long DEFAULT_POSITIVE_CACHE_TIMEOUT_MS = TimeUnit.MILLISECONDS.convert(30, TimeUnit.SECONDS);
+
+    /**
+     * Default length of time to cache failed lookups, matching the JVM's default negative DNS cache timeout.
+     */
+    public static final long DEFAULT_NEGATIVE_CACHE_TIMEOUT_MS = TimeUnit.MILLISECONDS.convert(10, TimeUnit.SECONDS);
+
+    private final AdvancedHostResolver delegate;
+
+    private final Cache<String, CachedLookup> cache;
+
+    private volatile long positiveCacheTimeoutMs = DEFAULT_POSITIVE_CACHE_TIMEOUT_MS;
+
+    private volatile long negativeCacheTimeoutMs = DEFAULT_NEGATIVE_CACHE_TIMEOUT_MS;
+
+    /**
+     * Incremented each time the cache is cleared. Lookups cached under a previous generation are treated as expired, so that lookups
+     * that were in progress when the cache was cleared cannot repopulate it with stale results.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a resolver that caches up to {@link #DEFAULT_MAXIMUM_SIZE} lookups made by the specified resolver.
+     *
+     * @param delegate resolver to cache lookups from
+     */
+    public CachingHostResolver(AdvancedHostResolver delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Creates a resolver that caches lookups made by the specified resolver.
+     *
+     * @param delegate resolver to cache lookups from
+     * @param maximumSize maximum number of hostnames to cache
+     */
+    public CachingHostResolver(AdvancedHostResolver delegate, long maximumSize) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate resolver cannot be null");
+        }
+
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Maximum cache size cannot be negative");
+        }
+
+        this.delegate = delegate;
+
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .removalListener(new RemovalListener<String, CachedLookup>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, CachedLookup> notification) {
+                        if (notification.wasEvicted()) {
+                            evictions.incrementAndGet();
+                        }
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Returns the resolver whose lookups are cached.
+     */
+    public AdvancedHostResolver getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Collection<InetAddress> resolve(final String host) {
+        CachedLookup cachedLookup = cache.getIfPresent(host);
+        if (cachedLookup != null && isValid(cachedLookup)) {
+            hits.incrementAndGet();
+
+            return cachedLookup.addresses;
+        }
+
+        misses.incrementAndGet();
+
+        if (cachedLookup != null) {
+            cache.asMap().remove(host, cachedLookup);
+        }
+
+        final long lookupGeneration = generation.get();
+
+        try {
+            CachedLookup lookup = cache.get(host, new Callable<CachedLookup>() {
+                @Override
+                public CachedLookup call() throws Exception {
+                    return lookUp(host, lookupGeneration);
+                }
+            });
+
+            // remove lookups that should not be cached, or that were cached after the cache was cleared. the lookup itself is still returned.
+            if (!isValid(lookup)) {
+                cache.asMap().remove(host, lookup);
+            }
+
+            return lookup.addresses;
+        } catch (ExecutionException e) {
+            // lookUp() does not throw checked exceptions
+            throw new UncheckedExecutionException(e.getCause());
+        }
+    }
+
+    /**
+     * Resolves the host using the delegate resolver, and determines how long the result can be cached.
+     */
+    private CachedLookup lookUp(String host, long lookupGeneration) {
+        Collection<InetAddress> addresses = delegate.resolve(host);
+        if (addresses == null) {
+            addresses = Collections.emptyList();
+        }
+
+        long cacheTimeoutMs = addresses.isEmpty() ? negativeCacheTimeoutMs : positiveCacheTimeoutMs;
+
+        long expiresAt;
+        if (cacheTimeoutMs < 0) {
+            expiresAt = Long.MAX_VALUE;
+        } else {
+            expiresAt = System.currentTimeMillis() + cacheTimeoutMs;
+        }
+
+        return new CachedLookup(addresses, expiresAt, lookupGeneration);
+    }
+
+    private boolean isValid(CachedLookup cachedLookup) {
+        return cachedLookup.generation == generation.get() && System.currentTimeMillis() < cachedLookup.expiresAt;
+    }
+
+    @Override
+    public void clearDNSCache() {
+        generation.incrementAndGet();
+
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void setPositiveDNSCacheTimeout(int timeout, TimeUnit timeUnit) {
+        positiveCacheTimeoutMs = timeout < 0 ? -1 : TimeUnit.MILLISECONDS.convert(timeout, timeUnit);
+    }
+
+    @Override
+    public void setNegativeDNSCacheTimeout(int timeout, TimeUnit timeUnit) {
+        negativeCacheTimeoutMs = timeout < 0 ? -1 : TimeUnit.MILLISECONDS.convert(timeout, timeUnit);
+    }
+
+    @Override
+    public void remapHosts(Map<String, String> hostRemappings) {
+        delegate.remapHosts(hostRemappings);
+
+        clearDNSCache();
+    }
+
+    @Override
+    public void remapHost(String originalHost, String remappedHost) {
+        delegate.remapHost(originalHost, remappedHost);
+
+        clearDNSCache();
+    }
+
+    @Override
+    public void removeHostRemapping(String originalHost) {
+        delegate.removeHostRemapping(originalHost);
+
+        clearDNSCache();
+    }
+
+    @Override
+    public void clearHostRemappings() {
+        delegate.clearHostRemappings();
+
+        clearDNSCache();
+    }
+
+    @Override
+    public Map<String, String> getHostRemappings() {
+        return delegate.getHostRemappings();
+    }
+
+    @Override
+    public Collection<String> getOriginalHostnames(String remappedHost) {
+        return delegate.getOriginalHostnames(remappedHost);
+    }
+
+    /**
+     * Returns the number of lookups that were answered from the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that were not in the cache, or had expired, and were resolved by the delegate resolver.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of lookups evicted from the cache because it exceeded its maximum size.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the approximate number of hostnames in the cache, including lookups that have expired but have not yet been removed.
+     */
+    public long getSize() {
+        return cache.size();
+    }
+
+    private static class CachedLookup {
+        private final Collection<InetAddress> addresses;
+
+        private final long expiresAt;
+
+        private final long generation;
+
+        private CachedLookup(Collection<InetAddress> addresses, long expiresAt, long generation) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+            this.generation = generation;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -23,6 +24,10 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * <p/>
  * For getter methods (all read-only methods except {@link #resolve(String)}), the ChainedHostResolver returns results from the first chained resolver.
  * <p/>
+ * Write methods take a write lock, but {@link #resolve(String)} normally resolves without locking. It checks a sequence number that
+ * is incremented before and after each write, and if a write was in progress or occurred during resolution, it resolves the host one
+ * more time while holding a read lock, so that a steady stream of writes cannot make it retry indefinitely.
+ * <p/>
  * The atomic write methods specified by AdvancedHostResolver are:
  * <ul>
  *     <li>{@link net.lightbody.bmp.proxy.dns.AdvancedHostResolver#remapHost(String, String)}</li>
@@ -41,6 +46,11 @@ public class ChainedHostResolver implements AdvancedHostResolver {
     private final Lock readLock = readWriteLock.readLock();
     private final Lock writeLock = readWriteLock.writeLock();
 
+    /**
+     * Incremented when a write operation begins and when it ends, so the sequence is odd while a write is in progress.
+     */
+    private final AtomicLong writeSequence = new AtomicLong();
+
     /**
      * Creates a ChainedHostResolver that applies {@link net.lightbody.bmp.proxy.dns.AdvancedHostResolver} methods to the specified resolvers
      * in the order specified by the collection's iterator.
@@ -67,132 +77,149 @@ public class ChainedHostResolver implements AdvancedHostResolver {
 
     @Override
     public void remapHosts(Map<String, String> hostRemappings) {
-        writeLock.lock();
+        beginWrite();
         try {
             for (AdvancedHostResolver resolver : resolvers) {
                 resolver.remapHosts(hostRemappings);
             }
         } finally {
-            writeLock.unlock();
+            endWrite();
         }
     }
 
     @Override
     public void remapHost(String originalHost, String remappedHost) {
-        writeLock.lock();
+        beginWrite();
         try {
             for (AdvancedHostResolver resolver : resolvers) {
                 resolver.remapHost(originalHost, remappedHost);
             }
         } finally {
-            writeLock.unlock();
+            endWrite();
         }
     }
 
     @Override
     public void removeHostRemapping(String originalHost) {
-        writeLock.lock();
+        beginWrite();
         try {
             for (AdvancedHostResolver resolver : resolvers) {
                 resolver.removeHostRemapping(originalHost);
             }
         } finally {
-            writeLock.unlock();
+            endWrite();
         }
     }
 
     @Override
     public void clearHostRemappings() {
-        writeLock.lock();
+        beginWrite();
         try {
             for (AdvancedHostResolver resolver : resolvers) {
                 resolver.clearHostRemappings();
             }
         } finally {
-            writeLock.unlock();
+            endWrite();
         }
     }
 
     @Override
     public Map<String, String> getHostRemappings() {
-        readLock.lock();
-        try {
-            if (resolvers.isEmpty()) {
-                return Collections.emptyMap();
-            } else {
-                return resolvers.get(0).getHostRemappings();
-            }
-        } finally {
-            readLock.unlock();
+        if (resolvers.isEmpty()) {
+            return Collections.emptyMap();
+        } else {
+            return resolvers.get(0).getHostRemappings();
         }
     }
 
     @Override
     public Collection<String> getOriginalHostnames(String remappedHost) {
-        readLock.lock();
-        try {
-            if (resolvers.isEmpty()) {
-                return Collections.emptyList();
-            } else {
-                return resolvers.get(0).getOriginalHostnames(remappedHost);
-            }
-        } finally {
-            readLock.unlock();
+        if (resolvers.isEmpty()) {
+            return Collections.emptyList();
+        } else {
+            return resolvers.get(0).getOriginalHostnames(remappedHost);
         }
     }
 
     @Override
     public void clearDNSCache() {
-        writeLock.lock();
+        beginWrite();
         try {
             for (AdvancedHostResolver resolver : resolvers) {
                 resolver.clearDNSCache();
             }
         } finally {
-            writeLock.unlock();
+            endWrite();
         }
     }
 
     @Override
     public void setPositiveDNSCacheTimeout(int timeout, TimeUnit timeUnit) {
-        writeLock.lock();
+        beginWrite();
         try {
             for (AdvancedHostResolver resolver : resolvers) {
                 resolver.setPositiveDNSCacheTimeout(timeout, timeUnit);
             }
         } finally {
-            writeLock.unlock();
+            endWrite();
         }
     }
 
     @Override
     public void setNegativeDNSCacheTimeout(int timeout, TimeUnit timeUnit) {
-        writeLock.lock();
+        beginWrite();
         try {
             for (AdvancedHostResolver resolver : resolvers) {
                 resolver.setNegativeDNSCacheTimeout(timeout, timeUnit);
             }
         } finally {
-            writeLock.unlock();
+            endWrite();
         }
     }
 
     @Override
     public Collection<InetAddress> resolve(String host) {
-        readLock.lock();
-        try {
-            // attempt to resolve the host using all resolvers. returns the results from the first successful resolution.
-            for (AdvancedHostResolver resolver : resolvers) {
-                Collection<InetAddress> results = resolver.resolve(host);
-                if (!results.isEmpty()) {
-                    return results;
-                }
+        long sequence = writeSequence.get();
+
+        // resolve without locking unless a write is in progress
+        if ((sequence & 1) == 0) {
+            Collection<InetAddress> results = resolveWithResolvers(host);
+
+            if (writeSequence.get() == sequence) {
+                return results;
             }
+        }
 
-            // no resolvers returned results
-            return Collections.emptyList();
+        // a write is in progress or overlapped the resolution, so the resolvers may not have been in the same state. resolve again
+        // while holding the read lock, which waits for the write to finish and prevents further writes from overlapping.
+        readLock.lock();
+        try {
+            return resolveWithResolvers(host);
         } finally {
             readLock.unlock();
         }
     }
+
+    private Collection<InetAddress> resolveWithResolvers(String host) {
+        // attempt to resolve the host using all resolvers. returns the results from the first successful resolution.
+        for (AdvancedHostResolver resolver : resolvers) {
+            Collection<InetAddress> results = resolver.resolve(host);
+            if (!results.isEmpty()) {
+                return results;
+            }
+        }
+
+        // no resolvers returned results
+        return Collections.emptyList();
+    }
+
+    private void beginWrite() {
+        writeLock.lock();
+        writeSequence.incrementAndGet();
+    }
+
+    private void endWrite() {
+        writeSequence.incrementAndGet();
+        writeLock.unlock();
+    }
 }
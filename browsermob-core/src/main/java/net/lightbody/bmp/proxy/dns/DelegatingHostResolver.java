@@ -10,10 +10,20 @@ import java.util.Collection;
 /**
  * A LittleProxy HostResolver that delegates to the specified {@link net.lightbody.bmp.proxy.dns.AdvancedHostResolver} instance. This class
  * serves as a bridge between {@link AdvancedHostResolver} and {@link org.littleshoot.proxy.HostResolver}.
+ * <p/>
+ * Since LittleProxy connects to a single address, the first resolved address is used by default. If an address selector is set,
+ * it chooses which resolved address to connect to instead.
 */
 public class DelegatingHostResolver implements org.littleshoot.proxy.HostResolver {
     private volatile AdvancedHostResolver resolver;
 
+    private volatile HappyEyeballsAddressSelector addressSelector;
+
+    /**
+     * Connect timeout for the address selector's probe connections. Should match the proxy's connect timeout.
+     */
+    private volatile int connectTimeoutMs;
+
     /**
      * Creates a new resolver that will delegate to the specified resolver.
      *
@@ -31,10 +41,32 @@ public class DelegatingHostResolver implements org.littleshoot.proxy.HostResolve
         this.resolver = resolver;
     }
 
+    public HappyEyeballsAddressSelector getAddressSelector() {
+        return addressSelector;
+    }
+
+    /**
+     * Sets the selector used to choose which resolved address to connect to. If null, the first resolved address is used.
+     *
+     * @param addressSelector address selector, or null to use the first resolved address
+     */
+    public void setAddressSelector(HappyEyeballsAddressSelector addressSelector) {
+        this.addressSelector = addressSelector;
+    }
+
+    public void setConnectTimeoutMs(int connectTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
     @Override
     public InetSocketAddress resolve(String host, int port) throws UnknownHostException {
         Collection<InetAddress> resolvedAddresses = resolver.resolve(host);
         if (!resolvedAddresses.isEmpty()) {
+            HappyEyeballsAddressSelector selector = addressSelector;
+            if (selector != null) {
+                return selector.selectAddress(resolvedAddresses, port, connectTimeoutMs);
+            }
+
             InetAddress resolvedAddress = Iterables.get(resolvedAddresses, 0);
             return new InetSocketAddress(resolvedAddress, port);
         }
@@ -0,0 +1,402 @@
+package net.lightbody.bmp.proxy.dns;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selects which of a host's resolved addresses the proxy should connect to, using connection races in the style of "Happy Eyeballs"
+ * (RFC 8305). Addresses are interleaved by address family, starting with the family of the first address, and a connection attempt is
+ * started to each address in turn, waiting the connection attempt delay between attempts (or less, if an attempt fails). The first
+ * address that accepts a connection wins the race, and all probe connections are closed.
+ * <p/>
+ * LittleProxy resolves addresses on the client connection's event loop and only accepts a single address, so races never block the
+ * caller: they run on Netty channels on a separate event loop, and their results are remembered for later connections. Addresses that
+ * accept a connection are remembered as healthy, and addresses that refuse, time out, or are still connecting when another address
+ * wins are remembered as unhealthy, for the address health timeout. {@link #selectAddress(Collection, int, int)} returns healthy
+ * addresses first and unhealthy addresses last, and starts a race in the background when no candidate is known to be healthy.
+ * <p/>
+ * As a result, the first connection to a host whose first address is unreachable still waits for the proxy's connect timeout, but
+ * subsequent connections within the address health timeout go straight to a reachable address. Each race makes one TCP handshake with
+ * each candidate it attempts, at most once per host per address health timeout.
+ */
+public class HappyEyeballsAddressSelector {
+    private static final Logger log = LoggerFactory.getLogger(HappyEyeballsAddressSelector.class);
+
+    /**
+     * Default delay between starting connection attempts to successive addresses, as recommended by RFC 8305.
+     */
+    public static final long DEFAULT_CONNECTION_ATTEMPT_DELAY_MS = 250;
+
+    /**
+     * Default length of time an address is remembered as healthy or unhealthy.
+     */
+    public static final long DEFAULT_ADDRESS_HEALTH_TIMEOUT_MS = TimeUnit.MILLISECONDS.convert(30, TimeUnit.SECONDS);
+
+    /**
+     * Length of time to wait for a probe connection when the proxy does not have a connect timeout.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MS = (int) TimeUnit.MILLISECONDS.convert(20, TimeUnit.SECONDS);
+
+    private static final int MAX_TRACKED_ADDRESSES = 10000;
+
+    /**
+     * Handler for probe connections, which are closed as soon as they connect and never read or write data.
+     */
+    private static final ChannelHandler PROBE_HANDLER = new ProbeHandler();
+
+    private final long connectionAttemptDelayMs;
+
+    /**
+     * True if the address recently accepted a connection, false if it recently failed to accept a connection.
+     */
+    private final Cache<InetSocketAddress, Boolean> addressHealth;
+
+    /**
+     * Event loop group that runs the races. Shared by all selectors unless one is specified when the selector is created.
+     */
+    private final EventLoopGroup eventLoopGroup;
+
+    /**
+     * Races in progress, keyed by their candidates, so that concurrent connections to the same host share a single race.
+     */
+    private final ConcurrentMap<List<InetSocketAddress>, Race> races = new ConcurrentHashMap<>();
+
+    public HappyEyeballsAddressSelector() {
+        this(DEFAULT_CONNECTION_ATTEMPT_DELAY_MS, DEFAULT_ADDRESS_HEALTH_TIMEOUT_MS);
+    }
+
+    /**
+     * Creates a selector with the specified timing parameters, which races connections on an event loop shared by all selectors.
+     *
+     * @param connectionAttemptDelayMs delay between starting connection attempts to successive addresses
+     * @param addressHealthTimeoutMs length of time to remember whether an address is healthy
+     */
+    public HappyEyeballsAddressSelector(long connectionAttemptDelayMs, long addressHealthTimeoutMs) {
+        this(connectionAttemptDelayMs, addressHealthTimeoutMs, SharedEventLoopGroupHolder.EVENT_LOOP_GROUP);
+    }
+
+    /**
+     * Creates a selector with the specified timing parameters, which races connections on the specified event loop group. The caller
+     * is responsible for shutting down the event loop group.
+     *
+     * @param connectionAttemptDelayMs delay between starting connection attempts to successive addresses
+     * @param addressHealthTimeoutMs length of time to remember whether an address is healthy
+     * @param eventLoopGroup event loop group to race connections on
+     */
+    public HappyEyeballsAddressSelector(long connectionAttemptDelayMs, long addressHealthTimeoutMs, EventLoopGroup eventLoopGroup) {
+        if (connectionAttemptDelayMs < 0) {
+            throw new IllegalArgumentException("Connection attempt delay cannot be negative");
+        }
+
+        this.connectionAttemptDelayMs = connectionAttemptDelayMs;
+        this.eventLoopGroup = eventLoopGroup;
+
+        this.addressHealth = CacheBuilder.newBuilder()
+                .maximumSize(MAX_TRACKED_ADDRESSES)
+                .expireAfterWrite(addressHealthTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Selects the address to connect to, without blocking. Addresses known to be healthy are preferred, and addresses known to be
+     * unhealthy are returned last. If there is more than one address and none is known to be healthy, a race is started in the
+     * background and the first address is returned.
+     *
+     * @param addresses resolved addresses, in the order returned by the resolver
+     * @param port port to connect to
+     * @param connectTimeoutMs connect timeout for probe connections, or 0 to use {@link #DEFAULT_CONNECT_TIMEOUT_MS}
+     * @return address to connect to
+     * @throws IllegalArgumentException if no addresses are specified
+     */
+    public InetSocketAddress selectAddress(Collection<InetAddress> addresses, int port, int connectTimeoutMs) {
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("No addresses to select from");
+        }
+
+        List<InetSocketAddress> candidates = orderByHealth(interleaveAddressFamilies(addresses), port);
+
+        InetSocketAddress firstCandidate = candidates.get(0);
+        if (candidates.size() > 1 && !Boolean.TRUE.equals(addressHealth.getIfPresent(firstCandidate))) {
+            race(candidates, connectTimeoutMs);
+        }
+
+        return firstCandidate;
+    }
+
+    /**
+     * Marks the address as unhealthy, so that it will be attempted after healthy addresses.
+     */
+    public void markUnhealthy(InetSocketAddress address) {
+        addressHealth.put(address, Boolean.FALSE);
+    }
+
+    /**
+     * Returns true if the address recently failed to accept a connection.
+     */
+    public boolean isUnhealthy(InetSocketAddress address) {
+        return Boolean.FALSE.equals(addressHealth.getIfPresent(address));
+    }
+
+    /**
+     * Clears all remembered address health.
+     */
+    public void clearAddressHealth() {
+        addressHealth.invalidateAll();
+    }
+
+    /**
+     * Starts a race between the candidates on the selector's event loop, or joins the race already in progress for the same candidates.
+     *
+     * @return future that completes with the first candidate to accept a connection, or null if no candidate accepted a connection
+     */
+    ListenableFuture<InetSocketAddress> race(List<InetSocketAddress> candidates, int connectTimeoutMs) {
+        EventLoop eventLoop = eventLoopGroup.next();
+
+        Race race = new Race(candidates, eventLoop, connectTimeoutMs > 0 ? connectTimeoutMs : DEFAULT_CONNECT_TIMEOUT_MS);
+        Race existingRace = races.putIfAbsent(race.candidates, race);
+        if (existingRace != null) {
+            return existingRace.result;
+        }
+
+        try {
+            eventLoop.execute(race);
+        } catch (RejectedExecutionException e) {
+            log.warn("Unable to race connections to addresses {}", candidates, e);
+
+            races.remove(race.candidates, race);
+
+            return Futures.immediateFuture(null);
+        }
+
+        return race.result;
+    }
+
+    private void connected(InetSocketAddress address) {
+        addressHealth.put(address, Boolean.TRUE);
+    }
+
+    private void failed(InetSocketAddress address, Throwable cause) {
+        log.debug("Unable to connect to {}", address, cause);
+
+        markUnhealthy(address);
+    }
+
+    /**
+     * A single race between candidate addresses. All methods other than the constructor run on the race's event loop.
+     */
+    private class Race implements Runnable {
+        private final List<InetSocketAddress> candidates;
+        private final EventLoop eventLoop;
+        private final Bootstrap bootstrap;
+
+        private final SettableFuture<InetSocketAddress> result = SettableFuture.create();
+
+        /**
+         * Connection attempts that have not completed, in the order they were started.
+         */
+        private final Map<ChannelFuture, InetSocketAddress> pendingAttempts = new LinkedHashMap<>();
+
+        private int nextCandidate;
+
+        private ScheduledFuture<?> nextAttempt;
+
+        Race(List<InetSocketAddress> candidates, EventLoop eventLoop, int connectTimeoutMs) {
+            this.candidates = ImmutableList.copyOf(candidates);
+            this.eventLoop = eventLoop;
+
+            this.bootstrap = new Bootstrap()
+                    .group(eventLoop)
+                    .channel(NioSocketChannel.class)
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                    .handler(PROBE_HANDLER);
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone() || nextCandidate >= candidates.size()) {
+                return;
+            }
+
+            final InetSocketAddress candidate = candidates.get(nextCandidate++);
+
+            ChannelFuture connectFuture = bootstrap.connect(candidate);
+            pendingAttempts.put(connectFuture, candidate);
+
+            connectFuture.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    attemptCompleted(future, candidate);
+                }
+            });
+
+            // an attempt that completed immediately has already started the next attempt, if any
+            if (!connectFuture.isDone() && nextCandidate < candidates.size()) {
+                nextAttempt = eventLoop.schedule(this, connectionAttemptDelayMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void attemptCompleted(ChannelFuture connectFuture, InetSocketAddress candidate) {
+            pendingAttempts.remove(connectFuture);
+
+            if (connectFuture.isSuccess()) {
+                connectFuture.channel().close();
+
+                if (!result.isDone()) {
+                    connected(candidate);
+
+                    finish(candidate);
+                }
+
+                return;
+            }
+
+            // attempts closed when the race finished are neither failures nor reasons to start another attempt
+            if (result.isDone()) {
+                return;
+            }
+
+            failed(candidate, connectFuture.cause());
+
+            if (nextCandidate < candidates.size()) {
+                // start the next attempt immediately, rather than waiting for the attempt delay
+                if (nextAttempt != null) {
+                    nextAttempt.cancel(false);
+                }
+
+                run();
+            } else if (pendingAttempts.isEmpty()) {
+                log.debug("No address accepted a connection: {}", candidates);
+
+                finish(null);
+            }
+        }
+
+        private void finish(InetSocketAddress winner) {
+            if (nextAttempt != null) {
+                nextAttempt.cancel(false);
+            }
+
+            // attempts started before the winner that are still connecting are slower than the winner, so attempt them last
+            List<Map.Entry<ChannelFuture, InetSocketAddress>> losingAttempts = new ArrayList<>(pendingAttempts.entrySet());
+            pendingAttempts.clear();
+
+            for (Map.Entry<ChannelFuture, InetSocketAddress> losingAttempt : losingAttempts) {
+                markUnhealthy(losingAttempt.getValue());
+            }
+
+            // record the race's results before completing it, so that callers waiting for the race see them
+            races.remove(candidates, this);
+            result.set(winner);
+
+            for (Map.Entry<ChannelFuture, InetSocketAddress> losingAttempt : losingAttempts) {
+                losingAttempt.getKey().channel().close();
+            }
+        }
+    }
+
+    @ChannelHandler.Sharable
+    private static class ProbeHandler extends ChannelInboundHandlerAdapter {
+    }
+
+    /**
+     * Lazily creates the single-threaded event loop group shared by selectors that were not given an event loop group. Its thread is
+     * a daemon thread, so it does not need to be shut down.
+     */
+    private static class SharedEventLoopGroupHolder {
+        private static final EventLoopGroup EVENT_LOOP_GROUP = new NioEventLoopGroup(1, new DefaultThreadFactory("happy-eyeballs", true));
+    }
+
+    /**
+     * Orders addresses known to be healthy first and addresses known to be unhealthy last, preserving the order of the addresses
+     * within each group.
+     */
+    private List<InetSocketAddress> orderByHealth(List<InetAddress> addresses, int port) {
+        List<InetSocketAddress> healthy = new ArrayList<>(addresses.size());
+        List<InetSocketAddress> unknown = new ArrayList<>(addresses.size());
+        List<InetSocketAddress> unhealthy = new ArrayList<>();
+
+        for (InetAddress address : addresses) {
+            InetSocketAddress socketAddress = new InetSocketAddress(address, port);
+
+            Boolean health = addressHealth.getIfPresent(socketAddress);
+            if (health == null) {
+                unknown.add(socketAddress);
+            } else if (health) {
+                healthy.add(socketAddress);
+            } else {
+                unhealthy.add(socketAddress);
+            }
+        }
+
+        healthy.addAll(unknown);
+        healthy.addAll(unhealthy);
+
+        return healthy;
+    }
+
+    /**
+     * Interleaves IPv6 and IPv4 addresses, starting with the address family of the first address, as described in RFC 8305 section 4.
+     * The order of addresses within each family is preserved.
+     */
+    static List<InetAddress> interleaveAddressFamilies(Collection<InetAddress> addresses) {
+        List<InetAddress> firstFamily = new ArrayList<>(addresses.size());
+        List<InetAddress> otherFamily = new ArrayList<>(addresses.size());
+
+        boolean firstFamilyIsIpv6 = addresses.iterator().next() instanceof Inet6Address;
+        for (InetAddress address : addresses) {
+            if ((address instanceof Inet6Address) == firstFamilyIsIpv6) {
+                firstFamily.add(address);
+            } else {
+                otherFamily.add(address);
+            }
+        }
+
+        if (otherFamily.isEmpty()) {
+            return ImmutableList.copyOf(firstFamily);
+        }
+
+        List<InetAddress> interleaved = new ArrayList<>(addresses.size());
+        for (int i = 0; i < Math.max(firstFamily.size(), otherFamily.size()); i++) {
+            if (i < firstFamily.size()) {
+                interleaved.add(firstFamily.get(i));
+            }
+
+            if (i < otherFamily.size()) {
+                interleaved.add(otherFamily.get(i));
+            }
+        }
+
+        return interleaved;
+    }
+}
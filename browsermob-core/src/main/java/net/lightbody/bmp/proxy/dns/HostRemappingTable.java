@@ -0,0 +1,184 @@
+package net.lightbody.bmp.proxy.dns;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of host remapping rules. Rules whose original host begins with "*." are wildcard rules, which remap any
+ * subdomain of the rest of the host. For example, the rule <code>*.staging.example.com -> 10.0.0.5</code> remaps
+ * <code>www.staging.example.com</code> and <code>a.b.staging.example.com</code>, but not <code>staging.example.com</code>.
+ * <p/>
+ * Exact rules take precedence over wildcard rules, and are case-sensitive. Wildcard rules are case-insensitive, and the rule with
+ * the longest matching suffix takes precedence. Wildcard rules are stored in a trie of reversed hostname labels, so remapping a
+ * host takes time proportional to the number of labels in the host, regardless of the number of rules.
+ * <p/>
+ * Modifying a table returns a new table, so tables can be shared between threads and read without locking.
+ */
+final class HostRemappingTable {
+    static final HostRemappingTable EMPTY = new HostRemappingTable(ImmutableMap.<String, String>of());
+
+    private static final String WILDCARD_PREFIX = "*.";
+
+    /**
+     * All rules, in the order they were added.
+     */
+    private final ImmutableMap<String, String> remappings;
+
+    private final ImmutableMap<String, String> exactRemappings;
+
+    /**
+     * Root of the trie of wildcard rules, keyed by the rules' labels from last to first. Null if there are no wildcard rules.
+     */
+    private final LabelNode wildcardRoot;
+
+    /**
+     * Original hosts of each remapped host, in the order the rules were added.
+     */
+    private final ImmutableListMultimap<String, String> originalHostnames;
+
+    HostRemappingTable(Map<String, String> remappings) {
+        this.remappings = ImmutableMap.copyOf(remappings);
+
+        ImmutableMap.Builder<String, String> exactRemappings = ImmutableMap.builder();
+        ImmutableListMultimap.Builder<String, String> originalHostnames = ImmutableListMultimap.builder();
+        LabelNode wildcardRoot = null;
+
+        for (Map.Entry<String, String> remapping : this.remappings.entrySet()) {
+            String originalHost = remapping.getKey();
+            String remappedHost = remapping.getValue();
+
+            originalHostnames.put(remappedHost, originalHost);
+
+            if (isWildcard(originalHost)) {
+                if (wildcardRoot == null) {
+                    wildcardRoot = new LabelNode();
+                }
+
+                addWildcardRule(wildcardRoot, originalHost.substring(WILDCARD_PREFIX.length()).toLowerCase(Locale.US), remappedHost);
+            } else {
+                exactRemappings.put(originalHost, remappedHost);
+            }
+        }
+
+        this.exactRemappings = exactRemappings.build();
+        this.originalHostnames = originalHostnames.build();
+        this.wildcardRoot = wildcardRoot;
+    }
+
+    private static boolean isWildcard(String originalHost) {
+        return originalHost.startsWith(WILDCARD_PREFIX) && originalHost.length() > WILDCARD_PREFIX.length();
+    }
+
+    private static void addWildcardRule(LabelNode root, String domain, String remappedHost) {
+        LabelNode node = root;
+
+        int labelEnd = domain.length();
+        while (labelEnd > 0) {
+            int labelStart = domain.lastIndexOf('.', labelEnd - 1) + 1;
+            String label = domain.substring(labelStart, labelEnd);
+
+            LabelNode child = node.children.get(label);
+            if (child == null) {
+                child = new LabelNode();
+                node.children.put(label, child);
+            }
+
+            node = child;
+            labelEnd = labelStart - 1;
+        }
+
+        node.wildcardRemappedHost = remappedHost;
+    }
+
+    /**
+     * Returns the host the specified host is remapped to, or null if no rule applies to the host.
+     */
+    String remap(String host) {
+        String remappedHost = exactRemappings.get(host);
+        if (remappedHost != null || wildcardRoot == null) {
+            return remappedHost;
+        }
+
+        String normalizedHost = host.toLowerCase(Locale.US);
+
+        LabelNode node = wildcardRoot;
+        String wildcardRemappedHost = null;
+
+        int labelEnd = normalizedHost.length();
+        while (labelEnd > 0) {
+            int labelStart = normalizedHost.lastIndexOf('.', labelEnd - 1) + 1;
+
+            node = node.children.get(normalizedHost.substring(labelStart, labelEnd));
+            if (node == null) {
+                break;
+            }
+
+            // a wildcard only matches if there is at least one more label to the left of this one
+            if (node.wildcardRemappedHost != null && labelStart > 0) {
+                wildcardRemappedHost = node.wildcardRemappedHost;
+            }
+
+            labelEnd = labelStart - 1;
+        }
+
+        return wildcardRemappedHost;
+    }
+
+    /**
+     * Returns all rules, in the order they were added.
+     */
+    ImmutableMap<String, String> getRemappings() {
+        return remappings;
+    }
+
+    /**
+     * Returns the original hosts (including wildcard rules) that are remapped to the specified host.
+     */
+    Collection<String> getOriginalHostnames(String remappedHost) {
+        return originalHostnames.get(remappedHost);
+    }
+
+    /**
+     * Returns a table containing this table's rules, with the specified rule added to the end.
+     */
+    HostRemappingTable withRemapping(String originalHost, String remappedHost) {
+        // use a LinkedHashMap to build the new remapping, to avoid duplicate key issues if the originalHost is already in the map
+        Map<String, String> builderMap = Maps.newLinkedHashMap(remappings);
+        builderMap.remove(originalHost);
+        builderMap.put(originalHost, remappedHost);
+
+        return new HostRemappingTable(builderMap);
+    }
+
+    /**
+     * Returns a table containing this table's rules, without the rule for the specified host.
+     */
+    HostRemappingTable withoutRemapping(String originalHost) {
+        if (!remappings.containsKey(originalHost)) {
+            return this;
+        }
+
+        Map<String, String> builderMap = Maps.newLinkedHashMap(remappings);
+        builderMap.remove(originalHost);
+
+        return new HostRemappingTable(builderMap);
+    }
+
+    /**
+     * A node in the wildcard trie. Nodes are only modified while the table is being constructed.
+     */
+    private static class LabelNode {
+        private final Map<String, LabelNode> children = new HashMap<>();
+
+        /**
+         * Host that subdomains of this node's domain are remapped to, or null if there is no wildcard rule for this domain.
+         */
+        private String wildcardRemappedHost;
+    }
+}
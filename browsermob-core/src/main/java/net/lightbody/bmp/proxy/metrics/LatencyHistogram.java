@@ -0,0 +1,150 @@
+package net.lightbody.bmp.proxy.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, lock-free histogram of latencies, in the style of HdrHistogram. Latencies are recorded in microseconds into
+ * log-linear buckets: each power of two is divided into {@link #SUB_BUCKET_COUNT} linear sub-buckets, so recorded values are
+ * accurate to within about 3%, regardless of magnitude. Recording a value is a single atomic increment of the value's bucket,
+ * plus updates to the count, sum, and maximum, so latencies can be recorded from any number of threads without locking.
+ * <p/>
+ * Latencies longer than about 38 hours are recorded in the highest bucket.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * Number of linear sub-buckets in each power of two.
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Largest power of two, in microseconds, that the histogram distinguishes. 2^37 us is about 38 hours.
+     */
+    private static final int MAX_EXPONENT = 37;
+
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param latency length of time
+     * @param timeUnit unit of the latency
+     */
+    public void record(long latency, TimeUnit timeUnit) {
+        long micros = TimeUnit.MICROSECONDS.convert(latency, timeUnit);
+        if (micros < 0) {
+            micros = 0;
+        }
+
+        buckets.incrementAndGet(bucketIndex(micros));
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+
+        long currentMax;
+        do {
+            currentMax = maxMicros.get();
+        } while (micros > currentMax && !maxMicros.compareAndSet(currentMax, micros));
+    }
+
+    /**
+     * Records a latency in nanoseconds, typically the difference between two {@link System#nanoTime()} values.
+     */
+    public void recordNanos(long latencyNanos) {
+        record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns a point-in-time summary of the recorded latencies. Since latencies may be recorded while the summary is being
+     * calculated, the summary may not reflect a single instant exactly.
+     */
+    public LatencySummary getSummary() {
+        long[] counts = new long[BUCKET_COUNT];
+        long totalCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            totalCount += counts[i];
+        }
+
+        long max = maxMicros.get();
+
+        return new LatencySummary(totalCount,
+                sumMicros.get(),
+                max,
+                valueAtPercentile(counts, totalCount, 50.0, max),
+                valueAtPercentile(counts, totalCount, 90.0, max),
+                valueAtPercentile(counts, totalCount, 99.0, max),
+                valueAtPercentile(counts, totalCount, 99.9, max));
+    }
+
+    /**
+     * Returns the number of latencies recorded.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the highest value, in microseconds, that is recorded in the same bucket as the value at the specified percentile,
+     * limited to the largest recorded value.
+     */
+    private static long valueAtPercentile(long[] counts, long totalCount, double percentile, long max) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+
+        long cumulativeCount = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulativeCount += counts[i];
+            if (cumulativeCount >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+
+        return max;
+    }
+
+    /**
+     * Returns the index of the bucket the value is recorded in. Values below {@link #SUB_BUCKET_COUNT} are recorded exactly;
+     * larger values are recorded in the sub-bucket of their power of two.
+     */
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (micros >>> shift) - SUB_BUCKET_COUNT;
+
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Returns the largest value, in microseconds, that is recorded in the bucket at the specified index.
+     */
+    static long highestEquivalentValue(int bucketIndex) {
+        if (bucketIndex < SUB_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+
+        int shift = bucketIndex / SUB_BUCKET_COUNT - 1;
+        long subBucket = bucketIndex % SUB_BUCKET_COUNT;
+
+        return ((SUB_BUCKET_COUNT + subBucket) << shift) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,85 @@
+package net.lightbody.bmp.proxy.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Point-in-time summary of a {@link LatencyHistogram}. Latencies are reported in milliseconds, with microsecond precision.
+ * Percentiles are accurate to within the precision of the histogram's buckets.
+ */
+public class LatencySummary {
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final long count;
+    private final double sumMs;
+    private final double maxMs;
+    private final double p50Ms;
+    private final double p90Ms;
+    private final double p99Ms;
+    private final double p999Ms;
+
+    LatencySummary(long count, long sumMicros, long maxMicros, long p50Micros, long p90Micros, long p99Micros, long p999Micros) {
+        this(count,
+                sumMicros / MICROS_PER_MILLI,
+                maxMicros / MICROS_PER_MILLI,
+                p50Micros / MICROS_PER_MILLI,
+                p90Micros / MICROS_PER_MILLI,
+                p99Micros / MICROS_PER_MILLI,
+                p999Micros / MICROS_PER_MILLI);
+    }
+
+    @ConstructorProperties({"count", "sumMs", "maxMs", "p50Ms", "p90Ms", "p99Ms", "p999Ms"})
+    public LatencySummary(long count, double sumMs, double maxMs, double p50Ms, double p90Ms, double p99Ms, double p999Ms) {
+        this.count = count;
+        this.sumMs = sumMs;
+        this.maxMs = maxMs;
+        this.p50Ms = p50Ms;
+        this.p90Ms = p90Ms;
+        this.p99Ms = p99Ms;
+        this.p999Ms = p999Ms;
+    }
+
+    /**
+     * Returns the number of latencies recorded.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the sum of all recorded latencies.
+     */
+    public double getSumMs() {
+        return sumMs;
+    }
+
+    /**
+     * Returns the mean of all recorded latencies, or 0 if no latencies have been recorded.
+     */
+    public double getMeanMs() {
+        if (count > 0) {
+            return sumMs / count;
+        } else {
+            return 0.0;
+        }
+    }
+
+    public double getMaxMs() {
+        return maxMs;
+    }
+
+    public double getP50Ms() {
+        return p50Ms;
+    }
+
+    public double getP90Ms() {
+        return p90Ms;
+    }
+
+    public double getP99Ms() {
+        return p99Ms;
+    }
+
+    public double getP999Ms() {
+        return p999Ms;
+    }
+}
@@ -0,0 +1,143 @@
+package net.lightbody.bmp.proxy.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes proxy metrics snapshots in the Prometheus text exposition format (version 0.0.4). Each metric is labeled with the port
+ * of the proxy it belongs to, so that metrics for all proxies can be served from a single endpoint. Latencies are written as
+ * summaries, in seconds.
+ */
+public class PrometheusTextWriter {
+    /**
+     * Content type of the Prometheus text exposition format.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String METRIC_PREFIX = "bmp_proxy_";
+
+    private static final double MILLIS_PER_SECOND = 1000.0;
+
+    private final Writer writer;
+
+    public PrometheusTextWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Writes all metrics for the specified snapshots. Does not flush or close the underlying writer.
+     */
+    public void write(Collection<ProxyMetricsSnapshot> snapshots) throws IOException {
+        writeHeader("active_requests", "gauge", "Requests currently in progress.");
+        for (ProxyMetricsSnapshot snapshot : snapshots) {
+            writeSample("active_requests", snapshot, null, snapshot.getActiveRequests());
+        }
+
+        writeHeader("requests_total", "counter", "Requests received from clients.");
+        for (ProxyMetricsSnapshot snapshot : snapshots) {
+            writeSample("requests_total", snapshot, null, snapshot.getTotalRequests());
+        }
+
+        writeHeader("requests_per_second", "gauge", "Average requests per second over the last minute.");
+        for (ProxyMetricsSnapshot snapshot : snapshots) {
+            writeSample("requests_per_second", snapshot, null, snapshot.getRequestsPerSecond());
+        }
+
+        writeHeader("request_bytes_total", "counter", "Bytes of request content received from clients.");
+        for (ProxyMetricsSnapshot snapshot : snapshots) {
+            writeSample("request_bytes_total", snapshot, null, snapshot.getRequestBytes());
+        }
+
+        writeHeader("response_bytes_total", "counter", "Bytes of response content received from servers.");
+        for (ProxyMetricsSnapshot snapshot : snapshots) {
+            writeSample("response_bytes_total", snapshot, null, snapshot.getResponseBytes());
+        }
+
+        writeHeader("dns_latency_seconds", "summary", "Time taken to resolve server hostnames.");
+        for (ProxyMetricsSnapshot snapshot : snapshots) {
+            writeSummary("dns_latency_seconds", snapshot, snapshot.getDnsLatency());
+        }
+
+        writeHeader("connect_latency_seconds", "summary", "Time taken to connect to servers, including TLS handshakes.");
+        for (ProxyMetricsSnapshot snapshot : snapshots) {
+            writeSummary("connect_latency_seconds", snapshot, snapshot.getConnectLatency());
+        }
+
+        writeHeader("tls_handshake_latency_seconds", "summary", "Time taken to complete TLS handshakes with servers.");
+        for (ProxyMetricsSnapshot snapshot : snapshots) {
+            writeSummary("tls_handshake_latency_seconds", snapshot, snapshot.getTlsHandshakeLatency());
+        }
+
+        writeHeader("time_to_first_byte_seconds", "summary", "Time between sending requests to servers and receiving the start of the responses.");
+        for (ProxyMetricsSnapshot snapshot : snapshots) {
+            writeSummary("time_to_first_byte_seconds", snapshot, snapshot.getTimeToFirstByte());
+        }
+
+        writeHeader("errors_total", "counter", "Failed requests and server errors, by type.");
+        for (ProxyMetricsSnapshot snapshot : snapshots) {
+            for (Map.Entry<String, Long> error : snapshot.getErrors().entrySet()) {
+                writeSample("errors_total", snapshot, "type=\"" + error.getKey().toLowerCase(Locale.US) + "\"", error.getValue());
+            }
+        }
+
+        writeHeader("ssl_context_cache_hits_total", "counter", "Impersonated certificate requests satisfied from the cache.");
+        for (ProxyMetricsSnapshot snapshot : snapshots) {
+            writeSample("ssl_context_cache_hits_total", snapshot, null, snapshot.getSslContextCacheHits());
+        }
+
+        writeHeader("ssl_context_cache_misses_total", "counter", "Impersonated certificate requests not satisfied from the cache.");
+        for (ProxyMetricsSnapshot snapshot : snapshots) {
+            writeSample("ssl_context_cache_misses_total", snapshot, null, snapshot.getSslContextCacheMisses());
+        }
+
+        writeHeader("client_tls_handshakes_total", "counter", "TLS handshakes with clients, by whether the session was resumed.");
+        for (ProxyMetricsSnapshot snapshot : snapshots) {
+            writeSample("client_tls_handshakes_total", snapshot, "resumed=\"false\"", snapshot.getClientFullTlsHandshakes());
+            writeSample("client_tls_handshakes_total", snapshot, "resumed=\"true\"", snapshot.getClientResumedTlsHandshakes());
+        }
+
+        writeHeader("dns_cache_hits_total", "counter", "DNS lookups satisfied from the proxy's DNS cache.");
+        for (ProxyMetricsSnapshot snapshot : snapshots) {
+            writeSample("dns_cache_hits_total", snapshot, null, snapshot.getDnsCacheHits());
+        }
+
+        writeHeader("dns_cache_misses_total", "counter", "DNS lookups not satisfied from the proxy's DNS cache.");
+        for (ProxyMetricsSnapshot snapshot : snapshots) {
+            writeSample("dns_cache_misses_total", snapshot, null, snapshot.getDnsCacheMisses());
+        }
+    }
+
+    private void writeHeader(String name, String type, String help) throws IOException {
+        writer.write("# HELP " + METRIC_PREFIX + name + " " + help + "\n");
+        writer.write("# TYPE " + METRIC_PREFIX + name + " " + type + "\n");
+    }
+
+    private void writeSummary(String name, ProxyMetricsSnapshot snapshot, LatencySummary summary) throws IOException {
+        writeSample(name, snapshot, "quantile=\"0.5\"", summary.getP50Ms() / MILLIS_PER_SECOND);
+        writeSample(name, snapshot, "quantile=\"0.9\"", summary.getP90Ms() / MILLIS_PER_SECOND);
+        writeSample(name, snapshot, "quantile=\"0.99\"", summary.getP99Ms() / MILLIS_PER_SECOND);
+        writeSample(name, snapshot, "quantile=\"0.999\"", summary.getP999Ms() / MILLIS_PER_SECOND);
+        writeSample(name + "_sum", snapshot, null, summary.getSumMs() / MILLIS_PER_SECOND);
+        writeSample(name + "_count", snapshot, null, summary.getCount());
+    }
+
+    private void writeSample(String name, ProxyMetricsSnapshot snapshot, String additionalLabels, long value) throws IOException {
+        writeSample(name, snapshot, additionalLabels, Long.toString(value));
+    }
+
+    private void writeSample(String name, ProxyMetricsSnapshot snapshot, String additionalLabels, double value) throws IOException {
+        writeSample(name, snapshot, additionalLabels, Double.toString(value));
+    }
+
+    private void writeSample(String name, ProxyMetricsSnapshot snapshot, String additionalLabels, String value) throws IOException {
+        writer.write(METRIC_PREFIX + name + "{port=\"" + snapshot.getPort() + "\"");
+        if (additionalLabels != null) {
+            writer.write("," + additionalLabels);
+        }
+
+        writer.write("} " + value + "\n");
+    }
+}
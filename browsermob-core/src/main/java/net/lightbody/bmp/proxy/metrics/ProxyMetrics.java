@@ -0,0 +1,201 @@
+package net.lightbody.bmp.proxy.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Live traffic metrics for a single proxy: request counts and rate, bytes transferred, upstream latency histograms, and error
+ * counts. All recording methods are lock-free and may be called concurrently from the proxy's filter chain. Metrics are
+ * recorded by {@link net.lightbody.bmp.filters.MetricsFilter}.
+ */
+public class ProxyMetrics {
+    /**
+     * Types of errors that prevent a request from completing, or that indicate the server failed to handle the request.
+     */
+    public enum ErrorType {
+        /**
+         * The server's hostname could not be resolved.
+         */
+        DNS_RESOLUTION_FAILED,
+
+        /**
+         * The proxy could not connect to the server, including failed TLS handshakes.
+         */
+        CONNECTION_FAILED,
+
+        /**
+         * The server did not respond within the proxy's idle connection timeout.
+         */
+        RESPONSE_TIMED_OUT,
+
+        /**
+         * The server responded with a 5xx status code.
+         */
+        SERVER_ERROR
+    }
+
+    /**
+     * Number of seconds over which the request rate is averaged.
+     */
+    private static final int REQUEST_RATE_WINDOW_SECONDS = 60;
+
+    /**
+     * Number of low-order bits of each request rate slot that hold the request count. The remaining bits hold the second the
+     * count applies to, so a slot can be reset and incremented for a new second with a single compare-and-set.
+     */
+    private static final int REQUEST_RATE_COUNT_BITS = 24;
+
+    private static final long REQUEST_RATE_COUNT_MASK = (1L << REQUEST_RATE_COUNT_BITS) - 1;
+
+    private final long startTimeMs = System.currentTimeMillis();
+
+    private final AtomicLong totalRequests = new AtomicLong();
+
+    private final AtomicLongArray requestsPerSecond = new AtomicLongArray(REQUEST_RATE_WINDOW_SECONDS);
+
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+
+    private final LatencyHistogram dnsLatency = new LatencyHistogram();
+    private final LatencyHistogram connectLatency = new LatencyHistogram();
+    private final LatencyHistogram tlsHandshakeLatency = new LatencyHistogram();
+    private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+
+    private final AtomicLongArray errors = new AtomicLongArray(ErrorType.values().length);
+
+    /**
+     * Records a request received from a client.
+     */
+    public void requestReceived() {
+        totalRequests.incrementAndGet();
+
+        long second = TimeUnit.SECONDS.convert(System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        int slot = (int) (second % REQUEST_RATE_WINDOW_SECONDS);
+
+        long current;
+        long updated;
+        do {
+            current = requestsPerSecond.get(slot);
+            if (current >>> REQUEST_RATE_COUNT_BITS == second) {
+                // limit the count to the slot's capacity, rather than overflowing into the second
+                updated = (current & REQUEST_RATE_COUNT_MASK) == REQUEST_RATE_COUNT_MASK ? current : current + 1;
+            } else {
+                updated = (second << REQUEST_RATE_COUNT_BITS) | 1;
+            }
+        } while (!requestsPerSecond.compareAndSet(slot, current, updated));
+    }
+
+    /**
+     * Records bytes of request content sent by the client, including request bodies of requests tunneled through
+     * man-in-the-middle HTTPS connections.
+     */
+    public void requestBytesReceived(long bytes) {
+        requestBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Records bytes of response content received from the server.
+     */
+    public void responseBytesReceived(long bytes) {
+        responseBytes.addAndGet(bytes);
+    }
+
+    public void dnsResolved(long latencyNanos) {
+        dnsLatency.recordNanos(latencyNanos);
+    }
+
+    public void connected(long latencyNanos) {
+        connectLatency.recordNanos(latencyNanos);
+    }
+
+    public void tlsHandshakeCompleted(long latencyNanos) {
+        tlsHandshakeLatency.recordNanos(latencyNanos);
+    }
+
+    /**
+     * Records the time between the proxy finishing sending a request to the server and receiving the start of the response.
+     */
+    public void firstByteReceived(long latencyNanos) {
+        timeToFirstByte.recordNanos(latencyNanos);
+    }
+
+    public void error(ErrorType errorType) {
+        errors.incrementAndGet(errorType.ordinal());
+    }
+
+    /**
+     * Returns the total number of requests received by the proxy.
+     */
+    public long getTotalRequests() {
+        return totalRequests.get();
+    }
+
+    /**
+     * Returns the average number of requests per second received over the last minute, or since the proxy was created if it
+     * was created less than a minute ago. The current second is not included.
+     */
+    public double getRequestsPerSecond() {
+        long nowMs = System.currentTimeMillis();
+        long currentSecond = TimeUnit.SECONDS.convert(nowMs, TimeUnit.MILLISECONDS);
+
+        long requests = 0;
+        for (int i = 0; i < REQUEST_RATE_WINDOW_SECONDS; i++) {
+            long slot = requestsPerSecond.get(i);
+            long second = slot >>> REQUEST_RATE_COUNT_BITS;
+            if (second < currentSecond && second >= currentSecond - REQUEST_RATE_WINDOW_SECONDS) {
+                requests += slot & REQUEST_RATE_COUNT_MASK;
+            }
+        }
+
+        long elapsedSeconds = currentSecond - TimeUnit.SECONDS.convert(startTimeMs, TimeUnit.MILLISECONDS);
+        long windowSeconds = Math.min(REQUEST_RATE_WINDOW_SECONDS, elapsedSeconds);
+        if (windowSeconds <= 0) {
+            return 0.0;
+        }
+
+        return (double) requests / windowSeconds;
+    }
+
+    public long getRequestBytes() {
+        return requestBytes.get();
+    }
+
+    public long getResponseBytes() {
+        return responseBytes.get();
+    }
+
+    public LatencyHistogram getDnsLatency() {
+        return dnsLatency;
+    }
+
+    public LatencyHistogram getConnectLatency() {
+        return connectLatency;
+    }
+
+    public LatencyHistogram getTlsHandshakeLatency() {
+        return tlsHandshakeLatency;
+    }
+
+    public LatencyHistogram getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    public long getErrorCount(ErrorType errorType) {
+        return errors.get(errorType.ordinal());
+    }
+
+    /**
+     * Returns the number of errors of each type.
+     */
+    public Map<ErrorType, Long> getErrorCounts() {
+        Map<ErrorType, Long> errorCounts = new EnumMap<>(ErrorType.class);
+        for (ErrorType errorType : ErrorType.values()) {
+            errorCounts.put(errorType, errors.get(errorType.ordinal()));
+        }
+
+        return errorCounts;
+    }
+}
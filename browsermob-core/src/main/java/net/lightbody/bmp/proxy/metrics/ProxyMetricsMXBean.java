@@ -0,0 +1,37 @@
+package net.lightbody.bmp.proxy.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX management interface for a proxy's metrics. Attributes have the same meaning as the corresponding properties of
+ * {@link ProxyMetricsSnapshot}.
+ */
+public interface ProxyMetricsMXBean {
+    int getPort();
+
+    long getUptimeMs();
+
+    int getActiveRequests();
+
+    long getTotalRequests();
+
+    double getRequestsPerSecond();
+
+    long getRequestBytes();
+
+    long getResponseBytes();
+
+    LatencySummary getDnsLatency();
+
+    LatencySummary getConnectLatency();
+
+    LatencySummary getTlsHandshakeLatency();
+
+    LatencySummary getTimeToFirstByte();
+
+    Map<String, Long> getErrors();
+
+    double getSslContextCacheHitRate();
+
+    double getDnsCacheHitRate();
+}
@@ -0,0 +1,105 @@
+package net.lightbody.bmp.proxy.metrics;
+
+import net.lightbody.bmp.BrowserMobProxyServer;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.Map;
+
+/**
+ * Exposes a {@link BrowserMobProxyServer}'s metrics as a {@link ProxyMetricsMXBean}. Each attribute is read from a new
+ * {@link BrowserMobProxyServer#getMetricsSnapshot() snapshot} of the proxy's metrics.
+ */
+public class ProxyMetricsMXBeanAdapter implements ProxyMetricsMXBean {
+    /**
+     * JMX domain that proxy metrics MBeans are registered in.
+     */
+    public static final String JMX_DOMAIN = "net.lightbody.bmp";
+
+    private final BrowserMobProxyServer proxy;
+
+    public ProxyMetricsMXBeanAdapter(BrowserMobProxyServer proxy) {
+        this.proxy = proxy;
+    }
+
+    /**
+     * Returns the name of the metrics MBean for the proxy on the specified port.
+     */
+    public static ObjectName getObjectName(int port) {
+        try {
+            return new ObjectName(JMX_DOMAIN + ":type=ProxyMetrics,port=" + port);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("Unable to create metrics MBean name for port " + port, e);
+        }
+    }
+
+    @Override
+    public int getPort() {
+        return proxy.getPort();
+    }
+
+    @Override
+    public long getUptimeMs() {
+        return proxy.getMetricsSnapshot().getUptimeMs();
+    }
+
+    @Override
+    public int getActiveRequests() {
+        return proxy.getMetricsSnapshot().getActiveRequests();
+    }
+
+    @Override
+    public long getTotalRequests() {
+        return proxy.getMetrics().getTotalRequests();
+    }
+
+    @Override
+    public double getRequestsPerSecond() {
+        return proxy.getMetrics().getRequestsPerSecond();
+    }
+
+    @Override
+    public long getRequestBytes() {
+        return proxy.getMetrics().getRequestBytes();
+    }
+
+    @Override
+    public long getResponseBytes() {
+        return proxy.getMetrics().getResponseBytes();
+    }
+
+    @Override
+    public LatencySummary getDnsLatency() {
+        return proxy.getMetrics().getDnsLatency().getSummary();
+    }
+
+    @Override
+    public LatencySummary getConnectLatency() {
+        return proxy.getMetrics().getConnectLatency().getSummary();
+    }
+
+    @Override
+    public LatencySummary getTlsHandshakeLatency() {
+        return proxy.getMetrics().getTlsHandshakeLatency().getSummary();
+    }
+
+    @Override
+    public LatencySummary getTimeToFirstByte() {
+        return proxy.getMetrics().getTimeToFirstByte().getSummary();
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        return proxy.getMetricsSnapshot().getErrors();
+    }
+
+    @Override
+    public double getSslContextCacheHitRate() {
+        return proxy.getMetricsSnapshot().getSslContextCacheHitRate();
+    }
+
+    @Override
+    public double getDnsCacheHitRate() {
+        return proxy.getMetricsSnapshot().getDnsCacheHitRate();
+    }
+}
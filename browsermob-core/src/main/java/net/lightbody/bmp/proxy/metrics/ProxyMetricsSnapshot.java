@@ -0,0 +1,254 @@
+package net.lightbody.bmp.proxy.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Point-in-time view of a proxy's {@link ProxyMetrics}, along with the proxy's active request count and certificate and DNS
+ * cache statistics. Returned by {@link net.lightbody.bmp.BrowserMobProxyServer#getMetricsSnapshot()}.
+ * <p/>
+ * Cache statistics are only available when the proxy uses the default {@link net.lightbody.bmp.mitm.manager.ImpersonatingMitmManager}
+ * and a {@link net.lightbody.bmp.proxy.dns.CachingHostResolver}, respectively; otherwise they are 0. When proxies share a
+ * {@link net.lightbody.bmp.ProxyServerGroup}, the certificate statistics include all proxies in the group.
+ */
+public class ProxyMetricsSnapshot {
+    private int port;
+
+    private long uptimeMs;
+
+    private int activeRequests;
+    private long totalRequests;
+    private double requestsPerSecond;
+
+    private long requestBytes;
+    private long responseBytes;
+
+    private LatencySummary dnsLatency;
+    private LatencySummary connectLatency;
+    private LatencySummary tlsHandshakeLatency;
+    private LatencySummary timeToFirstByte;
+
+    private Map<String, Long> errors = new LinkedHashMap<>();
+
+    private long sslContextCacheHits;
+    private long sslContextCacheMisses;
+
+    private long clientFullTlsHandshakes;
+    private long clientResumedTlsHandshakes;
+
+    private long dnsCacheHits;
+    private long dnsCacheMisses;
+
+    public ProxyMetricsSnapshot() {
+    }
+
+    /**
+     * Creates a snapshot of the traffic metrics in the specified {@link ProxyMetrics}. Active requests and cache statistics are
+     * not populated.
+     */
+    public ProxyMetricsSnapshot(int port, ProxyMetrics metrics, long createdTimeMs) {
+        this.port = port;
+        this.uptimeMs = System.currentTimeMillis() - createdTimeMs;
+
+        this.totalRequests = metrics.getTotalRequests();
+        this.requestsPerSecond = metrics.getRequestsPerSecond();
+
+        this.requestBytes = metrics.getRequestBytes();
+        this.responseBytes = metrics.getResponseBytes();
+
+        this.dnsLatency = metrics.getDnsLatency().getSummary();
+        this.connectLatency = metrics.getConnectLatency().getSummary();
+        this.tlsHandshakeLatency = metrics.getTlsHandshakeLatency().getSummary();
+        this.timeToFirstByte = metrics.getTimeToFirstByte().getSummary();
+
+        for (Map.Entry<ProxyMetrics.ErrorType, Long> error : metrics.getErrorCounts().entrySet()) {
+            errors.put(error.getKey().name(), error.getValue());
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public long getUptimeMs() {
+        return uptimeMs;
+    }
+
+    public void setUptimeMs(long uptimeMs) {
+        this.uptimeMs = uptimeMs;
+    }
+
+    public int getActiveRequests() {
+        return activeRequests;
+    }
+
+    public void setActiveRequests(int activeRequests) {
+        this.activeRequests = activeRequests;
+    }
+
+    public long getTotalRequests() {
+        return totalRequests;
+    }
+
+    public void setTotalRequests(long totalRequests) {
+        this.totalRequests = totalRequests;
+    }
+
+    /**
+     * Returns the average number of requests per second over the last minute.
+     */
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public void setRequestsPerSecond(double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    /**
+     * Returns the number of bytes of request content received from clients.
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    public void setRequestBytes(long requestBytes) {
+        this.requestBytes = requestBytes;
+    }
+
+    /**
+     * Returns the number of bytes of response content received from servers.
+     */
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    public void setResponseBytes(long responseBytes) {
+        this.responseBytes = responseBytes;
+    }
+
+    public LatencySummary getDnsLatency() {
+        return dnsLatency;
+    }
+
+    public void setDnsLatency(LatencySummary dnsLatency) {
+        this.dnsLatency = dnsLatency;
+    }
+
+    /**
+     * Returns the time taken to connect to servers, including TLS handshakes.
+     */
+    public LatencySummary getConnectLatency() {
+        return connectLatency;
+    }
+
+    public void setConnectLatency(LatencySummary connectLatency) {
+        this.connectLatency = connectLatency;
+    }
+
+    public LatencySummary getTlsHandshakeLatency() {
+        return tlsHandshakeLatency;
+    }
+
+    public void setTlsHandshakeLatency(LatencySummary tlsHandshakeLatency) {
+        this.tlsHandshakeLatency = tlsHandshakeLatency;
+    }
+
+    /**
+     * Returns the time between sending requests to servers and receiving the start of the responses.
+     */
+    public LatencySummary getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    public void setTimeToFirstByte(LatencySummary timeToFirstByte) {
+        this.timeToFirstByte = timeToFirstByte;
+    }
+
+    /**
+     * Returns the number of errors, keyed by the name of the {@link ProxyMetrics.ErrorType}.
+     */
+    public Map<String, Long> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(Map<String, Long> errors) {
+        this.errors = errors;
+    }
+
+    public long getSslContextCacheHits() {
+        return sslContextCacheHits;
+    }
+
+    public void setSslContextCacheHits(long sslContextCacheHits) {
+        this.sslContextCacheHits = sslContextCacheHits;
+    }
+
+    public long getSslContextCacheMisses() {
+        return sslContextCacheMisses;
+    }
+
+    public void setSslContextCacheMisses(long sslContextCacheMisses) {
+        this.sslContextCacheMisses = sslContextCacheMisses;
+    }
+
+    /**
+     * Returns the fraction of impersonated certificate requests that were satisfied from the cache, or 0 if there have been no
+     * requests.
+     */
+    public double getSslContextCacheHitRate() {
+        return hitRate(sslContextCacheHits, sslContextCacheMisses);
+    }
+
+    public long getClientFullTlsHandshakes() {
+        return clientFullTlsHandshakes;
+    }
+
+    public void setClientFullTlsHandshakes(long clientFullTlsHandshakes) {
+        this.clientFullTlsHandshakes = clientFullTlsHandshakes;
+    }
+
+    public long getClientResumedTlsHandshakes() {
+        return clientResumedTlsHandshakes;
+    }
+
+    public void setClientResumedTlsHandshakes(long clientResumedTlsHandshakes) {
+        this.clientResumedTlsHandshakes = clientResumedTlsHandshakes;
+    }
+
+    public long getDnsCacheHits() {
+        return dnsCacheHits;
+    }
+
+    public void setDnsCacheHits(long dnsCacheHits) {
+        this.dnsCacheHits = dnsCacheHits;
+    }
+
+    public long getDnsCacheMisses() {
+        return dnsCacheMisses;
+    }
+
+    public void setDnsCacheMisses(long dnsCacheMisses) {
+        this.dnsCacheMisses = dnsCacheMisses;
+    }
+
+    /**
+     * Returns the fraction of DNS lookups that were satisfied from the proxy's DNS cache, or 0 if there have been no lookups.
+     */
+    public double getDnsCacheHitRate() {
+        return hitRate(dnsCacheHits, dnsCacheMisses);
+    }
+
+    private static double hitRate(long hits, long misses) {
+        long requests = hits + misses;
+        if (requests > 0) {
+            return (double) hits / requests;
+        } else {
+            return 0.0;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package net.lightbody.bmp.util.decoder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.lightbody.bmp.exception.DecompressionException;
+
+import java.util.List;
+
+/**
+ * Decodes content to which multiple content codings were applied, by passing the output of each decoder to the next. The
+ * decoders must be supplied in decoding order, which is the reverse of the order the codings are listed in the
+ * Content-Encoding header.
+ */
+class ChainedContentDecoder implements ContentDecoder {
+    private final List<ContentDecoder> decoders;
+
+    ChainedContentDecoder(List<ContentDecoder> decoders) {
+        this.decoders = decoders;
+    }
+
+    @Override
+    public ByteBuf decode(ByteBuf encoded) throws DecompressionException {
+        ByteBuf decoded = encoded;
+        boolean release = false;
+
+        try {
+            for (ContentDecoder decoder : decoders) {
+                ByteBuf next = decoder.decode(decoded);
+                if (release) {
+                    decoded.release();
+                }
+
+                decoded = next;
+                release = true;
+            }
+        } catch (RuntimeException e) {
+            if (release) {
+                decoded.release();
+            }
+
+            close();
+
+            throw e;
+        }
+
+        return decoded;
+    }
+
+    @Override
+    public ByteBuf finish() throws DecompressionException {
+        ByteBuf decoded = Unpooled.EMPTY_BUFFER;
+
+        try {
+            for (ContentDecoder decoder : decoders) {
+                ByteBuf remaining = decoder.decode(decoded);
+                decoded.release();
+                decoded = remaining;
+
+                ByteBuf last = decoder.finish();
+                decoded = Unpooled.wrappedBuffer(decoded, last);
+            }
+        } catch (RuntimeException e) {
+            decoded.release();
+
+            close();
+
+            throw e;
+        }
+
+        return decoded;
+    }
+
+    @Override
+    public void close() {
+        for (ContentDecoder decoder : decoders) {
+            decoder.close();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package net.lightbody.bmp.util.decoder;
+
+import io.netty.buffer.ByteBuf;
+import net.lightbody.bmp.exception.DecompressionException;
+
+/**
+ * A streaming decoder for a single HTTP content coding (for example, gzip). Encoded content is supplied chunk-by-chunk as it
+ * is received, and the decoder returns whatever decoded content is available after each chunk, so the decoder only needs to
+ * buffer the state of the coding, not the entire message.
+ * <p/>
+ * Decoders are stateful and are used for a single message. A decoder is not required to be thread-safe.
+ */
+public interface ContentDecoder {
+    /**
+     * Decodes the readable bytes of the specified buffer. The decoder must not modify the buffer's reader index and must not
+     * release the buffer.
+     *
+     * @param encoded next chunk of encoded content
+     * @return decoded content available after this chunk, possibly empty; the caller is responsible for releasing it
+     * @throws DecompressionException if the content cannot be decoded
+     */
+    ByteBuf decode(ByteBuf encoded) throws DecompressionException;
+
+    /**
+     * Signals the end of the encoded content and returns any remaining decoded content. The decoder is closed once this method
+     * returns.
+     *
+     * @return remaining decoded content, possibly empty; the caller is responsible for releasing it
+     * @throws DecompressionException if the content is truncated or cannot be decoded
+     */
+    ByteBuf finish() throws DecompressionException;
+
+    /**
+     * Releases any resources held by the decoder without decoding remaining content. Has no effect if the decoder has already
+     * been finished or closed.
+     */
+    void close();
+}
@@ -0,0 +1,12 @@
+package net.lightbody.bmp.util.decoder;
+
+/**
+ * Creates {@link ContentDecoder}s for a content coding. Factories are registered with a {@link ContentDecoderRegistry} by
+ * content coding name, and must be thread-safe.
+ */
+public interface ContentDecoderFactory {
+    /**
+     * @return a new decoder for a single message
+     */
+    ContentDecoder newDecoder();
+}
@@ -0,0 +1,189 @@
+package net.lightbody.bmp.util.decoder;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps HTTP content coding names (the values of the Content-Encoding header) to the {@link ContentDecoderFactory}s that decode
+ * them. The default registry decodes gzip (and its alias x-gzip) and deflate. Decoders for other codings, such as br or zstd,
+ * can be added by registering a factory for the coding:
+ * <pre>
+ *     ContentDecoderRegistry.getDefault().register("br", brotliDecoderFactory);
+ * </pre>
+ * Content coding names are case-insensitive. A Content-Encoding header may list multiple codings; the content is decoded only if
+ * every listed coding has a registered decoder.
+ */
+public class ContentDecoderRegistry {
+    /**
+     * Default maximum size of decompressed content.
+     */
+    public static final int DEFAULT_MAX_DECODED_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * The identity coding, which indicates no encoding.
+     */
+    private static final String IDENTITY = "identity";
+
+    private static final ContentDecoderRegistry DEFAULT = new ContentDecoderRegistry();
+
+    private final ConcurrentMap<String, ContentDecoderFactory> factories = new ConcurrentHashMap<>();
+
+    private volatile int maxDecodedBytes = DEFAULT_MAX_DECODED_BYTES;
+
+    /**
+     * Creates a registry with decoders for the gzip, x-gzip, and deflate codings.
+     */
+    public ContentDecoderRegistry() {
+        register("gzip", ZlibContentDecoder.GZIP);
+        register("x-gzip", ZlibContentDecoder.GZIP);
+        register("deflate", ZlibContentDecoder.DEFLATE);
+    }
+
+    /**
+     * @return the registry used by the capture filters
+     */
+    public static ContentDecoderRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Registers a decoder factory for the specified content coding, replacing any existing factory for the coding.
+     *
+     * @param contentCoding content coding name, e.g. "br"
+     * @param factory factory for decoders of the coding
+     */
+    public void register(String contentCoding, ContentDecoderFactory factory) {
+        if (factory == null) {
+            throw new IllegalArgumentException("Decoder factory cannot be null");
+        }
+
+        factories.put(normalize(contentCoding), factory);
+    }
+
+    /**
+     * Removes the decoder factory for the specified content coding, if any.
+     *
+     * @param contentCoding content coding name
+     */
+    public void unregister(String contentCoding) {
+        factories.remove(normalize(contentCoding));
+    }
+
+    /**
+     * @param contentEncoding value of a Content-Encoding header
+     * @return true if every coding in the header has a registered decoder
+     */
+    public boolean isSupported(String contentEncoding) {
+        for (String coding : parseContentEncoding(contentEncoding)) {
+            if (!factories.containsKey(coding)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Creates a decoder for content with the specified Content-Encoding header.
+     *
+     * @param contentEncoding value of a Content-Encoding header
+     * @return decoder for the content, or null if any of the codings in the header is not supported
+     */
+    public ContentDecoder newDecoder(String contentEncoding) {
+        List<String> codings = parseContentEncoding(contentEncoding);
+
+        List<ContentDecoderFactory> decoderFactories = new ArrayList<>(codings.size());
+        for (String coding : codings) {
+            ContentDecoderFactory factory = factories.get(coding);
+            if (factory == null) {
+                return null;
+            }
+
+            decoderFactories.add(factory);
+        }
+
+        if (decoderFactories.isEmpty()) {
+            return null;
+        }
+
+        if (decoderFactories.size() == 1) {
+            return decoderFactories.get(0).newDecoder();
+        }
+
+        // codings are listed in the order they were applied, so they must be decoded in reverse order
+        List<ContentDecoder> decoders = new ArrayList<>(decoderFactories.size());
+        for (ContentDecoderFactory factory : Lists.reverse(decoderFactories)) {
+            decoders.add(factory.newDecoder());
+        }
+
+        return new ChainedContentDecoder(decoders);
+    }
+
+    /**
+     * Creates a decompressor for content with the specified Content-Encoding header, limited to this registry's maximum decoded
+     * size.
+     *
+     * @param contentEncoding value of a Content-Encoding header
+     * @return decompressor for the content, or null if any of the codings in the header is not supported
+     */
+    public ContentDecompressor newDecompressor(String contentEncoding) {
+        ContentDecoder decoder = newDecoder(contentEncoding);
+        if (decoder == null) {
+            return null;
+        }
+
+        return new ContentDecompressor(decoder, maxDecodedBytes);
+    }
+
+    public int getMaxDecodedBytes() {
+        return maxDecodedBytes;
+    }
+
+    /**
+     * Sets the maximum size of content decompressed by decompressors created by this registry. Content that exceeds the
+     * maximum size is not decompressed.
+     *
+     * @param maxDecodedBytes maximum size of decompressed content
+     */
+    public void setMaxDecodedBytes(int maxDecodedBytes) {
+        if (maxDecodedBytes < 0) {
+            throw new IllegalArgumentException("Maximum decoded size cannot be negative");
+        }
+
+        this.maxDecodedBytes = maxDecodedBytes;
+    }
+
+    /**
+     * Parses the codings in a Content-Encoding header, ignoring the identity coding.
+     */
+    private static List<String> parseContentEncoding(String contentEncoding) {
+        List<String> codings = new ArrayList<>(1);
+
+        if (contentEncoding == null) {
+            return codings;
+        }
+
+        for (String coding : Splitter.on(',').trimResults().omitEmptyStrings().split(contentEncoding)) {
+            String normalizedCoding = normalize(coding);
+            if (!IDENTITY.equals(normalizedCoding)) {
+                codings.add(normalizedCoding);
+            }
+        }
+
+        return codings;
+    }
+
+    private static String normalize(String contentCoding) {
+        if (contentCoding == null) {
+            throw new IllegalArgumentException("Content coding cannot be null");
+        }
+
+        return contentCoding.trim().toLowerCase(Locale.US);
+    }
+}
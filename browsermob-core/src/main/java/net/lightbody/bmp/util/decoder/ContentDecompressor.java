@@ -0,0 +1,106 @@
+package net.lightbody.bmp.util.decoder;
+
+import io.netty.buffer.ByteBuf;
+import net.lightbody.bmp.exception.DecompressionException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Decompresses an entire message by feeding its content, chunk-by-chunk, to a {@link ContentDecoder} and collecting the decoded
+ * output. The decoded output is limited to a maximum size: once the limit is exceeded, the decoder is closed and a
+ * {@link DecompressionException} is thrown, so a highly-compressed response cannot exhaust the heap.
+ * <p/>
+ * A decompressor is used for a single message and is not thread-safe.
+ */
+public class ContentDecompressor {
+    private final ContentDecoder decoder;
+    private final int maxDecodedBytes;
+
+    private final ByteArrayOutputStream decodedContents = new ByteArrayOutputStream();
+
+    private boolean done;
+
+    /**
+     * @param decoder decoder for the message's content codings
+     * @param maxDecodedBytes maximum size of the decoded content
+     */
+    public ContentDecompressor(ContentDecoder decoder, int maxDecodedBytes) {
+        if (maxDecodedBytes < 0) {
+            throw new IllegalArgumentException("Maximum decoded size cannot be negative");
+        }
+
+        this.decoder = decoder;
+        this.maxDecodedBytes = maxDecodedBytes;
+    }
+
+    /**
+     * Decodes the next chunk of the message. The buffer's reader index is not modified.
+     *
+     * @param content next chunk of compressed content
+     * @throws DecompressionException if the content cannot be decoded or the decoded content exceeds the maximum size
+     */
+    public void decompress(ByteBuf content) throws DecompressionException {
+        if (done) {
+            throw new DecompressionException("Cannot decompress content after decompression has finished");
+        }
+
+        collect(decoder.decode(content));
+    }
+
+    /**
+     * Decodes any remaining content and returns the entire decoded message.
+     *
+     * @return decoded message
+     * @throws DecompressionException if the content is truncated, cannot be decoded, or exceeds the maximum size
+     */
+    public byte[] finish() throws DecompressionException {
+        if (done) {
+            throw new DecompressionException("Decompression has already finished");
+        }
+
+        collect(decoder.finish());
+
+        done = true;
+
+        return decodedContents.toByteArray();
+    }
+
+    /**
+     * Abandons decompression and releases the decoder's resources.
+     */
+    public void close() {
+        done = true;
+
+        decoder.close();
+    }
+
+    /**
+     * @return number of decoded bytes collected so far
+     */
+    public int getDecodedSize() {
+        return decodedContents.size();
+    }
+
+    private void collect(ByteBuf decoded) {
+        try {
+            int readableBytes = decoded.readableBytes();
+            if (readableBytes == 0) {
+                return;
+            }
+
+            if (decodedContents.size() + (long) readableBytes > maxDecodedBytes) {
+                close();
+
+                throw new DecompressionException("Decompressed content exceeds maximum size of " + maxDecodedBytes + " bytes");
+            }
+
+            decoded.readBytes(decodedContents, readableBytes);
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw IOExceptions
+            throw new DecompressionException("Unable to collect decompressed content", e);
+        } finally {
+            decoded.release();
+        }
+    }
+}
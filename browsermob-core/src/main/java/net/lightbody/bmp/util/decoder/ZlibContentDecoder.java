@@ -0,0 +1,131 @@
+package net.lightbody.bmp.util.decoder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import net.lightbody.bmp.exception.DecompressionException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the gzip and deflate content codings with netty's zlib decoder, which inflates each chunk as it is supplied. The
+ * decoder runs in an {@link EmbeddedChannel}, so it never touches the proxy's pipeline and does not modify the message sent to
+ * the client.
+ */
+public class ZlibContentDecoder implements ContentDecoder {
+    /**
+     * Creates decoders for the gzip content coding.
+     */
+    public static final ContentDecoderFactory GZIP = new ContentDecoderFactory() {
+        @Override
+        public ContentDecoder newDecoder() {
+            return new ZlibContentDecoder(ZlibWrapper.GZIP);
+        }
+    };
+
+    /**
+     * Creates decoders for the deflate content coding. The deflate coding is defined as zlib-wrapped deflate data, but some
+     * servers send raw deflate data instead, so both are accepted.
+     */
+    public static final ContentDecoderFactory DEFLATE = new ContentDecoderFactory() {
+        @Override
+        public ContentDecoder newDecoder() {
+            return new ZlibContentDecoder(ZlibWrapper.ZLIB_OR_NONE);
+        }
+    };
+
+    private final EmbeddedChannel decoder;
+
+    private boolean closed;
+
+    public ZlibContentDecoder(ZlibWrapper wrapper) {
+        this.decoder = new EmbeddedChannel(ZlibCodecFactory.newZlibDecoder(wrapper));
+    }
+
+    @Override
+    public ByteBuf decode(ByteBuf encoded) throws DecompressionException {
+        if (closed) {
+            throw new DecompressionException("Cannot decode content after the decoder has been closed");
+        }
+
+        if (!encoded.isReadable()) {
+            return Unpooled.EMPTY_BUFFER;
+        }
+
+        try {
+            // the zlib decoder consumes and releases its input, so give it a retained duplicate with independent indexes
+            decoder.writeInbound(encoded.duplicate().retain());
+        } catch (RuntimeException e) {
+            close();
+
+            throw new DecompressionException("Unable to decode content", e);
+        }
+
+        return readDecoded();
+    }
+
+    @Override
+    public ByteBuf finish() throws DecompressionException {
+        if (closed) {
+            throw new DecompressionException("Cannot finish decoding content after the decoder has been closed");
+        }
+
+        try {
+            decoder.finish();
+        } catch (RuntimeException e) {
+            close();
+
+            throw new DecompressionException("Unable to decode content", e);
+        }
+
+        closed = true;
+
+        return readDecoded();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            decoder.finishAndReleaseAll();
+        } catch (RuntimeException e) {
+            // the content is being discarded, so errors decoding it are irrelevant
+        }
+    }
+
+    private ByteBuf readDecoded() {
+        List<ByteBuf> decoded = null;
+
+        ByteBuf buf;
+        while ((buf = (ByteBuf) decoder.readInbound()) != null) {
+            if (!buf.isReadable()) {
+                buf.release();
+                continue;
+            }
+
+            if (decoded == null) {
+                decoded = new ArrayList<>(2);
+            }
+
+            decoded.add(buf);
+        }
+
+        if (decoded == null) {
+            return Unpooled.EMPTY_BUFFER;
+        }
+
+        if (decoded.size() == 1) {
+            return decoded.get(0);
+        }
+
+        return Unpooled.wrappedBuffer(decoded.toArray(new ByteBuf[decoded.size()]));
+    }
+}
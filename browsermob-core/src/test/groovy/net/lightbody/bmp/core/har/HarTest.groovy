@@ -0,0 +1,81 @@
+package net.lightbody.bmp.core.har
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+
+class HarTest {
+    @Test
+    void testStreamingOutputMatchesObjectMapperOutput() {
+        HarLog harLog = new HarLog(new HarNameVersion("BrowserMob Proxy", "test"))
+        harLog.addPage(new HarPage("page-1", "Page 1"))
+
+        HarEntry entry = new HarEntry("page-1")
+        entry.setStartedDateTime(new Date(1500000000000L))
+        entry.setRequest(new HarRequest("GET", "http://www.example.com/", "HTTP/1.1"))
+        entry.setResponse(new HarResponse(200, "OK", "HTTP/1.1"))
+        entry.getResponse().getContent().setText("response text")
+        harLog.addEntry(entry)
+        harLog.addEntry(new HarEntry("page-1"))
+
+        Har har = new Har(harLog)
+
+        ObjectMapper objectMapper = new ObjectMapper()
+
+        StringWriter writer = new StringWriter()
+        har.writeTo(writer)
+
+        assertEquals("Expected streamed HAR to match HAR serialized in a single call", objectMapper.writeValueAsString(har), writer.toString())
+        assertEquals("Expected streamed HAR to deserialize to a HAR with all entries", 2, objectMapper.readTree(writer.toString()).get("log").get("entries").size())
+    }
+
+    @Test
+    void testStreamingOutputIncludesAllLogProperties() {
+        HarLog harLog = new HarLogWithExtraProperty()
+        harLog.addEntry(new HarEntry("page-1"))
+
+        StringWriter writer = new StringWriter()
+        new Har(harLog).writeTo(writer)
+
+        assertEquals("Expected streamed HAR to include properties not known to Har", "extra value",
+                new ObjectMapper().readTree(writer.toString()).get("log").get("_extra").asText())
+    }
+
+    static class HarLogWithExtraProperty extends HarLog {
+        String get_extra() {
+            return "extra value"
+        }
+    }
+
+    @Test
+    void testStreamingOutputWithNullLog() {
+        Har har = new Har()
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream()
+        har.writeTo(os)
+
+        assertEquals('{"log":null}', os.toString("UTF-8"))
+    }
+
+    @Test
+    void testHarListsCanBeModified() {
+        HarLog harLog = new HarLog()
+        HarEntry first = new HarEntry("page-1")
+        HarEntry second = new HarEntry("page-1")
+        harLog.addEntry(first)
+        harLog.addEntry(second)
+
+        harLog.getEntries().remove(first)
+        assertEquals("Expected entry to be removed from the HAR", [second], harLog.getEntries())
+
+        HarRequest request = new HarRequest("GET", "http://www.example.com/", "HTTP/1.1")
+        request.getHeaders().add(new HarNameValuePair("Cookie", "secret"))
+        request.getHeaders().add(new HarNameValuePair("Accept", "*/*"))
+        request.getHeaders().removeAll { it.name == "Cookie" }
+        assertEquals("Expected header to be removed from the request", ["Accept"], request.getHeaders()*.name)
+
+        harLog.getEntries().clear()
+        assertEquals("Expected all entries to be removed from the HAR", 0, harLog.getEntries().size())
+    }
+}
@@ -0,0 +1,170 @@
+package net.lightbody.bmp.proxy
+
+import net.lightbody.bmp.BrowserMobProxyServer
+import net.lightbody.bmp.core.har.CompactHarLog
+import net.lightbody.bmp.core.har.Har
+import net.lightbody.bmp.core.har.HarEntry
+import net.lightbody.bmp.core.har.HarResponse
+import net.lightbody.bmp.core.har.HarTimings
+import net.lightbody.bmp.filters.util.HarCaptureUtil
+import net.lightbody.bmp.proxy.test.util.MockServerTest
+import net.lightbody.bmp.proxy.test.util.NewProxyServerTestUtil
+import org.apache.http.client.methods.CloseableHttpResponse
+import org.apache.http.client.methods.HttpGet
+import org.junit.After
+import org.junit.Test
+import org.mockserver.matchers.Times
+import org.mockserver.model.Header
+
+import java.util.concurrent.TimeUnit
+
+import static org.hamcrest.Matchers.containsString
+import static org.hamcrest.Matchers.empty
+import static org.hamcrest.Matchers.greaterThan
+import static org.hamcrest.Matchers.greaterThanOrEqualTo
+import static org.hamcrest.Matchers.instanceOf
+import static org.hamcrest.Matchers.not
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertThat
+import static org.mockserver.model.HttpRequest.request
+import static org.mockserver.model.HttpResponse.response
+
+class CompactHarTest extends MockServerTest {
+    private BrowserMobProxyServer proxy
+
+    @After
+    void tearDown() {
+        if (proxy?.started) {
+            proxy.abort()
+        }
+    }
+
+    @Test
+    void testCompactHarCapturesRequestAndResponse() {
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/compact"),
+                Times.exactly(1))
+                .respond(response()
+                .withStatusCode(200)
+                .withHeader(new Header("Content-Type", "text/plain"))
+                .withBody("success"))
+
+        proxy = new BrowserMobProxyServer()
+        proxy.setCompactHarCaptureEnabled(true)
+        // capture types are ignored for compact HARs
+        proxy.setHarCaptureTypes(CaptureType.getAllContentCaptureTypes())
+        proxy.start()
+
+        proxy.newHar("Page 1")
+
+        String requestUrl = "http://localhost:${mockServerPort}/compact"
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            String responseBody = NewProxyServerTestUtil.toStringAndClose(it.execute(new HttpGet(requestUrl)).getEntity().getContent())
+            assertEquals("Did not receive expected response from mock server", "success", responseBody)
+        }
+
+        Thread.sleep(500)
+        Har har = proxy.getHar()
+
+        assertThat("Expected HAR to use a compact log", har.log, instanceOf(CompactHarLog))
+        assertThat("Expected to find entries in the HAR", har.log.entries, not(empty()))
+
+        HarEntry entry = har.log.entries[0]
+        assertEquals("Page 1", entry.pageref)
+        assertEquals("URL captured in HAR did not match request URL", requestUrl, entry.request.url)
+        assertEquals("GET", entry.request.method)
+        assertThat("Expected request headers size to be captured", entry.request.headersSize, greaterThan(0L))
+        assertEquals("Expected request headers not to be captured", 0, entry.request.headers.size())
+
+        assertEquals(200, entry.response.status)
+        assertEquals("OK", entry.response.statusText)
+        assertEquals("HTTP/1.1", entry.response.httpVersion)
+        assertEquals("text/plain", entry.response.content.mimeType)
+        assertEquals("Expected response body size to be captured", "success".length(), entry.response.bodySize)
+        assertThat("Expected response headers size to be captured", entry.response.headersSize, greaterThan(0L))
+        assertEquals("Expected response content not to be captured", null, entry.response.content.text)
+
+        assertEquals("Expected IP address to be populated", "127.0.0.1", entry.serverIPAddress)
+        assertThat("Expected connect time to be populated", entry.timings.getConnect(TimeUnit.NANOSECONDS), greaterThanOrEqualTo(0L))
+
+        // the compact HAR can be serialized like any other HAR
+        StringWriter json = new StringWriter()
+        har.writeTo(json)
+        assertThat(json.toString(), containsString("\"url\":\"${requestUrl}\""))
+    }
+
+    @Test
+    void testCompactHarCapturesHttpsTimings() {
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/compacthttps"),
+                Times.exactly(1))
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("success"))
+
+        proxy = new BrowserMobProxyServer()
+        proxy.setCompactHarCaptureEnabled(true)
+        proxy.setTrustAllServers(true)
+        proxy.start()
+
+        proxy.newHar()
+
+        String requestUrl = "https://localhost:${mockServerPort}/compacthttps"
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            String responseBody = NewProxyServerTestUtil.toStringAndClose(it.execute(new HttpGet(requestUrl)).getEntity().getContent())
+            assertEquals("Did not receive expected response from mock server", "success", responseBody)
+        }
+
+        Thread.sleep(500)
+        Har har = proxy.getHar()
+
+        assertThat("Expected to find entries in the HAR", har.log.entries, not(empty()))
+
+        HarEntry entry = har.log.entries[0]
+        assertEquals("URL captured in HAR did not match request URL", requestUrl, entry.request.url)
+        assertEquals(200, entry.response.status)
+        assertThat("Expected ssl time to be populated from the CONNECT", entry.timings.getSsl(TimeUnit.NANOSECONDS), greaterThan(0L))
+        assertThat("Expected connect time to be populated from the CONNECT", entry.timings.getConnect(TimeUnit.NANOSECONDS), greaterThan(0L))
+    }
+
+    @Test
+    void testCompactHarCapturesConnectionFailures() {
+        proxy = new BrowserMobProxyServer()
+        proxy.setCompactHarCaptureEnabled(true)
+        proxy.start()
+
+        proxy.newHar()
+
+        // TCP port 2 is almost certainly not in use, so connections to it will fail
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            CloseableHttpResponse response = it.execute(new HttpGet("http://localhost:2/some-resource"))
+            assertEquals("Did not receive HTTP 502 from proxy", 502, response.getStatusLine().getStatusCode())
+
+            response = it.execute(new HttpGet("https://localhost:2/some-resource"))
+            assertEquals("Did not receive HTTP 502 from proxy", 502, response.getStatusLine().getStatusCode())
+        }
+
+        Thread.sleep(500)
+        Har har = proxy.getHar()
+
+        assertEquals("Expected entries for both failed requests", 2, har.log.entries.size())
+
+        assertEquals("http://localhost:2/some-resource", har.log.entries[0].request.url)
+        assertEquals("https://localhost:2", har.log.entries[1].request.url)
+
+        for (HarEntry entry : har.log.entries) {
+            HarResponse harResponse = entry.response
+            assertEquals("Error in HAR response did not match expected connection failure error message", HarCaptureUtil.getConnectionFailedErrorMessage(), harResponse.error)
+            assertEquals("Expected HTTP status code of 0 for failed request", HarCaptureUtil.HTTP_STATUS_CODE_FOR_FAILURE, harResponse.status)
+            assertEquals("Expected default value for bodySize for failed request", -1L, harResponse.bodySize)
+
+            HarTimings harTimings = entry.timings
+            assertThat("Expected connect time to be populated after connection failure", harTimings.getConnect(TimeUnit.NANOSECONDS), greaterThan(0L))
+            assertEquals("Expected HAR timings to contain default values after connection failure", -1L, harTimings.getSsl(TimeUnit.NANOSECONDS))
+        }
+    }
+}
@@ -10,6 +10,7 @@ import net.lightbody.bmp.core.har.HarEntry
 import net.lightbody.bmp.core.har.HarNameValuePair
 import net.lightbody.bmp.core.har.HarResponse
 import net.lightbody.bmp.core.har.HarTimings
+import net.lightbody.bmp.core.har.store.SpillingHarContentStore
 import net.lightbody.bmp.filters.util.HarCaptureUtil
 import net.lightbody.bmp.proxy.dns.AdvancedHostResolver
 import net.lightbody.bmp.proxy.test.util.MockServerTest
@@ -225,6 +226,96 @@ class NewHarTest extends MockServerTest {
         assertEquals("Unexpected response content length", expectedResponseBody.getBytes("UTF-8").length, content.size)
     }
 
+    @Test
+    void testCaptureResponseContentInHarWithContentStore() {
+        String expectedResponseBody = "success, spilled to disk"
+        String responseContentType = "text/plain; charset=UTF-8"
+
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/testCaptureResponseContentInHarWithContentStore"),
+                Times.exactly(1))
+                .respond(response()
+                .withStatusCode(200)
+                .withBody(expectedResponseBody)
+                .withHeader(new Header("Content-Type", responseContentType)))
+
+        // an inline threshold of 0 forces every body to be spilled
+        SpillingHarContentStore contentStore = new SpillingHarContentStore(null, 0, 0)
+
+        proxy = new BrowserMobProxyServer()
+        proxy.setHarCaptureTypes(CaptureType.RESPONSE_CONTENT)
+        proxy.setHarContentStore(contentStore)
+        proxy.start()
+
+        proxy.newHar()
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            String responseBody = NewProxyServerTestUtil.toStringAndClose(it.execute(new HttpGet("http://localhost:${mockServerPort}/testCaptureResponseContentInHarWithContentStore")).getEntity().getContent())
+            assertEquals("Did not receive expected response from mock server", expectedResponseBody, responseBody)
+        }
+
+        Thread.sleep(500)
+        Har har = proxy.getHar()
+
+        assertThat("Expected to find entries in the HAR", har.getLog().getEntries(), not(empty()))
+
+        HarContent content = har.getLog().getEntries().first().response.content
+
+        assertEquals("Expected response body to be spilled to the content store", 1, contentStore.spilledContentCount)
+        assertEquals("Expected to read body content from the content store", expectedResponseBody, content.text)
+        assertEquals("Unexpected response content length", expectedResponseBody.getBytes("UTF-8").length, content.size)
+
+        Har endedHar = proxy.endHar()
+        assertEquals("Expected content of the ended HAR to remain readable", expectedResponseBody, endedHar.getLog().getEntries().first().response.content.text)
+
+        proxy.newHar()
+        assertEquals("Expected spilled content of released HARs to be deleted", 0, contentStore.spilledBytes)
+    }
+
+    @Test
+    void testCaptureResponseContentInHarWithContentProcessor() {
+        String expectedResponseBody = "success, processed asynchronously"
+        String responseContentType = "text/plain; charset=UTF-8"
+
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/testCaptureResponseContentInHarWithContentProcessor"),
+                Times.exactly(1))
+                .respond(response()
+                .withStatusCode(200)
+                .withBody(expectedResponseBody)
+                .withHeader(new Header("Content-Type", responseContentType)))
+
+        HarContentProcessor contentProcessor = new HarContentProcessor(1, 10)
+
+        proxy = new BrowserMobProxyServer()
+        proxy.setHarCaptureTypes(CaptureType.RESPONSE_CONTENT)
+        proxy.setHarContentProcessor(contentProcessor)
+        proxy.start()
+
+        proxy.newHar()
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            String responseBody = NewProxyServerTestUtil.toStringAndClose(it.execute(new HttpGet("http://localhost:${mockServerPort}/testCaptureResponseContentInHarWithContentProcessor")).getEntity().getContent())
+            assertEquals("Did not receive expected response from mock server", expectedResponseBody, responseBody)
+        }
+
+        Thread.sleep(500)
+        Har har = proxy.getHar()
+
+        assertThat("Expected to find entries in the HAR", har.getLog().getEntries(), not(empty()))
+
+        HarEntry entry = har.getLog().getEntries().first()
+        assertFalse("Expected content processing to be complete when HAR is retrieved", entry.contentPending)
+        assertEquals("Expected no pending content after HAR is retrieved", 0, contentProcessor.pendingContentCount)
+
+        assertEquals("Expected to capture body content in HAR", expectedResponseBody, entry.response.content.text)
+        assertEquals("Unexpected response content length", expectedResponseBody.getBytes("UTF-8").length, entry.response.content.size)
+
+        contentProcessor.shutdown()
+    }
+
     @Test
     void testCaptureResponseInfoWhenResponseCaptureDisabled() {
         String expectedResponseBody = "success";
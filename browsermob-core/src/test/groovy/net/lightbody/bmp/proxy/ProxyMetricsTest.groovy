@@ -0,0 +1,105 @@
+package net.lightbody.bmp.proxy
+
+import net.lightbody.bmp.BrowserMobProxyServer
+import net.lightbody.bmp.proxy.metrics.PrometheusTextWriter
+import net.lightbody.bmp.proxy.metrics.ProxyMetricsSnapshot
+import net.lightbody.bmp.proxy.test.util.MockServerTest
+import net.lightbody.bmp.proxy.test.util.NewProxyServerTestUtil
+import org.apache.http.client.methods.HttpGet
+import org.apache.http.client.methods.HttpPost
+import org.apache.http.entity.StringEntity
+import org.junit.After
+import org.junit.Test
+import org.mockserver.matchers.Times
+
+import static org.hamcrest.Matchers.containsString
+import static org.hamcrest.Matchers.greaterThanOrEqualTo
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertThat
+import static org.mockserver.model.HttpRequest.request
+import static org.mockserver.model.HttpResponse.response
+
+class ProxyMetricsTest extends MockServerTest {
+    private BrowserMobProxyServer proxy
+
+    @After
+    void tearDown() {
+        if (proxy?.started) {
+            proxy.abort()
+        }
+    }
+
+    @Test
+    void testTrafficRecordedInMetrics() {
+        mockServer.when(request()
+                .withMethod("POST")
+                .withPath("/upload"),
+                Times.exactly(1))
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("success"))
+
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/unavailable"),
+                Times.exactly(1))
+                .respond(response()
+                .withStatusCode(503)
+                .withBody("unavailable"))
+
+        proxy = new BrowserMobProxyServer()
+        proxy.start()
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            HttpPost post = new HttpPost("http://127.0.0.1:${mockServerPort}/upload")
+            post.setEntity(new StringEntity("0123456789"))
+            String responseBody = NewProxyServerTestUtil.toStringAndClose(it.execute(post).getEntity().getContent())
+            assertEquals("Did not receive expected response from mock server", "success", responseBody)
+
+            int statusCode = it.execute(new HttpGet("http://127.0.0.1:${mockServerPort}/unavailable")).withCloseable { it.statusLine.statusCode }
+            assertEquals("Did not receive expected response from mock server", 503, statusCode)
+        }
+
+        ProxyMetricsSnapshot snapshot = proxy.getMetricsSnapshot()
+
+        assertEquals(proxy.port, snapshot.port)
+        assertEquals("Expected both requests to be counted", 2L, snapshot.totalRequests)
+        assertEquals("Expected no requests to be active", 0, snapshot.activeRequests)
+        assertEquals("Expected request body to be counted", 10L, snapshot.requestBytes)
+        assertEquals("Expected response bodies to be counted", "success".length() + "unavailable".length(), snapshot.responseBytes)
+        assertEquals("Expected time to first byte to be recorded for both requests", 2L, snapshot.timeToFirstByte.count)
+        assertThat("Expected connection latency to be recorded", snapshot.connectLatency.count, greaterThanOrEqualTo(1L))
+        assertEquals("Expected the 503 response to be counted as a server error", 1L, snapshot.errors.get("SERVER_ERROR"))
+        assertEquals(0L, snapshot.errors.get("CONNECTION_FAILED"))
+
+        StringWriter prometheusText = new StringWriter()
+        new PrometheusTextWriter(prometheusText).write([snapshot])
+
+        assertThat(prometheusText.toString(), containsString("# TYPE bmp_proxy_requests_total counter\n"))
+        assertThat(prometheusText.toString(), containsString("bmp_proxy_requests_total{port=\"${proxy.port}\"} 2\n"))
+        assertThat(prometheusText.toString(), containsString("bmp_proxy_errors_total{port=\"${proxy.port}\",type=\"server_error\"} 1\n"))
+        assertThat(prometheusText.toString(), containsString("bmp_proxy_time_to_first_byte_seconds_count{port=\"${proxy.port}\"} 2\n"))
+    }
+
+    @Test
+    void testConnectionFailureRecordedInMetrics() {
+        // bind a socket to find a free port, then close it so that connections to the port are refused
+        ServerSocket socket = new ServerSocket(0)
+        int closedPort = socket.localPort
+        socket.close()
+
+        proxy = new BrowserMobProxyServer()
+        proxy.start()
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            int statusCode = it.execute(new HttpGet("http://127.0.0.1:${closedPort}/refused")).withCloseable { it.statusLine.statusCode }
+            assertEquals("Expected proxy to return a 502 when the server refuses the connection", 502, statusCode)
+        }
+
+        ProxyMetricsSnapshot snapshot = proxy.getMetricsSnapshot()
+
+        assertEquals(1L, snapshot.totalRequests)
+        assertEquals("Expected refused connection to be counted", 1L, snapshot.errors.get("CONNECTION_FAILED"))
+        assertEquals("Did not expect the proxy's 502 response to be counted as a server error", 0L, snapshot.errors.get("SERVER_ERROR"))
+    }
+}
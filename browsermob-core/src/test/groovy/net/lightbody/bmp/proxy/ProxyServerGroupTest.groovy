@@ -0,0 +1,123 @@
+package net.lightbody.bmp.proxy
+
+import net.lightbody.bmp.BrowserMobProxyServer
+import net.lightbody.bmp.ProxyServerGroup
+import net.lightbody.bmp.core.har.Har
+import net.lightbody.bmp.proxy.test.util.MockServerTest
+import net.lightbody.bmp.proxy.test.util.NewProxyServerTestUtil
+import org.apache.http.client.methods.CloseableHttpResponse
+import org.apache.http.client.methods.HttpGet
+import org.junit.After
+import org.junit.Test
+import org.littleshoot.proxy.impl.ThreadPoolConfiguration
+import org.mockserver.matchers.Times
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertSame
+import static org.mockserver.model.HttpRequest.request
+import static org.mockserver.model.HttpResponse.response
+
+class ProxyServerGroupTest extends MockServerTest {
+    ProxyServerGroup serverGroup
+
+    List<BrowserMobProxyServer> proxies = []
+
+    @After
+    void tearDown() {
+        proxies.each {
+            if (it.started && !it.stopped) {
+                it.abort()
+            }
+        }
+
+        serverGroup?.shutdown()
+    }
+
+    @Test
+    void testProxiesInGroupKeepSeparateHarsAndFilters() {
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/sharedgroup.*"),
+                Times.unlimited())
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("success"))
+
+        serverGroup = new ProxyServerGroup(new ThreadPoolConfiguration()
+                .withAcceptorThreads(1)
+                .withClientToProxyWorkerThreads(1)
+                .withProxyToServerWorkerThreads(1))
+
+        BrowserMobProxyServer firstProxy = createProxyInGroup()
+        BrowserMobProxyServer secondProxy = createProxyInGroup()
+
+        firstProxy.newHar()
+        secondProxy.newHar()
+
+        secondProxy.blacklistRequests("http://localhost:${mockServerPort}/sharedgroup".toString(), 404)
+
+        NewProxyServerTestUtil.getNewHttpClient(firstProxy.port).withCloseable {
+            CloseableHttpResponse response = it.execute(new HttpGet("http://localhost:${mockServerPort}/sharedgroup"))
+            assertEquals("Expected request through first proxy to succeed", 200, response.getStatusLine().getStatusCode())
+            assertEquals("success", NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent()))
+        }
+
+        NewProxyServerTestUtil.getNewHttpClient(secondProxy.port).withCloseable {
+            CloseableHttpResponse response = it.execute(new HttpGet("http://localhost:${mockServerPort}/sharedgroup"))
+            assertEquals("Expected request through second proxy to be blacklisted", 404, response.getStatusLine().getStatusCode())
+
+            response = it.execute(new HttpGet("http://localhost:${mockServerPort}/sharedgroupsecond"))
+            assertEquals("Expected non-blacklisted request through second proxy to succeed", 200, response.getStatusLine().getStatusCode())
+        }
+
+        Har firstHar = firstProxy.getHar()
+        Har secondHar = secondProxy.getHar()
+
+        assertEquals("Expected first proxy's HAR to contain only its own entry", 1, firstHar.log.entries.size())
+        assertEquals("Expected first proxy's HAR entry to contain its own request", "http://localhost:${mockServerPort}/sharedgroup".toString(), firstHar.log.entries[0].request.url)
+        assertEquals("Expected second proxy's HAR not to contain requests made through the first proxy", 0,
+                secondHar.log.entries.count { it.request.url == "http://localhost:${mockServerPort}/sharedgroup".toString() })
+        assertEquals("Expected second proxy's HAR to contain its own request", "http://localhost:${mockServerPort}/sharedgroupsecond".toString(),
+                secondHar.log.entries.last().request.url)
+    }
+
+    @Test
+    void testProxiesCanBeStoppedAndAddedIndependently() {
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/sharedgroupstop"),
+                Times.unlimited())
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("success"))
+
+        serverGroup = new ProxyServerGroup()
+
+        BrowserMobProxyServer firstProxy = createProxyInGroup()
+        firstProxy.stop()
+
+        BrowserMobProxyServer secondProxy = createProxyInGroup()
+
+        NewProxyServerTestUtil.getNewHttpClient(secondProxy.port).withCloseable {
+            CloseableHttpResponse response = it.execute(new HttpGet("http://localhost:${mockServerPort}/sharedgroupstop"))
+            assertEquals("Expected proxy started after another proxy in the group stopped to succeed", 200, response.getStatusLine().getStatusCode())
+        }
+    }
+
+    @Test
+    void testMitmManagerIsShared() {
+        serverGroup = new ProxyServerGroup()
+
+        assertSame("Expected MITM managers with the same settings to be shared", serverGroup.getMitmManager(false, true), serverGroup.getMitmManager(false, true))
+    }
+
+    private BrowserMobProxyServer createProxyInGroup() {
+        BrowserMobProxyServer proxy = new BrowserMobProxyServer()
+        proxy.setServerGroup(serverGroup)
+        proxy.start()
+
+        proxies.add(proxy)
+
+        return proxy
+    }
+}
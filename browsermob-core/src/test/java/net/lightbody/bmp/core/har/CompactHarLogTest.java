@@ -0,0 +1,203 @@
+package net.lightbody.bmp.core.har;
+
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompactHarLogTest {
+    @Test
+    public void testEntryMaterializedFromColumns() {
+        CompactHarLog log = new CompactHarLog();
+
+        Date started = new Date(1500000000000L);
+        int index = log.startEntry("Page 1", started, "GET", "http://www.example.com/index.html", "HTTP/1.1");
+        log.setRequestHeadersSize(index, 120);
+        log.setRequestBodySize(index, 0);
+        log.setResponse(index, 200, "OK", "HTTP/1.1", 250, "text/html");
+        log.setResponseBodySize(index, 4096);
+        log.setTiming(index, CompactHarLog.Timing.DNS, 5, TimeUnit.MILLISECONDS);
+        log.setTiming(index, CompactHarLog.Timing.CONNECT, 10, TimeUnit.MILLISECONDS);
+        log.setTiming(index, CompactHarLog.Timing.WAIT, 1500, TimeUnit.MICROSECONDS);
+        log.setServerIPAddress(index, "93.184.216.34");
+
+        assertEquals(1, log.getEntries().size());
+
+        HarEntry entry = log.getEntries().get(0);
+        assertEquals("Page 1", entry.getPageref());
+        assertEquals(started, entry.getStartedDateTime());
+        assertEquals("GET", entry.getRequest().getMethod());
+        assertEquals("http://www.example.com/index.html", entry.getRequest().getUrl());
+        assertEquals("HTTP/1.1", entry.getRequest().getHttpVersion());
+        assertEquals(120, entry.getRequest().getHeadersSize());
+        assertEquals(0, entry.getRequest().getBodySize());
+        assertEquals(200, entry.getResponse().getStatus());
+        assertEquals("OK", entry.getResponse().getStatusText());
+        assertEquals(250, entry.getResponse().getHeadersSize());
+        assertEquals(4096, entry.getResponse().getBodySize());
+        assertEquals("text/html", entry.getResponse().getContent().getMimeType());
+        assertNull(entry.getResponse().getError());
+        assertEquals("93.184.216.34", entry.getServerIPAddress());
+
+        assertEquals(-1, entry.getTimings().getBlocked(TimeUnit.NANOSECONDS));
+        assertEquals(5, entry.getTimings().getDns(TimeUnit.MILLISECONDS));
+        assertEquals(10, entry.getTimings().getConnect(TimeUnit.MILLISECONDS));
+        assertEquals(-1, entry.getTimings().getSsl(TimeUnit.NANOSECONDS));
+        assertEquals(0, entry.getTimings().getSend(TimeUnit.NANOSECONDS));
+        assertEquals(1500, entry.getTimings().getWait(TimeUnit.MICROSECONDS));
+        assertEquals(0, entry.getTimings().getReceive(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testSetResponseReplacesPreviousResponse() {
+        CompactHarLog log = new CompactHarLog();
+
+        int index = log.startEntry("Page 1", new Date(), "GET", "http://www.example.com/", "HTTP/1.1");
+        log.setResponse(index, 200, "OK", "HTTP/1.1", 100, "text/plain");
+        log.setResponseBodySize(index, 10);
+
+        log.setResponse(index, 0, "", "unknown", -1, null);
+        log.setResponseError(index, "No response received");
+
+        HarResponse response = log.getEntries().get(0).getResponse();
+        assertEquals(0, response.getStatus());
+        assertEquals("unknown", response.getHttpVersion());
+        assertEquals("Expected body size to be reset when response was replaced", -1, response.getBodySize());
+        assertEquals("Expected mime type to be empty when no Content-Type was recorded", "", response.getContent().getMimeType());
+        assertEquals("No response received", response.getError());
+    }
+
+    @Test
+    public void testAddEntryCopiesHarEntry() {
+        CompactHarLog log = new CompactHarLog();
+
+        HarEntry harEntry = new HarEntry("Page 2");
+        harEntry.setStartedDateTime(new Date());
+        harEntry.setRequest(new HarRequest("CONNECT", "https://www.example.com", "HTTP/1.1"));
+        HarResponse harResponse = new HarResponse(0, "", "unknown");
+        harResponse.setError("Unable to connect to host");
+        harEntry.setResponse(harResponse);
+        harEntry.getTimings().setConnect(25, TimeUnit.MILLISECONDS);
+        harEntry.setServerIPAddress("127.0.0.1");
+
+        log.addEntry(harEntry);
+
+        // changes after the entry is added are not recorded
+        harEntry.getTimings().setConnect(50, TimeUnit.MILLISECONDS);
+
+        HarEntry copy = log.getEntries().get(0);
+        assertEquals("Page 2", copy.getPageref());
+        assertEquals(harEntry.getStartedDateTime(), copy.getStartedDateTime());
+        assertEquals("CONNECT", copy.getRequest().getMethod());
+        assertEquals("https://www.example.com", copy.getRequest().getUrl());
+        assertEquals("Unable to connect to host", copy.getResponse().getError());
+        assertEquals(25, copy.getTimings().getConnect(TimeUnit.MILLISECONDS));
+        assertEquals("127.0.0.1", copy.getServerIPAddress());
+    }
+
+    @Test
+    public void testLowCardinalityStringsInterned() {
+        CompactHarLog log = new CompactHarLog();
+
+        log.startEntry("Page 1", new Date(), new String("GET"), new String("http://www.example.com/"), new String("HTTP/1.1"));
+        log.startEntry("Page 1", new Date(), new String("GET"), new String("http://www.example.com/"), new String("HTTP/1.1"));
+
+        HarRequest first = log.getEntries().get(0).getRequest();
+        HarRequest second = log.getEntries().get(1).getRequest();
+
+        assertSame("Expected equal methods to be stored once", first.getMethod(), second.getMethod());
+        assertSame("Expected equal HTTP versions to be stored once", first.getHttpVersion(), second.getHttpVersion());
+        assertNotSame("Did not expect URLs to be interned", first.getUrl(), second.getUrl());
+        assertEquals(first.getUrl(), second.getUrl());
+    }
+
+    @Test
+    public void testIteratorIsSnapshot() {
+        CompactHarLog log = new CompactHarLog();
+        log.startEntry("Page 1", new Date(), "GET", "http://www.example.com/1", "HTTP/1.1");
+
+        Iterator<HarEntry> iterator = log.getEntries().iterator();
+
+        log.startEntry("Page 1", new Date(), "GET", "http://www.example.com/2", "HTTP/1.1");
+
+        assertEquals("http://www.example.com/1", iterator.next().getRequest().getUrl());
+        assertFalse("Expected iterator not to return entries started after it was created", iterator.hasNext());
+        assertEquals(2, log.getEntries().size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testSetOnUnstartedEntryThrowsException() {
+        CompactHarLog log = new CompactHarLog();
+
+        log.setResponseBodySize(0, 100);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testEntriesAreReadOnly() {
+        CompactHarLog log = new CompactHarLog();
+
+        log.getEntries().add(new HarEntry());
+    }
+
+    @Test
+    public void testConcurrentEntries() throws InterruptedException {
+        final CompactHarLog log = new CompactHarLog();
+
+        final int threads = 8;
+        final int entriesPerThread = 5000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+
+        for (int thread = 0; thread < threads; thread++) {
+            final int threadNumber = thread;
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+
+                    for (int i = 0; i < entriesPerThread; i++) {
+                        int entryNumber = threadNumber * entriesPerThread + i;
+                        int index = log.startEntry("Page 1", new Date(), "GET", "http://www.example.com/" + entryNumber, "HTTP/1.1");
+                        log.setResponseBodySize(index, entryNumber);
+                    }
+                }
+            });
+        }
+
+        startLatch.countDown();
+        executor.shutdown();
+        assertTrue("Timed out waiting for recording threads to finish", executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        List<HarEntry> entries = log.getEntries();
+        assertEquals("Expected every entry to be published", threads * entriesPerThread, entries.size());
+
+        Set<String> urls = new HashSet<>();
+        for (HarEntry entry : entries) {
+            assertEquals("Expected each entry's columns to belong to the same entry",
+                    "http://www.example.com/" + entry.getResponse().getBodySize(), entry.getRequest().getUrl());
+            urls.add(entry.getRequest().getUrl());
+        }
+
+        assertEquals("Expected each entry to appear exactly once", threads * entriesPerThread, urls.size());
+    }
+}
@@ -0,0 +1,198 @@
+package net.lightbody.bmp.core.har;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentAppendOnlyListTest {
+    @Test
+    public void testAppendAndGetAcrossChunks() {
+        List<Integer> list = new ConcurrentAppendOnlyList<>();
+
+        for (int i = 0; i < 1000; i++) {
+            list.add(i);
+        }
+
+        assertEquals("Expected list to contain all appended elements", 1000, list.size());
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("Expected element to be at the index it was appended at", Integer.valueOf(i), list.get(i));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetBeyondSizeThrowsException() {
+        List<String> list = new ConcurrentAppendOnlyList<>();
+        list.add("first");
+
+        list.get(1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullElementsNotPermitted() {
+        List<String> list = new ConcurrentAppendOnlyList<>();
+
+        list.add(null);
+    }
+
+    @Test
+    public void testRemoveSetAndClear() {
+        List<String> list = new ConcurrentAppendOnlyList<>();
+        list.add("first");
+        list.add("second");
+        list.add("third");
+
+        assertEquals("Expected remove to return the removed element", "second", list.remove(1));
+        assertEquals(Arrays.asList("first", "third"), list);
+
+        assertEquals("Expected set to return the replaced element", "first", list.set(0, "replaced"));
+        assertEquals(Arrays.asList("replaced", "third"), list);
+
+        list.add("fourth");
+        assertEquals("Expected appends to continue after a removal", Arrays.asList("replaced", "third", "fourth"), list);
+
+        list.clear();
+        assertTrue("Expected list to be empty after clear", list.isEmpty());
+
+        list.add("after clear");
+        assertEquals(Collections.singletonList("after clear"), list);
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        List<String> list = new ConcurrentAppendOnlyList<>();
+        list.add("first");
+        list.add("second");
+        list.add("third");
+
+        for (Iterator<String> iterator = list.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().startsWith("s")) {
+                iterator.remove();
+            }
+        }
+
+        assertEquals(Arrays.asList("first", "third"), list);
+    }
+
+    @Test
+    public void testIteratorIsSnapshot() {
+        List<String> list = new ConcurrentAppendOnlyList<>();
+        list.add("first");
+        list.add("second");
+
+        Iterator<String> iterator = list.iterator();
+
+        list.add("third");
+
+        assertEquals("first", iterator.next());
+        assertEquals("second", iterator.next());
+        assertFalse("Expected iterator not to return elements appended after it was created", iterator.hasNext());
+
+        assertEquals("Expected new iterator to return all elements", 3, new ArrayList<>(list).size());
+    }
+
+    @Test
+    public void testConcurrentAppends() throws InterruptedException {
+        final List<Integer> list = new ConcurrentAppendOnlyList<>();
+
+        final int threads = 8;
+        final int appendsPerThread = 10000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+
+        for (int thread = 0; thread < threads; thread++) {
+            final int threadNumber = thread;
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+
+                    for (int i = 0; i < appendsPerThread; i++) {
+                        list.add(threadNumber * appendsPerThread + i);
+                    }
+                }
+            });
+        }
+
+        startLatch.countDown();
+        executor.shutdown();
+        assertTrue("Timed out waiting for appending threads to finish", executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals("Expected every appended element to be published", threads * appendsPerThread, list.size());
+
+        List<Integer> sorted = new ArrayList<>(list);
+        Collections.sort(sorted);
+        for (int i = 0; i < threads * appendsPerThread; i++) {
+            assertEquals("Expected each appended element to appear exactly once", Integer.valueOf(i), sorted.get(i));
+        }
+    }
+
+    @Test
+    public void testRemoveDuringConcurrentAppends() throws InterruptedException {
+        final List<Integer> list = new ConcurrentAppendOnlyList<>();
+
+        final int threads = 4;
+        final int appendsPerThread = 10000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+
+        for (int thread = 0; thread < threads; thread++) {
+            final int threadNumber = thread;
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+
+                    for (int i = 0; i < appendsPerThread; i++) {
+                        list.add(threadNumber * appendsPerThread + i);
+                    }
+                }
+            });
+        }
+
+        startLatch.countDown();
+
+        // remove negative markers while the appending threads are running
+        int removals = 0;
+        while (removals < 100) {
+            list.add(-1);
+            list.remove(Integer.valueOf(-1));
+            removals++;
+        }
+
+        executor.shutdown();
+        assertTrue("Timed out waiting for appending threads to finish", executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals("Expected no appended element to be lost by a concurrent removal", threads * appendsPerThread, list.size());
+
+        List<Integer> sorted = new ArrayList<>(list);
+        Collections.sort(sorted);
+        for (int i = 0; i < threads * appendsPerThread; i++) {
+            assertEquals("Expected each appended element to appear exactly once", Integer.valueOf(i), sorted.get(i));
+        }
+    }
+}
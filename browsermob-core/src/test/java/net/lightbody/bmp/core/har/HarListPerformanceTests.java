@@ -0,0 +1,130 @@
+package net.lightbody.bmp.core.har;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the append and iteration performance of the list used by the HAR model against the CopyOnWriteArrayList it replaced.
+ */
+// ignored as a quick work-around to running these tests with unit tests
+@Ignore
+@RunWith(Parameterized.class)
+public class HarListPerformanceTests {
+    private static final Logger log = LoggerFactory.getLogger(HarListPerformanceTests.class);
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+                {"ConcurrentAppendOnlyList", 1, 50000},
+                {"CopyOnWriteArrayList", 1, 50000},
+                {"ConcurrentAppendOnlyList", 8, 50000},
+                {"CopyOnWriteArrayList", 8, 50000},
+                {"ConcurrentAppendOnlyList", 1, 40},
+                {"CopyOnWriteArrayList", 1, 40},
+        });
+    }
+
+    @Parameter
+    public String listType;
+
+    @Parameter(1)
+    public int threads;
+
+    @Parameter(2)
+    public int elementsPerList;
+
+    private static final int WARM_UP_ITERATIONS = 5;
+
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void testConcurrentAppendPerformance() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // scale the number of lists so that each iteration appends roughly the same number of elements
+        int listsPerIteration = Math.max(1, 50000 / elementsPerList);
+
+        log.info("Test parameters:\n\tList type: {}\n\tThreads: {}\n\tElements per list: {}\n\tLists per iteration: {}",
+                listType, threads, elementsPerList, listsPerIteration);
+
+        log.info("Executing {} warm up iterations", WARM_UP_ITERATIONS);
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            appendAndIterate(executor, listsPerIteration);
+        }
+
+        log.info("Executing {} performance test iterations", ITERATIONS);
+
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            appendAndIterate(executor, listsPerIteration);
+        }
+
+        long finish = System.currentTimeMillis();
+
+        executor.shutdown();
+
+        log.info("Finished performance test:\n\tList type: {}\n\tThreads: {}\n\tElements per list: {}",
+                listType, threads, elementsPerList);
+        log.info("Executed {} iterations in {}ms. Average time per iteration: {}ms", ITERATIONS, finish - start, (finish - start) / ITERATIONS);
+    }
+
+    private void appendAndIterate(ExecutorService executor, int listsPerIteration) throws Exception {
+        for (int i = 0; i < listsPerIteration; i++) {
+            final List<HarNameValuePair> list = createList();
+
+            final int elementsPerThread = elementsPerList / threads;
+
+            Callable<Void> appender = new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int j = 0; j < elementsPerThread; j++) {
+                        list.add(new HarNameValuePair("name", "value"));
+                    }
+
+                    return null;
+                }
+            };
+
+            Future<?>[] futures = new Future<?>[threads];
+            for (int thread = 0; thread < threads; thread++) {
+                futures[thread] = executor.submit(appender);
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            int count = 0;
+            for (HarNameValuePair ignored : list) {
+                count++;
+            }
+
+            if (count != elementsPerThread * threads) {
+                throw new IllegalStateException("Expected " + (elementsPerThread * threads) + " elements but found " + count);
+            }
+        }
+    }
+
+    private List<HarNameValuePair> createList() {
+        if ("CopyOnWriteArrayList".equals(listType)) {
+            return new CopyOnWriteArrayList<>();
+        } else {
+            return new ConcurrentAppendOnlyList<>();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package net.lightbody.bmp.core.har.store;
+
+import net.lightbody.bmp.core.har.HarContent;
+import net.lightbody.bmp.exception.HarContentStoreException;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SpillingHarContentStoreTest {
+    @Test
+    public void testSmallContentKeptOnHeapAndLargeContentSpilled() {
+        byte[] small = "small".getBytes(StandardCharsets.UTF_8);
+        byte[] large = new byte[1024];
+        Arrays.fill(large, (byte) 'x');
+
+        SpillingHarContentStore store = new SpillingHarContentStore(null, 100, 1000);
+        try {
+            StoredContent storedSmall = store.store(small);
+            StoredContent storedLarge = store.store(large);
+
+            assertEquals("Expected small content to be kept on the heap", small.length, store.getHeapBytes());
+            assertEquals("Expected large content to be spilled", large.length, store.getSpilledBytes());
+            assertEquals("Expected large content to be spilled", 1, store.getSpilledContentCount());
+
+            assertArrayEquals(small, storedSmall.getBytes());
+            assertArrayEquals(large, storedLarge.getBytes());
+            assertEquals(large.length, storedLarge.getLength());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testContentSpilledWhenHeapBudgetExhausted() {
+        SpillingHarContentStore store = new SpillingHarContentStore(null, 100, 150);
+        try {
+            for (int i = 0; i < 3; i++) {
+                store.store(new byte[60]);
+            }
+
+            assertEquals("Expected content within the heap budget to be kept on the heap", 120, store.getHeapBytes());
+            assertEquals("Expected content beyond the heap budget to be spilled", 60, store.getSpilledBytes());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testHarContentTextMaterializedFromStore() {
+        SpillingHarContentStore store = new SpillingHarContentStore(null, 0, 0);
+        try {
+            HarContent textContent = new HarContent();
+            textContent.setText(store.store("text content é".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+
+            HarContent binaryContent = new HarContent();
+            binaryContent.setText(store.store(new byte[]{1, 2, 3}), null);
+
+            assertEquals("text content é", textContent.getText());
+            assertEquals("Expected binary content to be base64 encoded", "AQID", binaryContent.getText());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test(expected = HarContentStoreException.class)
+    public void testSpilledContentCannotBeReadAfterClose() {
+        SpillingHarContentStore store = new SpillingHarContentStore(null, 0, 0);
+        StoredContent content = store.store(new byte[10]);
+
+        store.close();
+
+        content.getBytes();
+    }
+
+    @Test
+    public void testContentReleasedTwoHarsLater() {
+        SpillingHarContentStore store = new SpillingHarContentStore(null, 100, 1000);
+        try {
+            store.store(new byte[50]);
+            StoredContent firstHarSpilled = store.store(new byte[500]);
+
+            store.harEnded();
+
+            assertArrayEquals("Expected content of the HAR that just ended to remain readable", new byte[500], firstHarSpilled.getBytes());
+            assertEquals(50, store.getHeapBytes());
+
+            StoredContent secondHarSpilled = store.store(new byte[200]);
+
+            store.harEnded();
+
+            assertEquals("Expected heap budget used by the released HAR to be returned", 0, store.getHeapBytes());
+            assertEquals("Expected only content of the most recent HAR to remain spilled", 200, store.getSpilledBytes());
+            assertEquals(1, store.getSpilledContentCount());
+            assertArrayEquals(new byte[200], secondHarSpilled.getBytes());
+
+            try {
+                firstHarSpilled.getBytes();
+                fail("Expected spilled content of a released HAR not to be readable");
+            } catch (HarContentStoreException e) {
+                // expected
+            }
+        } finally {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package net.lightbody.bmp.filters;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ContentCaptureBufferTest {
+    @Test
+    public void testFinishCopiesContentsAndReleasesRetainedBuffers() {
+        ByteBuf first = Unpooled.copiedBuffer("first chunk, ", StandardCharsets.UTF_8);
+        ByteBuf second = Unpooled.copiedBuffer("second chunk", StandardCharsets.UTF_8);
+
+        ContentCaptureBuffer capture = new ContentCaptureBuffer(null);
+        capture.add(first);
+        capture.add(second);
+
+        assertEquals("Expected captured buffer to be retained", 2, first.refCnt());
+        assertEquals("Expected capture not to modify the reader index of the captured buffer", 0, first.readerIndex());
+
+        byte[] contents = capture.finish();
+
+        assertArrayEquals("first chunk, second chunk".getBytes(StandardCharsets.UTF_8), contents);
+        assertEquals("Expected captured buffer to be released when capture finished", 1, first.refCnt());
+        assertEquals("Expected captured buffer to be released when capture finished", 1, second.refCnt());
+
+        assertSame("Expected finished capture to return the same contents each time", contents, capture.toByteArray());
+
+        first.release();
+        second.release();
+    }
+
+    @Test
+    public void testCaptureReleasedWhenChannelCloses() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        ChannelHandlerContext ctx = channel.pipeline().firstContext();
+
+        ByteBuf content = Unpooled.copiedBuffer("partial content", StandardCharsets.UTF_8);
+
+        ContentCaptureBuffer capture = new ContentCaptureBuffer(ctx);
+        capture.add(content);
+
+        assertEquals("Expected captured buffer to be retained", 2, content.refCnt());
+
+        channel.close();
+
+        assertEquals("Expected captured buffer to be released when the channel closed", 1, content.refCnt());
+        assertEquals("Expected no contents after capture was released", 0, capture.finish().length);
+
+        content.release();
+    }
+}
@@ -0,0 +1,123 @@
+package net.lightbody.bmp.filters;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import net.lightbody.bmp.BrowserMobProxyServer;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time and memory allocated to construct a {@link BrowserMobHttpFilterChain} and drive a request and response
+ * through it, with and without optional proxy features enabled.
+ */
+// ignored as a quick work-around to running these tests with unit tests
+@Ignore
+@RunWith(Parameterized.class)
+public class FilterChainPerformanceTests {
+    private static final Logger log = LoggerFactory.getLogger(FilterChainPerformanceTests.class);
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+                {"default configuration", false},
+                {"all optional features enabled", true},
+        });
+    }
+
+    @Parameter
+    public String description;
+
+    @Parameter(1)
+    public boolean enableOptionalFeatures;
+
+    private static final int WARM_UP_ITERATIONS = 100000;
+
+    private static final int ITERATIONS = 1000000;
+
+    @Test
+    public void testFilterChainPerRequestCost() {
+        BrowserMobProxyServer proxy = new BrowserMobProxyServer();
+        if (enableOptionalFeatures) {
+            proxy.blacklistRequests("http://blacklisted\\.com/.*", 404);
+            proxy.whitelistRequests(Collections.singletonList("http://www\\.example\\.com/.*"), 500);
+            proxy.autoAuthorization("www.example.com", "user", "password", net.lightbody.bmp.proxy.auth.AuthType.BASIC);
+            proxy.rewriteUrl("http://rewritten\\.com/(.*)", "http://www.example.com/$1");
+            proxy.addHeader("X-Test-Header", "value");
+        }
+
+        proxy.start();
+
+        ChannelHandlerContext ctx = new EmbeddedChannel(new ChannelInboundHandlerAdapter()).pipeline().firstContext();
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            log.warn("Cannot measure per-thread memory allocation on this JVM");
+        }
+
+        try {
+            log.info("Test parameters:\n\tConfiguration: {}", description);
+
+            log.info("Executing {} warm up iterations", WARM_UP_ITERATIONS);
+            for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+                filterRequestAndResponse(proxy, ctx);
+            }
+
+            log.info("Executing {} performance test iterations", ITERATIONS);
+
+            long allocatedBytesBefore = getAllocatedBytes(threadMXBean);
+            long start = System.nanoTime();
+
+            for (int i = 0; i < ITERATIONS; i++) {
+                filterRequestAndResponse(proxy, ctx);
+            }
+
+            long finish = System.nanoTime();
+            long allocatedBytes = getAllocatedBytes(threadMXBean) - allocatedBytesBefore;
+
+            log.info("Finished performance test:\n\tConfiguration: {}", description);
+            log.info("Filtered {} requests in {}ms. Average time per request: {}ns. Average bytes allocated per request: {}",
+                    ITERATIONS, TimeUnit.MILLISECONDS.convert(finish - start, TimeUnit.NANOSECONDS), (finish - start) / ITERATIONS, allocatedBytes / ITERATIONS);
+        } finally {
+            proxy.abort();
+        }
+    }
+
+    private static void filterRequestAndResponse(BrowserMobProxyServer proxy, ChannelHandlerContext ctx) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/resource");
+        HttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+
+        BrowserMobHttpFilterChain filterChain = new BrowserMobHttpFilterChain(proxy, request, ctx);
+        filterChain.clientToProxyRequest(request);
+        filterChain.proxyToServerRequest(request);
+        filterChain.serverToProxyResponse(response);
+        filterChain.proxyToClientResponse(response);
+    }
+
+    private static long getAllocatedBytes(ThreadMXBean threadMXBean) {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        } else {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package net.lightbody.bmp.filters;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HttpMessageMatcherTest {
+    @Test
+    public void testMatchAllMatchesEverything() {
+        HttpMessageMatcher matcher = HttpMessageMatcher.matchAll();
+
+        assertTrue(matcher.matchesRequest(newRequest(HttpMethod.POST, "/upload"), "https://www.example.com/upload"));
+        assertTrue(matcher.matchesContentType("video/mp4"));
+        assertTrue("Expected matcher without content types to match messages without a Content-Type", matcher.matchesContentType(null));
+    }
+
+    @Test
+    public void testMatchesMethodAndUrl() {
+        HttpMessageMatcher matcher = HttpMessageMatcher.matchAll()
+                .withMethods("get")
+                .withUrlPattern("https?://www\\.example\\.com/.*");
+
+        assertTrue(matcher.matchesRequest(newRequest(HttpMethod.GET, "/index.html"), "http://www.example.com/index.html"));
+        assertFalse(matcher.matchesRequest(newRequest(HttpMethod.POST, "/index.html"), "http://www.example.com/index.html"));
+        assertFalse(matcher.matchesRequest(newRequest(HttpMethod.GET, "/index.html"), "http://cdn.example.com/index.html"));
+    }
+
+    @Test
+    public void testMatchesContentTypePrefixIgnoringCaseAndParameters() {
+        HttpMessageMatcher matcher = HttpMessageMatcher.matchAll().withContentTypes("text/html", "application/JSON");
+
+        assertTrue(matcher.matchesContentType("text/html"));
+        assertTrue(matcher.matchesContentType("Text/HTML; charset=utf-8"));
+        assertTrue(matcher.matchesContentType("application/json"));
+        assertFalse(matcher.matchesContentType("image/png"));
+        assertFalse("Expected matcher with content types not to match messages without a Content-Type", matcher.matchesContentType(null));
+    }
+
+    @Test
+    public void testWithMethodsDoesNotModifyMatcher() {
+        HttpMessageMatcher matcher = HttpMessageMatcher.matchAll();
+        HttpMessageMatcher getMatcher = matcher.withMethods("GET");
+
+        assertTrue(matcher.matchesRequest(newRequest(HttpMethod.PUT, "/"), "http://www.example.com/"));
+        assertFalse(getMatcher.matchesRequest(newRequest(HttpMethod.PUT, "/"), "http://www.example.com/"));
+    }
+
+    private static HttpRequest newRequest(HttpMethod method, String uri) {
+        return new DefaultHttpRequest(HttpVersion.HTTP_1_1, method, uri);
+    }
+}
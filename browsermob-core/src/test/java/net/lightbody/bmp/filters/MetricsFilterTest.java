@@ -0,0 +1,52 @@
+package net.lightbody.bmp.filters;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import net.lightbody.bmp.proxy.metrics.LatencySummary;
+import net.lightbody.bmp.proxy.metrics.ProxyMetrics;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+
+public class MetricsFilterTest {
+    @Test
+    public void testTlsHandshakeNotIncludedInConnectLatency() throws InterruptedException {
+        ProxyMetrics metrics = new ProxyMetrics();
+        MetricsFilter filter = new MetricsFilter(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "www.example.com:443"), null, metrics);
+
+        filter.proxyToServerConnectionStarted();
+        filter.proxyToServerConnectionSSLHandshakeStarted();
+
+        Thread.sleep(200);
+
+        filter.proxyToServerConnectionSucceeded(null);
+
+        LatencySummary connectLatency = metrics.getConnectLatency().getSummary();
+        LatencySummary tlsHandshakeLatency = metrics.getTlsHandshakeLatency().getSummary();
+
+        assertEquals("Expected connect latency to be recorded once", 1, connectLatency.getCount());
+        assertEquals("Expected TLS handshake latency to be recorded once", 1, tlsHandshakeLatency.getCount());
+        assertThat("Expected connect latency to end when the TLS handshake started", connectLatency.getMaxMs(), lessThan(200.0));
+        assertThat("Expected TLS handshake latency to end when the connection succeeded", tlsHandshakeLatency.getMaxMs(), greaterThanOrEqualTo(190.0));
+    }
+
+    @Test
+    public void testPlainHttpConnectLatencyRecordedOnSuccess() throws InterruptedException {
+        ProxyMetrics metrics = new ProxyMetrics();
+        MetricsFilter filter = new MetricsFilter(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/"), null, metrics);
+
+        filter.proxyToServerConnectionStarted();
+
+        Thread.sleep(50);
+
+        filter.proxyToServerConnectionSucceeded(null);
+
+        assertEquals("Expected connect latency to be recorded once", 1, metrics.getConnectLatency().getSummary().getCount());
+        assertEquals("Expected no TLS handshake latency for a plain HTTP connection", 0, metrics.getTlsHandshakeLatency().getSummary().getCount());
+        assertThat(metrics.getConnectLatency().getSummary().getMaxMs(), greaterThanOrEqualTo(40.0));
+    }
+}
@@ -0,0 +1,73 @@
+package net.lightbody.bmp.filters;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpVersion;
+import net.lightbody.bmp.util.HttpMessageContents;
+import net.lightbody.bmp.util.HttpMessageInfo;
+import org.junit.Test;
+import org.littleshoot.proxy.HttpFiltersSource;
+import org.littleshoot.proxy.HttpFiltersSourceAdapter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ResponseAggregationFilterTest {
+    private static final ResponseFilter NO_OP_RESPONSE_FILTER = new ResponseFilter() {
+        @Override
+        public void filterResponse(HttpResponse response, HttpMessageContents contents, HttpMessageInfo messageInfo) {
+        }
+    };
+
+    private static final HttpRequest REQUEST = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/index.html");
+    private static final String URL = "http://www.example.com/index.html";
+
+    @Test
+    public void testOnlyMatchingSourcesAggregate() {
+        List<HttpFiltersSource> sources = Arrays.<HttpFiltersSource>asList(
+                new ResponseFilterAdapter.FilterSource(NO_OP_RESPONSE_FILTER, 1000, HttpMessageMatcher.matchAll().withContentTypes("text/html")),
+                new ResponseFilterAdapter.FilterSource(NO_OP_RESPONSE_FILTER, 2000, HttpMessageMatcher.matchAll().withContentTypes("application/json")),
+                new ResponseFilterAdapter.FilterSource(NO_OP_RESPONSE_FILTER, 3000, HttpMessageMatcher.matchAll().withUrlPattern("http://cdn\\.example\\.com/.*")));
+
+        assertEquals(1000, ResponseAggregationFilter.getMaximumResponseBufferSize(sources, REQUEST, URL, "text/html; charset=utf-8"));
+        assertEquals(2000, ResponseAggregationFilter.getMaximumResponseBufferSize(sources, REQUEST, URL, "application/json"));
+        assertEquals("Expected response not matching any source not to be aggregated",
+                0, ResponseAggregationFilter.getMaximumResponseBufferSize(sources, REQUEST, URL, "image/png"));
+        assertEquals("Expected response without a Content-Type not to match sources with content types",
+                0, ResponseAggregationFilter.getMaximumResponseBufferSize(sources, REQUEST, URL, null));
+    }
+
+    @Test
+    public void testSourcesWithoutMatcherAlwaysAggregate() {
+        List<HttpFiltersSource> sources = Collections.<HttpFiltersSource>singletonList(new HttpFiltersSourceAdapter() {
+            @Override
+            public int getMaximumResponseBufferSizeInBytes() {
+                return 500;
+            }
+        });
+
+        assertEquals(500, ResponseAggregationFilter.getMaximumResponseBufferSize(sources, REQUEST, URL, "image/png"));
+    }
+
+    @Test
+    public void testStreamingSourcesDoNotAggregate() {
+        List<HttpFiltersSource> sources = Collections.<HttpFiltersSource>singletonList(new StreamingResponseFilterAdapter.FilterSource(new StreamingResponseFilter() {
+            @Override
+            public void filterResponse(HttpResponse response, HttpMessageInfo messageInfo) {
+            }
+
+            @Override
+            public HttpContent filterContent(HttpContent content, HttpMessageInfo messageInfo) {
+                return content;
+            }
+        }));
+
+        assertEquals(0, ResponseAggregationFilter.getMaximumResponseBufferSize(sources, REQUEST, URL, "text/html"));
+    }
+}
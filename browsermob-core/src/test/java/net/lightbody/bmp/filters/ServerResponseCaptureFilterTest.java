@@ -0,0 +1,93 @@
+package net.lightbody.bmp.filters;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ServerResponseCaptureFilterTest {
+    private static final byte[] ORIGINAL = "deflated content, deflated content, deflated content".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testDeflateContentDecompressedAsReceived() throws IOException {
+        ServerResponseCaptureFilter filter = new ServerResponseCaptureFilter(newRequest(), null, true);
+
+        sendResponse(filter, "deflate", deflate(ORIGINAL));
+
+        assertTrue("Expected response to be marked as compressed", filter.isResponseCompressed());
+        assertTrue("Expected deflate content to be decompressed", filter.isDecompressionSuccessful());
+        assertArrayEquals("Expected full response contents to be decompressed", ORIGINAL, filter.getFullResponseContents());
+        assertArrayEquals("Expected raw response contents to remain compressed", deflate(ORIGINAL), filter.getRawResponseContents());
+    }
+
+    @Test
+    public void testDeferredDeflateContentDecompressedWhenProcessed() throws IOException {
+        ServerResponseCaptureFilter filter = new ServerResponseCaptureFilter(newRequest(), null, true, true);
+
+        sendResponse(filter, "deflate", deflate(ORIGINAL));
+
+        assertFalse("Expected content not to be decompressed before it is processed", filter.isDecompressionSuccessful());
+
+        filter.captureFullResponseContents();
+
+        assertTrue("Expected deflate content to be decompressed", filter.isDecompressionSuccessful());
+        assertArrayEquals("Expected full response contents to be decompressed", ORIGINAL, filter.getFullResponseContents());
+    }
+
+    @Test
+    public void testUnsupportedEncodingCapturesRawContents() {
+        ServerResponseCaptureFilter filter = new ServerResponseCaptureFilter(newRequest(), null, true);
+
+        sendResponse(filter, "x-unsupported", ORIGINAL);
+
+        assertTrue("Expected response to be marked as compressed", filter.isResponseCompressed());
+        assertFalse("Expected unsupported encoding not to be decompressed", filter.isDecompressionSuccessful());
+        assertArrayEquals("Expected full response contents to be the raw contents", ORIGINAL, filter.getFullResponseContents());
+    }
+
+    private static void sendResponse(ServerResponseCaptureFilter filter, String contentEncoding, byte[] contents) {
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(HttpHeaders.Names.CONTENT_ENCODING, contentEncoding);
+        filter.serverToProxyResponse(response);
+
+        int half = contents.length / 2;
+
+        HttpContent first = new DefaultHttpContent(Unpooled.wrappedBuffer(contents, 0, half));
+        filter.serverToProxyResponse(first);
+        first.release();
+
+        HttpContent last = new DefaultLastHttpContent(Unpooled.wrappedBuffer(contents, half, contents.length - half));
+        filter.serverToProxyResponse(last);
+        last.release();
+    }
+
+    private static DefaultHttpRequest newRequest() {
+        return new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://localhost/compressed");
+    }
+
+    private static byte[] deflate(byte[] contents) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(compressed)) {
+            deflate.write(contents);
+        }
+
+        return compressed.toByteArray();
+    }
+}
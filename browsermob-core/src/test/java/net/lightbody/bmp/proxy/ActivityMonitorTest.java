@@ -0,0 +1,102 @@
+package net.lightbody.bmp.proxy;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ActivityMonitorTest {
+    @Test
+    public void testAsyncWaitCompletesImmediatelyWhenAlreadyQuiet() throws InterruptedException, ExecutionException {
+        ActivityMonitor activityMonitor = new ActivityMonitor();
+
+        Thread.sleep(50);
+
+        ListenableFuture<Boolean> quiescence = activityMonitor.waitForQuiescenceAsync(10, 1000, TimeUnit.MILLISECONDS);
+
+        assertTrue("Expected wait to complete immediately when the quiet period has already elapsed", quiescence.isDone());
+        assertTrue(quiescence.get());
+    }
+
+    @Test
+    public void testAsyncWaitCompletesAfterActiveRequestFinishes() throws Exception {
+        ActivityMonitor activityMonitor = new ActivityMonitor();
+        activityMonitor.requestStarted();
+
+        ListenableFuture<Boolean> quiescence = activityMonitor.waitForQuiescenceAsync(200, 5000, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(300);
+        assertFalse("Did not expect quiescence while a request is active", quiescence.isDone());
+
+        long requestFinished = System.nanoTime();
+        activityMonitor.requestFinished();
+
+        assertTrue("Expected quiescence after the request finished", quiescence.get(2, TimeUnit.SECONDS));
+
+        long waited = TimeUnit.MILLISECONDS.convert(System.nanoTime() - requestFinished, TimeUnit.NANOSECONDS);
+        assertThat("Expected to wait for the quiet period after the request finished", waited, greaterThanOrEqualTo(190L));
+    }
+
+    @Test
+    public void testAsyncWaitRestartsQuietPeriodWhenRequestStarts() throws Exception {
+        ActivityMonitor activityMonitor = new ActivityMonitor();
+        activityMonitor.requestStarted();
+        activityMonitor.requestFinished();
+
+        ListenableFuture<Boolean> quiescence = activityMonitor.waitForQuiescenceAsync(300, 5000, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(150);
+        activityMonitor.requestStarted();
+        Thread.sleep(300);
+
+        assertFalse("Did not expect quiescence while a request is active", quiescence.isDone());
+
+        activityMonitor.requestFinished();
+
+        assertTrue("Expected quiescence after the second request finished", quiescence.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAsyncWaitTimesOut() throws Exception {
+        ActivityMonitor activityMonitor = new ActivityMonitor();
+        activityMonitor.requestStarted();
+
+        long start = System.nanoTime();
+        ListenableFuture<Boolean> quiescence = activityMonitor.waitForQuiescenceAsync(200, 500, TimeUnit.MILLISECONDS);
+
+        assertFalse("Expected wait to time out while a request is active", quiescence.get(2, TimeUnit.SECONDS));
+
+        long waited = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        assertThat("Expected to give up once the quiet period could no longer elapse before the timeout", waited, greaterThanOrEqualTo(250L));
+
+        ListenableFuture<Boolean> impossibleQuiescence = activityMonitor.waitForQuiescenceAsync(1000, 500, TimeUnit.MILLISECONDS);
+        assertTrue("Expected wait to fail immediately when the timeout is shorter than the quiet period", impossibleQuiescence.isDone());
+        assertFalse(impossibleQuiescence.get());
+    }
+
+    @Test
+    public void testManyAsyncWaitersDoNotBlock() throws InterruptedException, ExecutionException, TimeoutException {
+        ActivityMonitor activityMonitor = new ActivityMonitor();
+        activityMonitor.requestStarted();
+
+        List<ListenableFuture<Boolean>> waiters = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            waiters.add(activityMonitor.waitForQuiescenceAsync(50, 10000, TimeUnit.MILLISECONDS));
+        }
+
+        activityMonitor.requestFinished();
+
+        for (ListenableFuture<Boolean> waiter : waiters) {
+            assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        }
+    }
+}
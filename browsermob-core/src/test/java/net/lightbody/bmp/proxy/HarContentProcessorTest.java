@@ -0,0 +1,160 @@
+package net.lightbody.bmp.proxy;
+
+import net.lightbody.bmp.core.har.Har;
+import net.lightbody.bmp.core.har.HarEntry;
+import net.lightbody.bmp.core.har.HarLog;
+import net.lightbody.bmp.core.har.HarResponse;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HarContentProcessorTest {
+    @Test
+    public void testEntryPendingUntilContentProcessed() throws InterruptedException {
+        HarContentProcessor processor = new HarContentProcessor(1, 10);
+        try {
+            final CountDownLatch taskStarted = new CountDownLatch(1);
+            final CountDownLatch allowTaskToFinish = new CountDownLatch(1);
+
+            HarEntry entry = new HarEntry();
+            processor.process(entry, new Runnable() {
+                @Override
+                public void run() {
+                    taskStarted.countDown();
+                    try {
+                        allowTaskToFinish.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+
+            assertTrue("Expected task to start", taskStarted.await(5, TimeUnit.SECONDS));
+
+            assertTrue("Expected entry to be pending while its content is processed", entry.isContentPending());
+            assertEquals(1, processor.getPendingContentCount());
+            assertFalse("Expected wait for pending content to time out", processor.awaitPendingContent(100, TimeUnit.MILLISECONDS));
+
+            allowTaskToFinish.countDown();
+
+            assertTrue("Expected pending content to be processed", processor.awaitPendingContent(5, TimeUnit.SECONDS));
+            assertFalse("Expected entry not to be pending after its content is processed", entry.isContentPending());
+            assertEquals(0, processor.getPendingContentCount());
+        } finally {
+            processor.shutdown();
+        }
+    }
+
+    @Test
+    public void testContentDroppedAfterShutdown() {
+        HarContentProcessor processor = new HarContentProcessor(1, 10);
+        processor.shutdown();
+
+        final boolean[] ran = new boolean[1];
+
+        HarEntry entry = new HarEntry();
+        entry.setResponse(new HarResponse(200, "OK", "HTTP/1.1"));
+
+        processor.process(entry, new Runnable() {
+            @Override
+            public void run() {
+                ran[0] = true;
+            }
+        });
+
+        assertFalse("Did not expect content to be processed after shutdown", ran[0]);
+        assertFalse("Expected entry not to be pending after its content was dropped", entry.isContentPending());
+        assertEquals(HarContentProcessor.CONTENT_DROPPED_COMMENT, entry.getResponse().getContent().getComment());
+        assertEquals(0, processor.getPendingContentCount());
+    }
+
+    @Test
+    public void testContentDroppedWhenQueueFull() throws InterruptedException {
+        HarContentProcessor processor = new HarContentProcessor(1, 1);
+        try {
+            final CountDownLatch allowTaskToFinish = new CountDownLatch(1);
+            Runnable blockingTask = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        allowTaskToFinish.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+
+            Har har = new Har(new HarLog());
+
+            // one task runs on the worker thread, and the other fills the queue
+            processor.process(har, new HarEntry(), blockingTask);
+            processor.process(har, new HarEntry(), blockingTask);
+
+            final Thread callingThread = Thread.currentThread();
+            final boolean[] ranOnCallingThread = new boolean[1];
+
+            HarEntry droppedEntry = new HarEntry();
+            processor.process(har, droppedEntry, new Runnable() {
+                @Override
+                public void run() {
+                    ranOnCallingThread[0] = Thread.currentThread() == callingThread;
+                }
+            });
+
+            assertFalse("Did not expect content to be processed on the calling thread", ranOnCallingThread[0]);
+            assertFalse("Expected dropped entry not to be pending", droppedEntry.isContentPending());
+            assertEquals("Expected dropped entry not to count as pending content", 2, processor.getPendingContentCount());
+
+            allowTaskToFinish.countDown();
+
+            assertTrue("Expected queued content of the HAR to be processed", processor.awaitPendingContent(har, 5, TimeUnit.SECONDS));
+        } finally {
+            processor.shutdown();
+        }
+    }
+
+    @Test
+    public void testAwaitPendingContentWaitsOnlyForSpecifiedHar() throws InterruptedException {
+        HarContentProcessor processor = new HarContentProcessor(2, 10);
+        final CountDownLatch allowTaskToFinish = new CountDownLatch(1);
+        try {
+            Har blockedHar = new Har(new HarLog());
+            Har otherHar = new Har(new HarLog());
+
+            processor.process(blockedHar, new HarEntry(), new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        allowTaskToFinish.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+
+            HarEntry otherEntry = new HarEntry();
+            processor.process(otherHar, otherEntry, new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+
+            assertTrue("Expected wait not to be blocked by content of another HAR", processor.awaitPendingContent(otherHar, 5, TimeUnit.SECONDS));
+            assertFalse(otherEntry.isContentPending());
+
+            assertFalse("Expected wait for the HAR with pending content to time out", processor.awaitPendingContent(blockedHar, 100, TimeUnit.MILLISECONDS));
+
+            allowTaskToFinish.countDown();
+
+            assertTrue("Expected pending content to be processed", processor.awaitPendingContent(blockedHar, 5, TimeUnit.SECONDS));
+        } finally {
+            allowTaskToFinish.countDown();
+            processor.shutdown();
+        }
+    }
+}
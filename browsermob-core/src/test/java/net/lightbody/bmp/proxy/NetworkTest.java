@@ -8,10 +8,17 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.junit.Test;
+import org.littleshoot.proxy.impl.ThreadPoolConfiguration;
 import org.mockserver.matchers.Times;
 import org.mockserver.model.Delay;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
@@ -91,4 +98,58 @@ public class NetworkTest extends MockServerTest {
             proxy.abort();
         }
     }
+
+    @Test
+    public void testLatencyDoesNotBlockEventLoop() throws Exception {
+        mockServer.when(
+                request().withMethod("GET")
+                        .withPath("/latencynonblocking"),
+                Times.exactly(4)
+        ).respond(response().withStatusCode(200));
+
+        // use a single worker thread for each side of the proxy, so that blocking the event loop would serialize the requests
+        BrowserMobProxyServer proxy = new BrowserMobProxyServer();
+        proxy.setThreadPoolConfiguration(new ThreadPoolConfiguration()
+                .withAcceptorThreads(1)
+                .withClientToProxyWorkerThreads(1)
+                .withProxyToServerWorkerThreads(1));
+        proxy.setLatency(2, TimeUnit.SECONDS);
+        proxy.start();
+
+        final int proxyPort = proxy.getPort();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<Integer>> responses = new ArrayList<>();
+
+            long start = System.nanoTime();
+
+            for (int i = 0; i < 4; i++) {
+                responses.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        try (CloseableHttpClient client = NewProxyServerTestUtil.getNewHttpClient(proxyPort)) {
+                            HttpResponse response = client.execute(new HttpGet("http://127.0.0.1:" + mockServerPort + "/latencynonblocking"));
+
+                            return response.getStatusLine().getStatusCode();
+                        }
+                    }
+                }));
+            }
+
+            for (Future<Integer> response : responses) {
+                assertEquals("Expected to receive an HTTP 200 from the upstream server", 200, (int) response.get());
+            }
+
+            long stop = System.nanoTime();
+
+            long totalTimeMs = TimeUnit.MILLISECONDS.convert(stop - start, TimeUnit.NANOSECONDS);
+            assertTrue("Expected latency to be at least 2 seconds. Total time was: " + totalTimeMs + "ms", totalTimeMs >= 2000);
+            assertTrue("Expected concurrent requests to be delayed concurrently. Total time was: " + totalTimeMs + "ms", totalTimeMs < 6000);
+        } finally {
+            executor.shutdownNow();
+            proxy.abort();
+        }
+    }
 }
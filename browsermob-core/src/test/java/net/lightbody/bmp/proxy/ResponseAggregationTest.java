@@ -0,0 +1,145 @@
+package net.lightbody.bmp.proxy;
+
+import io.netty.handler.codec.http.FullHttpMessage;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpResponse;
+import net.lightbody.bmp.BrowserMobProxyServer;
+import net.lightbody.bmp.filters.HttpMessageMatcher;
+import net.lightbody.bmp.filters.ResponseFilter;
+import net.lightbody.bmp.filters.StreamingResponseFilter;
+import net.lightbody.bmp.proxy.test.util.MockServerTest;
+import net.lightbody.bmp.proxy.test.util.NewProxyServerTestUtil;
+import net.lightbody.bmp.util.HttpMessageContents;
+import net.lightbody.bmp.util.HttpMessageInfo;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
+import org.junit.Test;
+import org.mockserver.matchers.Times;
+import org.mockserver.model.Header;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.mockserver.model.HttpRequest.request;
+import static org.mockserver.model.HttpResponse.response;
+
+public class ResponseAggregationTest extends MockServerTest {
+    private BrowserMobProxyServer proxy;
+
+    @After
+    public void tearDown() {
+        if (proxy != null && proxy.isStarted()) {
+            proxy.abort();
+        }
+    }
+
+    @Test
+    public void testOnlyMatchingResponsesAreAggregated() throws IOException {
+        mockServer.when(request()
+                        .withMethod("GET")
+                        .withPath("/page"),
+                Times.exactly(1))
+                .respond(response()
+                        .withStatusCode(200)
+                        .withHeader(new Header("Content-Type", "text/html; charset=utf-8"))
+                        .withBody("<html></html>"));
+
+        mockServer.when(request()
+                        .withMethod("GET")
+                        .withPath("/video"),
+                Times.exactly(1))
+                .respond(response()
+                        .withStatusCode(200)
+                        .withHeader(new Header("Content-Type", "video/mp4"))
+                        .withBody("not really a video"));
+
+        proxy = new BrowserMobProxyServer();
+        proxy.start();
+
+        final List<String> filteredUrls = new CopyOnWriteArrayList<>();
+
+        proxy.addResponseFilter(new ResponseFilter() {
+            @Override
+            public void filterResponse(HttpResponse response, HttpMessageContents contents, HttpMessageInfo messageInfo) {
+                filteredUrls.add(messageInfo.getUrl());
+                contents.setTextContents("<html>modified</html>");
+            }
+        }, HttpMessageMatcher.matchAll().withContentTypes("text/html"));
+
+        final Map<String, Boolean> aggregatedResponses = new ConcurrentHashMap<>();
+        proxy.addStreamingResponseFilter(new StreamingResponseFilter() {
+            @Override
+            public void filterResponse(HttpResponse response, HttpMessageInfo messageInfo) {
+                aggregatedResponses.put(messageInfo.getUrl(), response instanceof FullHttpMessage);
+            }
+
+            @Override
+            public HttpContent filterContent(HttpContent content, HttpMessageInfo messageInfo) {
+                return content;
+            }
+        });
+
+        String pageUrl = "http://localhost:" + mockServerPort + "/page";
+        String videoUrl = "http://localhost:" + mockServerPort + "/video";
+
+        try (CloseableHttpClient httpClient = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+            String pageBody = NewProxyServerTestUtil.toStringAndClose(httpClient.execute(new HttpGet(pageUrl)).getEntity().getContent());
+            assertEquals("Expected response filter to modify the matching response", "<html>modified</html>", pageBody);
+
+            String videoBody = NewProxyServerTestUtil.toStringAndClose(httpClient.execute(new HttpGet(videoUrl)).getEntity().getContent());
+            assertEquals("Did not receive expected response from mock server", "not really a video", videoBody);
+        }
+
+        assertThat("Expected response filter to be invoked only for the matching response", filteredUrls, contains(pageUrl));
+        assertEquals("Expected matching response to be aggregated", Boolean.TRUE, aggregatedResponses.get(pageUrl));
+        assertEquals("Did not expect response that does not match any filter to be aggregated", Boolean.FALSE, aggregatedResponses.get(videoUrl));
+    }
+
+    @Test
+    public void testResponsesMatchedByUrlOverHttps() throws IOException {
+        mockServer.when(request()
+                        .withMethod("GET")
+                        .withPath("/api/data"),
+                Times.exactly(1))
+                .respond(response()
+                        .withStatusCode(200)
+                        .withHeader(new Header("Content-Type", "application/json"))
+                        .withBody("{}"));
+
+        mockServer.when(request()
+                        .withMethod("GET")
+                        .withPath("/static/data"),
+                Times.exactly(1))
+                .respond(response()
+                        .withStatusCode(200)
+                        .withHeader(new Header("Content-Type", "application/json"))
+                        .withBody("{}"));
+
+        proxy = new BrowserMobProxyServer();
+        proxy.setTrustAllServers(true);
+        proxy.start();
+
+        proxy.addResponseFilter(new ResponseFilter() {
+            @Override
+            public void filterResponse(HttpResponse response, HttpMessageContents contents, HttpMessageInfo messageInfo) {
+                contents.setTextContents("{\"modified\":true}");
+            }
+        }, HttpMessageMatcher.matchAll().withMethods("GET").withUrlPattern("https://localhost:\\d+/api/.*"));
+
+        try (CloseableHttpClient httpClient = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+            String apiBody = NewProxyServerTestUtil.toStringAndClose(httpClient.execute(new HttpGet("https://localhost:" + mockServerPort + "/api/data")).getEntity().getContent());
+            assertEquals("Expected response filter to modify the matching response", "{\"modified\":true}", apiBody);
+
+            // the second request reuses the server connection established for the first
+            String staticBody = NewProxyServerTestUtil.toStringAndClose(httpClient.execute(new HttpGet("https://localhost:" + mockServerPort + "/static/data")).getEntity().getContent());
+            assertEquals("Did not expect response filter to modify a response that does not match", "{}", staticBody);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package net.lightbody.bmp.proxy;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpMessage;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.LastHttpContent;
+import net.lightbody.bmp.BrowserMobProxyServer;
+import net.lightbody.bmp.filters.HttpMessageMatcher;
+import net.lightbody.bmp.filters.ResponseFilter;
+import net.lightbody.bmp.filters.StreamingRequestFilter;
+import net.lightbody.bmp.filters.StreamingResponseFilter;
+import net.lightbody.bmp.proxy.test.util.MockServerTest;
+import net.lightbody.bmp.proxy.test.util.NewProxyServerTestUtil;
+import net.lightbody.bmp.util.BrowserMobHttpUtil;
+import net.lightbody.bmp.util.HttpMessageContents;
+import net.lightbody.bmp.util.HttpMessageInfo;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
+import org.junit.Test;
+import org.mockserver.matchers.Times;
+import org.mockserver.model.Header;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockserver.model.HttpRequest.request;
+import static org.mockserver.model.HttpResponse.response;
+
+public class StreamingFilterTest extends MockServerTest {
+    private BrowserMobProxyServer proxy;
+
+    @After
+    public void tearDown() {
+        if (proxy != null && proxy.isStarted()) {
+            proxy.abort();
+        }
+    }
+
+    @Test
+    public void testStreamingResponseFilterDoesNotAggregateResponse() throws IOException {
+        mockServer.when(request()
+                        .withMethod("GET")
+                        .withPath("/streaming"),
+                Times.exactly(1))
+                .respond(response()
+                        .withStatusCode(200)
+                        .withHeader(new Header("Content-Type", "text/plain"))
+                        .withBody("success"));
+
+        proxy = new BrowserMobProxyServer();
+        proxy.start();
+
+        final AtomicBoolean sawFullMessage = new AtomicBoolean(false);
+        final AtomicBoolean sawLastContent = new AtomicBoolean(false);
+        final ByteArrayOutputStream filteredBytes = new ByteArrayOutputStream();
+
+        proxy.addStreamingResponseFilter(new StreamingResponseFilter() {
+            @Override
+            public void filterResponse(HttpResponse response, HttpMessageInfo messageInfo) {
+                if (response instanceof FullHttpMessage) {
+                    sawFullMessage.set(true);
+                }
+
+                response.headers().add("X-Streaming-Filter", messageInfo.getUrl());
+            }
+
+            @Override
+            public HttpContent filterContent(HttpContent content, HttpMessageInfo messageInfo) {
+                synchronized (filteredBytes) {
+                    filteredBytes.write(BrowserMobHttpUtil.extractReadableBytes(content.content()), 0, content.content().readableBytes());
+                }
+
+                if (content instanceof LastHttpContent) {
+                    sawLastContent.set(true);
+                }
+
+                return content;
+            }
+        });
+
+        String url = "http://localhost:" + mockServerPort + "/streaming";
+
+        try (CloseableHttpClient httpClient = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+            CloseableHttpResponse response = httpClient.execute(new HttpGet(url));
+            String responseBody = NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent());
+
+            assertEquals("Expected server to return a 200", 200, response.getStatusLine().getStatusCode());
+            assertEquals("Did not receive expected response from mock server", "success", responseBody);
+            assertEquals("Expected streaming filter to modify response headers", url, response.getFirstHeader("X-Streaming-Filter").getValue());
+        }
+
+        assertFalse("Did not expect response to be aggregated when only streaming filters are present", sawFullMessage.get());
+        assertTrue("Expected streaming filter to see the last chunk of the response", sawLastContent.get());
+        assertEquals("Expected streaming filter to see the entire response body", "success", new String(filteredBytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testStreamingResponseFilterCanReplaceContent() throws IOException, InterruptedException {
+        mockServer.when(request()
+                        .withMethod("GET")
+                        .withPath("/replace"),
+                Times.exactly(1))
+                .respond(response()
+                        .withStatusCode(200)
+                        .withHeader(new Header("Content-Type", "text/plain"))
+                        .withBody("success"));
+
+        proxy = new BrowserMobProxyServer();
+        proxy.start();
+
+        UpperCaseResponseFilter upperCaseFilter = new UpperCaseResponseFilter();
+        proxy.addStreamingResponseFilter(upperCaseFilter);
+
+        try (CloseableHttpClient httpClient = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+            CloseableHttpResponse response = httpClient.execute(new HttpGet("http://localhost:" + mockServerPort + "/replace"));
+            String responseBody = NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent());
+
+            assertEquals("Expected server to return a 200", 200, response.getStatusLine().getStatusCode());
+            assertEquals("Expected streaming filter to replace response contents", "SUCCESS", responseBody);
+        }
+
+        upperCaseFilter.assertChunksReleased();
+    }
+
+    @Test
+    public void testStreamingResponseFilterCanReplaceAggregatedContent() throws IOException {
+        mockServer.when(request()
+                        .withMethod("GET")
+                        .withPath("/aggregated"),
+                Times.exactly(1))
+                .respond(response()
+                        .withStatusCode(200)
+                        .withHeader(new Header("Content-Type", "text/plain"))
+                        .withBody("success"));
+
+        proxy = new BrowserMobProxyServer();
+        proxy.start();
+
+        // the classic response filter forces responses to be aggregated
+        proxy.addResponseFilter(new ResponseFilter() {
+            @Override
+            public void filterResponse(HttpResponse response, HttpMessageContents contents, HttpMessageInfo messageInfo) {
+            }
+        });
+
+        proxy.addStreamingResponseFilter(new UpperCaseResponseFilter());
+
+        try (CloseableHttpClient httpClient = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+            CloseableHttpResponse response = httpClient.execute(new HttpGet("http://localhost:" + mockServerPort + "/aggregated"));
+            String responseBody = NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent());
+
+            assertEquals("Expected server to return a 200", 200, response.getStatusLine().getStatusCode());
+            assertEquals("Expected streaming filter to replace aggregated response contents", "SUCCESS", responseBody);
+        }
+    }
+
+    @Test
+    public void testStreamingResponseFilterOnlyInvokedForMatchingResponses() throws IOException {
+        mockServer.when(request()
+                        .withMethod("GET")
+                        .withPath("/page"),
+                Times.exactly(1))
+                .respond(response()
+                        .withStatusCode(200)
+                        .withHeader(new Header("Content-Type", "text/html; charset=utf-8"))
+                        .withBody("<html></html>"));
+
+        mockServer.when(request()
+                        .withMethod("GET")
+                        .withPath("/image"),
+                Times.exactly(1))
+                .respond(response()
+                        .withStatusCode(200)
+                        .withHeader(new Header("Content-Type", "image/png"))
+                        .withBody("not really a png"));
+
+        proxy = new BrowserMobProxyServer();
+        proxy.start();
+
+        final List<String> filteredUrls = new CopyOnWriteArrayList<>();
+
+        proxy.addStreamingResponseFilter(new StreamingResponseFilter() {
+            @Override
+            public void filterResponse(HttpResponse response, HttpMessageInfo messageInfo) {
+                filteredUrls.add(messageInfo.getUrl());
+            }
+
+            @Override
+            public HttpContent filterContent(HttpContent content, HttpMessageInfo messageInfo) {
+                return content;
+            }
+        }, HttpMessageMatcher.matchAll().withContentTypes("text/html"));
+
+        String pageUrl = "http://localhost:" + mockServerPort + "/page";
+
+        try (CloseableHttpClient httpClient = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+            NewProxyServerTestUtil.toStringAndClose(httpClient.execute(new HttpGet(pageUrl)).getEntity().getContent());
+            NewProxyServerTestUtil.toStringAndClose(httpClient.execute(new HttpGet("http://localhost:" + mockServerPort + "/image")).getEntity().getContent());
+        }
+
+        assertThat("Expected streaming filter to be invoked only for the HTML response", filteredUrls, contains(pageUrl));
+    }
+
+    @Test
+    public void testStreamingRequestFilterSeesContentAndCanShortCircuit() throws IOException {
+        mockServer.when(request()
+                        .withMethod("PUT")
+                        .withPath("/upload"),
+                Times.exactly(1))
+                .respond(response()
+                        .withStatusCode(200)
+                        .withBody("success"));
+
+        proxy = new BrowserMobProxyServer();
+        proxy.start();
+
+        final ByteArrayOutputStream filteredBytes = new ByteArrayOutputStream();
+
+        proxy.addStreamingRequestFilter(new StreamingRequestFilter() {
+            @Override
+            public HttpResponse filterRequest(HttpRequest request, HttpMessageInfo messageInfo) {
+                if (messageInfo.getUrl().endsWith("/blocked")) {
+                    return new DefaultHttpResponse(request.getProtocolVersion(), HttpResponseStatus.NO_CONTENT);
+                }
+
+                return null;
+            }
+
+            @Override
+            public void filterContent(HttpContent content, HttpMessageInfo messageInfo) {
+                synchronized (filteredBytes) {
+                    filteredBytes.write(BrowserMobHttpUtil.extractReadableBytes(content.content()), 0, content.content().readableBytes());
+                }
+            }
+        }, HttpMessageMatcher.matchAll().withMethods("PUT"));
+
+        try (CloseableHttpClient httpClient = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+            HttpPut put = new HttpPut("http://localhost:" + mockServerPort + "/upload");
+            put.setEntity(new StringEntity("request body"));
+
+            CloseableHttpResponse response = httpClient.execute(put);
+            String responseBody = NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent());
+
+            assertEquals("Expected server to return a 200", 200, response.getStatusLine().getStatusCode());
+            assertEquals("Did not receive expected response from mock server", "success", responseBody);
+
+            CloseableHttpResponse blockedResponse = httpClient.execute(new HttpPut("http://localhost:" + mockServerPort + "/blocked"));
+            assertEquals("Expected streaming filter to short-circuit the request", 204, blockedResponse.getStatusLine().getStatusCode());
+        }
+
+        assertEquals("Expected streaming filter to see the entire request body", "request body", new String(filteredBytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Replaces every chunk of the response with an upper-cased copy. Upper-casing ASCII does not change the length of the
+     * response, so the Content-Length header can be left unmodified. Holds an extra reference to each original chunk, so that
+     * the test can verify the proxy released each original chunk exactly once, and keeps each replacement chunk, so that the test
+     * can verify the proxy released the replacements.
+     */
+    private static class UpperCaseResponseFilter implements StreamingResponseFilter {
+        private final List<HttpContent> originalChunks = new CopyOnWriteArrayList<>();
+        private final List<HttpContent> replacementChunks = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void filterResponse(HttpResponse response, HttpMessageInfo messageInfo) {
+        }
+
+        @Override
+        public HttpContent filterContent(HttpContent content, HttpMessageInfo messageInfo) {
+            originalChunks.add(content.retain());
+
+            String upperCase = content.content().toString(StandardCharsets.UTF_8).toUpperCase(Locale.US);
+
+            HttpContent replacement;
+            if (content instanceof LastHttpContent) {
+                replacement = new DefaultLastHttpContent(Unpooled.copiedBuffer(upperCase, StandardCharsets.UTF_8));
+            } else {
+                replacement = new DefaultHttpContent(Unpooled.copiedBuffer(upperCase, StandardCharsets.UTF_8));
+            }
+
+            replacementChunks.add(replacement);
+
+            return replacement;
+        }
+
+        void assertChunksReleased() throws InterruptedException {
+            // the proxy releases chunks after the response has been written to the client, so allow the release to complete
+            Thread.sleep(500);
+
+            assertFalse("Expected streaming filter to see the response body", originalChunks.isEmpty());
+
+            for (HttpContent originalChunk : originalChunks) {
+                assertEquals("Expected the proxy to release each original chunk exactly once", 1, originalChunk.refCnt());
+                originalChunk.release();
+            }
+
+            for (HttpContent replacementChunk : replacementChunks) {
+                assertEquals("Expected the proxy to release each replacement chunk once it was written", 0, replacementChunk.refCnt());
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package net.lightbody.bmp.proxy;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the cost of finding the first matching pattern for a URL using a {@link UrlPatternMatcher} to the cost of evaluating
+ * each pattern in sequence, as the number of blacklist-style patterns grows.
+ */
+// ignored as a quick work-around to running these tests with unit tests
+@Ignore
+@RunWith(Parameterized.class)
+public class UrlPatternMatcherPerformanceTests {
+    private static final Logger log = LoggerFactory.getLogger(UrlPatternMatcherPerformanceTests.class);
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+                {10}, {100}, {1000}, {2000},
+        });
+    }
+
+    @Parameter
+    public int ruleCount;
+
+    private static final int WARM_UP_ITERATIONS = 5000;
+
+    private static final int ITERATIONS = 20000;
+
+    private static final int URL_COUNT = 1000;
+
+    @Test
+    public void testMatchingCostVersusRuleCount() {
+        Random random = new Random(ruleCount);
+
+        List<Pattern> patterns = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            switch (i % 3) {
+                case 0:
+                    patterns.add(Pattern.compile("https?://([a-z0-9-]+\\.)*tracker" + i + "\\.com/.*"));
+                    break;
+                case 1:
+                    patterns.add(Pattern.compile("http://ads" + i + "\\.example\\.net/[^?]*\\?.*"));
+                    break;
+                default:
+                    patterns.add(Pattern.compile(".*/beacon" + i + "/.*\\.gif"));
+                    break;
+            }
+        }
+
+        // mostly URLs that match no rule, which is the common case for a blacklist, and some that match a random rule
+        String[] urls = new String[URL_COUNT];
+        for (int i = 0; i < URL_COUNT; i++) {
+            if (i % 10 == 0) {
+                int rule = random.nextInt(ruleCount);
+                urls[i] = "http://www.tracker" + rule + ".com/ads" + rule + ".example.net/beacon" + rule + "/pixel.gif?x=1";
+            } else {
+                urls[i] = "https://www.example" + random.nextInt(1000) + ".com/path/to/resource" + i + ".js?v=" + random.nextInt();
+            }
+        }
+
+        UrlPatternMatcher<Pattern> matcher = UrlPatternMatcher.forPatterns(patterns);
+
+        log.info("Test parameters:\n\tRule count: {}", ruleCount);
+
+        log.info("Executing {} warm up iterations", WARM_UP_ITERATIONS);
+        runSequential(patterns, urls, WARM_UP_ITERATIONS);
+        runCompiled(matcher, urls, WARM_UP_ITERATIONS);
+
+        long start = System.nanoTime();
+        int sequentialMatches = runSequential(patterns, urls, ITERATIONS);
+        long sequentialNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int compiledMatches = runCompiled(matcher, urls, ITERATIONS);
+        long compiledNs = System.nanoTime() - start;
+
+        if (sequentialMatches != compiledMatches) {
+            throw new AssertionError("Sequential evaluation found " + sequentialMatches + " matches, but compiled matcher found " + compiledMatches);
+        }
+
+        log.info("Results for {} rules:\n\tAverage time per URL, sequential evaluation: {}ns\n\tAverage time per URL, compiled matcher: {}ns\n\tTotal time: {}ms sequential, {}ms compiled",
+                ruleCount,
+                sequentialNs / ITERATIONS,
+                compiledNs / ITERATIONS,
+                TimeUnit.MILLISECONDS.convert(sequentialNs, TimeUnit.NANOSECONDS),
+                TimeUnit.MILLISECONDS.convert(compiledNs, TimeUnit.NANOSECONDS));
+    }
+
+    private static int runSequential(List<Pattern> patterns, String[] urls, int iterations) {
+        int matches = 0;
+        for (int i = 0; i < iterations; i++) {
+            String url = urls[i % urls.length];
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(url).matches()) {
+                    matches++;
+                    break;
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    private static int runCompiled(UrlPatternMatcher<Pattern> matcher, String[] urls, int iterations) {
+        int matches = 0;
+        for (int i = 0; i < iterations; i++) {
+            if (matcher.getFirstMatchingIndex(urls[i % urls.length], 0) >= 0) {
+                matches++;
+            }
+        }
+
+        return matches;
+    }
+}
@@ -0,0 +1,108 @@
+package net.lightbody.bmp.proxy;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UrlPatternMatcherTest {
+    @Test
+    public void testRequiredLiteralExtraction() {
+        assertEquals("://www.example.com/", literal("https?://www\\.example\\.com/.*"));
+        assertEquals(".tracker", literal(".*[a-z]+\\.tracker\\d*\\.net/.*"));
+        assertEquals(".example.com/images/", literal("http://(www|img)\\.example\\.com/images/.*"));
+        assertEquals("abc", literal("ab+abcd?"));
+        assertEquals("ab", literal("abx*"));
+        assertEquals("", literal(".*"));
+        assertEquals("", literal("[abc]{2,3}"));
+    }
+
+    @Test
+    public void testLiteralExtractionGivesUpOnUnsupportedConstructs() {
+        assertNull("Expected top-level alternation to prevent literal extraction", literal("http://a\\.com/.*|http://b\\.com/.*"));
+        assertNull("Expected embedded flags to prevent literal extraction", literal("(?i)http://example\\.com/.*"));
+        assertNull("Expected quoting to prevent literal extraction", literal("\\Qhttp://example.com/\\E.*"));
+        assertNull("Expected hex escapes to prevent literal extraction", literal("http://example\\x2Ecom/.*"));
+        assertNull("Expected back references to prevent literal extraction", literal("(a)\\1bcd"));
+        assertNull("Expected pattern flags to prevent literal extraction",
+                UrlPatternMatcher.getLongestRequiredLiteral(Pattern.compile("http://example\\.com/.*", Pattern.CASE_INSENSITIVE)));
+    }
+
+    @Test
+    public void testFirstMatchIsReturnedInOriginalOrder() {
+        UrlPatternMatcher<Pattern> matcher = UrlPatternMatcher.forPatterns(Arrays.asList(
+                Pattern.compile("http://www\\.example\\.com/images/.*"),
+                Pattern.compile(".*\\.png"),
+                Pattern.compile("http://www\\.example\\.com/.*"),
+                Pattern.compile("(?i)HTTP://WWW\\.EXAMPLE\\.COM/.*")));
+
+        assertEquals(0, matcher.getFirstMatchingIndex("http://www.example.com/images/logo.png", 0));
+        assertEquals(1, matcher.getFirstMatchingIndex("http://www.example.com/images/logo.png", 1));
+        assertEquals(2, matcher.getFirstMatchingIndex("http://www.example.com/images/logo.png", 2));
+        assertEquals(3, matcher.getFirstMatchingIndex("http://www.example.com/images/logo.png", 3));
+        assertEquals(-1, matcher.getFirstMatchingIndex("http://www.example.com/images/logo.png", 4));
+
+        assertEquals(2, matcher.getFirstMatchingIndex("http://www.example.com/index.html", 0));
+        assertEquals(3, matcher.getFirstMatchingIndex("http://WWW.example.com/index.html", 0));
+        assertEquals(-1, matcher.getFirstMatchingIndex("http://www.example.org/index.html", 0));
+    }
+
+    @Test
+    public void testEmptyMatcherMatchesNothing() {
+        UrlPatternMatcher<Pattern> matcher = UrlPatternMatcher.forPatterns(Collections.<Pattern>emptyList());
+
+        assertTrue("Expected matcher to be empty", matcher.isEmpty());
+        assertNull(matcher.getFirstMatch("http://www.example.com/"));
+    }
+
+    @Test
+    public void testMatchesSameEntriesAsSequentialEvaluation() {
+        Random random = new Random(1234);
+
+        String[] hosts = {"www.example.com", "ads.example.com", "tracker.net", "cdn.example.org", "example.com.evil.net"};
+        String[] paths = {"/", "/index.html", "/images/logo.png", "/ads/banner.gif", "/api/v1/items?id=5", "/a/b/c/d.js"};
+
+        List<Pattern> patterns = new ArrayList<>();
+        for (String host : hosts) {
+            patterns.add(Pattern.compile("https?://" + Pattern.quote(host) + "/.*"));
+            patterns.add(Pattern.compile("http://" + host.replace(".", "\\.") + "/.*"));
+        }
+        for (String path : paths) {
+            patterns.add(Pattern.compile(".*" + path.replace(".", "\\.").replace("?", "\\?") + ".*"));
+        }
+        patterns.add(Pattern.compile(".*\\.(png|gif)"));
+        patterns.add(Pattern.compile("https://[^/]+/api/v[0-9]+/.*"));
+        patterns.add(Pattern.compile(".*ads?\\..*"));
+        Collections.shuffle(patterns, random);
+
+        UrlPatternMatcher<Pattern> matcher = UrlPatternMatcher.forPatterns(patterns);
+
+        for (int i = 0; i < 1000; i++) {
+            String url = (random.nextBoolean() ? "http" : "https") + "://" + hosts[random.nextInt(hosts.length)] + paths[random.nextInt(paths.length)];
+            int fromIndex = random.nextInt(patterns.size());
+
+            int expected = -1;
+            for (int j = fromIndex; j < patterns.size(); j++) {
+                if (patterns.get(j).matcher(url).matches()) {
+                    expected = j;
+                    break;
+                }
+            }
+
+            assertEquals("Expected compiled matcher to find the same entry as sequential evaluation for URL " + url,
+                    expected, matcher.getFirstMatchingIndex(url, fromIndex));
+        }
+    }
+
+    private static String literal(String regex) {
+        return UrlPatternMatcher.getLongestRequiredLiteral(Pattern.compile(regex));
+    }
+}
@@ -0,0 +1,477 @@
+package net.lightbody.bmp.proxy.dns;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xbill.DNS.AAAARecord;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncDnsResolverTest {
+    private static final InetAddress IPV4_ADDRESS = address("10.1.2.3");
+    private static final InetAddress IPV6_ADDRESS = address("2001:db8::1");
+
+    private StubDnsServer dnsServer;
+
+    private AsyncDnsResolver resolver;
+
+    @Before
+    public void setUp() throws IOException {
+        dnsServer = new StubDnsServer();
+        dnsServer.addRecord(new ARecord(name("www.example.com"), DClass.IN, 60, IPV4_ADDRESS));
+        dnsServer.addRecord(new AAAARecord(name("www.example.com"), DClass.IN, 60, IPV6_ADDRESS));
+
+        resolver = new AsyncDnsResolver(ImmutableList.of(dnsServer.getAddress()), 500, 2);
+    }
+
+    @After
+    public void tearDown() {
+        if (resolver != null) {
+            resolver.shutdown();
+        }
+
+        if (dnsServer != null) {
+            dnsServer.stop();
+        }
+    }
+
+    @Test
+    public void testResolvesIpv4AndIpv6AddressesInParallel() {
+        List<InetAddress> addresses = new ArrayList<>(resolver.resolve("www.example.com"));
+
+        assertEquals("Expected one IPv4 and one IPv6 address", 2, addresses.size());
+        assertTrue("Expected IPv4 address to be returned first", addresses.get(0) instanceof Inet4Address);
+        assertTrue("Expected IPv6 address to be returned second", addresses.get(1) instanceof Inet6Address);
+        assertEquals(IPV4_ADDRESS, addresses.get(0));
+        assertEquals(IPV6_ADDRESS, addresses.get(1));
+        assertEquals("Expected resolved address to retain the hostname", "www.example.com", addresses.get(0).getHostName());
+
+        assertEquals("Expected one A query", 1, dnsServer.getQueryCount(Type.A));
+        assertEquals("Expected one AAAA query", 1, dnsServer.getQueryCount(Type.AAAA));
+    }
+
+    @Test
+    public void testCachedLookupHonorsTtl() {
+        dnsServer.addRecord(new ARecord(name("uncached.example.com"), DClass.IN, 0, IPV4_ADDRESS));
+
+        resolver.resolve("www.example.com");
+        Collection<InetAddress> addresses = resolver.resolve("www.example.com");
+
+        assertEquals("Expected cached lookup to return both addresses", 2, addresses.size());
+        assertEquals("Expected second lookup to be served from the cache", 1, dnsServer.getQueryCount(Type.A));
+
+        resolver.clearDNSCache();
+        resolver.resolve("www.example.com");
+
+        assertEquals("Expected lookup after clearing the cache to query the DNS server", 2, dnsServer.getQueryCount(Type.A));
+
+        resolver.resolve("uncached.example.com");
+        resolver.resolve("uncached.example.com");
+
+        assertEquals("Expected records with a TTL of 0 not to be cached", 4, dnsServer.getQueryCount(Type.A));
+    }
+
+    @Test
+    public void testPositiveCacheTimeoutCapsTtl() {
+        resolver.setPositiveDNSCacheTimeout(0, TimeUnit.SECONDS);
+
+        resolver.resolve("www.example.com");
+        resolver.resolve("www.example.com");
+
+        assertEquals("Expected lookups not to be cached when the positive cache timeout is 0", 2, dnsServer.getQueryCount(Type.A));
+    }
+
+    @Test
+    public void testNonexistentHostIsNegativelyCached() {
+        Collection<InetAddress> addresses = resolver.resolve("nonexistent.example.com");
+
+        assertThat("Expected no addresses for nonexistent host", addresses, empty());
+
+        resolver.resolve("nonexistent.example.com");
+
+        assertEquals("Expected failed lookup to be cached", 1, dnsServer.getQueryCount(Type.A));
+
+        resolver.setNegativeDNSCacheTimeout(0, TimeUnit.SECONDS);
+        resolver.clearDNSCache();
+
+        resolver.resolve("nonexistent.example.com");
+        resolver.resolve("nonexistent.example.com");
+
+        assertEquals("Expected failed lookups not to be cached when the negative cache timeout is 0", 3, dnsServer.getQueryCount(Type.A));
+    }
+
+    @Test
+    public void testTruncatedResponseRetriedOverTcp() {
+        dnsServer.setTruncateUdpResponses(true);
+
+        List<InetAddress> addresses = new ArrayList<>(resolver.resolve("www.example.com"));
+
+        assertEquals("Expected addresses to be resolved over TCP", ImmutableList.of(IPV4_ADDRESS, IPV6_ADDRESS), addresses);
+        assertEquals("Expected A and AAAA queries to be retried over TCP", 2, dnsServer.getTcpQueryCount());
+    }
+
+    @Test
+    public void testRemappedHostResolved() {
+        resolver.remapHost("www.remapped.com", "www.example.com");
+
+        Collection<InetAddress> addresses = resolver.resolve("www.remapped.com");
+
+        assertEquals("Expected remapped host to resolve to the addresses of the new host", 2, addresses.size());
+        assertTrue("Expected remapped host to resolve to the addresses of the new host", addresses.contains(IPV4_ADDRESS));
+    }
+
+    @Test
+    public void testIpAddressLiteralNotQueried() {
+        Collection<InetAddress> addresses = resolver.resolve("10.1.2.3");
+
+        assertEquals(ImmutableList.of(IPV4_ADDRESS), ImmutableList.copyOf(addresses));
+        assertEquals("Expected IP address literal not to be sent to the DNS server", 0, dnsServer.getQueryCount(Type.A));
+    }
+
+    @Test
+    public void testUnresponsiveServerTimesOut() throws IOException {
+        // a socket that never responds to queries
+        DatagramSocket unresponsiveServer = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+
+        AsyncDnsResolver unresponsiveResolver = new AsyncDnsResolver(ImmutableList.of(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), unresponsiveServer.getLocalPort())), 200, 2);
+
+        try {
+            long start = System.currentTimeMillis();
+            Collection<InetAddress> addresses = unresponsiveResolver.resolve("www.example.com");
+            long elapsed = System.currentTimeMillis() - start;
+
+            assertThat("Expected no addresses when the DNS server does not respond", addresses, empty());
+            assertThat("Expected lookup to fail after the query attempts timed out", elapsed, lessThan(2000L));
+        } finally {
+            unresponsiveResolver.shutdown();
+            unresponsiveServer.close();
+        }
+    }
+
+    @Test
+    public void testExpiredLookupServedWhileRefreshing() throws InterruptedException {
+        resolver.setPositiveDNSCacheTimeout(100, TimeUnit.MILLISECONDS);
+
+        resolver.resolve("www.example.com");
+
+        Thread.sleep(200);
+
+        // the refresh will time out, since the DNS server no longer responds
+        dnsServer.stop();
+
+        long start = System.currentTimeMillis();
+        Collection<InetAddress> addresses = resolver.resolve("www.example.com");
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals("Expected expired lookup to return the stale addresses", 2, addresses.size());
+        assertThat("Expected expired lookup not to wait for the refresh", elapsed, lessThan(500L));
+    }
+
+    @Test
+    public void testExpiredLookupRefreshedInBackground() throws InterruptedException {
+        resolver.setPositiveDNSCacheTimeout(100, TimeUnit.MILLISECONDS);
+
+        resolver.resolve("www.example.com");
+
+        Thread.sleep(200);
+
+        resolver.resolve("www.example.com");
+        resolver.resolve("www.example.com");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dnsServer.getQueryCount(Type.A) < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals("Expected a single background refresh of the expired lookup", 2, dnsServer.getQueryCount(Type.A));
+    }
+
+    @Test
+    public void testShutdownFailsPendingLookups() throws Exception {
+        DatagramSocket unresponsiveServer = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+
+        AsyncDnsResolver unresponsiveResolver = new AsyncDnsResolver(ImmutableList.of(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), unresponsiveServer.getLocalPort())), 10000, 2);
+
+        try {
+            Future<Collection<InetAddress>> pendingLookup = unresponsiveResolver.resolveAsync("www.example.com");
+
+            unresponsiveResolver.shutdown();
+
+            assertThat("Expected pending lookup to fail when the resolver is shut down", pendingLookup.get(1, TimeUnit.SECONDS), empty());
+            assertThat("Expected lookups after shutdown to fail", unresponsiveResolver.resolve("www.example.com"), empty());
+        } finally {
+            unresponsiveServer.close();
+        }
+    }
+
+    @Test
+    public void testServerFailureRetriedWithNextServer() throws IOException {
+        StubDnsServer failingServer = new StubDnsServer();
+        failingServer.setFailureRcode(Rcode.SERVFAIL);
+
+        AsyncDnsResolver failoverResolver = new AsyncDnsResolver(ImmutableList.of(failingServer.getAddress(), dnsServer.getAddress()), 500, 2);
+
+        try {
+            long start = System.currentTimeMillis();
+            Collection<InetAddress> addresses = failoverResolver.resolve("www.example.com");
+            long elapsed = System.currentTimeMillis() - start;
+
+            assertEquals("Expected lookup to succeed using the second DNS server", 2, addresses.size());
+            assertEquals("Expected first DNS server to be queried", 1, failingServer.getQueryCount(Type.A));
+            assertEquals("Expected query to be retried with the second DNS server", 1, dnsServer.getQueryCount(Type.A));
+            assertThat("Expected query to be retried without waiting for the query timeout", elapsed, lessThan(500L));
+        } finally {
+            failoverResolver.shutdown();
+            failingServer.stop();
+        }
+    }
+
+    @Test
+    public void testQueriesSentFromDifferentSourcePorts() {
+        resolver.resolve("www.example.com");
+        resolver.resolve("nonexistent.example.com");
+
+        assertThat("Expected each query to be sent from its own source port", dnsServer.getSourcePorts().size(), greaterThan(1));
+    }
+
+    private static Name name(String hostname) {
+        try {
+            return Name.fromString(hostname, Name.root);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static InetAddress address(String ipAddress) {
+        try {
+            return InetAddress.getByName(ipAddress);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A minimal authoritative DNS server that answers queries over UDP and TCP on the same local port from a fixed set of
+     * records, and returns NXDOMAIN for names it has no records for.
+     */
+    private static class StubDnsServer {
+        private final DatagramSocket udpSocket;
+        private final ServerSocket tcpSocket;
+
+        private final List<Record> records = new ArrayList<>();
+
+        private final Map<Integer, AtomicInteger> queryCounts = new ConcurrentHashMap<>();
+        private final AtomicInteger tcpQueryCount = new AtomicInteger();
+
+        private final Set<Integer> sourcePorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+        private volatile boolean truncateUdpResponses;
+
+        private volatile int failureRcode = Rcode.NOERROR;
+
+        private StubDnsServer() throws IOException {
+            tcpSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            udpSocket = new DatagramSocket(tcpSocket.getLocalPort(), InetAddress.getLoopbackAddress());
+
+            Thread udpThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serveUdp();
+                }
+            }, "stub-dns-udp");
+            udpThread.setDaemon(true);
+            udpThread.start();
+
+            Thread tcpThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serveTcp();
+                }
+            }, "stub-dns-tcp");
+            tcpThread.setDaemon(true);
+            tcpThread.start();
+        }
+
+        private InetSocketAddress getAddress() {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), udpSocket.getLocalPort());
+        }
+
+        private synchronized void addRecord(Record record) {
+            records.add(record);
+        }
+
+        private void setTruncateUdpResponses(boolean truncateUdpResponses) {
+            this.truncateUdpResponses = truncateUdpResponses;
+        }
+
+        /**
+         * Causes the server to answer every UDP query with the specified rcode, e.g. SERVFAIL.
+         */
+        private void setFailureRcode(int failureRcode) {
+            this.failureRcode = failureRcode;
+        }
+
+        /**
+         * Returns the source ports of the UDP queries received.
+         */
+        private Set<Integer> getSourcePorts() {
+            return sourcePorts;
+        }
+
+        /**
+         * Returns the number of UDP queries received for records of the specified type.
+         */
+        private int getQueryCount(int type) {
+            AtomicInteger count = queryCounts.get(type);
+
+            return count == null ? 0 : count.get();
+        }
+
+        private int getTcpQueryCount() {
+            return tcpQueryCount.get();
+        }
+
+        private void stop() {
+            udpSocket.close();
+
+            try {
+                tcpSocket.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+
+        private void serveUdp() {
+            byte[] buffer = new byte[512];
+
+            while (!udpSocket.isClosed()) {
+                try {
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    udpSocket.receive(packet);
+
+                    Message query = new Message(Arrays.copyOf(packet.getData(), packet.getLength()));
+
+                    int type = query.getQuestion().getType();
+                    queryCounts.putIfAbsent(type, new AtomicInteger());
+                    queryCounts.get(type).incrementAndGet();
+
+                    sourcePorts.add(packet.getPort());
+
+                    Message response;
+                    if (failureRcode != Rcode.NOERROR) {
+                        response = new Message(query.getHeader().getID());
+                        response.getHeader().setFlag(Flags.QR);
+                        response.getHeader().setRcode(failureRcode);
+                        response.addRecord(query.getQuestion(), Section.QUESTION);
+                    } else if (truncateUdpResponses) {
+                        response = new Message(query.getHeader().getID());
+                        response.getHeader().setFlag(Flags.QR);
+                        response.getHeader().setFlag(Flags.TC);
+                        response.addRecord(query.getQuestion(), Section.QUESTION);
+                    } else {
+                        response = answer(query);
+                    }
+
+                    byte[] responseBytes = response.toWire();
+                    udpSocket.send(new DatagramPacket(responseBytes, responseBytes.length, packet.getSocketAddress()));
+                } catch (SocketException e) {
+                    // socket closed
+                    return;
+                } catch (IOException e) {
+                    // ignore invalid queries
+                }
+            }
+        }
+
+        private void serveTcp() {
+            while (!tcpSocket.isClosed()) {
+                try (Socket socket = tcpSocket.accept()) {
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    byte[] queryBytes = new byte[in.readUnsignedShort()];
+                    in.readFully(queryBytes);
+
+                    tcpQueryCount.incrementAndGet();
+
+                    byte[] responseBytes = answer(new Message(queryBytes)).toWire();
+
+                    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    out.writeShort(responseBytes.length);
+                    out.write(responseBytes);
+                    out.flush();
+                } catch (SocketException e) {
+                    // socket closed
+                    return;
+                } catch (IOException e) {
+                    // ignore invalid queries
+                }
+            }
+        }
+
+        private synchronized Message answer(Message query) {
+            Record question = query.getQuestion();
+
+            Message response = new Message(query.getHeader().getID());
+            response.getHeader().setFlag(Flags.QR);
+            response.getHeader().setFlag(Flags.AA);
+            response.addRecord(question, Section.QUESTION);
+
+            boolean nameExists = false;
+            for (Record record : records) {
+                if (record.getName().equals(question.getName())) {
+                    nameExists = true;
+
+                    if (record.getType() == question.getType()) {
+                        response.addRecord(record, Section.ANSWER);
+                    }
+                }
+            }
+
+            if (!nameExists) {
+                response.getHeader().setRcode(Rcode.NXDOMAIN);
+            }
+
+            return response;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package net.lightbody.bmp.proxy.dns;
+
+import com.google.common.collect.ImmutableList;
+import net.lightbody.bmp.proxy.test.util.TestConstants;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingHostResolverTest {
+    private AdvancedHostResolver delegate;
+
+    private CachingHostResolver resolver;
+
+    @Before
+    public void setUp() {
+        delegate = mock(AdvancedHostResolver.class);
+        when(delegate.resolve("www.example.com")).thenReturn(TestConstants.addressOnesList);
+        when(delegate.resolve("nonexistent.example.com")).thenReturn(Collections.<InetAddress>emptyList());
+
+        resolver = new CachingHostResolver(delegate);
+    }
+
+    @Test
+    public void testSuccessfulLookupCached() {
+        assertEquals(TestConstants.addressOnesList, resolver.resolve("www.example.com"));
+        assertEquals(TestConstants.addressOnesList, resolver.resolve("www.example.com"));
+
+        verify(delegate, times(1)).resolve("www.example.com");
+
+        assertEquals("Expected one cache hit", 1, resolver.getHitCount());
+        assertEquals("Expected one cache miss", 1, resolver.getMissCount());
+    }
+
+    @Test
+    public void testFailedLookupCachedForNegativeTimeout() {
+        assertThat(resolver.resolve("nonexistent.example.com"), empty());
+        assertThat(resolver.resolve("nonexistent.example.com"), empty());
+
+        verify(delegate, times(1)).resolve("nonexistent.example.com");
+
+        resolver.setNegativeDNSCacheTimeout(0, TimeUnit.SECONDS);
+        resolver.clearDNSCache();
+
+        resolver.resolve("nonexistent.example.com");
+        resolver.resolve("nonexistent.example.com");
+
+        verify(delegate, times(3)).resolve("nonexistent.example.com");
+
+        // successful lookups are still cached
+        resolver.resolve("www.example.com");
+        resolver.resolve("www.example.com");
+
+        verify(delegate, times(1)).resolve("www.example.com");
+    }
+
+    @Test
+    public void testPositiveTimeoutExpiresLookups() throws InterruptedException {
+        resolver.setPositiveDNSCacheTimeout(100, TimeUnit.MILLISECONDS);
+
+        resolver.resolve("www.example.com");
+        resolver.resolve("www.example.com");
+
+        verify(delegate, times(1)).resolve("www.example.com");
+
+        Thread.sleep(200);
+
+        resolver.resolve("www.example.com");
+
+        verify(delegate, times(2)).resolve("www.example.com");
+    }
+
+    @Test
+    public void testClearCacheOnlyAffectsThisResolver() {
+        CachingHostResolver otherResolver = new CachingHostResolver(delegate);
+
+        resolver.resolve("www.example.com");
+        otherResolver.resolve("www.example.com");
+
+        resolver.clearDNSCache();
+
+        resolver.resolve("www.example.com");
+        otherResolver.resolve("www.example.com");
+
+        verify(delegate, times(3)).resolve("www.example.com");
+        assertEquals("Expected other resolver's cache to be unaffected", 1, otherResolver.getHitCount());
+
+        verify(delegate, never()).clearDNSCache();
+        verify(delegate, never()).setPositiveDNSCacheTimeout(anyInt(), any(TimeUnit.class));
+        verify(delegate, never()).setNegativeDNSCacheTimeout(anyInt(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedLookupEvicted() {
+        when(delegate.resolve("www.other.com")).thenReturn(TestConstants.addressTwosList);
+
+        CachingHostResolver smallResolver = new CachingHostResolver(delegate, 1);
+
+        smallResolver.resolve("www.example.com");
+        smallResolver.resolve("www.other.com");
+        smallResolver.resolve("www.example.com");
+
+        verify(delegate, times(2)).resolve("www.example.com");
+        assertEquals("Expected two evictions", 2, smallResolver.getEvictionCount());
+        assertEquals(1, smallResolver.getSize());
+    }
+
+    @Test
+    public void testRemappingClearsCache() {
+        resolver.resolve("www.example.com");
+
+        resolver.remapHost("www.example.com", "www.other.com");
+
+        resolver.resolve("www.example.com");
+
+        verify(delegate).remapHost("www.example.com", "www.other.com");
+        verify(delegate, times(2)).resolve("www.example.com");
+    }
+
+    @Test
+    public void testConcurrentLookupsCoalesced() throws Exception {
+        final CountDownLatch lookupStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLookup = new CountDownLatch(1);
+
+        doAnswer(new Answer<Collection<InetAddress>>() {
+            @Override
+            public Collection<InetAddress> answer(InvocationOnMock invocation) throws Throwable {
+                lookupStarted.countDown();
+                releaseLookup.await();
+
+                return TestConstants.addressOnesList;
+            }
+        }).when(delegate).resolve("slow.example.com");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Collection<InetAddress>>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(new Callable<Collection<InetAddress>>() {
+                    @Override
+                    public Collection<InetAddress> call() throws Exception {
+                        return resolver.resolve("slow.example.com");
+                    }
+                }));
+            }
+
+            lookupStarted.await(5, TimeUnit.SECONDS);
+
+            // give the other threads time to join the lookup in progress
+            Thread.sleep(100);
+
+            releaseLookup.countDown();
+
+            for (Future<Collection<InetAddress>> result : results) {
+                assertEquals(ImmutableList.copyOf(TestConstants.addressOnesList), ImmutableList.copyOf(result.get(5, TimeUnit.SECONDS)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(delegate, times(1)).resolve("slow.example.com");
+    }
+}
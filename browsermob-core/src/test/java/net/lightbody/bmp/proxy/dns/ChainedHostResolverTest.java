@@ -13,8 +13,16 @@ import java.net.InetAddress;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -22,6 +30,7 @@ import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -165,4 +174,64 @@ public class ChainedHostResolverTest {
 
         assertThat("Expected resolver to finish clearing the DNS cache before starting to resolve an address", firstResolverStartedResolvingTime.get(), greaterThan(secondResolverCacheClearFinishedTime.get()));
     }
+
+    @Test
+    public void testResolveRetriedOnceWhenWriteOverlaps() throws InterruptedException, ExecutionException, TimeoutException {
+        AdvancedHostResolver resolver = mock(AdvancedHostResolver.class);
+        final ChainedHostResolver chainResolver = new ChainedHostResolver(ImmutableList.of(resolver));
+
+        final AtomicInteger resolveCount = new AtomicInteger();
+        final CountDownLatch retryStarted = new CountDownLatch(1);
+        final CountDownLatch finishRetry = new CountDownLatch(1);
+
+        // the first resolution overlaps a write, so it is retried. the retry blocks until the test allows it to finish.
+        when(resolver.resolve("1.1.1.1")).then(new Answer<Collection<InetAddress>>() {
+            @Override
+            public Collection<InetAddress> answer(InvocationOnMock invocationOnMock) throws Throwable {
+                int count = resolveCount.incrementAndGet();
+                if (count == 1) {
+                    chainResolver.clearDNSCache();
+                } else if (count == 2) {
+                    retryStarted.countDown();
+                    finishRetry.await(5, TimeUnit.SECONDS);
+                }
+
+                return TestConstants.addressOnesList;
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Collection<InetAddress>> resolveFuture = executor.submit(new Callable<Collection<InetAddress>>() {
+                @Override
+                public Collection<InetAddress> call() throws Exception {
+                    return chainResolver.resolve("1.1.1.1");
+                }
+            });
+
+            assertTrue("Expected resolution to be retried", retryStarted.await(5, TimeUnit.SECONDS));
+
+            Future<?> writeFuture = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    chainResolver.remapHost("www.example.com", "www.other.com");
+                }
+            });
+
+            // the retry holds the read lock, so the write waits for it rather than forcing another retry
+            Thread.sleep(200);
+            assertFalse("Expected write to wait for the retried resolution", writeFuture.isDone());
+
+            finishRetry.countDown();
+
+            writeFuture.get(2, TimeUnit.SECONDS);
+
+            Collection<InetAddress> results = resolveFuture.get(5, TimeUnit.SECONDS);
+            assertThat("Expected resolver to return a result", results, not(empty()));
+            assertEquals("Expected resolution to be retried only once", 2, resolveCount.get());
+        } finally {
+            finishRetry.countDown();
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,212 @@
+package net.lightbody.bmp.proxy.dns;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HappyEyeballsAddressSelectorTest {
+    private static final InetAddress LISTENING_ADDRESS = address("127.0.0.1");
+    private static final InetAddress REFUSING_ADDRESS = address("127.0.0.2");
+    private static final InetAddress OTHER_REFUSING_ADDRESS = address("127.0.0.3");
+
+    private ServerSocket serverSocket;
+
+    private int port;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 50, LISTENING_ADDRESS);
+        port = serverSocket.getLocalPort();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void testInterleaveAddressFamilies() {
+        InetAddress ipv4One = address("10.0.0.1");
+        InetAddress ipv4Two = address("10.0.0.2");
+        InetAddress ipv6One = address("2001:db8::1");
+        InetAddress ipv6Two = address("2001:db8::2");
+
+        assertEquals(ImmutableList.of(ipv4One, ipv6One, ipv4Two, ipv6Two),
+                HappyEyeballsAddressSelector.interleaveAddressFamilies(ImmutableList.of(ipv4One, ipv4Two, ipv6One, ipv6Two)));
+
+        assertEquals("Expected interleaving to start with the family of the first address", ImmutableList.of(ipv6One, ipv4One, ipv4Two),
+                HappyEyeballsAddressSelector.interleaveAddressFamilies(ImmutableList.of(ipv6One, ipv4One, ipv4Two)));
+    }
+
+    @Test
+    public void testRefusingAddressSkippedAndRemembered() throws Exception {
+        HappyEyeballsAddressSelector selector = new HappyEyeballsAddressSelector(100, 30000);
+
+        InetSocketAddress selected = selector.race(candidates(REFUSING_ADDRESS, LISTENING_ADDRESS), 5000).get(5, TimeUnit.SECONDS);
+
+        assertEquals("Expected listening address to win the race", new InetSocketAddress(LISTENING_ADDRESS, port), selected);
+        assertTrue("Expected refusing address to be marked unhealthy", selector.isUnhealthy(new InetSocketAddress(REFUSING_ADDRESS, port)));
+        assertFalse(selector.isUnhealthy(selected));
+
+        // the refusing address is now attempted last, and the listening address is selected without racing
+        serverSocket = closeQuietly(serverSocket);
+
+        assertEquals(selected, selector.selectAddress(ImmutableList.of(REFUSING_ADDRESS, LISTENING_ADDRESS), port, 5000));
+    }
+
+    @Test
+    public void testSelectAddressRacesInBackground() throws Exception {
+        HappyEyeballsAddressSelector selector = new HappyEyeballsAddressSelector(100, 30000);
+
+        // no address is known to be healthy, so the first address is selected while the race runs
+        InetSocketAddress selected = selector.selectAddress(ImmutableList.of(REFUSING_ADDRESS, LISTENING_ADDRESS), port, 5000);
+        assertEquals(new InetSocketAddress(REFUSING_ADDRESS, port), selected);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!selector.isUnhealthy(selected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals("Expected the race to make the listening address the selected address", new InetSocketAddress(LISTENING_ADDRESS, port),
+                selector.selectAddress(ImmutableList.of(REFUSING_ADDRESS, LISTENING_ADDRESS), port, 5000));
+    }
+
+    @Test
+    public void testUnresponsiveAddressDoesNotWaitForConnectTimeout() throws Exception {
+        HappyEyeballsAddressSelector selector = new HappyEyeballsAddressSelector(100, 30000);
+
+        // a server whose accept queue is full will not complete new connections, simulating an unresponsive address
+        List<Socket> queuedConnections = new ArrayList<>();
+        try (ServerSocket unresponsiveServer = new ServerSocket(port, 1, REFUSING_ADDRESS)) {
+            fillAcceptQueue(unresponsiveServer, queuedConnections);
+
+            long start = System.currentTimeMillis();
+            InetSocketAddress selected = selector.race(candidates(REFUSING_ADDRESS, LISTENING_ADDRESS), 10000).get(10, TimeUnit.SECONDS);
+            long elapsed = System.currentTimeMillis() - start;
+
+            assertEquals("Expected listening address to win the race", new InetSocketAddress(LISTENING_ADDRESS, port), selected);
+            assertThat("Expected connection attempt to the listening address to start after the attempt delay", elapsed, lessThan(5000L));
+            assertTrue("Expected the unresponsive address to be marked unhealthy when it lost the race",
+                    selector.isUnhealthy(new InetSocketAddress(REFUSING_ADDRESS, port)));
+        } finally {
+            for (Socket socket : queuedConnections) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSelectAddressDoesNotBlock() throws IOException {
+        HappyEyeballsAddressSelector selector = new HappyEyeballsAddressSelector(100, 30000);
+
+        List<Socket> queuedConnections = new ArrayList<>();
+        try (ServerSocket unresponsiveServer = new ServerSocket(port, 1, REFUSING_ADDRESS);
+             ServerSocket otherUnresponsiveServer = new ServerSocket(port, 1, OTHER_REFUSING_ADDRESS)) {
+            fillAcceptQueue(unresponsiveServer, queuedConnections);
+            fillAcceptQueue(otherUnresponsiveServer, queuedConnections);
+
+            long start = System.currentTimeMillis();
+            InetSocketAddress selected = selector.selectAddress(ImmutableList.of(REFUSING_ADDRESS, OTHER_REFUSING_ADDRESS), port, 10000);
+            long elapsed = System.currentTimeMillis() - start;
+
+            assertEquals(new InetSocketAddress(REFUSING_ADDRESS, port), selected);
+            assertThat("Expected address to be selected without waiting for the race", elapsed, lessThan(1000L));
+        } finally {
+            for (Socket socket : queuedConnections) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    public void testFirstAddressSelectedWhenNoAddressConnects() throws Exception {
+        HappyEyeballsAddressSelector selector = new HappyEyeballsAddressSelector(100, 30000);
+
+        assertNull("Expected no winner when no address connects",
+                selector.race(candidates(REFUSING_ADDRESS, OTHER_REFUSING_ADDRESS), 5000).get(5, TimeUnit.SECONDS));
+
+        assertTrue(selector.isUnhealthy(new InetSocketAddress(REFUSING_ADDRESS, port)));
+        assertTrue(selector.isUnhealthy(new InetSocketAddress(OTHER_REFUSING_ADDRESS, port)));
+
+        InetSocketAddress selected = selector.selectAddress(ImmutableList.of(REFUSING_ADDRESS, OTHER_REFUSING_ADDRESS), port, 5000);
+        assertEquals(new InetSocketAddress(REFUSING_ADDRESS, port), selected);
+    }
+
+    @Test
+    public void testSingleAddressNotRaced() {
+        HappyEyeballsAddressSelector selector = new HappyEyeballsAddressSelector(100, 30000);
+
+        InetSocketAddress selected = selector.selectAddress(ImmutableList.of(REFUSING_ADDRESS), port, 5000);
+
+        assertEquals(new InetSocketAddress(REFUSING_ADDRESS, port), selected);
+        assertFalse("Did not expect a single address to be probed", selector.isUnhealthy(selected));
+    }
+
+    /**
+     * Connects to the server without accepting the connections, until a connection attempt times out.
+     */
+    private static void fillAcceptQueue(ServerSocket server, List<Socket> connections) throws IOException {
+        for (int i = 0; i < 100; i++) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(server.getLocalSocketAddress(), 200);
+                connections.add(socket);
+            } catch (SocketTimeoutException e) {
+                socket.close();
+
+                return;
+            }
+        }
+
+        Assume.assumeTrue("Unable to fill the server's accept queue", false);
+    }
+
+    private List<InetSocketAddress> candidates(InetAddress... addresses) {
+        List<InetSocketAddress> candidates = new ArrayList<>(addresses.length);
+        for (InetAddress address : addresses) {
+            candidates.add(new InetSocketAddress(address, port));
+        }
+
+        return candidates;
+    }
+
+    private static ServerSocket closeQuietly(ServerSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+
+        return null;
+    }
+
+    private static InetAddress address(String ipAddress) {
+        try {
+            return InetAddress.getByName(ipAddress);
+        } catch (UnknownHostException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package net.lightbody.bmp.proxy.dns;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HostRemappingTableTest {
+    @Test
+    public void testExactRemapping() {
+        HostRemappingTable table = new HostRemappingTable(ImmutableMap.of("www.example.com", "localhost"));
+
+        assertEquals("localhost", table.remap("www.example.com"));
+        assertNull("Did not expect subdomain of exact remapping to be remapped", table.remap("a.www.example.com"));
+        assertNull("Did not expect unrelated host to be remapped", table.remap("www.other.com"));
+    }
+
+    @Test
+    public void testWildcardRemapsSubdomains() {
+        HostRemappingTable table = new HostRemappingTable(ImmutableMap.of("*.staging.example.com", "10.0.0.5"));
+
+        assertEquals("10.0.0.5", table.remap("www.staging.example.com"));
+        assertEquals("10.0.0.5", table.remap("a.b.staging.example.com"));
+        assertEquals("Expected wildcard remapping to be case-insensitive", "10.0.0.5", table.remap("WWW.Staging.Example.com"));
+
+        assertNull("Did not expect wildcard to match the domain itself", table.remap("staging.example.com"));
+        assertNull("Did not expect wildcard to match a parent domain", table.remap("www.example.com"));
+        assertNull("Did not expect wildcard to match a host with the same suffix in a different label", table.remap("wwwstaging.example.com"));
+    }
+
+    @Test
+    public void testMostSpecificRuleWins() {
+        HostRemappingTable table = new HostRemappingTable(ImmutableMap.of(
+                "*.example.com", "10.0.0.1",
+                "*.staging.example.com", "10.0.0.2",
+                "www.staging.example.com", "10.0.0.3"));
+
+        assertEquals("Expected exact remapping to take precedence", "10.0.0.3", table.remap("www.staging.example.com"));
+        assertEquals("Expected longest wildcard suffix to take precedence", "10.0.0.2", table.remap("api.staging.example.com"));
+        assertEquals("10.0.0.1", table.remap("staging.example.com"));
+        assertEquals("10.0.0.1", table.remap("www.example.com"));
+    }
+
+    @Test
+    public void testModificationsReturnNewTables() {
+        HostRemappingTable table = new HostRemappingTable(ImmutableMap.of("www.example.com", "localhost"));
+
+        HostRemappingTable added = table.withRemapping("*.example.com", "10.0.0.1");
+        assertNull("Expected original table to be unchanged", table.remap("api.example.com"));
+        assertEquals("10.0.0.1", added.remap("api.example.com"));
+        assertEquals(ImmutableList.of("www.example.com", "*.example.com"), ImmutableList.copyOf(added.getRemappings().keySet()));
+
+        HostRemappingTable removed = added.withoutRemapping("*.example.com");
+        assertNull(removed.remap("api.example.com"));
+        assertEquals("localhost", removed.remap("www.example.com"));
+
+        assertSame("Expected removing a nonexistent remapping to return the same table", removed, removed.withoutRemapping("nonexistent.example.com"));
+    }
+
+    @Test
+    public void testOriginalHostnames() {
+        HostRemappingTable table = new HostRemappingTable(ImmutableMap.of(
+                "www.example.com", "localhost",
+                "*.example.com", "localhost",
+                "www.other.com", "10.0.0.1"));
+
+        assertEquals(ImmutableList.of("www.example.com", "*.example.com"), ImmutableList.copyOf(table.getOriginalHostnames("localhost")));
+        assertTrue(table.getOriginalHostnames("unmapped").isEmpty());
+    }
+
+    @Test
+    public void testConcurrentRemappingsAreNotLost() throws InterruptedException {
+        final AbstractHostNameRemapper remapper = new AbstractHostNameRemapper() {
+            @Override
+            public Collection<InetAddress> resolveRemapped(String remappedHost) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public void clearDNSCache() {
+            }
+
+            @Override
+            public void setPositiveDNSCacheTimeout(int timeout, TimeUnit timeUnit) {
+            }
+
+            @Override
+            public void setNegativeDNSCacheTimeout(int timeout, TimeUnit timeUnit) {
+            }
+        };
+
+        final int threads = 4;
+        final int remappingsPerThread = 250;
+        final CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            final int thread = i;
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    for (int j = 0; j < remappingsPerThread; j++) {
+                        remapper.remapHost("host-" + thread + "-" + j + ".example.com", "localhost");
+                    }
+                }
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertTrue("Timed out waiting for remappings", executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals("Expected all concurrent remappings to be applied", threads * remappingsPerThread, remapper.getHostRemappings().size());
+        assertEquals("localhost", remapper.applyRemapping("host-3-249.example.com"));
+    }
+}
@@ -0,0 +1,95 @@
+package net.lightbody.bmp.proxy.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testBucketsCoverValues() {
+        for (long micros : new long[]{0, 1, 31, 32, 33, 63, 64, 65, 1000, 123456, 1L << 37, (1L << 38) - 1}) {
+            int bucketIndex = LatencyHistogram.bucketIndex(micros);
+            long highestEquivalentValue = LatencyHistogram.highestEquivalentValue(bucketIndex);
+
+            assertThat("Expected bucket to include value " + micros, highestEquivalentValue, greaterThanOrEqualTo(micros));
+            assertTrue("Expected bucket for value " + micros + " to be accurate to within 1/32 of the value",
+                    highestEquivalentValue - micros <= Math.max(1, micros / 32));
+
+            if (bucketIndex > 0) {
+                assertTrue("Expected value " + micros + " to be above the previous bucket",
+                        LatencyHistogram.highestEquivalentValue(bucketIndex - 1) < micros);
+            }
+        }
+    }
+
+    @Test
+    public void testSummary() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i, TimeUnit.MILLISECONDS);
+        }
+
+        LatencySummary summary = histogram.getSummary();
+
+        assertEquals(100, summary.getCount());
+        assertEquals(5050.0, summary.getSumMs(), 0.001);
+        assertEquals(50.5, summary.getMeanMs(), 0.001);
+        assertEquals(100.0, summary.getMaxMs(), 0.001);
+        assertThat(summary.getP50Ms(), closeTo(50.0, 50.0 / 32));
+        assertThat(summary.getP90Ms(), closeTo(90.0, 90.0 / 32));
+        assertThat(summary.getP99Ms(), closeTo(99.0, 99.0 / 32));
+        assertEquals("Expected percentile to be limited to the maximum value", 100.0, summary.getP999Ms(), 0.001);
+    }
+
+    @Test
+    public void testEmptySummary() {
+        LatencySummary summary = new LatencyHistogram().getSummary();
+
+        assertEquals(0, summary.getCount());
+        assertEquals(0.0, summary.getMeanMs(), 0.0);
+        assertEquals(0.0, summary.getP99Ms(), 0.0);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        final int threads = 4;
+        final int recordingsPerThread = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    for (int j = 0; j < recordingsPerThread; j++) {
+                        histogram.record(j % 1000, TimeUnit.MICROSECONDS);
+                    }
+                }
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertTrue("Timed out waiting for recordings", executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals("Expected all concurrent recordings to be counted", threads * recordingsPerThread, histogram.getSummary().getCount());
+        assertEquals(threads * recordingsPerThread, histogram.getCount());
+    }
+}
@@ -0,0 +1,186 @@
+package net.lightbody.bmp.util.decoder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.lightbody.bmp.exception.DecompressionException;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ContentDecoderRegistryTest {
+    private static final byte[] ORIGINAL = buildOriginalContent();
+
+    @Test
+    public void testDecodeGzipInChunks() throws IOException {
+        ContentDecompressor decompressor = new ContentDecoderRegistry().newDecompressor("gzip");
+        assertNotNull("Expected gzip to be supported", decompressor);
+
+        assertArrayEquals("Expected decompressed gzip content to match original content", ORIGINAL, decompressInChunks(decompressor, gzip(ORIGINAL), 100));
+    }
+
+    @Test
+    public void testDecodeZlibWrappedAndRawDeflate() throws IOException {
+        ContentDecoderRegistry registry = new ContentDecoderRegistry();
+
+        assertArrayEquals("Expected decompressed zlib-wrapped deflate content to match original content",
+                ORIGINAL, decompressInChunks(registry.newDecompressor("deflate"), deflate(ORIGINAL, false), 100));
+
+        assertArrayEquals("Expected decompressed raw deflate content to match original content",
+                ORIGINAL, decompressInChunks(registry.newDecompressor("Deflate"), deflate(ORIGINAL, true), 100));
+    }
+
+    @Test
+    public void testDecodeMultipleCodingsInReverseOrder() throws IOException {
+        // deflate was applied first, then gzip
+        byte[] encoded = gzip(deflate(ORIGINAL, false));
+
+        ContentDecompressor decompressor = new ContentDecoderRegistry().newDecompressor("deflate, gzip");
+        assertNotNull("Expected deflate and gzip to be supported", decompressor);
+
+        assertArrayEquals("Expected content with multiple codings to be decompressed", ORIGINAL, decompressInChunks(decompressor, encoded, 37));
+    }
+
+    @Test
+    public void testUnsupportedCodingReturnsNoDecoder() {
+        ContentDecoderRegistry registry = new ContentDecoderRegistry();
+
+        assertFalse("Expected br not to be supported by default", registry.isSupported("br"));
+        assertFalse("Expected gzip followed by br not to be supported by default", registry.isSupported("gzip, br"));
+        assertNull("Expected no decoder for br", registry.newDecoder("br"));
+        assertNull("Expected no decoder for gzip followed by br", registry.newDecoder("gzip, br"));
+
+        assertTrue("Expected the identity coding to be supported", registry.isSupported("identity"));
+        assertNull("Expected no decoder for the identity coding", registry.newDecoder("identity"));
+    }
+
+    @Test
+    public void testRegisteredDecoderIsUsed() {
+        ContentDecoderRegistry registry = new ContentDecoderRegistry();
+        registry.register("br", new ContentDecoderFactory() {
+            @Override
+            public ContentDecoder newDecoder() {
+                return new UpperCaseDecoder();
+            }
+        });
+
+        assertTrue("Expected br to be supported after registering a decoder", registry.isSupported("BR"));
+
+        ContentDecompressor decompressor = registry.newDecompressor("br");
+        decompressor.decompress(Unpooled.copiedBuffer("abc", StandardCharsets.UTF_8));
+
+        assertEquals("Expected registered decoder to decode content", "ABC", new String(decompressor.finish(), StandardCharsets.UTF_8));
+
+        registry.unregister("br");
+        assertFalse("Expected br not to be supported after unregistering its decoder", registry.isSupported("br"));
+    }
+
+    @Test
+    public void testDecompressedSizeIsLimited() throws IOException {
+        ContentDecoderRegistry registry = new ContentDecoderRegistry();
+        registry.setMaxDecodedBytes(ORIGINAL.length - 1);
+
+        try {
+            decompressInChunks(registry.newDecompressor("gzip"), gzip(ORIGINAL), 100);
+            fail("Expected decompression to fail when decompressed content exceeds the maximum size");
+        } catch (DecompressionException e) {
+        }
+
+        registry.setMaxDecodedBytes(ORIGINAL.length);
+
+        assertArrayEquals("Expected content at the maximum size to be decompressed", ORIGINAL, decompressInChunks(registry.newDecompressor("gzip"), gzip(ORIGINAL), 100));
+    }
+
+    @Test
+    public void testCorruptContentFailsToDecompress() throws IOException {
+        byte[] corrupt = gzip(ORIGINAL);
+        Arrays.fill(corrupt, 10, corrupt.length, (byte) 0x7F);
+
+        try {
+            decompressInChunks(new ContentDecoderRegistry().newDecompressor("gzip"), corrupt, 100);
+            fail("Expected decompression of corrupt content to fail");
+        } catch (DecompressionException e) {
+        }
+    }
+
+    @Test
+    public void testDecodeDoesNotModifyOrReleaseInput() throws IOException {
+        ByteBuf encoded = Unpooled.wrappedBuffer(gzip(ORIGINAL));
+
+        ContentDecompressor decompressor = new ContentDecoderRegistry().newDecompressor("gzip");
+        decompressor.decompress(encoded);
+
+        assertEquals("Expected decoder not to modify the reader index of the encoded content", 0, encoded.readerIndex());
+        assertEquals("Expected decoder not to release the encoded content", 1, encoded.refCnt());
+
+        assertArrayEquals("Expected decompressed content to match original content", ORIGINAL, decompressor.finish());
+
+        encoded.release();
+    }
+
+    private static byte[] decompressInChunks(ContentDecompressor decompressor, byte[] encoded, int chunkSize) {
+        for (int i = 0; i < encoded.length; i += chunkSize) {
+            ByteBuf chunk = Unpooled.wrappedBuffer(encoded, i, Math.min(chunkSize, encoded.length - i));
+            decompressor.decompress(chunk);
+            chunk.release();
+        }
+
+        return decompressor.finish();
+    }
+
+    private static byte[] gzip(byte[] contents) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(contents);
+        }
+
+        return compressed.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] contents, boolean raw) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(compressed, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+            deflate.write(contents);
+        }
+
+        return compressed.toByteArray();
+    }
+
+    private static byte[] buildOriginalContent() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("line ").append(i).append(": the quick brown fox jumps over the lazy dog\n");
+        }
+
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class UpperCaseDecoder implements ContentDecoder {
+        @Override
+        public ByteBuf decode(ByteBuf encoded) {
+            return Unpooled.copiedBuffer(encoded.toString(StandardCharsets.UTF_8).toUpperCase(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public ByteBuf finish() {
+            return Unpooled.EMPTY_BUFFER;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
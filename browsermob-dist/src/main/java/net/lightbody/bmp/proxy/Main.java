@@ -75,6 +75,9 @@ public class Main {
             server.join();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+        } finally {
+            // stop any proxies that are still running and release their shared thread pools
+            injector.getInstance(ProxyManager.class).stop();
         }
     }
 
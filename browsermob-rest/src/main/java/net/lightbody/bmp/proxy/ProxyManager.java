@@ -10,12 +10,24 @@ import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import net.lightbody.bmp.BrowserMobProxy;
 import net.lightbody.bmp.BrowserMobProxyServer;
+import net.lightbody.bmp.ProxyServerGroup;
 import net.lightbody.bmp.exception.ProxyExistsException;
 import net.lightbody.bmp.exception.ProxyPortsExhaustedException;
+import net.lightbody.bmp.mitm.FileImpersonatedCertificateStore;
+import net.lightbody.bmp.mitm.ImpersonatedCertificateStore;
 import net.lightbody.bmp.proxy.auth.AuthType;
+import net.lightbody.bmp.proxy.metrics.ProxyMetricsMXBeanAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PreDestroy;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.lang.ref.WeakReference;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
@@ -43,6 +55,17 @@ public class ProxyManager {
     private final Cache<Integer, LegacyProxyServer> proxyCache;
     private final ConcurrentMap<Integer, LegacyProxyServer> proxies;
 
+    /**
+     * When not null, all LittleProxy-based proxies created by this ProxyManager will share this group's thread pools and
+     * certificate impersonation caches.
+     */
+    private final ProxyServerGroup proxyServerGroup;
+
+    /**
+     * Persistent store of impersonated certificates shared by all proxies, or null if certificates are not persisted.
+     */
+    private final ImpersonatedCertificateStore impersonatedCertificateStore;
+
     /**
      * Interval at which expired proxy checks will actively clean up expired proxies. Proxies may still be cleaned up when accessing the
      * proxies map.
@@ -92,9 +115,32 @@ public class ProxyManager {
         }
     }
 
+    public ProxyManager(Provider<LegacyProxyServer> proxyServerProvider, Integer minPort, Integer maxPort, Integer ttl) {
+        this(proxyServerProvider, minPort, maxPort, ttl, false);
+    }
+
+    public ProxyManager(Provider<LegacyProxyServer> proxyServerProvider, Integer minPort, Integer maxPort, Integer ttl, Boolean shareProxyResources) {
+        this(proxyServerProvider, minPort, maxPort, ttl, shareProxyResources, "");
+    }
+
     @Inject
-    public ProxyManager(Provider<LegacyProxyServer> proxyServerProvider, @Named("minPort") Integer minPort, @Named("maxPort") Integer maxPort, final @Named("ttl") Integer ttl) {
+    public ProxyManager(Provider<LegacyProxyServer> proxyServerProvider, @Named("minPort") Integer minPort, @Named("maxPort") Integer maxPort, final @Named("ttl") Integer ttl,
+                        @Named("shareProxyResources") Boolean shareProxyResources, @Named("certificateStoreDir") String certificateStoreDir) {
         this.proxyServerProvider = proxyServerProvider;
+        this.proxyServerGroup = shareProxyResources ? new ProxyServerGroup() : null;
+
+        if (certificateStoreDir != null && !certificateStoreDir.isEmpty()) {
+            LOG.info("Storing impersonated certificates in {}", certificateStoreDir);
+
+            this.impersonatedCertificateStore = new FileImpersonatedCertificateStore(new File(certificateStoreDir));
+
+            if (proxyServerGroup != null) {
+                proxyServerGroup.setImpersonatedCertificateStore(impersonatedCertificateStore);
+            }
+        } else {
+            this.impersonatedCertificateStore = null;
+        }
+
         this.minPort = minPort;
         this.maxPort = maxPort;
         this.lastPort = maxPort;
@@ -106,6 +152,7 @@ public class ProxyManager {
                         LegacyProxyServer proxy = removal.getValue();
                         if (proxy != null) {
                             LOG.info("Expiring ProxyServer on port {} after {} seconds without activity", proxy.getPort(), ttl);
+                            unregisterMetricsMBean(removal.getKey());
                             proxy.stop();
                         }
                     } catch (Exception ex) {
@@ -151,6 +198,22 @@ public class ProxyManager {
             }
         }
 
+        if (impersonatedCertificateStore != null) {
+            if (proxy instanceof BrowserMobProxyServer) {
+                ((BrowserMobProxyServer) proxy).setImpersonatedCertificateStore(impersonatedCertificateStore);
+            }
+        }
+
+        if (proxyServerGroup != null) {
+            if (proxy instanceof BrowserMobProxyServer) {
+                BrowserMobProxyServer browserMobProxyServer = (BrowserMobProxyServer) proxy;
+                browserMobProxyServer.setServerGroup(proxyServerGroup);
+                browserMobProxyServer.setMitmManager(proxyServerGroup.getMitmManager(useEcc, trustAllServers));
+            } else {
+                LOG.warn("Cannot share thread pools with legacy ProxyServer implementation. Proxy will use its own thread pools.");
+            }
+        }
+
         if (options != null) {
             // this is a short-term work-around for Proxy Auth in the REST API until the upcoming REST API refactor
             String proxyUsername = options.remove("proxyUsername");
@@ -252,6 +315,8 @@ public class ProxyManager {
                 proxies.put(realPort, proxy);
             }
 
+            registerMetricsMBean(proxy);
+
             return proxy;
         } catch (Exception ex) {
             if (port != 0) {
@@ -266,6 +331,41 @@ public class ProxyManager {
         }
     }
 
+    /**
+     * Registers a JMX MBean exposing the proxy's metrics, if the proxy records metrics. Replaces any MBean left over from a
+     * previous proxy on the same port.
+     */
+    private static void registerMetricsMBean(LegacyProxyServer proxy) {
+        if (!(proxy instanceof BrowserMobProxyServer)) {
+            return;
+        }
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = ProxyMetricsMXBeanAdapter.getObjectName(proxy.getPort());
+        ProxyMetricsMXBeanAdapter mBean = new ProxyMetricsMXBeanAdapter((BrowserMobProxyServer) proxy);
+
+        try {
+            try {
+                mBeanServer.registerMBean(mBean, objectName);
+            } catch (InstanceAlreadyExistsException e) {
+                mBeanServer.unregisterMBean(objectName);
+                mBeanServer.registerMBean(mBean, objectName);
+            }
+        } catch (JMException e) {
+            LOG.warn("Unable to register metrics MBean for proxy on port {}", proxy.getPort(), e);
+        }
+    }
+
+    private static void unregisterMetricsMBean(int port) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(ProxyMetricsMXBeanAdapter.getObjectName(port));
+        } catch (InstanceNotFoundException e) {
+            // the proxy does not record metrics, or the MBean was already unregistered
+        } catch (JMException e) {
+            LOG.warn("Unable to unregister metrics MBean for proxy on port {}", port, e);
+        }
+    }
+
     private synchronized int nextPort() {
         return lastPort < maxPort ? ++lastPort : (lastPort = minPort);
     }
@@ -280,10 +380,30 @@ public class ProxyManager {
             return;
         }
 
+        unregisterMetricsMBean(port);
+
         // temporary: to avoid stopping an already-stopped BrowserMobProxyServer instance, see if it's stopped before re-stopping it
         if (proxy instanceof ProxyServer || !((BrowserMobProxyServer) proxy).isStopped()) {
             proxy.stop();
         }
     }
 
+    /**
+     * Stops every proxy created by this ProxyManager and releases the thread pools shared by those proxies. The ProxyManager
+     * cannot create new proxies after it has been stopped.
+     */
+    @PreDestroy
+    public void stop() {
+        for (Integer port : proxies.keySet()) {
+            try {
+                delete(port);
+            } catch (RuntimeException e) {
+                LOG.warn("Error while stopping proxy on port {}", port, e);
+            }
+        }
+
+        if (proxyServerGroup != null) {
+            proxyServerGroup.shutdown();
+        }
+    }
 }
@@ -0,0 +1,48 @@
+package net.lightbody.bmp.proxy.bricks;
+
+import com.google.inject.Inject;
+import com.google.sitebricks.At;
+import com.google.sitebricks.client.transport.Text;
+import com.google.sitebricks.headless.Reply;
+import com.google.sitebricks.headless.Service;
+import com.google.sitebricks.http.Get;
+import net.lightbody.bmp.BrowserMobProxyServer;
+import net.lightbody.bmp.proxy.LegacyProxyServer;
+import net.lightbody.bmp.proxy.ProxyManager;
+import net.lightbody.bmp.proxy.metrics.PrometheusTextWriter;
+import net.lightbody.bmp.proxy.metrics.ProxyMetricsSnapshot;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Serves the metrics of all proxies in the Prometheus text exposition format, for scraping by Prometheus. Metrics for an
+ * individual proxy are available as JSON at <code>GET /proxy/:port/metrics</code>.
+ */
+@At("/metrics")
+@Service
+public class MetricsResource {
+    private final ProxyManager proxyManager;
+
+    @Inject
+    public MetricsResource(ProxyManager proxyManager) {
+        this.proxyManager = proxyManager;
+    }
+
+    @Get
+    public Reply<?> getMetrics() throws IOException {
+        Collection<ProxyMetricsSnapshot> snapshots = new ArrayList<ProxyMetricsSnapshot>();
+        for (LegacyProxyServer proxy : proxyManager.get()) {
+            if (proxy instanceof BrowserMobProxyServer) {
+                snapshots.add(((BrowserMobProxyServer) proxy).getMetricsSnapshot());
+            }
+        }
+
+        StringWriter metrics = new StringWriter();
+        new PrometheusTextWriter(metrics).write(snapshots);
+
+        return Reply.with(metrics.toString()).as(Text.class).type(PrometheusTextWriter.CONTENT_TYPE);
+    }
+}
@@ -130,7 +130,7 @@ public class ProxyResource {
 
         Har har = proxy.getHar();
 
-        return Reply.with(har).as(Json.class);
+        return Reply.with(har).as(StreamingHarTransport.class);
     }
 
     @Put
@@ -141,6 +141,12 @@ public class ProxyResource {
             return Reply.saying().notFound();
         }
 
+        // compact capture must be configured before the new HAR is created
+        String compact = request.param("compact");
+        if (proxy instanceof BrowserMobProxyServer) {
+            ((BrowserMobProxyServer) proxy).setCompactHarCaptureEnabled(Boolean.parseBoolean(compact));
+        }
+
         String initialPageRef = request.param("initialPageRef");
         String initialPageTitle = request.param("initialPageTitle");
         Har oldHar = proxy.newHar(initialPageRef, initialPageTitle);
@@ -601,6 +607,17 @@ public class ProxyResource {
         return Reply.saying().ok();
     }
 
+    @Get
+    @At("/:port/metrics")
+    public Reply<?> getMetrics(@Named("port") int port) {
+        LegacyProxyServer proxy = proxyManager.get(port);
+        if (!(proxy instanceof BrowserMobProxyServer)) {
+            return Reply.saying().notFound();
+        }
+
+        return Reply.with(((BrowserMobProxyServer) proxy).getMetricsSnapshot()).as(Json.class);
+    }
+
     @Delete
     @At("/:port/dns/cache")
     public Reply<?> clearDnsCache(@Named("port") int port) {
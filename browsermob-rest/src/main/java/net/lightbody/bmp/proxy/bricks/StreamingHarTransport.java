@@ -0,0 +1,56 @@
+package net.lightbody.bmp.proxy.bricks;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import com.google.inject.TypeLiteral;
+import com.google.sitebricks.client.Transport;
+import net.lightbody.bmp.core.har.Har;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A sitebricks {@link Transport} that writes a {@link Har} directly to the response stream using {@link Har#writeTo(JsonGenerator)},
+ * so that pages and entries are serialized one at a time instead of serializing the entire HAR in one call. Since no
+ * Content-Length is known in advance, the servlet container will send the response using chunked encoding. Other objects are
+ * serialized by the ObjectMapper. In both cases the response stream is flushed but not closed, since the servlet container
+ * owns it.
+ */
+public class StreamingHarTransport implements Transport {
+    private final ObjectMapper objectMapper;
+
+    @Inject
+    public StreamingHarTransport(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public <T> void out(OutputStream out, Class<T> type, T data) throws IOException {
+        // the generator is not closed, since the servlet container owns the response stream
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+
+        if (data instanceof Har) {
+            ((Har) data).writeTo(generator);
+        } else {
+            generator.writeObject(data);
+            generator.flush();
+        }
+    }
+
+    @Override
+    public <T> T in(InputStream in, Class<T> type) throws IOException {
+        throw new UnsupportedOperationException("StreamingHarTransport can only be used to write HARs");
+    }
+
+    @Override
+    public <T> T in(InputStream in, TypeLiteral<T> type) throws IOException {
+        throw new UnsupportedOperationException("StreamingHarTransport can only be used to write HARs");
+    }
+
+    @Override
+    public String contentType() {
+        return "application/json";
+    }
+}
@@ -55,6 +55,18 @@ public class ConfigModule implements Module {
                 .ofType(Boolean.class)
                 .defaultsTo(true);
 
+        ArgumentAcceptingOptionSpec<Boolean> shareProxyResources =
+                parser.accepts("share-proxy-resources", "Share one set of event loop threads and impersonated certificate caches among all proxies")
+                .withOptionalArg()
+                .ofType(Boolean.class)
+                .defaultsTo(false);
+
+        ArgumentAcceptingOptionSpec<String> certificateStoreDir =
+                parser.accepts("certificate-store-dir", "Directory in which to store impersonated certificates, so they can be reused after the proxy restarts")
+                .withOptionalArg()
+                .ofType(String.class)
+                .defaultsTo("");
+
         parser.acceptsAll(Arrays.asList("help", "?"), "This help text");
 
         OptionSet options = parser.parse(args);
@@ -103,6 +115,8 @@ public class ConfigModule implements Module {
         binder.bind(Key.get(Integer.class, new NamedImpl("minPort"))).toInstance(minPort);
         binder.bind(Key.get(Integer.class, new NamedImpl("maxPort"))).toInstance(maxPort);                 
         binder.bind(Key.get(Integer.class, new NamedImpl("ttl"))).toInstance(ttlSpec.value(options));
+        binder.bind(Key.get(Boolean.class, new NamedImpl("shareProxyResources"))).toInstance(shareProxyResources.value(options));
+        binder.bind(Key.get(String.class, new NamedImpl("certificateStoreDir"))).toInstance(certificateStoreDir.value(options));
 
         binder.bind(LegacyProxyServer.class).toProvider(LegacyProxyServerProvider.class);
 
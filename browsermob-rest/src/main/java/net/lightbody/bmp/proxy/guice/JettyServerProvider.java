@@ -7,16 +7,19 @@ import com.google.inject.servlet.GuiceFilter;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import net.lightbody.bmp.proxy.ProxyManager;
+import net.lightbody.bmp.proxy.servlet.AsyncWaitServlet;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.DefaultServlet;
 import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
 
 public class JettyServerProvider implements Provider<Server> {
 
     private Server server;
 
     @Inject
-    public JettyServerProvider(@Named("port") int port, @Named("address") String address) throws UnknownHostException {
+    public JettyServerProvider(@Named("port") int port, @Named("address") String address, ProxyManager proxyManager) throws UnknownHostException {
         server = new Server(new InetSocketAddress(InetAddress.getByName(address), port));
 
         ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
@@ -25,6 +28,10 @@ public class JettyServerProvider implements Provider<Server> {
         context.addFilter(GuiceFilter.class, "/*", 0);
         context.addServlet(DefaultServlet.class, "/");
 
+        // sitebricks passes requests it does not handle down the filter chain, so the long-poll wait servlet receives the
+        // /proxy requests that are not handled by ProxyResource
+        context.addServlet(new ServletHolder(new AsyncWaitServlet(proxyManager)), "/proxy/*");
+
         server.setHandler(context);
     }
 
@@ -0,0 +1,133 @@
+package net.lightbody.bmp.proxy.servlet;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import net.lightbody.bmp.BrowserMobProxyServer;
+import net.lightbody.bmp.proxy.LegacyProxyServer;
+import net.lightbody.bmp.proxy.ProxyManager;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Long-poll version of <code>PUT /proxy/:port/wait</code>, mapped to <code>PUT /proxy/:port/wait/async</code>. Rather than blocking
+ * a Jetty thread until network traffic stops, the request is suspended using a Jetty {@link Continuation}, and is resumed when the
+ * proxy's quiescence future completes, so waiting clients do not occupy request threads. The quiescence listener only records the
+ * result and resumes the continuation, since it runs on the activity monitor's shared thread; the response is written when Jetty
+ * dispatches the resumed request to one of its own threads. The response body is
+ * <code>{"quiescent": true}</code> if network traffic stopped, or <code>{"quiescent": false}</code> if the timeout elapsed first.
+ * <p/>
+ * Only proxies based on {@link BrowserMobProxyServer} can wait asynchronously. Requests for other proxies, such as the legacy
+ * ProxyServer, are answered with 501; use the synchronous <code>PUT /proxy/:port/wait</code> for those proxies instead.
+ * <p/>
+ * Requests that are not for an asynchronous wait are answered with 404, since sitebricks has already handled all other
+ * /proxy requests.
+ */
+public class AsyncWaitServlet extends HttpServlet {
+    private static final Logger log = LoggerFactory.getLogger(AsyncWaitServlet.class);
+
+    /**
+     * Path of the asynchronous wait, relative to the servlet's /proxy mapping.
+     */
+    private static final Pattern ASYNC_WAIT_PATH = Pattern.compile("/(\\d+)/wait/async/?");
+
+    /**
+     * Request attribute containing the result of the wait, set before a suspended request is resumed.
+     */
+    private static final String QUIESCENT_ATTRIBUTE = AsyncWaitServlet.class.getName() + ".quiescent";
+
+    private final ProxyManager proxyManager;
+
+    public AsyncWaitServlet(ProxyManager proxyManager) {
+        this.proxyManager = proxyManager;
+    }
+
+    @Override
+    protected void doPut(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        // a resumed request already has its result
+        Object quiescent = request.getAttribute(QUIESCENT_ATTRIBUTE);
+        if (quiescent != null) {
+            writeResult(response, (Boolean) quiescent);
+            return;
+        }
+
+        String pathInfo = request.getPathInfo();
+        Matcher matcher = ASYNC_WAIT_PATH.matcher(pathInfo == null ? "" : pathInfo);
+        if (!matcher.matches()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        LegacyProxyServer proxy = proxyManager.get(Integer.parseInt(matcher.group(1)));
+        if (proxy == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        long quietPeriodInMs;
+        long timeoutInMs;
+        try {
+            quietPeriodInMs = Long.parseLong(request.getParameter("quietPeriodInMs"));
+            timeoutInMs = Long.parseLong(request.getParameter("timeoutInMs"));
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "quietPeriodInMs and timeoutInMs must be specified");
+            return;
+        }
+
+        // only proxies based on BrowserMobProxyServer can wait asynchronously
+        if (!(proxy instanceof BrowserMobProxyServer)) {
+            response.sendError(HttpServletResponse.SC_NOT_IMPLEMENTED, "Asynchronous wait is not supported by this proxy; use PUT /proxy/:port/wait");
+            return;
+        }
+
+        final ListenableFuture<Boolean> quiescence = ((BrowserMobProxyServer) proxy).waitForQuiescenceAsync(quietPeriodInMs, timeoutInMs, TimeUnit.MILLISECONDS);
+        if (quiescence.isDone()) {
+            writeResult(response, getResult(quiescence));
+            return;
+        }
+
+        final Continuation continuation = ContinuationSupport.getContinuation(request);
+
+        // the quiescence future always completes by the timeout, so the continuation does not need its own
+        continuation.setTimeout(0);
+        continuation.suspend();
+
+        // resuming does not block, so the listener can safely run on the activity monitor's thread
+        quiescence.addListener(new Runnable() {
+            @Override
+            public void run() {
+                continuation.setAttribute(QUIESCENT_ATTRIBUTE, getResult(quiescence));
+                continuation.resume();
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private static boolean getResult(ListenableFuture<Boolean> quiescence) {
+        try {
+            return Uninterruptibles.getUninterruptibly(quiescence);
+        } catch (ExecutionException e) {
+            log.warn("Error waiting for quiescence", e.getCause());
+
+            return false;
+        }
+    }
+
+    private static void writeResult(HttpServletResponse response, boolean quiescent) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("application/json");
+        response.getWriter().write("{\"quiescent\": " + quiescent + "}");
+        response.flushBuffer();
+    }
+}
@@ -0,0 +1,145 @@
+package net.lightbody.bmp.proxy;
+
+import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.SettableFuture;
+import net.lightbody.bmp.BrowserMobProxyServerLegacyAdapter;
+import net.lightbody.bmp.proxy.servlet.AsyncWaitServlet;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AsyncWaitServletTest {
+    private static final int PROXY_PORT = 8081;
+
+    private Server server;
+
+    private ProxyManager proxyManager;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        proxyManager = mock(ProxyManager.class);
+
+        server = new Server(0);
+        ServletContextHandler context = new ServletContextHandler();
+        context.setContextPath("/");
+        context.addServlet(new ServletHolder(new AsyncWaitServlet(proxyManager)), "/proxy/*");
+        server.setHandler(context);
+        server.start();
+
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testResponseSentWhenQuiescenceFutureCompletes() throws Exception {
+        SettableFuture<Boolean> quiescence = SettableFuture.create();
+
+        BrowserMobProxyServerLegacyAdapter proxy = mock(BrowserMobProxyServerLegacyAdapter.class);
+        when(proxy.waitForQuiescenceAsync(500, 10000, TimeUnit.MILLISECONDS)).thenReturn(quiescence);
+        when(proxyManager.get(PROXY_PORT)).thenReturn(proxy);
+
+        Future<String> response = executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                HttpURLConnection connection = put("/proxy/" + PROXY_PORT + "/wait/async?quietPeriodInMs=500&timeoutInMs=10000");
+                assertEquals(200, connection.getResponseCode());
+
+                return CharStreams.toString(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+            }
+        });
+
+        try {
+            response.get(500, TimeUnit.MILLISECONDS);
+            fail("Did not expect a response before the proxy was quiescent");
+        } catch (TimeoutException e) {
+            // expected
+        }
+
+        quiescence.set(true);
+
+        assertEquals("{\"quiescent\": true}", response.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCompletedQuiescenceFutureRespondsImmediately() throws IOException {
+        BrowserMobProxyServerLegacyAdapter proxy = mock(BrowserMobProxyServerLegacyAdapter.class);
+        SettableFuture<Boolean> quiescence = SettableFuture.create();
+        quiescence.set(false);
+        when(proxy.waitForQuiescenceAsync(500, 1000, TimeUnit.MILLISECONDS)).thenReturn(quiescence);
+        when(proxyManager.get(PROXY_PORT)).thenReturn(proxy);
+
+        HttpURLConnection connection = put("/proxy/" + PROXY_PORT + "/wait/async?quietPeriodInMs=500&timeoutInMs=1000");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("{\"quiescent\": false}", CharStreams.toString(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testUnknownProxyReturnsNotFound() throws IOException {
+        HttpURLConnection connection = put("/proxy/" + PROXY_PORT + "/wait/async?quietPeriodInMs=500&timeoutInMs=1000");
+        assertEquals(404, connection.getResponseCode());
+    }
+
+    @Test
+    public void testUnsupportedProxyReturnsNotImplemented() throws IOException {
+        LegacyProxyServer proxy = mock(LegacyProxyServer.class);
+        when(proxyManager.get(PROXY_PORT)).thenReturn(proxy);
+
+        HttpURLConnection connection = put("/proxy/" + PROXY_PORT + "/wait/async?quietPeriodInMs=500&timeoutInMs=1000");
+        assertEquals(501, connection.getResponseCode());
+
+        verify(proxy, never()).waitForNetworkTrafficToStop(anyLong(), anyLong());
+    }
+
+    @Test
+    public void testMissingParametersReturnBadRequest() throws IOException {
+        when(proxyManager.get(PROXY_PORT)).thenReturn(mock(BrowserMobProxyServerLegacyAdapter.class));
+
+        HttpURLConnection connection = put("/proxy/" + PROXY_PORT + "/wait/async?quietPeriodInMs=500");
+        assertEquals(400, connection.getResponseCode());
+    }
+
+    private HttpURLConnection put(String path) throws IOException {
+        URL url = new URL("http://localhost:" + server.getConnectors()[0].getLocalPort() + path);
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("PUT");
+        connection.setReadTimeout(10000);
+
+        return connection;
+    }
+}
@@ -0,0 +1,37 @@
+package net.lightbody.bmp.proxy;
+
+import net.lightbody.bmp.BrowserMobProxyServer;
+import net.lightbody.bmp.proxy.guice.LegacyProxyServerProvider;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProxyManagerStopTest {
+    @Test
+    public void testStopStopsProxiesAndShutsDownSharedResources() {
+        int minPort = new Random().nextInt(50000) + 10000;
+
+        ProxyManager proxyManager = new ProxyManager(new LegacyProxyServerProvider(),
+                minPort,
+                minPort + 100,
+                0,
+                true);
+
+        LegacyProxyServer proxy = proxyManager.create();
+
+        proxyManager.stop();
+
+        assertTrue("Expected proxy to be stopped when the ProxyManager was stopped", ((BrowserMobProxyServer) proxy).isStopped());
+        assertTrue("Expected ProxyManager not to contain any proxies after it was stopped", proxyManager.get().isEmpty());
+
+        try {
+            proxyManager.create();
+            fail("Expected ProxyManager not to create proxies after its shared resources were shut down");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package net.lightbody.bmp.proxy;
+
+import net.lightbody.bmp.proxy.guice.LegacyProxyServerProvider;
+import net.lightbody.bmp.proxy.metrics.ProxyMetricsMXBeanAdapter;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProxyMetricsMBeanTest {
+    @Test
+    public void testMetricsMBeanRegisteredForProxyLifetime() throws Exception {
+        int minPort = new Random().nextInt(50000) + 10000;
+
+        ProxyManager proxyManager = new ProxyManager(new LegacyProxyServerProvider(),
+                minPort,
+                minPort + 100,
+                0);
+
+        LegacyProxyServer proxy = proxyManager.create();
+        int port = proxy.getPort();
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = ProxyMetricsMXBeanAdapter.getObjectName(port);
+
+        try {
+            assertTrue("Expected metrics MBean to be registered when the proxy was created", mBeanServer.isRegistered(objectName));
+            assertEquals(port, mBeanServer.getAttribute(objectName, "Port"));
+            assertEquals(0L, mBeanServer.getAttribute(objectName, "TotalRequests"));
+
+            CompositeData timeToFirstByte = (CompositeData) mBeanServer.getAttribute(objectName, "TimeToFirstByte");
+            assertEquals(0L, timeToFirstByte.get("count"));
+        } finally {
+            proxyManager.delete(port);
+        }
+
+        assertFalse("Expected metrics MBean to be unregistered when the proxy was deleted", mBeanServer.isRegistered(objectName));
+    }
+}
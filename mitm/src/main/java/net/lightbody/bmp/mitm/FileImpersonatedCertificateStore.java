@@ -0,0 +1,276 @@
+package net.lightbody.bmp.mitm;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import net.lightbody.bmp.mitm.exception.UncheckedIOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link ImpersonatedCertificateStore} that stores each impersonated certificate and its private key in a file. Files are
+ * kept in a subdirectory of the store directory named after the SHA-256 fingerprint of the CA root certificate that signed
+ * them, so certificates signed by different CAs never mix. Each file is named after a hash of the subject and subject
+ * alternative names in the {@link CertificateInfo} the certificate was generated from, so a certificate can be loaded without
+ * reading any other file.
+ * <p/>
+ * A stored certificate is only loaded if it remains valid for at least the minimum remaining validity period; otherwise the
+ * file is deleted and the certificate will be regenerated.
+ * <p/>
+ * <b>Note:</b> Private keys are stored unencrypted, and the files are readable only by their owner where the file system
+ * supports it. Anyone who can read the store and whose clients trust the CA can impersonate the stored hosts, so the store
+ * directory should be protected in the same way as the CA's private key.
+ */
+public class FileImpersonatedCertificateStore implements ImpersonatedCertificateStore {
+    private static final Logger log = LoggerFactory.getLogger(FileImpersonatedCertificateStore.class);
+
+    /**
+     * Default minimum length of time a stored certificate must remain valid to be loaded.
+     */
+    public static final long DEFAULT_MINIMUM_REMAINING_VALIDITY_MS = TimeUnit.MILLISECONDS.convert(1, TimeUnit.DAYS);
+
+    private static final String CERTIFICATE_FILE_EXTENSION = ".cert";
+
+    /**
+     * Version of the certificate file format, written at the start of each file.
+     */
+    private static final int FILE_FORMAT_VERSION = 1;
+
+    /**
+     * Maximum length of an encoded certificate or private key, used to reject corrupt files.
+     */
+    private static final int MAX_ENCODED_LENGTH = 1024 * 1024;
+
+    private final File storeDirectory;
+
+    private final long minimumRemainingValidityMs;
+
+    /**
+     * Creates a store in the specified directory that loads certificates that remain valid for at least one day.
+     *
+     * @param storeDirectory directory in which to store certificates; created if it does not exist
+     */
+    public FileImpersonatedCertificateStore(File storeDirectory) {
+        this(storeDirectory, DEFAULT_MINIMUM_REMAINING_VALIDITY_MS);
+    }
+
+    /**
+     * Creates a store in the specified directory.
+     *
+     * @param storeDirectory directory in which to store certificates; created if it does not exist
+     * @param minimumRemainingValidityMs minimum length of time a stored certificate must remain valid to be loaded
+     */
+    public FileImpersonatedCertificateStore(File storeDirectory, long minimumRemainingValidityMs) {
+        if (storeDirectory == null) {
+            throw new IllegalArgumentException("Certificate store directory cannot be null");
+        }
+
+        if (minimumRemainingValidityMs < 0) {
+            throw new IllegalArgumentException("Minimum remaining validity cannot be negative");
+        }
+
+        this.storeDirectory = storeDirectory;
+        this.minimumRemainingValidityMs = minimumRemainingValidityMs;
+    }
+
+    @Override
+    public CertificateAndKey load(X509Certificate caRootCertificate, CertificateInfo certificateInfo) {
+        File certificateFile = getCertificateFile(caRootCertificate, certificateInfo);
+
+        byte[] encodedCertificate;
+        byte[] encodedPrivateKey;
+        String keyAlgorithm;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(certificateFile)))) {
+            int version = in.readInt();
+            if (version != FILE_FORMAT_VERSION) {
+                log.warn("Ignoring impersonated certificate file {} with unsupported format version {}", certificateFile, version);
+
+                deleteCertificateFile(certificateFile);
+
+                return null;
+            }
+
+            keyAlgorithm = in.readUTF();
+            encodedCertificate = readBytes(in);
+            encodedPrivateKey = readBytes(in);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (EOFException e) {
+            log.warn("Ignoring corrupt or truncated impersonated certificate file {}", certificateFile);
+
+            deleteCertificateFile(certificateFile);
+
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read impersonated certificate file " + certificateFile, e);
+        }
+
+        X509Certificate certificate;
+        PrivateKey privateKey;
+        try {
+            certificate = (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(encodedCertificate));
+            privateKey = KeyFactory.getInstance(keyAlgorithm).generatePrivate(new PKCS8EncodedKeySpec(encodedPrivateKey));
+        } catch (GeneralSecurityException e) {
+            log.warn("Ignoring impersonated certificate file {} that could not be decoded", certificateFile, e);
+
+            deleteCertificateFile(certificateFile);
+
+            return null;
+        }
+
+        if (certificate.getNotAfter().getTime() - minimumRemainingValidityMs < System.currentTimeMillis()) {
+            log.debug("Impersonated certificate in {} expires at {}; certificate will be regenerated", certificateFile, certificate.getNotAfter());
+
+            deleteCertificateFile(certificateFile);
+
+            return null;
+        }
+
+        return new CertificateAndKey(certificate, privateKey);
+    }
+
+    @Override
+    public void save(X509Certificate caRootCertificate, CertificateInfo certificateInfo, CertificateAndKey impersonatedCertificateAndKey) {
+        File certificateFile = getCertificateFile(caRootCertificate, certificateInfo);
+        File caDirectory = certificateFile.getParentFile();
+
+        if (!caDirectory.isDirectory() && !caDirectory.mkdirs() && !caDirectory.isDirectory()) {
+            throw new UncheckedIOException(new IOException("Unable to create impersonated certificate directory " + caDirectory));
+        }
+
+        byte[] encodedCertificate;
+        try {
+            encodedCertificate = impersonatedCertificateAndKey.getCertificate().getEncoded();
+        } catch (CertificateEncodingException e) {
+            throw new IllegalArgumentException("Unable to encode impersonated certificate", e);
+        }
+
+        PrivateKey privateKey = impersonatedCertificateAndKey.getPrivateKey();
+
+        // write to a temporary file and move it into place, so a concurrent load never sees a partially-written file
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile("impersonated", ".tmp", caDirectory);
+            restrictToOwner(tempFile);
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(FILE_FORMAT_VERSION);
+                out.writeUTF(privateKey.getAlgorithm());
+                writeBytes(out, encodedCertificate);
+                writeBytes(out, privateKey.getEncoded());
+            }
+
+            try {
+                Files.move(tempFile.toPath(), certificateFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), certificateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+                log.warn("Unable to delete temporary impersonated certificate file {}", tempFile);
+            }
+
+            throw new UncheckedIOException("Unable to write impersonated certificate file " + certificateFile, e);
+        }
+    }
+
+    public File getStoreDirectory() {
+        return storeDirectory;
+    }
+
+    /**
+     * Returns the file in which the certificate generated from the specified certificate information, signed by the specified
+     * CA, is stored. The validity period is not part of the file name, since it is usually computed from the current time.
+     */
+    private File getCertificateFile(X509Certificate caRootCertificate, CertificateInfo certificateInfo) {
+        String caFingerprint;
+        try {
+            caFingerprint = Hashing.sha256().hashBytes(caRootCertificate.getEncoded()).toString();
+        } catch (CertificateEncodingException e) {
+            throw new IllegalArgumentException("Unable to encode CA root certificate", e);
+        }
+
+        Hasher certificateInfoHasher = Hashing.sha256().newHasher();
+        for (String subjectField : Arrays.asList(certificateInfo.getCommonName(), certificateInfo.getOrganization(),
+                certificateInfo.getOrganizationalUnit(), certificateInfo.getEmail(), certificateInfo.getLocality(),
+                certificateInfo.getState(), certificateInfo.getCountryCode())) {
+            putNullableString(certificateInfoHasher, subjectField);
+        }
+
+        certificateInfoHasher.putInt(certificateInfo.getSubjectAlternativeNames().size());
+        for (String subjectAlternativeName : certificateInfo.getSubjectAlternativeNames()) {
+            putNullableString(certificateInfoHasher, subjectAlternativeName.toLowerCase(Locale.US));
+        }
+
+        return new File(new File(storeDirectory, caFingerprint), certificateInfoHasher.hash().toString() + CERTIFICATE_FILE_EXTENSION);
+    }
+
+    /**
+     * Adds the string to the hasher, distinguishing null from the empty string and preventing adjacent strings from running together.
+     */
+    private static void putNullableString(Hasher hasher, String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length());
+            hasher.putString(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void deleteCertificateFile(File certificateFile) {
+        if (!certificateFile.delete() && certificateFile.exists()) {
+            log.warn("Unable to delete impersonated certificate file {}", certificateFile);
+        }
+    }
+
+    private static void restrictToOwner(File file) {
+        boolean restricted = file.setReadable(false, false) && file.setReadable(true, true)
+                && file.setWritable(false, false) && file.setWritable(true, true);
+
+        if (!restricted) {
+            log.debug("Unable to restrict access to impersonated certificate file {} to its owner", file);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_ENCODED_LENGTH) {
+            throw new EOFException("Invalid length: " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
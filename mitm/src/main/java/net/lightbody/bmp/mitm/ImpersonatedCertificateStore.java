@@ -0,0 +1,38 @@
+package net.lightbody.bmp.mitm;
+
+import java.security.cert.X509Certificate;
+
+/**
+ * A persistent store of impersonated server certificates and their private keys, which allows the
+ * {@link net.lightbody.bmp.mitm.manager.ImpersonatingMitmManager} to reuse certificates created by a previous proxy instance
+ * instead of generating and signing new ones. Certificates are stored separately for each CA root certificate, since a
+ * certificate signed by one CA cannot be presented on behalf of another.
+ * <p/>
+ * Certificates are keyed by the {@link CertificateInfo} they were generated from, so the store is consulted only after the
+ * {@link CertificateInfoGenerator} has run, and a stored certificate is reused only if the generator produces the same subject
+ * and subject alternative names. The validity period is not part of the key, since generators typically compute it from the
+ * current time; implementations should instead refuse to load certificates that are about to expire.
+ * <p/>
+ * Implementations must be thread-safe.
+ */
+public interface ImpersonatedCertificateStore {
+    /**
+     * Loads the impersonated certificate that was generated from the specified certificate information and signed by the
+     * specified CA.
+     *
+     * @param caRootCertificate CA root certificate that signed the impersonated certificate
+     * @param certificateInfo certificate information the impersonated certificate was generated from
+     * @return the stored certificate and private key, or null if no valid certificate is stored
+     */
+    CertificateAndKey load(X509Certificate caRootCertificate, CertificateInfo certificateInfo);
+
+    /**
+     * Stores an impersonated certificate that was generated from the specified certificate information and signed by the
+     * specified CA, replacing any existing certificate for the same certificate information.
+     *
+     * @param caRootCertificate CA root certificate that signed the impersonated certificate
+     * @param certificateInfo certificate information the impersonated certificate was generated from
+     * @param impersonatedCertificateAndKey the impersonated certificate and its private key
+     */
+    void save(X509Certificate caRootCertificate, CertificateInfo certificateInfo, CertificateAndKey impersonatedCertificateAndKey);
+}
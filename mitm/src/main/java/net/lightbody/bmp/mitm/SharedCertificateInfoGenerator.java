@@ -0,0 +1,21 @@
+package net.lightbody.bmp.mitm;
+
+import java.util.List;
+
+/**
+ * A {@link CertificateInfoGenerator} that can issue a single impersonated certificate for multiple hostnames, such as a wildcard
+ * certificate for all hosts in a domain. The {@link net.lightbody.bmp.mitm.manager.ImpersonatingMitmManager} asks the
+ * generator which hostnames the certificate for a requested host should cover, and shares a single impersonating SslContext
+ * among all hosts that map to the same hostnames.
+ */
+public interface SharedCertificateInfoGenerator extends CertificateInfoGenerator {
+    /**
+     * Returns the hostnames that the impersonated certificate for the specified hostname should cover. The first hostname
+     * identifies the certificate: all hostnames for which this method returns the same first hostname will share the same
+     * certificate, so the returned hostnames must cover every such hostname.
+     *
+     * @param hostname the hostname being impersonated
+     * @return hostnames to include in the impersonated certificate, which may include wildcards
+     */
+    List<String> getCertificateHostnames(String hostname);
+}
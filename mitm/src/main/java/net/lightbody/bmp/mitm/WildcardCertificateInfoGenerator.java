@@ -0,0 +1,60 @@
+package net.lightbody.bmp.mitm;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.InetAddresses;
+import com.google.common.net.InternetDomainName;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A {@link SharedCertificateInfoGenerator} that impersonates hosts using wildcard certificates for their parent domains, so that
+ * a single certificate can be used for all hosts in a domain (for example, img1.cdn.example.com and img2.cdn.example.com both use
+ * a certificate for *.cdn.example.com). The certificate also includes the parent domain itself.
+ * <p/>
+ * A wildcard only matches a single DNS label, and clients reject wildcards directly under a public suffix (e.g. *.co.uk), so
+ * hosts whose parent domain is a public suffix, IP addresses, and hosts without a parent domain are impersonated with a
+ * certificate for the host alone.
+ */
+public class WildcardCertificateInfoGenerator extends HostnameCertificateInfoGenerator implements SharedCertificateInfoGenerator {
+    @Override
+    public List<String> getCertificateHostnames(String hostname) {
+        String parentDomain = getWildcardParentDomain(hostname);
+        if (parentDomain == null) {
+            return ImmutableList.of(hostname);
+        }
+
+        return ImmutableList.of("*." + parentDomain, parentDomain);
+    }
+
+    /**
+     * Returns the domain whose wildcard certificate can be used for the specified hostname, or null if the hostname cannot be
+     * impersonated using a wildcard certificate.
+     */
+    private static String getWildcardParentDomain(String hostname) {
+        if (hostname == null || InetAddresses.isInetAddress(hostname)) {
+            return null;
+        }
+
+        InternetDomainName domainName;
+        try {
+            domainName = InternetDomainName.from(hostname.toLowerCase(Locale.US));
+        } catch (IllegalArgumentException e) {
+            // not a valid domain name (e.g. it contains underscores), so only an exact certificate can be used
+            return null;
+        }
+
+        if (!domainName.hasParent()) {
+            return null;
+        }
+
+        InternetDomainName parent = domainName.parent();
+
+        // the parent must be at or below the registrable domain, e.g. example.com or cdn.example.com, but not com or co.uk
+        if (!parent.isUnderPublicSuffix()) {
+            return null;
+        }
+
+        return parent.toString();
+    }
+}
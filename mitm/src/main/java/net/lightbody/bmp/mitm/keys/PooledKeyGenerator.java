@@ -0,0 +1,192 @@
+package net.lightbody.bmp.mitm.keys;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.lightbody.bmp.mitm.stats.CertificateGenerationStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.KeyPair;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link KeyGenerator} that returns key pairs from a pool of key pairs generated in the background by another KeyGenerator,
+ * so that callers do not have to wait for a key pair to be generated. When the number of key pairs in the pool falls below the
+ * low watermark, a background thread refills the pool up to the high watermark. If the pool is empty, a key pair is generated
+ * on the calling thread.
+ * <p/>
+ * Each key pair is returned exactly once, so this generator never reuses a previously-generated key pair. The background
+ * thread is a daemon thread that stops when it has been idle for a minute, so the generator does not need to be shut down.
+ */
+public class PooledKeyGenerator implements KeyGenerator {
+    private static final Logger log = LoggerFactory.getLogger(PooledKeyGenerator.class);
+
+    /**
+     * Default number of key pairs in the pool below which the pool will be refilled.
+     */
+    public static final int DEFAULT_LOW_WATERMARK = 8;
+
+    /**
+     * Default number of key pairs the pool will be refilled to.
+     */
+    public static final int DEFAULT_HIGH_WATERMARK = 32;
+
+    private final KeyGenerator keyGenerator;
+
+    private final int lowWatermark;
+    private final int highWatermark;
+
+    private final BlockingQueue<KeyPair> keyPairs;
+
+    /**
+     * Statistics to which pool hits, misses, and background generation times are reported. May be null.
+     */
+    private final CertificateGenerationStatistics statistics;
+
+    private final ThreadPoolExecutor refillExecutor;
+
+    /**
+     * True while a refill is scheduled or running, so at most one refill runs at a time.
+     */
+    private final AtomicBoolean refillScheduled = new AtomicBoolean(false);
+
+    /**
+     * Creates a pool of key pairs generated by the specified KeyGenerator, using the default watermarks.
+     *
+     * @param keyGenerator generator that will create the pooled key pairs
+     */
+    public PooledKeyGenerator(KeyGenerator keyGenerator) {
+        this(keyGenerator, DEFAULT_LOW_WATERMARK, DEFAULT_HIGH_WATERMARK, null);
+    }
+
+    /**
+     * Creates a pool of key pairs generated by the specified KeyGenerator. The pool begins filling immediately.
+     *
+     * @param keyGenerator generator that will create the pooled key pairs
+     * @param lowWatermark number of key pairs in the pool below which the pool will be refilled
+     * @param highWatermark maximum number of key pairs in the pool
+     * @param statistics statistics to which pool usage will be reported, or null
+     */
+    public PooledKeyGenerator(KeyGenerator keyGenerator, int lowWatermark, int highWatermark, CertificateGenerationStatistics statistics) {
+        if (keyGenerator == null) {
+            throw new IllegalArgumentException("Key generator cannot be null");
+        }
+
+        if (lowWatermark < 1) {
+            throw new IllegalArgumentException("Low watermark must be at least 1");
+        }
+
+        if (highWatermark < lowWatermark) {
+            throw new IllegalArgumentException("High watermark cannot be less than the low watermark");
+        }
+
+        this.keyGenerator = keyGenerator;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.statistics = statistics;
+
+        this.keyPairs = new ArrayBlockingQueue<>(highWatermark);
+
+        this.refillExecutor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("key-pair-pool-%d").setDaemon(true).build());
+        this.refillExecutor.allowCoreThreadTimeOut(true);
+
+        scheduleRefill();
+    }
+
+    @Override
+    public KeyPair generate() {
+        KeyPair keyPair = keyPairs.poll();
+
+        if (keyPair != null) {
+            if (statistics != null) {
+                statistics.keyPairPoolHit();
+            }
+        } else {
+            if (statistics != null) {
+                statistics.keyPairPoolMiss();
+            }
+
+            log.debug("Key pair pool is empty; generating {} key pair on the calling thread", keyGenerator);
+
+            keyPair = keyGenerator.generate();
+        }
+
+        if (keyPairs.size() < lowWatermark) {
+            scheduleRefill();
+        }
+
+        return keyPair;
+    }
+
+    /**
+     * @return number of key pairs currently available in the pool
+     */
+    public int getAvailableKeyPairs() {
+        return keyPairs.size();
+    }
+
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+
+    private void scheduleRefill() {
+        if (refillScheduled.compareAndSet(false, true)) {
+            refillExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    refill();
+                }
+            });
+        }
+    }
+
+    /**
+     * Generates key pairs until the pool reaches the high watermark.
+     */
+    private void refill() {
+        boolean failed = false;
+
+        try {
+            while (keyPairs.size() < highWatermark) {
+                long start = System.currentTimeMillis();
+
+                KeyPair keyPair = keyGenerator.generate();
+
+                if (statistics != null) {
+                    statistics.keyPairPregenerated(start, System.currentTimeMillis());
+                }
+
+                if (!keyPairs.offer(keyPair)) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            failed = true;
+
+            log.warn("Unable to generate {} key pair for key pair pool", keyGenerator, e);
+        } finally {
+            refillScheduled.set(false);
+        }
+
+        // key pairs may have been taken after the pool was filled but before the refill was marked as complete. don't retry
+        // after a failure, since the generator is likely to fail again.
+        if (!failed && keyPairs.size() < lowWatermark) {
+            scheduleRefill();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Pooled " + keyGenerator;
+    }
+}
@@ -4,28 +4,43 @@ import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 import net.lightbody.bmp.mitm.CertificateAndKey;
 import net.lightbody.bmp.mitm.CertificateAndKeySource;
 import net.lightbody.bmp.mitm.CertificateInfo;
 import net.lightbody.bmp.mitm.CertificateInfoGenerator;
 import net.lightbody.bmp.mitm.HostnameCertificateInfoGenerator;
+import net.lightbody.bmp.mitm.ImpersonatedCertificateStore;
 import net.lightbody.bmp.mitm.RootCertificateGenerator;
+import net.lightbody.bmp.mitm.SharedCertificateInfoGenerator;
 import net.lightbody.bmp.mitm.TrustSource;
 import net.lightbody.bmp.mitm.exception.MitmException;
 import net.lightbody.bmp.mitm.exception.SslContextInitializationException;
 import net.lightbody.bmp.mitm.keys.ECKeyGenerator;
 import net.lightbody.bmp.mitm.keys.KeyGenerator;
+import net.lightbody.bmp.mitm.keys.PooledKeyGenerator;
 import net.lightbody.bmp.mitm.keys.RSAKeyGenerator;
 import net.lightbody.bmp.mitm.stats.CertificateGenerationStatistics;
+import net.lightbody.bmp.mitm.stats.TlsHandshakeStatistics;
 import net.lightbody.bmp.mitm.tools.DefaultSecurityProviderTool;
 import net.lightbody.bmp.mitm.tools.SecurityProviderTool;
 import net.lightbody.bmp.mitm.util.EncryptionUtil;
+import net.lightbody.bmp.mitm.util.HandshakeTrackingSslEngine;
 import net.lightbody.bmp.mitm.util.MitmConstants;
 import net.lightbody.bmp.mitm.util.SslUtil;
 import net.lightbody.bmp.util.HttpUtil;
@@ -39,12 +54,16 @@ import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSession;
 import java.security.KeyPair;
 import java.security.PrivateKey;
+import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -55,6 +74,16 @@ import java.util.concurrent.TimeUnit;
 public class ImpersonatingMitmManager implements MitmManager {
     private static final Logger log = LoggerFactory.getLogger(ImpersonatingMitmManager.class);
 
+    /**
+     * Default maximum number of hosts that will be impersonated concurrently.
+     */
+    public static final int DEFAULT_IMPERSONATION_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Length of a TLS session ticket key: a 16-byte key name, a 16-byte HMAC key, and a 16-byte AES key.
+     */
+    public static final int SESSION_TICKET_KEY_LENGTH = 48;
+
     /**
      * Cipher suites allowed on proxy connections to upstream servers.
      */
@@ -71,16 +100,53 @@ public class ImpersonatingMitmManager implements MitmManager {
     private final Supplier<SslContext> upstreamServerSslContext = Suppliers.memoize(new Supplier<SslContext>() {
         @Override
         public SslContext get() {
-            return SslUtil.getUpstreamServerSslContext(serverCipherSuites, trustSource);
+            return SslUtil.getUpstreamServerSslContext(serverCipherSuites, trustSource, sslProvider, sessionCacheSize, sessionTimeoutSeconds);
         }
     });
 
+    /**
+     * The SSL implementation used for client and upstream server connections. If null, netty's default implementation is used.
+     */
+    private final SslProvider sslProvider;
+
+    /**
+     * Maximum number of TLS sessions cached by each SslContext, or 0 to use the SSL implementation's default.
+     */
+    private final long sessionCacheSize;
+
+    /**
+     * Length of time TLS sessions are cached, in seconds, or 0 to use the SSL implementation's default.
+     */
+    private final long sessionTimeoutSeconds;
+
+    /**
+     * Key used to encrypt TLS session tickets, shared by all impersonating SslContexts so that a ticket issued for one host
+     * can be used to resume a session even after the host's SslContext has been recreated.
+     */
+    private final byte[] sessionTicketKey;
+
     /**
      * Cache for impersonating netty SslContexts. SslContexts can be safely reused, so caching the impersonating contexts avoids
      * repeatedly re-impersonating upstream servers.
      */
     private final Cache<String, SslContext> sslContextCache;
 
+    /**
+     * Impersonations in progress, keyed by the same key as the {@link #sslContextCache}. Concurrent requests to impersonate
+     * the same host wait for a single impersonation rather than each generating a certificate.
+     */
+    private final ConcurrentMap<String, ListenableFuture<SslContext>> pendingImpersonations = new ConcurrentHashMap<>();
+
+    /**
+     * Executor on which certificates are generated and signed, bounding the number of hosts impersonated concurrently. Its queue
+     * is unbounded, so a burst of new hosts makes handshakes wait rather than fail.
+     * <p/>
+     * {@link #clientSslEngineFor(HttpRequest, SSLSession)} still waits for the impersonation on the calling thread, which is
+     * usually a netty event loop. The only work this executor takes off the event loop is an impersonation started by
+     * {@link #preImpersonate(String)} when the client sends its CONNECT, which runs while the proxy connects to the upstream server.
+     */
+    private final ThreadPoolExecutor impersonationExecutor;
+
     /**
      * Generator used to create public and private keys for the server certificates.
      */
@@ -125,11 +191,35 @@ public class ImpersonatingMitmManager implements MitmManager {
         }
     });
 
+    /**
+     * Persistent store of impersonated certificates, consulted before generating a new certificate. May be null.
+     */
+    private final ImpersonatedCertificateStore impersonatedCertificateStore;
+
     /**
      * Simple server certificate generation statistics.
      */
     private final CertificateGenerationStatistics statistics = new CertificateGenerationStatistics();
 
+    /**
+     * Full and resumed TLS handshake counts for client and upstream server connections.
+     */
+    private final TlsHandshakeStatistics handshakeStatistics = new TlsHandshakeStatistics();
+
+    private final HandshakeTrackingSslEngine.HandshakeListener clientHandshakeListener = new HandshakeTrackingSslEngine.HandshakeListener() {
+        @Override
+        public void handshakeCompleted(SSLEngine engine, boolean resumed) {
+            handshakeStatistics.clientHandshakeCompleted(resumed);
+        }
+    };
+
+    private final HandshakeTrackingSslEngine.HandshakeListener upstreamHandshakeListener = new HandshakeTrackingSslEngine.HandshakeListener() {
+        @Override
+        public void handshakeCompleted(SSLEngine engine, boolean resumed) {
+            handshakeStatistics.upstreamHandshakeCompleted(resumed);
+        }
+    };
+
     /**
      * Creates a new ImpersonatingMitmManager. In general, use {@link ImpersonatingMitmManager.Builder}
      * to construct new instances.
@@ -144,6 +234,45 @@ public class ImpersonatingMitmManager implements MitmManager {
                                     CertificateInfoGenerator certificateInfoGenerator,
                                     Collection<String> serverCipherSuites,
                                     Collection<String> clientCipherSuites) {
+        this(rootCertificateSource, serverKeyGenerator, serverMessageDigest, trustSource, sslContextCacheConcurrencyLevel,
+                cacheExpirationIntervalMs, securityProviderTool, certificateInfoGenerator, serverCipherSuites, clientCipherSuites, 0, 0, null,
+                DEFAULT_IMPERSONATION_THREADS, null, 0, 0, null);
+    }
+
+    /**
+     * Creates a new ImpersonatingMitmManager that optionally takes server key pairs from a pool of key pairs generated in the
+     * background by the serverKeyGenerator, and optionally reuses impersonated certificates from a persistent store. In general,
+     * use {@link ImpersonatingMitmManager.Builder} to construct new instances.
+     *
+     * @param serverKeyPairPoolLowWatermark number of pooled key pairs below which the pool will be refilled, or 0 to generate
+     *                                      server key pairs on demand
+     * @param serverKeyPairPoolHighWatermark maximum number of pooled key pairs
+     * @param impersonatedCertificateStore persistent store of impersonated certificates, or null
+     * @param impersonationThreads maximum number of hosts that will be impersonated concurrently
+     * @param sslProvider SSL implementation to use for client and upstream server connections, or null to use netty's default.
+     *                    OpenSSL providers fall back to the JDK provider if OpenSSL is not available.
+     * @param sessionCacheSize maximum number of TLS sessions cached by each SslContext, or 0 to use the SSL implementation's default
+     * @param sessionTimeoutSeconds length of time TLS sessions are cached, or 0 to use the SSL implementation's default
+     * @param sessionTicketKey 48-byte key used to encrypt TLS session tickets, or null to generate a random key
+     */
+    public ImpersonatingMitmManager(CertificateAndKeySource rootCertificateSource,
+                                    KeyGenerator serverKeyGenerator,
+                                    String serverMessageDigest,
+                                    TrustSource trustSource,
+                                    int sslContextCacheConcurrencyLevel,
+                                    long cacheExpirationIntervalMs,
+                                    SecurityProviderTool securityProviderTool,
+                                    CertificateInfoGenerator certificateInfoGenerator,
+                                    Collection<String> serverCipherSuites,
+                                    Collection<String> clientCipherSuites,
+                                    int serverKeyPairPoolLowWatermark,
+                                    int serverKeyPairPoolHighWatermark,
+                                    ImpersonatedCertificateStore impersonatedCertificateStore,
+                                    int impersonationThreads,
+                                    SslProvider sslProvider,
+                                    long sessionCacheSize,
+                                    long sessionTimeoutSeconds,
+                                    byte[] sessionTicketKey) {
         if (rootCertificateSource == null) {
             throw new IllegalArgumentException("CA root certificate source cannot be null");
         }
@@ -164,23 +293,66 @@ public class ImpersonatingMitmManager implements MitmManager {
             throw new IllegalArgumentException("Certificate info generator cannot be null");
         }
 
+        if (impersonationThreads < 1) {
+            throw new IllegalArgumentException("Number of impersonation threads must be at least 1");
+        }
+
+        if (sessionCacheSize < 0 || sessionTimeoutSeconds < 0) {
+            throw new IllegalArgumentException("Session cache size and timeout cannot be negative");
+        }
+
+        if (sessionTicketKey != null && sessionTicketKey.length != SESSION_TICKET_KEY_LENGTH) {
+            throw new IllegalArgumentException("Session ticket key must be " + SESSION_TICKET_KEY_LENGTH + " bytes long");
+        }
+
         this.rootCertificateSource = rootCertificateSource;
 
         this.trustSource = trustSource;
 
         this.serverCertificateMessageDigest = serverMessageDigest;
 
-        this.serverKeyGenerator = serverKeyGenerator;
+        if (serverKeyPairPoolLowWatermark > 0) {
+            this.serverKeyGenerator = new PooledKeyGenerator(serverKeyGenerator, serverKeyPairPoolLowWatermark, serverKeyPairPoolHighWatermark, statistics);
+        } else {
+            this.serverKeyGenerator = serverKeyGenerator;
+        }
+
+        this.sslProvider = SslUtil.getAvailableSslProvider(sslProvider);
 
+        this.sessionCacheSize = sessionCacheSize;
+        this.sessionTimeoutSeconds = sessionTimeoutSeconds;
+
+        if (sessionTicketKey != null) {
+            this.sessionTicketKey = sessionTicketKey.clone();
+        } else {
+            this.sessionTicketKey = new byte[SESSION_TICKET_KEY_LENGTH];
+            new SecureRandom().nextBytes(this.sessionTicketKey);
+        }
+
+        // SslContexts created by the OPENSSL_REFCNT provider hold native memory that is only freed when they are released
         this.sslContextCache = CacheBuilder.newBuilder()
                 .concurrencyLevel(sslContextCacheConcurrencyLevel)
                 .expireAfterAccess(cacheExpirationIntervalMs, TimeUnit.MILLISECONDS)
+                .removalListener(new RemovalListener<String, SslContext>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, SslContext> notification) {
+                        ReferenceCountUtil.release(notification.getValue());
+                    }
+                })
                 .build();
 
         this.securityProviderTool = securityProviderTool;
 
         this.certificateInfoGenerator = certificateInfoGenerator;
 
+        this.impersonatedCertificateStore = impersonatedCertificateStore;
+
+        // when every impersonation thread is busy, queue the impersonation rather than rejecting it, so the handshake is only delayed
+        this.impersonationExecutor = new ThreadPoolExecutor(impersonationThreads, impersonationThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("certificate-impersonation-%d").setDaemon(true).build());
+        this.impersonationExecutor.allowCoreThreadTimeOut(true);
+
         this.serverCipherSuites = ImmutableList.copyOf(serverCipherSuites);
         log.debug("Allowed ciphers for proxy connections to upstream servers (some ciphers may not be available): {}", serverCipherSuites);
 
@@ -193,7 +365,7 @@ public class ImpersonatingMitmManager implements MitmManager {
         try {
             SSLEngine sslEngine = upstreamServerSslContext.get().newEngine(ByteBufAllocator.DEFAULT);
 
-            return sslEngine;
+            return SslUtil.trackHandshakes(sslEngine, upstreamHandshakeListener);
         } catch (RuntimeException e) {
             throw new MitmException("Error creating SSLEngine for connection to upstream server", e);
         }
@@ -209,7 +381,7 @@ public class ImpersonatingMitmManager implements MitmManager {
             sslParams.setEndpointIdentificationAlgorithm("HTTPS");
             sslEngine.setSSLParameters(sslParams);
 
-            return sslEngine;
+            return SslUtil.trackHandshakes(sslEngine, upstreamHandshakeListener);
         } catch (RuntimeException e) {
             throw new MitmException("Error creating SSLEngine for connection to upstream server: " + peerHost + ":" + peerPort, e);
         }
@@ -220,59 +392,233 @@ public class ImpersonatingMitmManager implements MitmManager {
         String requestedHostname = HttpUtil.getHostFromRequest(httpRequest);
 
         try {
-            SslContext ctx = getHostnameImpersonatingSslContext(requestedHostname, sslSession);
-
-            return ctx.newEngine(ByteBufAllocator.DEFAULT);
+            while (true) {
+                SslContext ctx = getHostnameImpersonatingSslContext(requestedHostname, sslSession);
+
+                try {
+                    return SslUtil.trackHandshakes(newEngine(ctx), clientHandshakeListener);
+                } catch (IllegalReferenceCountException e) {
+                    // the reference-counted SslContext was evicted from the cache and released after it was retrieved, so
+                    // retrieve it again
+                    log.debug("Impersonating SslContext for {} was released before an SSLEngine could be created", requestedHostname);
+                }
+            }
         } catch (RuntimeException e) {
             throw new MitmException("Error creating SSLEngine for connection to client to impersonate upstream host: " + requestedHostname, e);
         }
     }
 
+    /**
+     * Creates a new SSLEngine from the specified SslContext. Reference-counted SslContexts are retained while the engine
+     * is created, so that they cannot be released by the cache concurrently.
+     *
+     * @throws IllegalReferenceCountException if the SslContext has already been released
+     */
+    private static SSLEngine newEngine(SslContext sslContext) {
+        if (!(sslContext instanceof ReferenceCounted)) {
+            return sslContext.newEngine(ByteBufAllocator.DEFAULT);
+        }
+
+        ReferenceCounted referenceCountedSslContext = (ReferenceCounted) sslContext;
+        referenceCountedSslContext.retain();
+        try {
+            return sslContext.newEngine(ByteBufAllocator.DEFAULT);
+        } finally {
+            referenceCountedSslContext.release();
+        }
+    }
+
+    /**
+     * If the {@link #certificateInfoGenerator} is a {@link HostnameCertificateInfoGenerator} (the default), begins impersonating
+     * the specified hostname in the background, so that the impersonated certificate can be generated while the proxy connects
+     * to the upstream server rather than afterward. A subsequent call to {@link #clientSslEngineFor(HttpRequest, SSLSession)}
+     * for the same host will wait for this impersonation instead of starting a new one.
+     * <p/>
+     * This method has no effect with any other CertificateInfoGenerator, since other generators may use the upstream server's
+     * certificate, which is not available until the proxy has connected to the server. It also has no effect if the host has
+     * already been impersonated.
+     *
+     * @param hostnameToImpersonate hostname supplied by the client's HTTP CONNECT
+     */
+    public void preImpersonate(String hostnameToImpersonate) {
+        if (hostnameToImpersonate == null || !(certificateInfoGenerator instanceof HostnameCertificateInfoGenerator)) {
+            return;
+        }
+
+        List<String> certificateHostnames = getCertificateHostnames(hostnameToImpersonate);
+        String cacheKey = certificateHostnames.get(0);
+
+        if (sslContextCache.getIfPresent(cacheKey) == null) {
+            impersonate(cacheKey, certificateHostnames, null);
+        }
+    }
+
     /**
      * Retrieves an SSLContext that impersonates the specified hostname. If an impersonating SSLContext has already been
-     * created for this hostname and is stored in the cache, it will be reused. Otherwise, a certificate will be created
-     * which impersonates the specified hostname.
+     * created for this hostname and is stored in the cache, it will be reused. If the host is already being impersonated,
+     * this method waits for that impersonation to complete. Otherwise, a certificate which impersonates the specified hostname
+     * will be created on the {@link #impersonationExecutor}. In every case but a cache hit, the calling thread blocks until the
+     * certificate has been generated.
      *
      * @param hostnameToImpersonate the hostname for which the impersonated SSLContext is being requested
      * @param sslSession the upstream server SSLSession
      * @return SSLContext which will present an impersonated certificate
      */
-    private SslContext getHostnameImpersonatingSslContext(final String hostnameToImpersonate, final SSLSession sslSession) {
+    private SslContext getHostnameImpersonatingSslContext(String hostnameToImpersonate, SSLSession sslSession) {
+        List<String> certificateHostnames = getCertificateHostnames(hostnameToImpersonate);
+
+        // all hosts covered by the same certificate share a single SslContext
+        String cacheKey = certificateHostnames.get(0);
+
+        SslContext cachedSslContext = sslContextCache.getIfPresent(cacheKey);
+        if (cachedSslContext != null) {
+            statistics.sslContextCacheHit();
+
+            return cachedSslContext;
+        }
+
+        statistics.sslContextCacheMiss();
+
         try {
-            return sslContextCache.get(hostnameToImpersonate, new Callable<SslContext>() {
-                @Override
-                public SslContext call() throws Exception {
-                    return createImpersonatingSslContext(sslSession, hostnameToImpersonate);
-                }
-            });
+            return Uninterruptibles.getUninterruptibly(impersonate(cacheKey, certificateHostnames, sslSession));
         } catch (ExecutionException e) {
-            throw new SslContextInitializationException("An error occurred while impersonating the remote host: " + hostnameToImpersonate, e);
+            throw new SslContextInitializationException("An error occurred while impersonating the remote host: " + hostnameToImpersonate, e.getCause());
         }
+    }
 
-        //TODO: generate wildcard certificates, rather than one certificate per host, to reduce the number of certs generated
+    /**
+     * Returns the hostnames the impersonated certificate for the specified host will cover. Unless the CertificateInfoGenerator
+     * shares certificates among multiple hosts, each host gets its own certificate.
+     */
+    private List<String> getCertificateHostnames(String hostnameToImpersonate) {
+        if (certificateInfoGenerator instanceof SharedCertificateInfoGenerator) {
+            return ((SharedCertificateInfoGenerator) certificateInfoGenerator).getCertificateHostnames(hostnameToImpersonate);
+        } else {
+            return Collections.singletonList(hostnameToImpersonate);
+        }
     }
 
     /**
-     * Creates an SSLContext that will present an impersonated certificate for the specified hostname to the client.
+     * Returns a future for the impersonating SslContext for the specified hostnames. If an impersonation is already in
+     * progress for the cacheKey, returns the existing impersonation's future. Otherwise, starts a new impersonation on the
+     * {@link #impersonationExecutor}, which stores the SslContext in the {@link #sslContextCache} when complete.
+     *
+     * @param cacheKey key of the impersonating SslContext in the cache
+     * @param certificateHostnames hostnames the impersonated certificate will cover
+     * @param sslSession the upstream server SSLSession, or null if the upstream server's certificate is not available
+     * @return future that will contain the impersonating SslContext
+     */
+    private ListenableFuture<SslContext> impersonate(final String cacheKey, final List<String> certificateHostnames, final SSLSession sslSession) {
+        ListenableFuture<SslContext> pendingImpersonation = pendingImpersonations.get(cacheKey);
+        if (pendingImpersonation != null) {
+            statistics.impersonationCoalesced();
+
+            return pendingImpersonation;
+        }
+
+        final SettableFuture<SslContext> impersonation = SettableFuture.create();
+
+        pendingImpersonation = pendingImpersonations.putIfAbsent(cacheKey, impersonation);
+        if (pendingImpersonation != null) {
+            statistics.impersonationCoalesced();
+
+            return pendingImpersonation;
+        }
+
+        // a previous impersonation may have completed after the cache was checked but before this impersonation was registered
+        SslContext cachedSslContext = sslContextCache.getIfPresent(cacheKey);
+        if (cachedSslContext != null) {
+            impersonation.set(cachedSslContext);
+            pendingImpersonations.remove(cacheKey, impersonation);
+
+            return impersonation;
+        }
+
+        impersonationExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SslContext sslContext = createImpersonatingSslContext(sslSession, certificateHostnames);
+
+                    // cache the SslContext before the impersonation is removed from the pending impersonations, so that no
+                    // request can miss both
+                    sslContextCache.put(cacheKey, sslContext);
+
+                    impersonation.set(sslContext);
+                } catch (Throwable t) {
+                    impersonation.setException(t);
+                } finally {
+                    pendingImpersonations.remove(cacheKey, impersonation);
+                }
+            }
+        });
+
+        return impersonation;
+    }
+
+    /**
+     * Creates an SSLContext that will present an impersonated certificate for the specified hostnames to the client.
      * This is a convenience method for {@link #createImpersonatingSslContext(CertificateInfo)} that generates the
-     * {@link CertificateInfo} from the specified hostname using the {@link #certificateInfoGenerator}.
+     * {@link CertificateInfo} from the specified hostnames using the {@link #certificateInfoGenerator}.
      *
      * @param sslSession sslSession between the proxy and the upstream server
-     * @param hostnameToImpersonate hostname (supplied by the client's HTTP CONNECT) that will be impersonated
-     * @return an SSLContext presenting a certificate matching the hostnameToImpersonate
+     * @param certificateHostnames hostnames the impersonated certificate will cover, including the hostname supplied by the
+     *                             client's HTTP CONNECT
+     * @return an SSLContext presenting a certificate matching the certificateHostnames
      */
-    private SslContext createImpersonatingSslContext(SSLSession sslSession, String hostnameToImpersonate) {
+    private SslContext createImpersonatingSslContext(SSLSession sslSession, List<String> certificateHostnames) {
         // get the upstream server's certificate so the certificateInfoGenerator can (optionally) use it to construct a forged certificate
-        X509Certificate originalCertificate = SslUtil.getServerCertificate(sslSession);
+        X509Certificate originalCertificate = sslSession != null ? SslUtil.getServerCertificate(sslSession) : null;
 
         // get the CertificateInfo that will be used to populate the impersonated X509Certificate
-        CertificateInfo certificateInfo = certificateInfoGenerator.generate(Collections.singletonList(hostnameToImpersonate), originalCertificate);
+        CertificateInfo certificateInfo = certificateInfoGenerator.generate(certificateHostnames, originalCertificate);
+
+        // reuse a certificate created from the same CertificateInfo by a previous proxy instance, if one is available
+        if (impersonatedCertificateStore != null) {
+            SslContext storedSslContext = loadStoredImpersonatingSslContext(certificateInfo);
+            if (storedSslContext != null) {
+                return storedSslContext;
+            }
+        }
 
         SslContext sslContext = createImpersonatingSslContext(certificateInfo);
 
         return sslContext;
     }
 
+    /**
+     * Creates an SSLContext using the impersonated certificate generated from the specified certificateInfo in the
+     * {@link #impersonatedCertificateStore}, if the store contains a valid certificate signed by the CA root certificate.
+     * Errors reading the store are logged and ignored, so the certificate will be regenerated.
+     *
+     * @param certificateInfo certificate information generated for the impersonated host
+     * @return an SSLContext presenting the stored certificate, or null if no stored certificate is available
+     */
+    private SslContext loadStoredImpersonatingSslContext(CertificateInfo certificateInfo) {
+        X509Certificate caRootCertificate = rootCertificate.get().getCertificate();
+
+        CertificateAndKey storedCertificateAndKey;
+        try {
+            storedCertificateAndKey = impersonatedCertificateStore.load(caRootCertificate, certificateInfo);
+        } catch (RuntimeException e) {
+            log.warn("Unable to load impersonated certificate for {} from certificate store", certificateInfo.getSubjectAlternativeNames(), e);
+
+            return null;
+        }
+
+        if (storedCertificateAndKey == null) {
+            return null;
+        }
+
+        SslContext sslContext = createSslContext(storedCertificateAndKey, caRootCertificate);
+
+        statistics.certificateLoadedFromStore();
+
+        log.debug("Loaded impersonated certificate for {} from certificate store", certificateInfo.getCommonName());
+
+        return sslContext;
+    }
+
     /**
      * Generates an {@link SslContext} using an impersonated certificate containing the information in the specified
      * certificateInfo.
@@ -312,24 +658,52 @@ public class ImpersonatingMitmManager implements MitmManager {
                 serverKeyPair,
                 serverCertificateMessageDigest);
 
+        SslContext sslContext = createSslContext(impersonatedCertificateAndKey, caRootCertificate);
+
+        long impersonationFinish = System.currentTimeMillis();
+
+        statistics.certificateCreated(impersonationStart, impersonationFinish);
+
+        log.debug("Impersonated certificate for {} in {}ms", certificateInfo.getCommonName(), impersonationFinish - impersonationStart);
+
+        if (impersonatedCertificateStore != null) {
+            try {
+                impersonatedCertificateStore.save(caRootCertificate, certificateInfo, impersonatedCertificateAndKey);
+            } catch (RuntimeException e) {
+                log.warn("Unable to save impersonated certificate for {} in certificate store", certificateInfo.getCommonName(), e);
+            }
+        }
+
+        return sslContext;
+    }
+
+    /**
+     * Creates an SslContext that presents the specified impersonated certificate, followed by the CA root certificate, to clients.
+     */
+    private SslContext createSslContext(CertificateAndKey impersonatedCertificateAndKey, X509Certificate caRootCertificate) {
         X509Certificate[] certChain = {impersonatedCertificateAndKey.getCertificate(), caRootCertificate};
-        SslContext sslContext;
         try {
-            sslContext = SslContextBuilder.forServer(impersonatedCertificateAndKey.getPrivateKey(), certChain)
+            SslContext sslContext = SslContextBuilder.forServer(impersonatedCertificateAndKey.getPrivateKey(), certChain)
+                    .sslProvider(sslProvider)
                     .ciphers(clientCipherSuites, SupportedCipherSuiteFilter.INSTANCE)
+                    .sessionCacheSize(sessionCacheSize)
+                    .sessionTimeout(sessionTimeoutSeconds)
                     .build();
 
+            SslUtil.setSessionTicketKey(sslContext, sessionTicketKey);
+
+            return sslContext;
         } catch (SSLException e) {
             throw new MitmException("Error creating SslContext for connection to client using impersonated certificate and private key", e);
         }
+    }
 
-        long impersonationFinish = System.currentTimeMillis();
-
-        statistics.certificateCreated(impersonationStart, impersonationFinish);
-
-        log.debug("Impersonated certificate for {} in {}ms", certificateInfo.getCommonName(), impersonationFinish - impersonationStart);
-
-        return sslContext;
+    /**
+     * Returns the SSL implementation used for client and upstream server connections, or null if netty's default
+     * implementation is used.
+     */
+    public SslProvider getSslProvider() {
+        return sslProvider;
     }
 
     /**
@@ -339,6 +713,14 @@ public class ImpersonatingMitmManager implements MitmManager {
         return this.statistics;
     }
 
+    /**
+     * Returns the number of full and resumed TLS handshakes on client and upstream server connections. Handshakes are only
+     * counted on connections that use the JDK SSL provider.
+     */
+    public TlsHandshakeStatistics getHandshakeStatistics() {
+        return this.handshakeStatistics;
+    }
+
     /**
      * Convenience method to return a new {@link Builder} instance default default values: a {@link RootCertificateGenerator}
      * that dynamically generates an RSA root certificate and RSA server certificates.
@@ -382,6 +764,20 @@ public class ImpersonatingMitmManager implements MitmManager {
 
         private Collection<String> clientCiphers;
 
+        private int serverKeyPairPoolLowWatermark = 0;
+        private int serverKeyPairPoolHighWatermark = 0;
+
+        private ImpersonatedCertificateStore impersonatedCertificateStore;
+
+        private int impersonationThreads = DEFAULT_IMPERSONATION_THREADS;
+
+        private SslProvider sslProvider;
+
+        private long sessionCacheSize = 0;
+        private long sessionTimeoutSeconds = 0;
+
+        private byte[] sessionTicketKey;
+
         /**
          * The source of the CA root certificate that will be used to sign the impersonated server certificates. Custom
          * certificates can be used by supplying an implementation of {@link CertificateAndKeySource}, such as
@@ -439,6 +835,41 @@ public class ImpersonatingMitmManager implements MitmManager {
             return this;
         }
 
+        /**
+         * Generate server key pairs in the background and keep them in a pool, so that impersonating a new host only requires
+         * signing a certificate. When the number of pooled key pairs falls below the low watermark, the pool is refilled up
+         * to the high watermark. Key pairs are generated by the {@link #serverKeyGenerator(KeyGenerator)}. Pooling is disabled
+         * by default.
+         *
+         * @param lowWatermark number of pooled key pairs below which the pool will be refilled, or 0 to disable pooling
+         * @param highWatermark maximum number of pooled key pairs
+         */
+        public Builder serverKeyPairPool(int lowWatermark, int highWatermark) {
+            this.serverKeyPairPoolLowWatermark = lowWatermark;
+            this.serverKeyPairPoolHighWatermark = highWatermark;
+            return this;
+        }
+
+        /**
+         * A persistent store of impersonated certificates, such as a {@link net.lightbody.bmp.mitm.FileImpersonatedCertificateStore}.
+         * Before generating a certificate, the MitmManager loads a valid certificate from the store if one is available;
+         * generated certificates are saved to the store. Allows certificates to be reused across proxy restarts.
+         */
+        public Builder impersonatedCertificateStore(ImpersonatedCertificateStore impersonatedCertificateStore) {
+            this.impersonatedCertificateStore = impersonatedCertificateStore;
+            return this;
+        }
+
+        /**
+         * The maximum number of hosts that will be impersonated concurrently. Certificates are generated and signed on a
+         * dedicated pool of this many threads; concurrent requests to impersonate the same host share a single impersonation.
+         * Impersonations beyond this limit are queued. Defaults to the number of available processors.
+         */
+        public Builder impersonationThreads(int impersonationThreads) {
+            this.impersonationThreads = impersonationThreads;
+            return this;
+        }
+
         /**
          * The concurrency level for the SSLContext cache. Increase this beyond the default value for high-volume proxy servers.
          */
@@ -457,7 +888,8 @@ public class ImpersonatingMitmManager implements MitmManager {
 
         /**
          * The {@link CertificateInfoGenerator} that will populate {@link CertificateInfo} objects containing certificate data for
-         * forced X509Certificates.
+         * forced X509Certificates. To share a single certificate among multiple hosts, use a {@link SharedCertificateInfoGenerator}
+         * such as {@link net.lightbody.bmp.mitm.WildcardCertificateInfoGenerator}.
          */
         public Builder certificateInfoGenerator(CertificateInfoGenerator certificateInfoGenerator) {
             this.certificateInfoGenerator = certificateInfoGenerator;
@@ -484,6 +916,46 @@ public class ImpersonatingMitmManager implements MitmManager {
             return this;
         }
 
+        /**
+         * The SSL implementation used for client connections to the proxy and proxy connections to upstream servers. The
+         * OpenSSL providers ({@link SslProvider#OPENSSL} and {@link SslProvider#OPENSSL_REFCNT}) are considerably faster than
+         * the JDK provider, but require netty-tcnative on the classpath; if OpenSSL is not available, the JDK provider is used
+         * instead. By default, netty's default provider is used.
+         */
+        public Builder sslProvider(SslProvider sslProvider) {
+            this.sslProvider = sslProvider;
+            return this;
+        }
+
+        /**
+         * The maximum number of TLS sessions cached by the upstream server SslContext and by each impersonating SslContext.
+         * Caching sessions allows clients, and the proxy itself, to resume sessions without performing a full handshake.
+         * By default, the SSL implementation's default cache size is used.
+         */
+        public Builder sessionCacheSize(long sessionCacheSize) {
+            this.sessionCacheSize = sessionCacheSize;
+            return this;
+        }
+
+        /**
+         * The length of time TLS sessions are cached. By default, the SSL implementation's default timeout is used.
+         */
+        public Builder sessionTimeout(long sessionTimeout, TimeUnit timeUnit) {
+            this.sessionTimeoutSeconds = TimeUnit.SECONDS.convert(sessionTimeout, timeUnit);
+            return this;
+        }
+
+        /**
+         * The key used to encrypt TLS session tickets issued to clients, shared by all impersonating SslContexts. The key
+         * consists of a 16-byte name, a 16-byte HMAC key, and a 16-byte AES key. Supplying the same key to proxies that use
+         * the same CA allows clients to resume sessions across proxy instances. By default, a random key is generated.
+         * Session tickets are only supported by the OpenSSL SSL providers.
+         */
+        public Builder sessionTicketKey(byte[] sessionTicketKey) {
+            this.sessionTicketKey = sessionTicketKey;
+            return this;
+        }
+
         /**
          * The {@link SecurityProviderTool} implementation that will be used to generate certificates.
          */
@@ -511,7 +983,15 @@ public class ImpersonatingMitmManager implements MitmManager {
                     securityProviderTool,
                     certificateInfoGenerator,
                     serverCiphers,
-                    clientCiphers
+                    clientCiphers,
+                    serverKeyPairPoolLowWatermark,
+                    serverKeyPairPoolHighWatermark,
+                    impersonatedCertificateStore,
+                    impersonationThreads,
+                    sslProvider,
+                    sessionCacheSize,
+                    sessionTimeoutSeconds,
+                    sessionTicketKey
             );
         }
     }
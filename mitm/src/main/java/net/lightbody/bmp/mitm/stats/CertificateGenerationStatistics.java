@@ -12,6 +12,18 @@ public class CertificateGenerationStatistics {
 
     private AtomicLong firstCertificateGeneratedTimestamp = new AtomicLong();
 
+    private AtomicInteger certificatesLoadedFromStore = new AtomicInteger();
+
+    private AtomicLong sslContextCacheHits = new AtomicLong();
+    private AtomicLong sslContextCacheMisses = new AtomicLong();
+    private AtomicLong impersonationsCoalesced = new AtomicLong();
+
+    private AtomicInteger keyPairPoolHits = new AtomicInteger();
+    private AtomicInteger keyPairPoolMisses = new AtomicInteger();
+
+    private AtomicInteger keyPairsPregenerated = new AtomicInteger();
+    private AtomicLong keyPairPregenerationTimeMs = new AtomicLong();
+
     /**
      * Records a certificate generation that started at startTimeMs and completed at finishTimeMs.
      */
@@ -54,4 +66,126 @@ public class CertificateGenerationStatistics {
     public long firstCertificateGeneratedTimestamp() {
         return firstCertificateGeneratedTimestamp.get();
     }
+
+    /**
+     * Records an impersonated certificate that was loaded from a persistent certificate store instead of being generated.
+     */
+    public void certificateLoadedFromStore() {
+        certificatesLoadedFromStore.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of impersonated certificates loaded from a persistent certificate store instead of being generated.
+     */
+    public int getCertificatesLoadedFromStore() {
+        return certificatesLoadedFromStore.get();
+    }
+
+    /**
+     * Records a request for an impersonating SslContext that was satisfied from the SslContext cache.
+     */
+    public void sslContextCacheHit() {
+        sslContextCacheHits.incrementAndGet();
+    }
+
+    /**
+     * Records a request for an impersonating SslContext that was not in the SslContext cache.
+     */
+    public void sslContextCacheMiss() {
+        sslContextCacheMisses.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of requests for impersonating SslContexts that were satisfied from the cache.
+     */
+    public long getSslContextCacheHits() {
+        return sslContextCacheHits.get();
+    }
+
+    /**
+     * Returns the number of requests for impersonating SslContexts that were not in the cache.
+     */
+    public long getSslContextCacheMisses() {
+        return sslContextCacheMisses.get();
+    }
+
+    /**
+     * Records a request for an impersonating SslContext that waited for an impersonation already in progress for the same
+     * host, rather than impersonating the host again.
+     */
+    public void impersonationCoalesced() {
+        impersonationsCoalesced.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of requests for impersonating SslContexts that waited for an impersonation already in progress.
+     */
+    public long getImpersonationsCoalesced() {
+        return impersonationsCoalesced.get();
+    }
+
+    /**
+     * Returns the fraction of requests for impersonating SslContexts that were satisfied from the cache, or 0 if there have
+     * been no requests.
+     */
+    public double getSslContextCacheHitRate() {
+        long hits = sslContextCacheHits.get();
+        long requests = hits + sslContextCacheMisses.get();
+
+        if (requests > 0) {
+            return (double) hits / requests;
+        } else {
+            return 0.0;
+        }
+    }
+
+    /**
+     * Records a server key pair that was taken from a pool of pre-generated key pairs.
+     */
+    public void keyPairPoolHit() {
+        keyPairPoolHits.incrementAndGet();
+    }
+
+    /**
+     * Records a server key pair that had to be generated on demand because the pool of pre-generated key pairs was empty.
+     */
+    public void keyPairPoolMiss() {
+        keyPairPoolMisses.incrementAndGet();
+    }
+
+    /**
+     * Records a key pair pre-generation that started at startTimeMs and completed at finishTimeMs.
+     */
+    public void keyPairPregenerated(long startTimeMs, long finishTimeMs) {
+        keyPairsPregenerated.incrementAndGet();
+        keyPairPregenerationTimeMs.addAndGet(finishTimeMs - startTimeMs);
+    }
+
+    /**
+     * Returns the number of server key pairs taken from the pool of pre-generated key pairs.
+     */
+    public int getKeyPairPoolHits() {
+        return keyPairPoolHits.get();
+    }
+
+    /**
+     * Returns the number of server key pairs generated on demand because the pool of pre-generated key pairs was empty.
+     */
+    public int getKeyPairPoolMisses() {
+        return keyPairPoolMisses.get();
+    }
+
+    /**
+     * Returns the total number of key pairs generated in the background for the key pair pool.
+     */
+    public int getKeyPairsPregenerated() {
+        return keyPairsPregenerated.get();
+    }
+
+    /**
+     * Returns the total number of ms spent generating key pairs in the background for the key pair pool.
+     */
+    public long getTotalKeyPairPregenerationTimeMs() {
+        return keyPairPregenerationTimeMs.get();
+    }
 }
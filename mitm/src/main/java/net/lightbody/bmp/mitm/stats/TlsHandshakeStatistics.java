@@ -0,0 +1,69 @@
+package net.lightbody.bmp.mitm.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the number of full and resumed TLS handshakes on client connections to the proxy and on proxy connections to
+ * upstream servers.
+ */
+public class TlsHandshakeStatistics {
+    private AtomicLong clientFullHandshakes = new AtomicLong();
+    private AtomicLong clientResumedHandshakes = new AtomicLong();
+
+    private AtomicLong upstreamFullHandshakes = new AtomicLong();
+    private AtomicLong upstreamResumedHandshakes = new AtomicLong();
+
+    /**
+     * Records a completed handshake on a client connection to the proxy.
+     *
+     * @param resumed true if the handshake resumed a previous TLS session, false if it was a full handshake
+     */
+    public void clientHandshakeCompleted(boolean resumed) {
+        if (resumed) {
+            clientResumedHandshakes.incrementAndGet();
+        } else {
+            clientFullHandshakes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a completed handshake on a proxy connection to an upstream server.
+     *
+     * @param resumed true if the handshake resumed a previous TLS session, false if it was a full handshake
+     */
+    public void upstreamHandshakeCompleted(boolean resumed) {
+        if (resumed) {
+            upstreamResumedHandshakes.incrementAndGet();
+        } else {
+            upstreamFullHandshakes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of full handshakes completed on client connections to the proxy.
+     */
+    public long getClientFullHandshakes() {
+        return clientFullHandshakes.get();
+    }
+
+    /**
+     * Returns the number of handshakes on client connections to the proxy that resumed a previous TLS session.
+     */
+    public long getClientResumedHandshakes() {
+        return clientResumedHandshakes.get();
+    }
+
+    /**
+     * Returns the number of full handshakes completed on proxy connections to upstream servers.
+     */
+    public long getUpstreamFullHandshakes() {
+        return upstreamFullHandshakes.get();
+    }
+
+    /**
+     * Returns the number of handshakes on proxy connections to upstream servers that resumed a previous TLS session.
+     */
+    public long getUpstreamResumedHandshakes() {
+        return upstreamResumedHandshakes.get();
+    }
+}
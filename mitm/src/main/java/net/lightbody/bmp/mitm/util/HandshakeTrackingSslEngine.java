@@ -0,0 +1,206 @@
+package net.lightbody.bmp.mitm.util;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import java.nio.ByteBuffer;
+
+/**
+ * An SSLEngine that delegates to another SSLEngine and notifies a {@link HandshakeListener} each time a handshake completes,
+ * indicating whether the handshake resumed a previous TLS session.
+ * <p/>
+ * A handshake is considered resumed if the negotiated session was created before the handshake began. Since session creation
+ * times have millisecond resolution, a session created by another connection in the same millisecond the handshake began
+ * will be reported as a full handshake.
+ */
+public class HandshakeTrackingSslEngine extends SSLEngine {
+    /**
+     * Listener notified when a handshake completes.
+     */
+    public interface HandshakeListener {
+        /**
+         * Called when the engine completes a handshake.
+         *
+         * @param engine the engine that completed the handshake
+         * @param resumed true if the handshake resumed a previous TLS session, false if it was a full handshake
+         */
+        void handshakeCompleted(SSLEngine engine, boolean resumed);
+    }
+
+    private final SSLEngine delegate;
+
+    private final HandshakeListener listener;
+
+    /**
+     * Time the current handshake began. Initialized when the engine is created, since engines are created immediately
+     * before their initial handshake.
+     */
+    private volatile long handshakeStartTime = System.currentTimeMillis();
+
+    private volatile boolean initialHandshakeCompleted;
+
+    public HandshakeTrackingSslEngine(SSLEngine delegate, HandshakeListener listener) {
+        super(delegate.getPeerHost(), delegate.getPeerPort());
+
+        this.delegate = delegate;
+        this.listener = listener;
+    }
+
+    @Override
+    public SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst) throws SSLException {
+        return handshakeStatusChecked(delegate.wrap(srcs, offset, length, dst));
+    }
+
+    @Override
+    public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, int offset, int length) throws SSLException {
+        return handshakeStatusChecked(delegate.unwrap(src, dsts, offset, length));
+    }
+
+    /**
+     * Notifies the listener if the result indicates the handshake has completed.
+     */
+    private SSLEngineResult handshakeStatusChecked(SSLEngineResult result) {
+        if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED) {
+            SSLSession session = delegate.getSession();
+            boolean resumed = session != null && session.getCreationTime() < handshakeStartTime;
+
+            initialHandshakeCompleted = true;
+
+            listener.handshakeCompleted(this, resumed);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void beginHandshake() throws SSLException {
+        // a handshake after the initial handshake is a renegotiation, which begins now
+        if (initialHandshakeCompleted) {
+            handshakeStartTime = System.currentTimeMillis();
+        }
+
+        delegate.beginHandshake();
+    }
+
+    @Override
+    public Runnable getDelegatedTask() {
+        return delegate.getDelegatedTask();
+    }
+
+    @Override
+    public void closeInbound() throws SSLException {
+        delegate.closeInbound();
+    }
+
+    @Override
+    public boolean isInboundDone() {
+        return delegate.isInboundDone();
+    }
+
+    @Override
+    public void closeOutbound() {
+        delegate.closeOutbound();
+    }
+
+    @Override
+    public boolean isOutboundDone() {
+        return delegate.isOutboundDone();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public String[] getEnabledCipherSuites() {
+        return delegate.getEnabledCipherSuites();
+    }
+
+    @Override
+    public void setEnabledCipherSuites(String[] suites) {
+        delegate.setEnabledCipherSuites(suites);
+    }
+
+    @Override
+    public String[] getSupportedProtocols() {
+        return delegate.getSupportedProtocols();
+    }
+
+    @Override
+    public String[] getEnabledProtocols() {
+        return delegate.getEnabledProtocols();
+    }
+
+    @Override
+    public void setEnabledProtocols(String[] protocols) {
+        delegate.setEnabledProtocols(protocols);
+    }
+
+    @Override
+    public SSLSession getSession() {
+        return delegate.getSession();
+    }
+
+    @Override
+    public SSLSession getHandshakeSession() {
+        return delegate.getHandshakeSession();
+    }
+
+    @Override
+    public SSLEngineResult.HandshakeStatus getHandshakeStatus() {
+        return delegate.getHandshakeStatus();
+    }
+
+    @Override
+    public void setUseClientMode(boolean mode) {
+        delegate.setUseClientMode(mode);
+    }
+
+    @Override
+    public boolean getUseClientMode() {
+        return delegate.getUseClientMode();
+    }
+
+    @Override
+    public void setNeedClientAuth(boolean need) {
+        delegate.setNeedClientAuth(need);
+    }
+
+    @Override
+    public boolean getNeedClientAuth() {
+        return delegate.getNeedClientAuth();
+    }
+
+    @Override
+    public void setWantClientAuth(boolean want) {
+        delegate.setWantClientAuth(want);
+    }
+
+    @Override
+    public boolean getWantClientAuth() {
+        return delegate.getWantClientAuth();
+    }
+
+    @Override
+    public void setEnableSessionCreation(boolean flag) {
+        delegate.setEnableSessionCreation(flag);
+    }
+
+    @Override
+    public boolean getEnableSessionCreation() {
+        return delegate.getEnableSessionCreation();
+    }
+
+    @Override
+    public SSLParameters getSSLParameters() {
+        return delegate.getSSLParameters();
+    }
+
+    @Override
+    public void setSSLParameters(SSLParameters params) {
+        delegate.setSSLParameters(params);
+    }
+}
@@ -4,9 +4,14 @@ import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.io.CharStreams;
 import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import io.netty.util.ReferenceCounted;
+import net.lightbody.bmp.mitm.util.HandshakeTrackingSslEngine.HandshakeListener;
 import net.lightbody.bmp.mitm.trustmanager.InsecureTrustManagerFactory;
 import net.lightbody.bmp.mitm.TrustSource;
 import net.lightbody.bmp.mitm.exception.SslContextInitializationException;
@@ -14,6 +19,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLSession;
@@ -79,7 +85,41 @@ public class SslUtil {
      * @return an SSLContext to connect to upstream servers with
      */
     public static SslContext getUpstreamServerSslContext(Collection<String> cipherSuites, TrustSource trustSource) {
-        SslContextBuilder sslContextBuilder = SslContextBuilder.forClient();
+        return getUpstreamServerSslContext(cipherSuites, trustSource, null);
+    }
+
+    /**
+     * Creates a netty SslContext for use when connecting to upstream servers, using the specified SSL provider. See
+     * {@link #getUpstreamServerSslContext(Collection, TrustSource)} for details.
+     *
+     * @param cipherSuites    cipher suites to allow when connecting to the upstream server
+     * @param trustSource     the trust store that will be used to validate upstream servers' certificates, or null to accept all upstream server certificates
+     * @param sslProvider     the SSL implementation to use, or null to use netty's default implementation
+     * @return an SSLContext to connect to upstream servers with
+     */
+    public static SslContext getUpstreamServerSslContext(Collection<String> cipherSuites, TrustSource trustSource, SslProvider sslProvider) {
+        return getUpstreamServerSslContext(cipherSuites, trustSource, sslProvider, 0, 0);
+    }
+
+    /**
+     * Creates a netty SslContext for use when connecting to upstream servers, using the specified SSL provider and session
+     * cache settings. Sessions are cached by the upstream server's host and port, so they can only be resumed by engines
+     * created with {@link SslContext#newEngine(io.netty.buffer.ByteBufAllocator, String, int)}. See
+     * {@link #getUpstreamServerSslContext(Collection, TrustSource)} for details.
+     *
+     * @param cipherSuites    cipher suites to allow when connecting to the upstream server
+     * @param trustSource     the trust store that will be used to validate upstream servers' certificates, or null to accept all upstream server certificates
+     * @param sslProvider     the SSL implementation to use, or null to use netty's default implementation
+     * @param sessionCacheSize maximum number of cached TLS sessions, or 0 to use the SSL implementation's default
+     * @param sessionTimeoutSeconds length of time TLS sessions are cached, or 0 to use the SSL implementation's default
+     * @return an SSLContext to connect to upstream servers with
+     */
+    public static SslContext getUpstreamServerSslContext(Collection<String> cipherSuites, TrustSource trustSource, SslProvider sslProvider,
+                                                         long sessionCacheSize, long sessionTimeoutSeconds) {
+        SslContextBuilder sslContextBuilder = SslContextBuilder.forClient()
+                .sslProvider(sslProvider)
+                .sessionCacheSize(sessionCacheSize)
+                .sessionTimeout(sessionTimeoutSeconds);
 
         if (trustSource == null) {
             log.warn("Disabling upstream server certificate verification. This will allow attackers to intercept communications with upstream servers.");
@@ -98,6 +138,57 @@ public class SslUtil {
         }
     }
 
+    /**
+     * Returns the specified SSL provider if it can be used. OpenSSL providers require netty-tcnative to be on the classpath;
+     * if an OpenSSL provider is requested but OpenSSL is not available, logs a warning and falls back to the JDK provider.
+     *
+     * @param sslProvider requested SSL provider, or null to use netty's default provider
+     * @return the requested SSL provider if it is available, otherwise {@link SslProvider#JDK}
+     */
+    public static SslProvider getAvailableSslProvider(SslProvider sslProvider) {
+        if ((sslProvider == SslProvider.OPENSSL || sslProvider == SslProvider.OPENSSL_REFCNT) && !OpenSsl.isAvailable()) {
+            log.warn("OpenSSL SSL provider requested, but OpenSSL is not available. Falling back to the JDK SSL provider.", OpenSsl.unavailabilityCause());
+
+            return SslProvider.JDK;
+        }
+
+        return sslProvider;
+    }
+
+    /**
+     * Sets the key used to encrypt and decrypt TLS session tickets on the specified server SslContext, so that clients can
+     * resume sessions using tickets issued by any SslContext using the same key. The key consists of a 16-byte name, a 16-byte
+     * HMAC key, and a 16-byte AES key. Only OpenSSL SslContexts support session tickets; for other SslContexts, this method
+     * has no effect.
+     *
+     * @param sslContext server SslContext
+     * @param sessionTicketKey 48-byte session ticket key
+     */
+    public static void setSessionTicketKey(SslContext sslContext, byte[] sessionTicketKey) {
+        if (sslContext.sessionContext() instanceof OpenSslSessionContext) {
+            ((OpenSslSessionContext) sslContext.sessionContext()).setTicketKeys(new OpenSslSessionTicketKey(
+                    Arrays.copyOfRange(sessionTicketKey, 0, 16),
+                    Arrays.copyOfRange(sessionTicketKey, 16, 32),
+                    Arrays.copyOfRange(sessionTicketKey, 32, 48)));
+        }
+    }
+
+    /**
+     * Returns an SSLEngine that notifies the listener each time the engine completes a TLS handshake. OpenSSL engines are
+     * returned unmodified, since wrapping them would prevent netty from using its native OpenSSL code path.
+     *
+     * @param sslEngine engine to track
+     * @param listener listener to notify when a handshake completes
+     * @return an SSLEngine that tracks handshakes, or the original engine if it is an OpenSSL engine
+     */
+    public static SSLEngine trackHandshakes(SSLEngine sslEngine, HandshakeListener listener) {
+        if (sslEngine instanceof ReferenceCounted) {
+            return sslEngine;
+        }
+
+        return new HandshakeTrackingSslEngine(sslEngine, listener);
+    }
+
     /**
      * Returns the X509Certificate for the server this session is connected to. The certificate may be null.
      *
@@ -0,0 +1,95 @@
+package net.lightbody.bmp.mitm
+
+import net.lightbody.bmp.mitm.keys.ECKeyGenerator
+import net.lightbody.bmp.mitm.tools.DefaultSecurityProviderTool
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import static org.junit.Assert.assertArrayEquals
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNotNull
+import static org.junit.Assert.assertNull
+
+class FileImpersonatedCertificateStoreTest {
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder()
+
+    CertificateAndKey rootCertificate = RootCertificateGenerator.builder().keyGenerator(new ECKeyGenerator()).build().load()
+
+    CertificateAndKey otherRootCertificate = RootCertificateGenerator.builder().keyGenerator(new ECKeyGenerator()).build().load()
+
+    @Test
+    void testSaveAndLoadCertificate() {
+        FileImpersonatedCertificateStore store = new FileImpersonatedCertificateStore(tmpDir.root)
+
+        CertificateInfo certificateInfo = createCertificateInfo(["www.example.com"], 365)
+        CertificateAndKey impersonated = createServerCertificate(certificateInfo)
+        store.save(rootCertificate.certificate, certificateInfo, impersonated)
+
+        // the validity period is not part of the key, so certificate info generated later for the same host matches
+        CertificateAndKey loaded = new FileImpersonatedCertificateStore(tmpDir.root).load(rootCertificate.certificate, createCertificateInfo(["www.example.com"], 300))
+
+        assertNotNull("Expected certificate to be loaded from the store", loaded)
+        assertEquals("Expected loaded certificate to match saved certificate", impersonated.certificate, loaded.certificate)
+        assertArrayEquals("Expected loaded private key to match saved private key", impersonated.privateKey.encoded, loaded.privateKey.encoded)
+    }
+
+    @Test
+    void testCertificatesAreStoredPerCaAndCertificateInfo() {
+        FileImpersonatedCertificateStore store = new FileImpersonatedCertificateStore(tmpDir.root)
+
+        CertificateInfo certificateInfo = createCertificateInfo(["www.example.com"], 365)
+        store.save(rootCertificate.certificate, certificateInfo, createServerCertificate(certificateInfo))
+
+        assertNull("Expected no certificate for different hostnames", store.load(rootCertificate.certificate, createCertificateInfo(["other.example.com"], 365)))
+        assertNull("Expected no certificate signed by a different CA", store.load(otherRootCertificate.certificate, certificateInfo))
+        assertNull("Expected no certificate for the same hostname with a different subject",
+                store.load(rootCertificate.certificate, createCertificateInfo(["www.example.com"], 365).organization("Example Organization")))
+    }
+
+    @Test
+    void testExpiringCertificateIsNotLoaded() {
+        FileImpersonatedCertificateStore store = new FileImpersonatedCertificateStore(tmpDir.root)
+
+        // the certificate expires within the default minimum remaining validity of one day
+        CertificateInfo certificateInfo = createCertificateInfo(["www.example.com"], 0)
+        store.save(rootCertificate.certificate, certificateInfo, createServerCertificate(certificateInfo))
+
+        assertNull("Expected certificate that expires soon not to be loaded", store.load(rootCertificate.certificate, certificateInfo))
+    }
+
+    @Test
+    void testCorruptFileIsIgnored() {
+        FileImpersonatedCertificateStore store = new FileImpersonatedCertificateStore(tmpDir.root)
+
+        CertificateInfo certificateInfo = createCertificateInfo(["www.example.com"], 365)
+        store.save(rootCertificate.certificate, certificateInfo, createServerCertificate(certificateInfo))
+
+        File certificateFile = null
+        tmpDir.root.eachFileRecurse { File file ->
+            if (file.name.endsWith(".cert")) {
+                certificateFile = file
+            }
+        }
+
+        assertNotNull("Expected certificate file to be written", certificateFile)
+
+        certificateFile.bytes = [0, 0, 0, 1, 0, 2] as byte[]
+
+        assertNull("Expected corrupt certificate file to be ignored", store.load(rootCertificate.certificate, certificateInfo))
+    }
+
+    private static CertificateInfo createCertificateInfo(List<String> hostnames, int daysValid) {
+        return new CertificateInfo()
+                .commonName(hostnames.get(0))
+                .subjectAlternativeNames(hostnames)
+                .notBefore(new Date(System.currentTimeMillis() - 1000L * 60 * 60 * 24))
+                .notAfter(new Date(System.currentTimeMillis() + 1000L * 60 * 60 * 24 * daysValid))
+    }
+
+    private CertificateAndKey createServerCertificate(CertificateInfo certificateInfo) {
+        return new DefaultSecurityProviderTool().createServerCertificate(certificateInfo, rootCertificate.certificate,
+                rootCertificate.privateKey, new ECKeyGenerator().generate(), "SHA256")
+    }
+}
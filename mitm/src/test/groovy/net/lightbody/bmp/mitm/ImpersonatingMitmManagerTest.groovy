@@ -3,19 +3,40 @@ package net.lightbody.bmp.mitm
 import io.netty.handler.codec.http.DefaultFullHttpRequest
 import io.netty.handler.codec.http.HttpMethod
 import io.netty.handler.codec.http.HttpVersion
+import io.netty.handler.ssl.OpenSsl
+import io.netty.handler.ssl.SslProvider
 import net.lightbody.bmp.mitm.keys.ECKeyGenerator
+import net.lightbody.bmp.mitm.keys.KeyGenerator
 import net.lightbody.bmp.mitm.keys.RSAKeyGenerator
 import net.lightbody.bmp.mitm.manager.ImpersonatingMitmManager
+import org.junit.Rule
 import org.junit.Test
+import org.junit.rules.TemporaryFolder
 
 import javax.net.ssl.SSLEngine
+import javax.net.ssl.SSLEngineResult
 import javax.net.ssl.SSLSession
+import java.nio.ByteBuffer
+import java.security.KeyPair
+import java.security.cert.X509Certificate
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
 
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
 import static org.junit.Assert.assertNotNull
+import static org.junit.Assert.assertTrue
 import static org.mockito.Mockito.mock
 import static org.mockito.Mockito.when
 
 class ImpersonatingMitmManagerTest {
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder()
+
     SSLSession mockSession = mock(SSLSession)
 
     @Test
@@ -50,4 +71,327 @@ class ImpersonatingMitmManagerTest {
         SSLEngine clientSslEngine = mitmManager.clientSslEngineFor(request, mockSession)
         assertNotNull(clientSslEngine)
     }
+
+    @Test
+    void testCreateClientEngineWithServerKeyPairPool() {
+        ImpersonatingMitmManager mitmManager = ImpersonatingMitmManager.builder()
+                .serverKeyGenerator(new ECKeyGenerator())
+                .rootCertificateSource(RootCertificateGenerator.builder().keyGenerator(new ECKeyGenerator()).build())
+                .serverKeyPairPool(1, 2)
+                .build()
+
+        when(mockSession.getPeerHost()).thenReturn("hostname")
+
+        def request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://test.connection")
+        SSLEngine clientSslEngine = mitmManager.clientSslEngineFor(request, mockSession)
+        assertNotNull(clientSslEngine)
+
+        assertEquals("Expected the server key pair to be taken from the pool or generated on demand",
+                1, mitmManager.statistics.keyPairPoolHits + mitmManager.statistics.keyPairPoolMisses)
+    }
+
+    @Test
+    void testWildcardCertificateSharedAmongSubdomains() {
+        ImpersonatingMitmManager mitmManager = ImpersonatingMitmManager.builder()
+                .serverKeyGenerator(new ECKeyGenerator())
+                .rootCertificateSource(RootCertificateGenerator.builder().keyGenerator(new ECKeyGenerator()).build())
+                .certificateInfoGenerator(new WildcardCertificateInfoGenerator())
+                .build()
+
+        when(mockSession.getPeerHost()).thenReturn("hostname")
+
+        assertNotNull(mitmManager.clientSslEngineFor(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://img1.cdn.example.com"), mockSession))
+        assertNotNull(mitmManager.clientSslEngineFor(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://img2.cdn.example.com"), mockSession))
+
+        assertEquals("Expected one certificate to be generated for both subdomains", 1, mitmManager.statistics.certificatesGenerated)
+        assertEquals("Expected the second subdomain to use the cached SslContext", 1L, mitmManager.statistics.sslContextCacheHits)
+        assertEquals("Expected a 50% SslContext cache hit rate", 0.5d, mitmManager.statistics.sslContextCacheHitRate, 0.0001d)
+    }
+
+    @Test
+    void testImpersonatedCertificateReusedFromStore() {
+        RootCertificateGenerator rootCertificateSource = RootCertificateGenerator.builder().keyGenerator(new ECKeyGenerator()).build()
+        ImpersonatedCertificateStore store = new FileImpersonatedCertificateStore(tmpDir.root)
+
+        when(mockSession.getPeerHost()).thenReturn("hostname")
+
+        ImpersonatingMitmManager firstMitmManager = ImpersonatingMitmManager.builder()
+                .serverKeyGenerator(new ECKeyGenerator())
+                .rootCertificateSource(rootCertificateSource)
+                .impersonatedCertificateStore(store)
+                .build()
+
+        assertNotNull(firstMitmManager.clientSslEngineFor(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://www.example.com"), mockSession))
+        assertEquals("Expected the first MitmManager to generate the certificate", 1, firstMitmManager.statistics.certificatesGenerated)
+
+        // simulates a restart: a new MitmManager with an empty SslContext cache, using the same CA and store
+        ImpersonatingMitmManager secondMitmManager = ImpersonatingMitmManager.builder()
+                .serverKeyGenerator(new ECKeyGenerator())
+                .rootCertificateSource(rootCertificateSource)
+                .impersonatedCertificateStore(store)
+                .build()
+
+        assertNotNull(secondMitmManager.clientSslEngineFor(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://www.example.com"), mockSession))
+        assertEquals("Expected the second MitmManager not to generate a certificate", 0, secondMitmManager.statistics.certificatesGenerated)
+        assertEquals("Expected the second MitmManager to load the certificate from the store", 1, secondMitmManager.statistics.certificatesLoadedFromStore)
+    }
+
+    @Test
+    void testStoredCertificateNotReusedForDifferentCertificateInfo() {
+        RootCertificateGenerator rootCertificateSource = RootCertificateGenerator.builder().keyGenerator(new ECKeyGenerator()).build()
+        ImpersonatedCertificateStore store = new FileImpersonatedCertificateStore(tmpDir.root)
+
+        when(mockSession.getPeerHost()).thenReturn("hostname")
+
+        ImpersonatingMitmManager firstMitmManager = ImpersonatingMitmManager.builder()
+                .serverKeyGenerator(new ECKeyGenerator())
+                .rootCertificateSource(rootCertificateSource)
+                .impersonatedCertificateStore(store)
+                .build()
+
+        assertNotNull(firstMitmManager.clientSslEngineFor(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://www.example.com"), mockSession))
+
+        // a generator that produces a different subject for the same hostname
+        CertificateInfoGenerator customGenerator = new CertificateInfoGenerator() {
+            @Override
+            CertificateInfo generate(List<String> hostnames, X509Certificate originalCertificate) {
+                return new HostnameCertificateInfoGenerator().generate(hostnames, originalCertificate).organization("Custom Organization")
+            }
+        }
+
+        ImpersonatingMitmManager secondMitmManager = ImpersonatingMitmManager.builder()
+                .serverKeyGenerator(new ECKeyGenerator())
+                .rootCertificateSource(rootCertificateSource)
+                .impersonatedCertificateStore(store)
+                .certificateInfoGenerator(customGenerator)
+                .build()
+
+        assertNotNull(secondMitmManager.clientSslEngineFor(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://www.example.com"), mockSession))
+        assertEquals("Expected a certificate generated from different certificate info not to be loaded from the store", 0, secondMitmManager.statistics.certificatesLoadedFromStore)
+        assertEquals("Expected the second MitmManager to generate a new certificate", 1, secondMitmManager.statistics.certificatesGenerated)
+    }
+
+    @Test
+    void testConcurrentRequestsForSameHostCoalesced() {
+        CountDownLatch releaseKeyGenerator = new CountDownLatch(1)
+        KeyGenerator ecKeyGenerator = new ECKeyGenerator()
+
+        KeyGenerator blockingKeyGenerator = new KeyGenerator() {
+            @Override
+            KeyPair generate() {
+                releaseKeyGenerator.await()
+
+                return ecKeyGenerator.generate()
+            }
+        }
+
+        ImpersonatingMitmManager mitmManager = ImpersonatingMitmManager.builder()
+                .serverKeyGenerator(blockingKeyGenerator)
+                .rootCertificateSource(RootCertificateGenerator.builder().keyGenerator(new ECKeyGenerator()).build())
+                .build()
+
+        when(mockSession.getPeerHost()).thenReturn("hostname")
+
+        int requests = 4
+        ExecutorService executor = Executors.newFixedThreadPool(requests)
+        try {
+            List<Future<SSLEngine>> engines = (1..requests).collect {
+                executor.submit({
+                    mitmManager.clientSslEngineFor(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://www.example.com"), mockSession)
+                } as Callable<SSLEngine>)
+            }
+
+            // wait until every request after the first is waiting for the first request's impersonation
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+            while (mitmManager.statistics.impersonationsCoalesced < requests - 1 && System.nanoTime() < deadline) {
+                Thread.sleep(10)
+            }
+
+            releaseKeyGenerator.countDown()
+
+            engines.each { assertNotNull(it.get(5, TimeUnit.SECONDS)) }
+        } finally {
+            releaseKeyGenerator.countDown()
+            executor.shutdownNow()
+        }
+
+        assertEquals("Expected concurrent requests for the same host to share one certificate", 1, mitmManager.statistics.certificatesGenerated)
+        assertEquals("Expected all requests after the first to wait for the first impersonation", (long) (requests - 1), mitmManager.statistics.impersonationsCoalesced)
+    }
+
+    @Test
+    void testPreImpersonatedCertificateUsedForClientEngine() {
+        ImpersonatingMitmManager mitmManager = ImpersonatingMitmManager.builder()
+                .serverKeyGenerator(new ECKeyGenerator())
+                .rootCertificateSource(RootCertificateGenerator.builder().keyGenerator(new ECKeyGenerator()).build())
+                .impersonationThreads(1)
+                .build()
+
+        mitmManager.preImpersonate("www.example.com")
+
+        when(mockSession.getPeerHost()).thenReturn("hostname")
+
+        assertNotNull(mitmManager.clientSslEngineFor(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://www.example.com"), mockSession))
+
+        assertEquals("Expected the pre-impersonated certificate to be used", 1, mitmManager.statistics.certificatesGenerated)
+        assertTrue("Expected the request to use the pre-impersonated SslContext",
+                mitmManager.statistics.sslContextCacheHits + mitmManager.statistics.impersonationsCoalesced == 1L)
+    }
+
+    @Test
+    void testImpersonationQueuedWhenThreadsBusy() {
+        CountDownLatch releaseKeyGenerator = new CountDownLatch(1)
+        KeyGenerator ecKeyGenerator = new ECKeyGenerator()
+        Thread testThread = Thread.currentThread()
+        boolean generatedOnCallingThread = false
+
+        KeyGenerator blockingKeyGenerator = new KeyGenerator() {
+            @Override
+            KeyPair generate() {
+                if (Thread.currentThread() == testThread) {
+                    generatedOnCallingThread = true
+                } else {
+                    releaseKeyGenerator.await()
+                }
+
+                return ecKeyGenerator.generate()
+            }
+        }
+
+        ImpersonatingMitmManager mitmManager = ImpersonatingMitmManager.builder()
+                .serverKeyGenerator(blockingKeyGenerator)
+                .rootCertificateSource(RootCertificateGenerator.builder().keyGenerator(new ECKeyGenerator()).build())
+                .impersonationThreads(1)
+                .build()
+
+        ExecutorService executor = Executors.newSingleThreadExecutor()
+        try {
+            // one impersonation occupies the only impersonation thread, and the rest wait in the queue
+            (0..300).each { mitmManager.preImpersonate("host${it}.example.com") }
+
+            when(mockSession.getPeerHost()).thenReturn("hostname")
+
+            Future<SSLEngine> sslEngine = executor.submit(new Callable<SSLEngine>() {
+                @Override
+                SSLEngine call() throws Exception {
+                    return mitmManager.clientSslEngineFor(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://www.example.com"), mockSession)
+                }
+            })
+
+            releaseKeyGenerator.countDown()
+
+            assertNotNull("Expected impersonation to wait in the queue rather than fail", sslEngine.get(60, TimeUnit.SECONDS))
+            assertFalse("Expected certificate not to be generated on the calling thread", generatedOnCallingThread)
+        } finally {
+            releaseKeyGenerator.countDown()
+            executor.shutdownNow()
+        }
+    }
+
+    @Test
+    void testOpenSslProviderFallsBackToJdkWhenUnavailable() {
+        ImpersonatingMitmManager mitmManager = ImpersonatingMitmManager.builder()
+                .serverKeyGenerator(new ECKeyGenerator())
+                .rootCertificateSource(RootCertificateGenerator.builder().keyGenerator(new ECKeyGenerator()).build())
+                .sslProvider(SslProvider.OPENSSL)
+                .build()
+
+        assertEquals("Expected OpenSSL to be used only when it is available",
+                OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK, mitmManager.sslProvider)
+
+        when(mockSession.getPeerHost()).thenReturn("hostname")
+
+        assertNotNull(mitmManager.clientSslEngineFor(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://www.example.com"), mockSession))
+        assertNotNull(mitmManager.serverSslEngine("www.example.com", 443))
+    }
+
+    @Test
+    void testResumedHandshakesCounted() {
+        ImpersonatingMitmManager mitmManager = ImpersonatingMitmManager.builder()
+                .serverKeyGenerator(new ECKeyGenerator())
+                .rootCertificateSource(RootCertificateGenerator.builder().keyGenerator(new ECKeyGenerator()).build())
+                .trustAllServers(true)
+                .sslProvider(SslProvider.JDK)
+                .sessionCacheSize(100)
+                .sessionTimeout(1, TimeUnit.HOURS)
+                .build()
+
+        when(mockSession.getPeerHost()).thenReturn("hostname")
+
+        // the proxy's upstream engine acts as the client and the impersonating engine acts as the server
+        2.times {
+            handshake(mitmManager.serverSslEngine("www.example.com", 443),
+                    mitmManager.clientSslEngineFor(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://www.example.com"), mockSession))
+        }
+
+        assertEquals("Expected the first client handshake to be a full handshake", 1L, mitmManager.handshakeStatistics.clientFullHandshakes)
+        assertEquals("Expected the second client handshake to resume the session", 1L, mitmManager.handshakeStatistics.clientResumedHandshakes)
+        assertEquals("Expected the first upstream handshake to be a full handshake", 1L, mitmManager.handshakeStatistics.upstreamFullHandshakes)
+        assertEquals("Expected the second upstream handshake to resume the session", 1L, mitmManager.handshakeStatistics.upstreamResumedHandshakes)
+    }
+
+    @Test(expected = IllegalArgumentException)
+    void testInvalidSessionTicketKeyRejected() {
+        ImpersonatingMitmManager.builder()
+                .sessionTicketKey(new byte[16])
+                .build()
+    }
+
+    /**
+     * Performs a TLS handshake between the client and server engines by passing their records directly to each other.
+     */
+    private static void handshake(SSLEngine clientEngine, SSLEngine serverEngine) {
+        clientEngine.useClientMode = true
+        serverEngine.useClientMode = false
+
+        ByteBuffer empty = ByteBuffer.allocate(0)
+        ByteBuffer clientToServer = ByteBuffer.allocate(clientEngine.session.packetBufferSize * 4)
+        ByteBuffer serverToClient = ByteBuffer.allocate(serverEngine.session.packetBufferSize * 4)
+        ByteBuffer applicationData = ByteBuffer.allocate(Math.max(clientEngine.session.applicationBufferSize, serverEngine.session.applicationBufferSize))
+
+        clientEngine.beginHandshake()
+        serverEngine.beginHandshake()
+
+        int rounds = 0
+        while (!isHandshakeComplete(clientEngine) || !isHandshakeComplete(serverEngine)) {
+            assertTrue("Handshake did not complete", rounds++ < 100)
+
+            clientEngine.wrap(empty, clientToServer)
+            runDelegatedTasks(clientEngine)
+            serverEngine.wrap(empty, serverToClient)
+            runDelegatedTasks(serverEngine)
+
+            clientToServer.flip()
+            serverToClient.flip()
+
+            unwrapAll(clientEngine, serverToClient, applicationData)
+            unwrapAll(serverEngine, clientToServer, applicationData)
+
+            clientToServer.compact()
+            serverToClient.compact()
+        }
+    }
+
+    private static void unwrapAll(SSLEngine engine, ByteBuffer source, ByteBuffer applicationData) {
+        while (source.hasRemaining()) {
+            SSLEngineResult result = engine.unwrap(source, applicationData)
+            runDelegatedTasks(engine)
+            applicationData.clear()
+
+            if (result.status != SSLEngineResult.Status.OK || result.bytesConsumed() == 0) {
+                break
+            }
+        }
+    }
+
+    private static boolean isHandshakeComplete(SSLEngine engine) {
+        return engine.handshakeStatus == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING || engine.handshakeStatus == SSLEngineResult.HandshakeStatus.FINISHED
+    }
+
+    private static void runDelegatedTasks(SSLEngine engine) {
+        Runnable task
+        while ((task = engine.delegatedTask) != null) {
+            task.run()
+        }
+    }
 }
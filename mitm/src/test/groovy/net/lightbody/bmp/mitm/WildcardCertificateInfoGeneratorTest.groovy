@@ -0,0 +1,37 @@
+package net.lightbody.bmp.mitm
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+
+class WildcardCertificateInfoGeneratorTest {
+    WildcardCertificateInfoGenerator generator = new WildcardCertificateInfoGenerator()
+
+    @Test
+    void testSubdomainsShareWildcardCertificate() {
+        assertEquals(["*.cdn.example.com", "cdn.example.com"], generator.getCertificateHostnames("img1.cdn.example.com"))
+        assertEquals(["*.cdn.example.com", "cdn.example.com"], generator.getCertificateHostnames("img2.cdn.example.com"))
+        assertEquals(["*.example.com", "example.com"], generator.getCertificateHostnames("www.example.com"))
+    }
+
+    @Test
+    void testNoWildcardDirectlyUnderPublicSuffix() {
+        assertEquals(["example.com"], generator.getCertificateHostnames("example.com"))
+        assertEquals(["example.co.uk"], generator.getCertificateHostnames("example.co.uk"))
+        assertEquals(["*.example.co.uk", "example.co.uk"], generator.getCertificateHostnames("www.example.co.uk"))
+    }
+
+    @Test
+    void testNoWildcardForIpAddressesOrSingleLabelHosts() {
+        assertEquals(["127.0.0.1"], generator.getCertificateHostnames("127.0.0.1"))
+        assertEquals(["localhost"], generator.getCertificateHostnames("localhost"))
+    }
+
+    @Test
+    void testCertificateInfoUsesWildcardCommonName() {
+        CertificateInfo certificateInfo = generator.generate(generator.getCertificateHostnames("img1.cdn.example.com"), null)
+
+        assertEquals("*.cdn.example.com", certificateInfo.commonName)
+        assertEquals(["*.cdn.example.com", "cdn.example.com"], certificateInfo.subjectAlternativeNames)
+    }
+}
@@ -0,0 +1,92 @@
+package net.lightbody.bmp.mitm.tools
+
+import net.lightbody.bmp.mitm.keys.KeyGenerator
+import net.lightbody.bmp.mitm.keys.PooledKeyGenerator
+import net.lightbody.bmp.mitm.stats.CertificateGenerationStatistics
+import org.junit.Test
+
+import java.security.KeyPair
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNotNull
+import static org.junit.Assert.assertNotSame
+import static org.junit.Assert.assertTrue
+
+class PooledKeyGeneratorTest {
+    @Test
+    void testPoolFillsToHighWatermark() {
+        CountingKeyGenerator countingGenerator = new CountingKeyGenerator()
+        CertificateGenerationStatistics statistics = new CertificateGenerationStatistics()
+
+        PooledKeyGenerator keyGenerator = new PooledKeyGenerator(countingGenerator, 2, 4, statistics)
+
+        waitForAvailableKeyPairs(keyGenerator, 4)
+
+        KeyPair first = keyGenerator.generate()
+        KeyPair second = keyGenerator.generate()
+
+        assertNotNull("Expected a key pair from the pool", first)
+        assertNotSame("Expected each pooled key pair to be returned only once", first, second)
+        assertEquals("Expected both key pairs to come from the pool", 2, statistics.keyPairPoolHits)
+        assertEquals("Expected no key pairs to be generated on demand", 0, statistics.keyPairPoolMisses)
+
+        // the pool fell to the low watermark but not below it, so it should not have been refilled
+        assertEquals("Expected two key pairs to remain in the pool", 2, keyGenerator.availableKeyPairs)
+
+        keyGenerator.generate()
+
+        // the pool fell below the low watermark, so it should be refilled to the high watermark
+        waitForAvailableKeyPairs(keyGenerator, 4)
+
+        assertEquals("Expected 7 key pairs to have been generated in the background", 7, statistics.keyPairsPregenerated)
+    }
+
+    @Test
+    void testEmptyPoolGeneratesOnCallingThread() {
+        CountDownLatch generatorBlocked = new CountDownLatch(1)
+
+        KeyGenerator blockingGenerator = new KeyGenerator() {
+            @Override
+            KeyPair generate() {
+                if (Thread.currentThread().name.startsWith("key-pair-pool")) {
+                    generatorBlocked.await()
+                }
+
+                return new KeyPair(null, null)
+            }
+        }
+
+        CertificateGenerationStatistics statistics = new CertificateGenerationStatistics()
+        PooledKeyGenerator keyGenerator = new PooledKeyGenerator(blockingGenerator, 1, 2, statistics)
+
+        try {
+            assertNotNull("Expected a key pair to be generated on the calling thread", keyGenerator.generate())
+            assertEquals("Expected a pool miss when the pool is empty", 1, statistics.keyPairPoolMisses)
+        } finally {
+            generatorBlocked.countDown()
+        }
+    }
+
+    private static void waitForAvailableKeyPairs(PooledKeyGenerator keyGenerator, int expected) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (keyGenerator.availableKeyPairs < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10)
+        }
+
+        assertTrue("Timed out waiting for the key pair pool to fill", keyGenerator.availableKeyPairs >= expected)
+    }
+
+    private static class CountingKeyGenerator implements KeyGenerator {
+        final AtomicInteger generated = new AtomicInteger()
+
+        @Override
+        KeyPair generate() {
+            generated.incrementAndGet()
+
+            return new KeyPair(null, null)
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package net.lightbody.bmp.mitm;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslProvider;
+import net.lightbody.bmp.mitm.keys.ECKeyGenerator;
+import net.lightbody.bmp.mitm.keys.KeyGenerator;
+import net.lightbody.bmp.mitm.keys.RSAKeyGenerator;
+import net.lightbody.bmp.mitm.manager.ImpersonatingMitmManager;
+import net.lightbody.bmp.mitm.util.SslUtil;
+import org.junit.Assume;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Measures full TLS handshakes between an impersonated server SSLEngine and an upstream-style client SSLEngine, in memory,
+ * using each SSL provider. OpenSSL parameters are skipped when netty-tcnative is not on the classpath.
+ */
+// ignored as a quick work-around to running these tests with unit tests
+@Ignore
+@RunWith(Parameterized.class)
+public class TlsHandshakePerformanceTests {
+    private static final Logger log = LoggerFactory.getLogger(TlsHandshakePerformanceTests.class);
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+                {SslProvider.JDK, new RSAKeyGenerator()},
+                {SslProvider.JDK, new ECKeyGenerator()},
+                {SslProvider.OPENSSL, new RSAKeyGenerator()},
+                {SslProvider.OPENSSL, new ECKeyGenerator()}
+        });
+    }
+
+    @Parameter
+    public SslProvider sslProvider;
+
+    @Parameter(1)
+    public KeyGenerator keyGenerator;
+
+    private static final int WARM_UP_ITERATIONS = 100;
+
+    private static final int ITERATIONS = 1000;
+
+    /**
+     * Maximum number of wrap/unwrap rounds in a single handshake, to avoid looping forever if a handshake stalls.
+     */
+    private static final int MAX_HANDSHAKE_ROUNDS = 100;
+
+    @Test
+    public void testHandshakePerformance() throws SSLException {
+        if (sslProvider != SslProvider.JDK) {
+            Assume.assumeTrue("OpenSSL is not available", OpenSsl.isAvailable());
+        }
+
+        ImpersonatingMitmManager mitmManager = ImpersonatingMitmManager.builder()
+                .rootCertificateSource(RootCertificateGenerator.builder()
+                        .keyGenerator(keyGenerator)
+                        .build())
+                .serverKeyGenerator(keyGenerator)
+                .sslProvider(sslProvider)
+                .build();
+
+        SslContext clientSslContext = SslUtil.getUpstreamServerSslContext(SslUtil.getDefaultCipherList(), null, sslProvider);
+
+        SSLSession mockSession = Mockito.mock(SSLSession.class);
+        HttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://www.example.com");
+
+        log.info("Test parameters:\n\tSSL provider: {}\n\tKey Gen: {}", sslProvider, keyGenerator);
+
+        // warm up, impersonate the server, etc.
+        log.info("Executing {} warm up iterations", WARM_UP_ITERATIONS);
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            handshake(clientSslContext.newEngine(ByteBufAllocator.DEFAULT), mitmManager.clientSslEngineFor(request, mockSession));
+        }
+
+        log.info("Executing {} performance test iterations", ITERATIONS);
+
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            handshake(clientSslContext.newEngine(ByteBufAllocator.DEFAULT), mitmManager.clientSslEngineFor(request, mockSession));
+        }
+
+        long finish = System.currentTimeMillis();
+
+        log.info("Finished performance test:\n\tSSL provider: {}\n\tKey Gen: {}", sslProvider, keyGenerator);
+        log.info("Completed {} handshakes in {}ms. Handshakes per second: {}", ITERATIONS, finish - start, ITERATIONS * 1000L / Math.max(1, finish - start));
+    }
+
+    /**
+     * Performs a full TLS handshake between the client and server engines by passing their handshake records directly to
+     * each other.
+     */
+    private static void handshake(SSLEngine clientEngine, SSLEngine serverEngine) throws SSLException {
+        clientEngine.setUseClientMode(true);
+        serverEngine.setUseClientMode(false);
+
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        ByteBuffer clientToServer = ByteBuffer.allocate(clientEngine.getSession().getPacketBufferSize() * 4);
+        ByteBuffer serverToClient = ByteBuffer.allocate(serverEngine.getSession().getPacketBufferSize() * 4);
+        ByteBuffer applicationData = ByteBuffer.allocate(Math.max(clientEngine.getSession().getApplicationBufferSize(),
+                serverEngine.getSession().getApplicationBufferSize()));
+
+        clientEngine.beginHandshake();
+        serverEngine.beginHandshake();
+
+        for (int round = 0; !isHandshakeComplete(clientEngine) || !isHandshakeComplete(serverEngine); round++) {
+            if (round >= MAX_HANDSHAKE_ROUNDS) {
+                throw new IllegalStateException("TLS handshake did not complete after " + MAX_HANDSHAKE_ROUNDS + " rounds");
+            }
+
+            clientEngine.wrap(empty, clientToServer);
+            runDelegatedTasks(clientEngine);
+
+            serverEngine.wrap(empty, serverToClient);
+            runDelegatedTasks(serverEngine);
+
+            clientToServer.flip();
+            serverToClient.flip();
+
+            unwrapAll(clientEngine, serverToClient, applicationData);
+            unwrapAll(serverEngine, clientToServer, applicationData);
+
+            clientToServer.compact();
+            serverToClient.compact();
+        }
+
+        clientEngine.closeOutbound();
+        serverEngine.closeOutbound();
+    }
+
+    private static void unwrapAll(SSLEngine engine, ByteBuffer source, ByteBuffer applicationData) throws SSLException {
+        while (source.hasRemaining()) {
+            SSLEngineResult result = engine.unwrap(source, applicationData);
+            runDelegatedTasks(engine);
+            applicationData.clear();
+
+            if (result.getStatus() != SSLEngineResult.Status.OK || result.bytesConsumed() == 0) {
+                break;
+            }
+        }
+    }
+
+    private static boolean isHandshakeComplete(SSLEngine engine) {
+        SSLEngineResult.HandshakeStatus handshakeStatus = engine.getHandshakeStatus();
+
+        return handshakeStatus == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING || handshakeStatus == SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+
+    private static void runDelegatedTasks(SSLEngine engine) {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+}